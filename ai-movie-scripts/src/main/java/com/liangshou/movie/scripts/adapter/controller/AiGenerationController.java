@@ -1,102 +1,216 @@
 package com.liangshou.movie.scripts.adapter.controller;
 
+import com.liangshou.movie.scripts.adapter.sse.SseDeltaCoalescer;
+import com.liangshou.movie.scripts.adapter.sse.SseStreamLimiter;
+import com.liangshou.movie.scripts.common.config.sse.SseStreamProperties;
 import com.liangshou.movie.scripts.service.agents.agentimpl.AIScriptWritingAgent;
+import com.liangshou.movie.scripts.service.dto.StoryOutlineDTO;
+import com.liangshou.movie.scripts.service.dto.outline.EpisodeGenerationEvent;
+import com.liangshou.movie.scripts.service.generation.EpisodeGenerationPipeline;
 import jakarta.annotation.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * AI生成控制器
+ * 接口返回 Mono，由 Spring MVC 异步完成响应，等待模型期间不占用 Tomcat 线程
  */
 @RestController
 @RequestMapping("/api/v1/ai")
 @SuppressWarnings("unused")
 public class AiGenerationController {
 
+    /**
+     * 请求体中可选的提供方字段（如 qwen、deepseek），为空时由 ModelRouter 按生成类型与实时延迟选择
+     */
+    private static final String PROVIDER = "provider";
+
     @Resource
     private AIScriptWritingAgent aiScriptWritingAgent;
 
+    @Resource
+    private EpisodeGenerationPipeline episodeGenerationPipeline;
+
+    @Resource
+    private SseDeltaCoalescer sseDeltaCoalescer;
+
+    @Resource
+    private SseStreamLimiter sseStreamLimiter;
+
+    @Resource
+    private SseStreamProperties sseStreamProperties;
+
     /**
      * 生成创意
      */
     @PostMapping("/generate/creative")
-    public ResponseEntity<Map<String, String>> generateCreative(@RequestBody Map<String, String> request) {
+    public Mono<ResponseEntity<Map<String, String>>> generateCreative(@RequestBody Map<String, String> request) {
         String creativeRequest = request.getOrDefault("request", "");
-        String result = aiScriptWritingAgent.generateCreative(creativeRequest);
-        
-        Map<String, String> response = new HashMap<>();
-        response.put("result", result);
-        return ResponseEntity.ok(response);
+        return aiScriptWritingAgent.generateCreative(creativeRequest, request.get(PROVIDER))
+                .map(AiGenerationController::toResponse);
     }
 
     /**
      * 生成主题背景
      */
     @PostMapping("/generate/theme")
-    public ResponseEntity<Map<String, String>> generateTheme(@RequestBody Map<String, String> request) {
+    public Mono<ResponseEntity<Map<String, String>>> generateTheme(@RequestBody Map<String, String> request) {
         String themeRequest = request.getOrDefault("request", "");
-        String result = aiScriptWritingAgent.generateTheme(themeRequest);
-        
-        Map<String, String> response = new HashMap<>();
-        response.put("result", result);
-        return ResponseEntity.ok(response);
+        return aiScriptWritingAgent.generateTheme(themeRequest, request.get(PROVIDER))
+                .map(AiGenerationController::toResponse);
     }
 
     /**
      * 生成剧情梗概
      */
     @PostMapping("/generate/summary")
-    public ResponseEntity<Map<String, String>> generateSummary(@RequestBody Map<String, String> request) {
+    public Mono<ResponseEntity<Map<String, String>>> generateSummary(@RequestBody Map<String, String> request) {
         String summaryRequest = request.getOrDefault("request", "");
-        String result = aiScriptWritingAgent.generateSummary(summaryRequest);
-        
-        Map<String, String> response = new HashMap<>();
-        response.put("result", result);
-        return ResponseEntity.ok(response);
+        return aiScriptWritingAgent.generateSummary(summaryRequest, request.get(PROVIDER))
+                .map(AiGenerationController::toResponse);
     }
 
     /**
      * 生成角色设计
      */
     @PostMapping("/generate/characters")
-    public ResponseEntity<Map<String, String>> generateCharacters(@RequestBody Map<String, String> request) {
+    public Mono<ResponseEntity<Map<String, String>>> generateCharacters(@RequestBody Map<String, String> request) {
         String characterRequest = request.getOrDefault("request", "");
-        String result = aiScriptWritingAgent.generateCharacters(characterRequest);
-        
-        Map<String, String> response = new HashMap<>();
-        response.put("result", result);
-        return ResponseEntity.ok(response);
+        return aiScriptWritingAgent.generateCharacters(characterRequest, request.get(PROVIDER))
+                .map(AiGenerationController::toResponse);
     }
 
     /**
      * 生成故事大纲
      */
     @PostMapping("/generate/outline")
-    public ResponseEntity<Map<String, String>> generateOutline(@RequestBody Map<String, String> request) {
+    public Mono<ResponseEntity<Map<String, String>>> generateOutline(@RequestBody Map<String, String> request) {
         String outlineRequest = request.getOrDefault("request", "");
-        String result = aiScriptWritingAgent.generateOutline(outlineRequest);
-        
-        Map<String, String> response = new HashMap<>();
-        response.put("result", result);
-        return ResponseEntity.ok(response);
+        return aiScriptWritingAgent.generateOutline(outlineRequest, request.get(PROVIDER))
+                .map(AiGenerationController::toResponse);
     }
 
     /**
      * 生成章节内容
      */
     @PostMapping("/generate/chapter")
-    public ResponseEntity<Map<String, String>> generateChapter(@RequestBody Map<String, String> request) {
+    public Mono<ResponseEntity<Map<String, String>>> generateChapter(@RequestBody Map<String, String> request) {
         String chapterRequest = request.getOrDefault("request", "");
-        String result = aiScriptWritingAgent.generateChapter(chapterRequest);
-        
+        return aiScriptWritingAgent.generateChapter(chapterRequest, request.get(PROVIDER))
+                .map(AiGenerationController::toResponse);
+    }
+
+    /**
+     * 流式生成创意
+     */
+    @PostMapping(value = "/generate/creative/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> generateCreativeStream(@RequestBody Map<String, String> request) {
+        return stream("creative", () -> aiScriptWritingAgent.generateCreativeStream(
+                request.getOrDefault("request", ""), request.get(PROVIDER)));
+    }
+
+    /**
+     * 流式生成主题背景
+     */
+    @PostMapping(value = "/generate/theme/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> generateThemeStream(@RequestBody Map<String, String> request) {
+        return stream("theme", () -> aiScriptWritingAgent.generateThemeStream(
+                request.getOrDefault("request", ""), request.get(PROVIDER)));
+    }
+
+    /**
+     * 流式生成剧情梗概
+     */
+    @PostMapping(value = "/generate/summary/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> generateSummaryStream(@RequestBody Map<String, String> request) {
+        return stream("summary", () -> aiScriptWritingAgent.generateSummaryStream(
+                request.getOrDefault("request", ""), request.get(PROVIDER)));
+    }
+
+    /**
+     * 流式生成角色设计
+     */
+    @PostMapping(value = "/generate/characters/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> generateCharactersStream(@RequestBody Map<String, String> request) {
+        return stream("characters", () -> aiScriptWritingAgent.generateCharactersStream(
+                request.getOrDefault("request", ""), request.get(PROVIDER)));
+    }
+
+    /**
+     * 流式生成故事大纲
+     */
+    @PostMapping(value = "/generate/outline/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> generateOutlineStream(@RequestBody Map<String, String> request) {
+        return stream("outline", () -> aiScriptWritingAgent.generateOutlineStream(
+                request.getOrDefault("request", ""), request.get(PROVIDER)));
+    }
+
+    /**
+     * 流式生成章节内容
+     */
+    @PostMapping(value = "/generate/chapter/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> generateChapterStream(@RequestBody Map<String, String> request) {
+        return stream("chapter", () -> aiScriptWritingAgent.generateChapterStream(
+                request.getOrDefault("request", ""), request.get(PROVIDER)));
+    }
+
+    /**
+     * 按大纲并行生成全部桥段，每完成一个桥段写入数据库并推送一条 episode 事件，全部结束后推送 done 事件
+     */
+    @PostMapping(value = "/generate/episodes/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> generateEpisodes(@RequestBody StoryOutlineDTO outline) {
+        Flux<EpisodeGenerationEvent> events;
+        try {
+            events = episodeGenerationPipeline.generateEpisodes(outline);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        SseStreamLimiter.Permit permit = sseStreamLimiter.tryAcquire();
+        if (permit == null) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "1").build();
+        }
+        SseEmitter emitter = new SseEmitter(sseStreamProperties.getTimeoutMillis());
+        sseDeltaCoalescer.pipeEvents("episodes", "episode", events, emitter, permit::release);
+        return ResponseEntity.ok(emitter);
+    }
+
+    /**
+     * 各生成类型的流式响应：SSE 推送合并后的 delta 事件，结束时推送 done 事件，
+     * 首字节时间取决于模型首 token 延迟，不再等待完整结果
+     */
+    private ResponseEntity<SseEmitter> stream(String type, Supplier<Flux<String>> tokens) {
+        SseStreamLimiter.Permit permit = sseStreamLimiter.tryAcquire();
+        if (permit == null) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "1").build();
+        }
+        Flux<String> flux;
+        try {
+            flux = tokens.get();
+        } catch (RuntimeException e) {
+            permit.release();
+            throw e;
+        }
+        SseEmitter emitter = new SseEmitter(sseStreamProperties.getTimeoutMillis());
+        sseDeltaCoalescer.pipe("generate-" + type, flux, emitter, permit::release);
+        return ResponseEntity.ok(emitter);
+    }
+
+    private static ResponseEntity<Map<String, String>> toResponse(String result) {
         Map<String, String> response = new HashMap<>();
         response.put("result", result);
         return ResponseEntity.ok(response);
     }
-}
\ No newline at end of file
+}
@@ -4,6 +4,7 @@ import com.liangshou.movie.scripts.service.conversation.ConversationService;
 import com.liangshou.movie.scripts.service.dto.conversation.ConversationMessageDto;
 import com.liangshou.movie.scripts.service.dto.conversation.ConversationSummaryDto;
 import com.liangshou.movie.scripts.service.dto.conversation.CreateConversationRequest;
+import com.liangshou.movie.scripts.service.dto.conversation.CursorPageResponse;
 import com.liangshou.movie.scripts.service.dto.conversation.PageResponse;
 import com.liangshou.movie.scripts.service.dto.conversation.RenameConversationRequest;
 import org.springframework.http.ResponseEntity;
@@ -35,6 +36,23 @@ public class ConversationController {
         return ResponseEntity.ok(resp);
     }
 
+    @GetMapping("/conversations/scroll")
+    public ResponseEntity<CursorPageResponse<ConversationSummaryDto>> scroll(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String keyword,
+            @RequestParam(defaultValue = "false") boolean withTotal
+    ) {
+        String userId = ConversationService.DEFAULT_USER_ID;
+        try {
+            CursorPageResponse<ConversationSummaryDto> resp = conversationService.scroll(userId, cursor, size, keyword, withTotal);
+            return ResponseEntity.ok(resp);
+        } catch (IllegalArgumentException e) {
+            // 游标格式错误或被篡改
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @PostMapping("/conversations")
     public ResponseEntity<Map<String, Object>> create(@RequestBody(required = false) CreateConversationRequest request) {
         String userId = ConversationService.DEFAULT_USER_ID;
@@ -64,9 +82,14 @@ public class ConversationController {
     }
 
     @GetMapping("/conversations/{conversationId}/messages")
-    public ResponseEntity<List<ConversationMessageDto>> messages(@PathVariable String conversationId) {
+    public ResponseEntity<List<ConversationMessageDto>> messages(
+            @PathVariable String conversationId,
+            @RequestParam(required = false) Long before,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit
+    ) {
         String userId = ConversationService.DEFAULT_USER_ID;
-        List<ConversationMessageDto> resp = conversationService.getMessages(userId, conversationId);
+        List<ConversationMessageDto> resp = conversationService.getMessages(userId, conversationId, before, after, limit);
         return ResponseEntity.ok(resp);
     }
 
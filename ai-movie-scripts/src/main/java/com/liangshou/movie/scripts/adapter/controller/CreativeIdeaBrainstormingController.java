@@ -1,7 +1,12 @@
 package com.liangshou.movie.scripts.adapter.controller;
 
+import com.liangshou.movie.scripts.adapter.sse.SseDeltaCoalescer;
+import com.liangshou.movie.scripts.adapter.sse.SseStreamLimiter;
+import com.liangshou.movie.scripts.common.config.sse.SseStreamProperties;
 import com.liangshou.movie.scripts.service.agents.agentimpl.CreativeIdeaBrainstormingAgent;
 import com.liangshou.movie.scripts.service.dto.brainstorm.BrainstormChatRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
@@ -11,6 +16,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.io.IOException;
 import java.util.HashMap;
@@ -22,73 +28,81 @@ import java.util.UUID;
 public class CreativeIdeaBrainstormingController {
 
     private final CreativeIdeaBrainstormingAgent brainstormingAgent;
+    private final SseDeltaCoalescer sseDeltaCoalescer;
+    private final SseStreamLimiter sseStreamLimiter;
+    private final SseStreamProperties sseStreamProperties;
 
-    public CreativeIdeaBrainstormingController(CreativeIdeaBrainstormingAgent brainstormingAgent) {
+    public CreativeIdeaBrainstormingController(
+            CreativeIdeaBrainstormingAgent brainstormingAgent,
+            SseDeltaCoalescer sseDeltaCoalescer,
+            SseStreamLimiter sseStreamLimiter,
+            SseStreamProperties sseStreamProperties) {
         this.brainstormingAgent = brainstormingAgent;
+        this.sseDeltaCoalescer = sseDeltaCoalescer;
+        this.sseStreamLimiter = sseStreamLimiter;
+        this.sseStreamProperties = sseStreamProperties;
     }
 
+    /**
+     * 返回 Mono，servlet 以异步方式完成响应，等待模型期间不占用 Tomcat 线程
+     */
     @PostMapping("/chat")
-    public ResponseEntity<Map<String, Object>> chat(@RequestBody BrainstormChatRequest request) {
+    public Mono<ResponseEntity<Map<String, Object>>> chat(@RequestBody BrainstormChatRequest request) {
         String conversationId = StringUtils.hasText(request.getConversationId())
                 ? request.getConversationId()
                 : UUID.randomUUID().toString();
         boolean enableSearch = request.getEnableSearch() == null || request.getEnableSearch();
 
-        String result = brainstormingAgent.chat(
+        return brainstormingAgent.chat(
                 conversationId,
                 request.getMessage(),
                 enableSearch,
                 request.getProjectId(),
                 request.getConversationTitle()
-        );
-
-        Map<String, Object> resp = new HashMap<>();
-        resp.put("conversationId", conversationId);
-        resp.put("result", result);
-        return ResponseEntity.ok(resp);
+        ).map((result) -> {
+            Map<String, Object> resp = new HashMap<>();
+            resp.put("conversationId", conversationId);
+            resp.put("result", result);
+            return ResponseEntity.ok(resp);
+        });
     }
 
     @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter chatStream(@RequestBody BrainstormChatRequest request) {
+    public ResponseEntity<SseEmitter> chatStream(@RequestBody BrainstormChatRequest request) {
         String conversationId = StringUtils.hasText(request.getConversationId())
                 ? request.getConversationId()
                 : UUID.randomUUID().toString();
         boolean enableSearch = request.getEnableSearch() == null || request.getEnableSearch();
 
-        SseEmitter emitter = new SseEmitter(0L);
+        SseStreamLimiter.Permit permit = sseStreamLimiter.tryAcquire();
+        if (permit == null) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "1").build();
+        }
+        SseEmitter emitter = new SseEmitter(sseStreamProperties.getTimeoutMillis());
         try {
             emitter.send(SseEmitter.event().name("conversation").data(conversationId));
         } catch (IOException e) {
+            permit.release();
             emitter.completeWithError(e);
-            return emitter;
+            return ResponseEntity.ok(emitter);
         }
 
-        Flux<String> flux = brainstormingAgent.chatStream(
-                conversationId,
-                request.getMessage(),
-                enableSearch,
-                request.getProjectId(),
-                request.getConversationTitle()
-        );
-        flux.subscribe(
-                chunk -> {
-                    try {
-                        emitter.send(SseEmitter.event().name("delta").data(chunk));
-                    } catch (IOException e) {
-                        emitter.completeWithError(e);
-                    }
-                },
-                emitter::completeWithError,
-                () -> {
-                    try {
-                        emitter.send(SseEmitter.event().name("done").data("[DONE]"));
-                    } catch (IOException ignored) {
-                    }
-                    emitter.complete();
-                }
-        );
+        Flux<String> flux;
+        try {
+            flux = brainstormingAgent.chatStream(
+                    conversationId,
+                    request.getMessage(),
+                    enableSearch,
+                    request.getProjectId(),
+                    request.getConversationTitle()
+            );
+        } catch (RuntimeException e) {
+            permit.release();
+            throw e;
+        }
+        sseDeltaCoalescer.pipe("brainstorming", flux, emitter, permit::release);
 
-        return emitter;
+        return ResponseEntity.ok(emitter);
     }
 
     @PostMapping("/clear")
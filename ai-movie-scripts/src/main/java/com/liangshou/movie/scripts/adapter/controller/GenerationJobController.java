@@ -0,0 +1,79 @@
+package com.liangshou.movie.scripts.adapter.controller;
+
+import com.liangshou.movie.scripts.adapter.sse.SseDeltaCoalescer;
+import com.liangshou.movie.scripts.adapter.sse.SseStreamLimiter;
+import com.liangshou.movie.scripts.common.config.sse.SseStreamProperties;
+import com.liangshou.movie.scripts.service.dto.job.GenerationJobDTO;
+import com.liangshou.movie.scripts.service.dto.job.GenerationJobRequest;
+import com.liangshou.movie.scripts.service.generation.GenerationJobService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * 异步生成任务控制器
+ * 提交后立即返回任务ID，结果通过查询接口或 SSE 订阅获取
+ */
+@RestController
+@RequestMapping("/api/v1/ai/jobs")
+public class GenerationJobController {
+
+    private final GenerationJobService generationJobService;
+    private final SseDeltaCoalescer sseDeltaCoalescer;
+    private final SseStreamLimiter sseStreamLimiter;
+    private final SseStreamProperties sseStreamProperties;
+
+    public GenerationJobController(GenerationJobService generationJobService, SseDeltaCoalescer sseDeltaCoalescer,
+                                   SseStreamLimiter sseStreamLimiter, SseStreamProperties sseStreamProperties) {
+        this.generationJobService = generationJobService;
+        this.sseDeltaCoalescer = sseDeltaCoalescer;
+        this.sseStreamLimiter = sseStreamLimiter;
+        this.sseStreamProperties = sseStreamProperties;
+    }
+
+    /**
+     * 提交生成任务，返回 202 与任务ID；带 idempotencyKey 重复提交返回同一任务
+     */
+    @PostMapping
+    public ResponseEntity<GenerationJobDTO> submit(@RequestBody GenerationJobRequest request) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(generationJobService.submit(request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * 查询任务状态与结果
+     */
+    @GetMapping("/{jobId}")
+    public ResponseEntity<GenerationJobDTO> get(@PathVariable String jobId) {
+        GenerationJobDTO job = generationJobService.findById(jobId);
+        return job != null ? ResponseEntity.ok(job) : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * 订阅任务进度，状态变化时推送 job 事件，任务结束后推送 done 事件；断线后重新订阅即可取得最终结果
+     */
+    @GetMapping(value = "/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> events(@PathVariable String jobId) {
+        if (generationJobService.findById(jobId) == null) {
+            return ResponseEntity.notFound().build();
+        }
+        SseStreamLimiter.Permit permit = sseStreamLimiter.tryAcquire();
+        if (permit == null) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "1").build();
+        }
+        SseEmitter emitter = new SseEmitter(sseStreamProperties.getTimeoutMillis());
+        sseDeltaCoalescer.pipeEvents("jobs", "job", generationJobService.watch(jobId), emitter, permit::release);
+        return ResponseEntity.ok(emitter);
+    }
+}
@@ -0,0 +1,24 @@
+package com.liangshou.movie.scripts.adapter.controller;
+
+import com.liangshou.movie.scripts.common.exceptions.ApiResult;
+import com.liangshou.movie.scripts.common.exceptions.ProviderUnavailableException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * 模型提供方并发已满或熔断中时快速返回 503 和 Retry-After，不等待模型超时；
+ * Mono 接口的异步错误同样经过这里，已开始推送的 SSE 流由 SseDeltaCoalescer 以错误结束
+ */
+@RestControllerAdvice
+public class ProviderUnavailableAdvice {
+
+    @ExceptionHandler(ProviderUnavailableException.class)
+    public ResponseEntity<ApiResult<Void>> handle(ProviderUnavailableException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(ApiResult.error(e));
+    }
+}
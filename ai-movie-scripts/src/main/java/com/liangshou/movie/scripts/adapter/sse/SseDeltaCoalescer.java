@@ -0,0 +1,261 @@
+package com.liangshou.movie.scripts.adapter.sse;
+
+import com.liangshou.movie.scripts.common.config.sse.SseStreamProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 将模型 token 流合并后写入 SseEmitter：按时间窗口或字节数攒批发送 delta 事件，减少 servlet 写出与 flush 次数。
+ * 空闲时发送 SSE 注释行作为心跳（前端只解析 data 行，注释不会被当作内容）。
+ * 指标 sse.stream.tokens 与 sse.stream.events 的速率之比即合并效果；sse.emitter.send 为单次写出耗时，
+ * sse.emitter.queue.size 为等待写出线程处理的信号数，持续增长说明 emitter-threads 不足。
+ */
+@Slf4j
+@Component
+public class SseDeltaCoalescer {
+
+    private final SseStreamProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final ScheduledExecutorService scheduler;
+    private final ThreadPoolExecutor emitterExecutor;
+    private final Scheduler emitterScheduler;
+
+    public SseDeltaCoalescer(SseStreamProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("sse-coalescer-");
+        threadFactory.setDaemon(true);
+        this.scheduler = Executors.newScheduledThreadPool(Math.max(1, properties.getSchedulerThreads()), threadFactory);
+        CustomizableThreadFactory emitterThreadFactory = new CustomizableThreadFactory("sse-emitter-");
+        emitterThreadFactory.setDaemon(true);
+        int emitterThreads = Math.max(1, properties.getEmitterThreads());
+        this.emitterExecutor = new ThreadPoolExecutor(emitterThreads, emitterThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), emitterThreadFactory);
+        this.emitterScheduler = Schedulers.fromExecutorService(emitterExecutor, "sse-emitter");
+
+        Gauge.builder("sse.emitter.queue.size", emitterExecutor, (executor) -> executor.getQueue().size())
+                .description("等待写出线程处理的流信号数")
+                .register(meterRegistry);
+        Gauge.builder("sse.emitter.active.threads", emitterExecutor, ThreadPoolExecutor::getActiveCount)
+                .register(meterRegistry);
+        Gauge.builder("sse.coalescer.scheduled.tasks", scheduler,
+                        (executor) -> ((ScheduledThreadPoolExecutor) executor).getQueue().size())
+                .description("待执行的合并刷新与心跳任务数")
+                .register(meterRegistry);
+    }
+
+    public void pipe(String stream, Flux<String> tokens, SseEmitter emitter) {
+        pipe(stream, tokens, emitter, null);
+    }
+
+    /**
+     * 订阅 token 流并写入 emitter，结束时发送 done 事件并关闭 emitter。
+     * emitter 超时、出错、完成或客户端断开时取消上游，onClose 在流结束时恰好执行一次（用于归还并发名额）。
+     */
+    public void pipe(String stream, Flux<String> tokens, SseEmitter emitter, Runnable onClose) {
+        open(stream, null, tokens, emitter, onClose);
+    }
+
+    /**
+     * 逐条以 JSON 写出结构化事件（不合并），其余行为与 pipe 相同：心跳、done 事件、断开时取消上游
+     */
+    public void pipeEvents(String stream, String eventName, Flux<?> events, SseEmitter emitter, Runnable onClose) {
+        open(stream, eventName, events, emitter, onClose);
+    }
+
+    private void open(String stream, String eventName, Flux<?> items, SseEmitter emitter, Runnable onClose) {
+        Pipe pipe = new Pipe(
+                emitter,
+                eventName,
+                Counter.builder("sse.stream.tokens").tag("stream", stream).register(meterRegistry),
+                Counter.builder("sse.stream.events").tag("stream", stream).register(meterRegistry),
+                Timer.builder("sse.emitter.send").tag("stream", stream).register(meterRegistry),
+                onClose
+        );
+        emitter.onCompletion(pipe::dispose);
+        emitter.onTimeout(() -> {
+            pipe.dispose();
+            emitter.complete();
+        });
+        emitter.onError((e) -> pipe.dispose());
+        pipe.start(items.publishOn(emitterScheduler));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        emitterScheduler.dispose();
+        emitterExecutor.shutdownNow();
+    }
+
+    private final class Pipe {
+
+        private final SseEmitter emitter;
+        private final String eventName;
+        private final Counter tokenCounter;
+        private final Counter eventCounter;
+        private final Timer sendTimer;
+        private final StringBuilder buffer = new StringBuilder();
+        private int bufferedBytes;
+        private long lastSentNanos = System.nanoTime();
+        private boolean closed;
+        private ScheduledFuture<?> flushTask;
+        private ScheduledFuture<?> heartbeatTask;
+        private final Runnable onClose;
+        private Disposable subscription;
+
+        private Pipe(SseEmitter emitter, String eventName, Counter tokenCounter, Counter eventCounter, Timer sendTimer,
+                     Runnable onClose) {
+            this.emitter = emitter;
+            this.eventName = eventName;
+            this.tokenCounter = tokenCounter;
+            this.eventCounter = eventCounter;
+            this.sendTimer = sendTimer;
+            this.onClose = onClose;
+        }
+
+        private void start(Flux<?> items) {
+            long heartbeat = properties.getHeartbeatIntervalMillis();
+            if (heartbeat > 0) {
+                heartbeatTask = scheduler.scheduleWithFixedDelay(this::heartbeat, heartbeat, heartbeat, TimeUnit.MILLISECONDS);
+            }
+            Disposable disposable = items.subscribe(this::onNext, this::onError, this::onComplete);
+            synchronized (this) {
+                if (closed) {
+                    disposable.dispose();
+                } else {
+                    subscription = disposable;
+                }
+            }
+        }
+
+        private synchronized void onNext(Object item) {
+            if (eventName == null) {
+                onToken((String) item);
+                return;
+            }
+            if (closed || item == null) return;
+            tokenCounter.increment();
+            if (send(SseEmitter.event().name(eventName).data(item, MediaType.APPLICATION_JSON))) {
+                eventCounter.increment();
+            }
+        }
+
+        private void onToken(String token) {
+            if (closed || token == null || token.isEmpty()) return;
+            tokenCounter.increment();
+            buffer.append(token);
+            bufferedBytes += token.getBytes(StandardCharsets.UTF_8).length;
+            long window = properties.getCoalesceWindowMillis();
+            if (window <= 0 || bufferedBytes >= properties.getCoalesceMaxBytes()) {
+                flush();
+            } else if (flushTask == null) {
+                flushTask = scheduler.schedule(this::flushLater, window, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private synchronized void onComplete() {
+            if (closed) return;
+            flush();
+            send(SseEmitter.event().name("done").data("[DONE]"));
+            close();
+            emitter.complete();
+        }
+
+        private synchronized void onError(Throwable error) {
+            if (closed) return;
+            flush();
+            close();
+            emitter.completeWithError(error);
+        }
+
+        private synchronized void flushLater() {
+            flushTask = null;
+            flush();
+        }
+
+        private synchronized void heartbeat() {
+            if (closed) return;
+            if (System.nanoTime() - lastSentNanos >= TimeUnit.MILLISECONDS.toNanos(properties.getHeartbeatIntervalMillis())) {
+                send(SseEmitter.event().comment("ping"));
+            }
+        }
+
+        private void flush() {
+            if (flushTask != null) {
+                flushTask.cancel(false);
+                flushTask = null;
+            }
+            if (buffer.isEmpty()) return;
+            String delta = buffer.toString();
+            buffer.setLength(0);
+            bufferedBytes = 0;
+            if (send(SseEmitter.event().name("delta").data(delta))) {
+                eventCounter.increment();
+            }
+        }
+
+        private boolean send(SseEmitter.SseEventBuilder event) {
+            if (closed) return false;
+            long begin = System.nanoTime();
+            try {
+                emitter.send(event);
+                lastSentNanos = System.nanoTime();
+                sendTimer.record(lastSentNanos - begin, TimeUnit.NANOSECONDS);
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                // 客户端已断开：停止上游生成
+                log.debug("sse_send_failed error={}", e.getMessage());
+                dispose();
+                emitter.completeWithError(e);
+                return false;
+            }
+        }
+
+        private synchronized void dispose() {
+            if (closed) return;
+            close();
+            if (subscription != null) {
+                subscription.dispose();
+            }
+        }
+
+        private void close() {
+            if (closed) return;
+            closed = true;
+            if (onClose != null) {
+                onClose.run();
+            }
+            if (flushTask != null) {
+                flushTask.cancel(false);
+                flushTask = null;
+            }
+            if (heartbeatTask != null) {
+                heartbeatTask.cancel(false);
+                heartbeatTask = null;
+            }
+        }
+    }
+}
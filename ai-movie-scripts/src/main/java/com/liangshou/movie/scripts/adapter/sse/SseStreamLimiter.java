@@ -0,0 +1,63 @@
+package com.liangshou.movie.scripts.adapter.sse;
+
+import com.liangshou.movie.scripts.common.config.sse.SseStreamProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 限制同时进行的 SSE 流数量，并暴露活跃流数量指标
+ */
+@Component
+public class SseStreamLimiter {
+
+    private final int maxStreams;
+    private final Semaphore permits;
+    private final Counter rejected;
+
+    public SseStreamLimiter(SseStreamProperties properties, MeterRegistry meterRegistry) {
+        this.maxStreams = Math.max(1, properties.getMaxConcurrentStreams());
+        this.permits = new Semaphore(maxStreams);
+        Gauge.builder("sse.stream.active", this, SseStreamLimiter::activeStreams)
+                .description("进行中的 SSE 流数量")
+                .register(meterRegistry);
+        Gauge.builder("sse.stream.capacity", this, (limiter) -> limiter.maxStreams)
+                .register(meterRegistry);
+        this.rejected = Counter.builder("sse.stream.rejected")
+                .description("因达到并发上限被拒绝的流")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 尝试占用一个流名额，达到上限时返回 null；返回的 Permit 可重复 release，只归还一次
+     */
+    public Permit tryAcquire() {
+        if (!permits.tryAcquire()) {
+            rejected.increment();
+            return null;
+        }
+        return new Permit();
+    }
+
+    public int activeStreams() {
+        return maxStreams - permits.availablePermits();
+    }
+
+    public final class Permit {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit() {
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.liangshou.movie.scripts.common.config.aimodelconfig.modelclientconfig;
+
+import com.liangshou.movie.scripts.common.config.aimodelconfig.properties.DeepSeekProperties;
+import com.liangshou.movie.scripts.service.generation.GenerationLogAdvisor;
+import com.liangshou.movie.scripts.service.generation.ModelProvider;
+import jakarta.annotation.Resource;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+
+/**
+ * DeepSeek 客户端，走 OpenAI 兼容接口；未配置 custom-model.deepseek.api-key 时不创建，路由中也不会出现该提供方
+ */
+@Configuration
+@ConditionalOnExpression("'${custom-model.deepseek.api-key:}' != ''")
+public class DeepSeekChatClientBean {
+
+    @Resource
+    private DeepSeekProperties deepSeekProperties;
+
+    @Resource
+    private GenerationLogAdvisor generationLogAdvisor;
+
+    @Bean
+    public ChatClient deepseekChatClient(ObjectProvider<RestClient.Builder> restClientBuilder,
+                                         ObjectProvider<WebClient.Builder> webClientBuilder) {
+        OpenAiApi api = OpenAiApi.builder()
+                .apiKey(deepSeekProperties.getApiKey())
+                .baseUrl(deepSeekProperties.getBaseUrl())
+                // 使用 Spring Boot 提供的构建器，共享 HttpTransportConfig 中的连接池
+                .restClientBuilder(restClientBuilder.getIfAvailable(RestClient::builder))
+                .webClientBuilder(webClientBuilder.getIfAvailable(WebClient::builder))
+                .build();
+
+        OpenAiChatOptions options = OpenAiChatOptions.builder()
+                .model(deepSeekProperties.getModel())
+                .temperature(deepSeekProperties.getTemperature())
+                .streamUsage(true)
+                .build();
+
+        OpenAiChatModel openAiChatModel = OpenAiChatModel.builder()
+                .openAiApi(api)
+                .defaultOptions(options)
+                .build();
+
+        return ChatClient.builder(openAiChatModel)
+                .defaultAdvisors(generationLogAdvisor)
+                .build();
+    }
+
+    @Bean
+    public ModelProvider deepseekModelProvider(@Qualifier("deepseekChatClient") ChatClient deepseekChatClient) {
+        return new ModelProvider("deepseek", deepSeekProperties.getModel(), deepSeekProperties.getTemperature(),
+                deepseekChatClient);
+    }
+}
@@ -1,13 +1,19 @@
 package com.liangshou.movie.scripts.common.config.aimodelconfig.modelclientconfig;
 
 import com.liangshou.movie.scripts.common.config.aimodelconfig.properties.QwenProperties;
+import com.liangshou.movie.scripts.service.generation.GenerationLogAdvisor;
+import com.liangshou.movie.scripts.service.generation.ModelProvider;
 import jakarta.annotation.Resource;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.ai.openai.OpenAiChatOptions;
 import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
 
 @Configuration
 public class QwenChatClientBean {
@@ -15,16 +21,25 @@ public class QwenChatClientBean {
     @Resource
     private QwenProperties qwenProperties;
 
+    @Resource
+    private GenerationLogAdvisor generationLogAdvisor;
+
     @Bean
-    public ChatClient qwenChatClient() {
+    public ChatClient qwenChatClient(ObjectProvider<RestClient.Builder> restClientBuilder,
+                                     ObjectProvider<WebClient.Builder> webClientBuilder) {
         OpenAiApi api = OpenAiApi.builder()
                 .apiKey(qwenProperties.getApiKey())
                 .baseUrl(qwenProperties.getBaseUrl())
+                // 使用 Spring Boot 提供的构建器，共享 HttpTransportConfig 中的连接池
+                .restClientBuilder(restClientBuilder.getIfAvailable(RestClient::builder))
+                .webClientBuilder(webClientBuilder.getIfAvailable(WebClient::builder))
                 .build();
 
         OpenAiChatOptions options = OpenAiChatOptions.builder()
                 .model(qwenProperties.getModel())
                 .temperature(qwenProperties.getTemperature())
+                // 流式调用在最后一个分片返回 token 用量，供调用日志记录
+                .streamUsage(true)
                 .build();
 
         OpenAiChatModel openAiChatModel = OpenAiChatModel.builder()
@@ -32,6 +47,16 @@ public class QwenChatClientBean {
                 .defaultOptions(options)
                 .build();
 
-        return ChatClient.builder(openAiChatModel).build();
+        return ChatClient.builder(openAiChatModel)
+                .defaultAdvisors(generationLogAdvisor)
+                .build();
+    }
+
+    /**
+     * 供 ModelRouter 路由的 qwen 提供方，复用上面的客户端
+     */
+    @Bean
+    public ModelProvider qwenModelProvider(@Qualifier("qwenChatClient") ChatClient qwenChatClient) {
+        return new ModelProvider("qwen", qwenProperties.getModel(), qwenProperties.getTemperature(), qwenChatClient);
     }
-}
\ No newline at end of file
+}
@@ -1,7 +1,8 @@
 package com.liangshou.movie.scripts.common.config.chatmemory;
 
+import com.liangshou.movie.scripts.common.config.conversation.ConversationMemoryProperties;
+import com.liangshou.movie.scripts.service.conversation.ConversationChatMemoryRepository;
 import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.chat.memory.ChatMemoryRepository;
 import org.springframework.ai.chat.memory.MessageWindowChatMemory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -9,11 +10,16 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 public class ChatMemoryConfig {
 
+    /**
+     * maxMessages 只是条数上限，token 预算由 ConversationChatMemoryRepository 读取时按最新优先裁剪
+     */
     @Bean
-    public ChatMemory chatMemory(ChatMemoryRepository chatMemoryRepository) {
+    public ChatMemory chatMemory(
+            ConversationChatMemoryRepository chatMemoryRepository,
+            ConversationMemoryProperties memoryProperties) {
         return MessageWindowChatMemory.builder()
                 .chatMemoryRepository(chatMemoryRepository)
-                .maxMessages(20)
+                .maxMessages(memoryProperties.getContextWindowMessages())
                 .build();
     }
 }
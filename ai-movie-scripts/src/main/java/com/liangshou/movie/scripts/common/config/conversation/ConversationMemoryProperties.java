@@ -0,0 +1,58 @@
+package com.liangshou.movie.scripts.common.config.conversation;
+
+import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationMetaDocument;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 会话消息存储配置属性类
+ * 用于读取application.yaml中conversation.memory下的配置
+ */
+@Setter
+@Getter
+@Component
+@ConfigurationProperties(prefix = "conversation.memory")
+public class ConversationMemoryProperties {
+
+    /**
+     * 新会话的消息存储模式：EMBEDDED（单文档内嵌）| BUCKETED（分桶存储），已有会话保持创建时的模式
+     */
+    private String storageMode = ConversationMetaDocument.STORAGE_EMBEDDED;
+
+    /**
+     * 分桶模式下每个桶文档容纳的消息数
+     */
+    private int bucketSize = 200;
+
+    /**
+     * 分页查询消息时单页最大条数
+     */
+    private int maxPageSize = 500;
+
+    /**
+     * 会话元信息中参与全文检索的最近消息条数
+     */
+    private int searchContentMessages = 40;
+
+    /**
+     * 每条消息参与全文检索的最大字符数
+     */
+    private int searchSnippetChars = 200;
+
+    /**
+     * 模型上下文窗口：每次对话最多带入的最近消息条数（条数上限，实际按 token 预算裁剪）
+     */
+    private int contextWindowMessages = 50;
+
+    /**
+     * 模型上下文窗口的 token 预算：从最新消息往前累加，超出预算的更早消息不再带入，不大于 0 时只按条数裁剪
+     */
+    private int contextWindowTokens = 6000;
+
+    /**
+     * 本地计数使用的 BPE 编码（jtokkit EncodingType），与模型分词器不完全一致，用于估算预算
+     */
+    private String tokenizerEncoding = "O200K_BASE";
+}
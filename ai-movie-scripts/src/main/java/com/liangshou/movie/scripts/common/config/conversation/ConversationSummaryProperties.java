@@ -0,0 +1,47 @@
+package com.liangshou.movie.scripts.common.config.conversation;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 对话滚动摘要配置属性类
+ * 用于读取application.yaml中conversation.summary下的配置
+ */
+@Setter
+@Getter
+@Component
+@ConfigurationProperties(prefix = "conversation.summary")
+public class ConversationSummaryProperties {
+
+    /**
+     * 是否开启滚动摘要：移出上下文窗口的消息异步压缩进会话摘要，并作为系统消息带入上下文
+     */
+    private boolean enabled = false;
+
+    /**
+     * 移出窗口但尚未摘要的消息达到该条数时才触发一次摘要，避免每轮都调用模型
+     */
+    private int minEvictedMessages = 10;
+
+    /**
+     * 单次摘要最多处理的消息条数，积压更多时按时间顺序分多轮追上
+     */
+    private int maxBatchMessages = 40;
+
+    /**
+     * 每条消息带入摘要输入的最大字符数，超出部分截断（粘贴的长篇正文只取开头）
+     */
+    private int maxMessageChars = 2000;
+
+    /**
+     * 摘要的最大字符数，写入提示词并在保存前截断
+     */
+    private int maxSummaryChars = 1200;
+
+    /**
+     * 同时进行的摘要任务上限，达到上限时丢弃，下次读取上下文时会再次触发
+     */
+    private int queueCapacity = 200;
+}
@@ -0,0 +1,57 @@
+package com.liangshou.movie.scripts.common.config.conversation;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 对话异步写入队列配置属性类
+ * 用于读取application.yaml中conversation.write-behind下的配置
+ */
+@Setter
+@Getter
+@Component
+@ConfigurationProperties(prefix = "conversation.write-behind")
+public class ConversationWriteBehindProperties {
+
+    /**
+     * 队列容量；队列满时提交线程不等待，轮次交给溢出线程落库等待重放（溢出线程的队列容量相同）
+     */
+    private int queueCapacity = 1000;
+
+    /**
+     * 写入线程单次从队列取出的最大轮次数
+     */
+    private int batchSize = 50;
+
+    /**
+     * 单个轮次在内存中的最大写入尝试次数，超过后落库等待重放
+     */
+    private int maxAttempts = 3;
+
+    /**
+     * 内存重试的初始退避毫秒数，每次翻倍；退避期间写入线程继续处理其他会话
+     */
+    private long retryBackoffMillis = 100;
+
+    /**
+     * 重放落库轮次的间隔毫秒数
+     */
+    private long redriveIntervalMillis = 30000;
+
+    /**
+     * 重放认领租约的毫秒数，实例在租约内未完成（如宕机）时其他实例可重新认领
+     */
+    private long redriveLeaseMillis = 60000;
+
+    /**
+     * 读取会话上下文前等待该会话未完成写入的最长毫秒数
+     */
+    private long awaitTimeoutMillis = 2000;
+
+    /**
+     * 应用关闭时等待队列排空的最长毫秒数
+     */
+    private long shutdownTimeoutMillis = 10000;
+}
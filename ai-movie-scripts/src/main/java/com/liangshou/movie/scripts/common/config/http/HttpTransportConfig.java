@@ -0,0 +1,97 @@
+package com.liangshou.movie.scripts.common.config.http;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import org.springframework.boot.web.client.RestClientCustomizer;
+import org.springframework.boot.web.client.RestTemplateCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ReactorClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import reactor.netty.ConnectionObserver;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.time.Duration;
+
+/**
+ * 出站 HTTP 传输层：模型客户端（OpenAiApi 的 RestClient 与 WebClient）与 Tavily 的 RestTemplate 共用一个 reactor-netty 连接池，
+ * 按目标主机限制连接数，支持 HTTP/2、keep-alive 与 gzip，连接与 TLS 握手在请求之间复用。
+ * 通过 Spring Boot 的 ClientHttpConnector 与 RestClient/RestTemplate 定制器生效，Spring AI 自动配置的客户端同样使用该连接池。
+ * 指标：reactor.netty.connection.provider.*（各主机连接池的总数、活跃、空闲与排队），
+ * http.client.connection{event=opened|reused}（新建连接与从连接池复用连接的次数）
+ */
+@Configuration
+public class HttpTransportConfig {
+
+    private static final String POOL_NAME = "outbound";
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider outboundConnectionProvider(HttpTransportProperties properties) {
+        return ConnectionProvider.builder(POOL_NAME)
+                .maxConnections(properties.getMaxConnectionsPerHost())
+                .pendingAcquireMaxCount(properties.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(Duration.ofMillis(properties.getPendingAcquireTimeoutMillis()))
+                .maxIdleTime(Duration.ofMillis(properties.getMaxIdleTimeMillis()))
+                .maxLifeTime(Duration.ofMillis(properties.getMaxLifeTimeMillis()))
+                .evictInBackground(Duration.ofMillis(properties.getEvictIntervalMillis()))
+                .metrics(true)
+                .build();
+    }
+
+    @Bean
+    public HttpClient outboundHttpClient(ConnectionProvider outboundConnectionProvider,
+                                         HttpTransportProperties properties,
+                                         MeterRegistry meterRegistry) {
+        HttpClient client = HttpClient.create(outboundConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) properties.getConnectTimeoutMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .responseTimeout(Duration.ofMillis(properties.getReadTimeoutMillis()))
+                .compress(properties.isCompression())
+                .observe((connection, state) -> {
+                    if (state == ConnectionObserver.State.CONNECTED) {
+                        count(meterRegistry, connection.channel().remoteAddress(), "opened");
+                    } else if (state == ConnectionObserver.State.ACQUIRED) {
+                        count(meterRegistry, connection.channel().remoteAddress(), "reused");
+                    }
+                });
+        return properties.isHttp2() ? client.protocol(HttpProtocol.H2, HttpProtocol.HTTP11) : client;
+    }
+
+    /**
+     * WebClient（流式调用）使用的连接器；Spring Boot 检测到该 Bean 后不再创建默认连接器
+     */
+    @Bean
+    public ClientHttpConnector outboundClientHttpConnector(HttpClient outboundHttpClient) {
+        return new ReactorClientHttpConnector(outboundHttpClient);
+    }
+
+    @Bean
+    public ReactorClientHttpRequestFactory outboundRequestFactory(HttpClient outboundHttpClient) {
+        return new ReactorClientHttpRequestFactory(outboundHttpClient);
+    }
+
+    @Bean
+    public RestClientCustomizer outboundRestClientCustomizer(ReactorClientHttpRequestFactory outboundRequestFactory) {
+        return (builder) -> builder.requestFactory(outboundRequestFactory);
+    }
+
+    @Bean
+    public RestTemplateCustomizer outboundRestTemplateCustomizer(ReactorClientHttpRequestFactory outboundRequestFactory) {
+        return (restTemplate) -> restTemplate.setRequestFactory(outboundRequestFactory);
+    }
+
+    private static void count(MeterRegistry meterRegistry, SocketAddress address, String event) {
+        String host = address instanceof InetSocketAddress inet ? inet.getHostString() : "unknown";
+        Counter.builder("http.client.connection")
+                .tag("host", host)
+                .tag("event", event)
+                .register(meterRegistry)
+                .increment();
+    }
+}
@@ -0,0 +1,64 @@
+package com.liangshou.movie.scripts.common.config.http;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 出站 HTTP 连接池配置属性类
+ * 用于读取application.yaml中http-transport下的配置
+ */
+@Setter
+@Getter
+@Component
+@ConfigurationProperties(prefix = "http-transport")
+public class HttpTransportProperties {
+
+    /**
+     * 每个目标主机的最大连接数（HTTP/2 下为连接数，每个连接可承载多个并发流）
+     */
+    private int maxConnectionsPerHost = 100;
+
+    /**
+     * 连接全部占用时允许排队等待的请求数，-1 表示不限
+     */
+    private int pendingAcquireMaxCount = 1000;
+
+    /**
+     * 排队等待连接的最长毫秒数，超时后请求失败
+     */
+    private long pendingAcquireTimeoutMillis = 5000;
+
+    /**
+     * 空闲连接保留的毫秒数，应小于服务端的 keep-alive 超时，避免复用已被对端关闭的连接
+     */
+    private long maxIdleTimeMillis = 50000;
+
+    /**
+     * 连接的最长存活毫秒数，定期重建以感知 DNS 变化
+     */
+    private long maxLifeTimeMillis = 600000;
+
+    /**
+     * 后台清理过期空闲连接的间隔毫秒数
+     */
+    private long evictIntervalMillis = 30000;
+
+    private long connectTimeoutMillis = 5000;
+
+    /**
+     * 两次读到数据之间的最长毫秒数；流式响应按分片计算，不限制整体耗时
+     */
+    private long readTimeoutMillis = 120000;
+
+    /**
+     * 是否通过 ALPN 协商 HTTP/2（仅 HTTPS），协商失败或明文连接时使用 HTTP/1.1
+     */
+    private boolean http2 = true;
+
+    /**
+     * 是否请求 gzip 压缩响应
+     */
+    private boolean compression = true;
+}
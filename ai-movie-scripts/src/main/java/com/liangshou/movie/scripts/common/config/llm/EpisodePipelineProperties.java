@@ -0,0 +1,32 @@
+package com.liangshou.movie.scripts.common.config.llm;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 桥段批量生成配置属性类
+ * 用于读取application.yaml中llm.pipeline下的配置
+ */
+@Setter
+@Getter
+@Component
+@ConfigurationProperties(prefix = "llm.pipeline")
+public class EpisodePipelineProperties {
+
+    /**
+     * 同时生成的桥段数上限
+     */
+    private int concurrency = 8;
+
+    /**
+     * 单个桥段的生成超时毫秒数，超时记为失败，不影响其他桥段
+     */
+    private long episodeTimeoutMillis = 180000;
+
+    /**
+     * 单次请求允许的最大桥段数
+     */
+    private int maxEpisodes = 200;
+}
@@ -0,0 +1,51 @@
+package com.liangshou.movie.scripts.common.config.llm;
+
+import com.liangshou.movie.scripts.common.enums.GenerationTypeEnum;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * 生成结果缓存配置属性类
+ * 用于读取application.yaml中llm.cache下的配置
+ */
+@Setter
+@Getter
+@Component
+@ConfigurationProperties(prefix = "llm.cache")
+public class GenerationCacheProperties {
+
+    /**
+     * 总开关，关闭后所有生成请求直接调用模型
+     */
+    private boolean enabled = true;
+
+    /**
+     * 启用缓存的生成类型（按接口逐个开启），未列出的类型不读也不写缓存
+     */
+    private Set<GenerationTypeEnum> types = EnumSet.noneOf(GenerationTypeEnum.class);
+
+    /**
+     * 本地缓存最大条数，超出后按 W-TinyLFU 淘汰
+     */
+    private long maximumSize = 10000;
+
+    /**
+     * 本地缓存写入后的过期时间（秒）
+     */
+    private long localTtlSeconds = 3600;
+
+    /**
+     * 是否启用 Mongo 持久层，多实例共享且重启后仍可命中
+     */
+    private boolean mongoEnabled = false;
+
+    /**
+     * Mongo 持久层的过期时间（秒），由 TTL 索引自动清理
+     */
+    private long mongoTtlSeconds = 604800;
+}
@@ -0,0 +1,57 @@
+package com.liangshou.movie.scripts.common.config.llm;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 异步生成任务配置属性类
+ * 用于读取application.yaml中llm.job下的配置
+ */
+@Setter
+@Getter
+@Component
+@ConfigurationProperties(prefix = "llm.job")
+public class GenerationJobProperties {
+
+    /**
+     * 是否在本节点启动任务执行线程，关闭后本节点只接收任务
+     */
+    private boolean workerEnabled = true;
+
+    /**
+     * 本节点的任务执行线程数
+     */
+    private int workers = 4;
+
+    /**
+     * 空闲时轮询待执行任务的间隔毫秒数
+     */
+    private long pollIntervalMillis = 1000;
+
+    /**
+     * 租约时长毫秒数，执行中按 1/3 周期续约；节点宕机后租约过期，任务由其他节点接手
+     */
+    private long leaseMillis = 60000;
+
+    /**
+     * 最大执行次数，用尽后标记为 FAILED
+     */
+    private int maxAttempts = 3;
+
+    /**
+     * 失败后再次执行前的等待毫秒数
+     */
+    private long retryBackoffMillis = 10000;
+
+    /**
+     * 单次执行的超时毫秒数
+     */
+    private long executionTimeoutMillis = 300000;
+
+    /**
+     * SSE 订阅时查询任务状态的间隔毫秒数
+     */
+    private long watchIntervalMillis = 1000;
+}
@@ -0,0 +1,47 @@
+package com.liangshou.movie.scripts.common.config.llm;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 模型调用日志配置属性类
+ * 用于读取application.yaml中llm.generation-log下的配置
+ */
+@Setter
+@Getter
+@Component
+@ConfigurationProperties(prefix = "llm.generation-log")
+public class GenerationLogProperties {
+
+    /**
+     * 是否记录 ai_generation_logs
+     */
+    private boolean enabled = true;
+
+    /**
+     * 等待写入的日志条数上限，队列满时丢弃新日志而不阻塞请求
+     */
+    private int queueCapacity = 10000;
+
+    /**
+     * 单次批量写入的最大条数
+     */
+    private int batchSize = 200;
+
+    /**
+     * 队列为空时等待新日志的最长毫秒数，不足一批时到时即写入
+     */
+    private long flushIntervalMillis = 1000;
+
+    /**
+     * prompt 与 response 存储的最大字符数（TEXT 列上限 64KB）
+     */
+    private int maxContentChars = 16000;
+
+    /**
+     * 应用关闭时等待剩余日志写入的最长毫秒数
+     */
+    private long shutdownTimeoutMillis = 5000;
+}
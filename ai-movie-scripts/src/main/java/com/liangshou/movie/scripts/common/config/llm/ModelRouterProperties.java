@@ -0,0 +1,51 @@
+package com.liangshou.movie.scripts.common.config.llm;
+
+import com.liangshou.movie.scripts.common.enums.GenerationTypeEnum;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 多模型提供方路由配置属性类
+ * 用于读取application.yaml中llm.router下的配置
+ */
+@Setter
+@Getter
+@Component
+@ConfigurationProperties(prefix = "llm.router")
+public class ModelRouterProperties {
+
+    /**
+     * 默认提供方，关闭自适应路由或其余提供方都不可用时使用
+     */
+    private String defaultProvider = "qwen";
+
+    /**
+     * 按生成类型固定提供方，如 CHAPTER: deepseek；未配置的类型参与自适应路由
+     */
+    private Map<GenerationTypeEnum, String> taskRoutes = new EnumMap<>(GenerationTypeEnum.class);
+
+    /**
+     * 是否按各提供方的首 token 延迟与错误率 EWMA 自动选择，关闭后未固定的类型都走默认提供方
+     */
+    private boolean adaptive = true;
+
+    /**
+     * EWMA 平滑系数，越大越偏向最近的调用
+     */
+    private double ewmaAlpha = 0.2;
+
+    /**
+     * 错误率惩罚系数：评分 = 延迟 EWMA × (1 + errorPenalty × 错误率 EWMA)，评分低者优先
+     */
+    private double errorPenalty = 4.0;
+
+    /**
+     * 随机分给非最优提供方的比例，使其 EWMA 持续更新，慢节点恢复后能重新获得流量
+     */
+    private double explorationRatio = 0.05;
+}
@@ -0,0 +1,44 @@
+package com.liangshou.movie.scripts.common.config.llm;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 模型提供方熔断配置属性类
+ * 用于读取application.yaml中llm.circuit-breaker下的配置
+ */
+@Setter
+@Getter
+@Component
+@ConfigurationProperties(prefix = "llm.circuit-breaker")
+public class ProviderCircuitBreakerProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * 统计失败率的最近调用数
+     */
+    private int windowSize = 20;
+
+    /**
+     * 窗口内调用数达到该值后才判断失败率
+     */
+    private int minCalls = 10;
+
+    /**
+     * 失败率达到该值时熔断
+     */
+    private double failureRateThreshold = 0.5;
+
+    /**
+     * 熔断持续的毫秒数，之后进入半开状态放行少量试探请求
+     */
+    private long openMillis = 30000;
+
+    /**
+     * 半开状态放行的试探请求数，全部成功后恢复，任一失败重新熔断
+     */
+    private int halfOpenCalls = 3;
+}
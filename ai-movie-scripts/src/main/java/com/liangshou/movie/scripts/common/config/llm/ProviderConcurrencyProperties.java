@@ -0,0 +1,46 @@
+package com.liangshou.movie.scripts.common.config.llm;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 模型提供方自适应并发限制配置属性类
+ * 用于读取application.yaml中llm.concurrency下的配置
+ */
+@Setter
+@Getter
+@Component
+@ConfigurationProperties(prefix = "llm.concurrency")
+public class ProviderConcurrencyProperties {
+
+    /**
+     * 是否限制各提供方的在途请求数，超过上限的请求直接失败
+     */
+    private boolean enabled = true;
+
+    /**
+     * 初始并发上限
+     */
+    private int initialLimit = 20;
+
+    private int minLimit = 2;
+
+    private int maxLimit = 200;
+
+    /**
+     * 调用失败或首 token 明显变慢时上限乘以该系数
+     */
+    private double backoffRatio = 0.9;
+
+    /**
+     * 首 token 耗时超过长期 EWMA 的该倍数时视为拥塞
+     */
+    private double latencyTolerance = 2.0;
+
+    /**
+     * 长期首 token 耗时 EWMA 的平滑系数
+     */
+    private double latencyEwmaAlpha = 0.05;
+}
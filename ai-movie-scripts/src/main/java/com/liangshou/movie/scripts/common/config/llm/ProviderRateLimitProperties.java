@@ -0,0 +1,25 @@
+package com.liangshou.movie.scripts.common.config.llm;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 模型提供方限流配置属性类
+ * 用于读取application.yaml中llm.rate-limit下的配置
+ */
+@Setter
+@Getter
+@Component
+@ConfigurationProperties(prefix = "llm.rate-limit")
+public class ProviderRateLimitProperties {
+
+    /**
+     * 各提供方每秒允许发起的模型请求数，未配置或小于等于 0 表示不限
+     */
+    private Map<String, Double> requestsPerSecond = new HashMap<>();
+}
@@ -0,0 +1,57 @@
+package com.liangshou.movie.scripts.common.config.llm;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 模型请求对冲（hedging）配置属性类
+ * 用于读取application.yaml中llm.hedge下的配置
+ */
+@Setter
+@Getter
+@Component
+@ConfigurationProperties(prefix = "llm.hedge")
+public class RequestHedgeProperties {
+
+    /**
+     * 是否开启：主提供方超过阈值仍未返回首个 token 时向备用提供方发送相同请求，先返回者胜出，另一个取消
+     */
+    private boolean enabled = false;
+
+    /**
+     * 对冲阈值取主提供方最近首 token 耗时的该分位数
+     */
+    private double percentile = 0.95;
+
+    /**
+     * 每个提供方保留的最近首 token 耗时样本数
+     */
+    private int windowSize = 200;
+
+    /**
+     * 样本数少于该值时无法估计分位数，不发起对冲
+     */
+    private int minSamples = 20;
+
+    /**
+     * 对冲阈值下限（毫秒），避免样本偏快时过早对冲
+     */
+    private long minDelayMillis = 300;
+
+    /**
+     * 对冲阈值上限（毫秒）
+     */
+    private long maxDelayMillis = 20000;
+
+    /**
+     * 对冲请求占全部请求的比例上限：每个请求积累该比例的额度，一次对冲消耗 1
+     */
+    private double maxHedgeRatio = 0.1;
+
+    /**
+     * 额度累积上限，允许短时间内集中对冲的次数
+     */
+    private double budgetBurst = 10;
+}
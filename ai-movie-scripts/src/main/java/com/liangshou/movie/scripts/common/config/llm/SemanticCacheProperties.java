@@ -0,0 +1,51 @@
+package com.liangshou.movie.scripts.common.config.llm;
+
+import com.liangshou.movie.scripts.common.enums.GenerationTypeEnum;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * 语义缓存配置属性类
+ * 用于读取application.yaml中llm.semantic-cache下的配置
+ */
+@Setter
+@Getter
+@Component
+@ConfigurationProperties(prefix = "llm.semantic-cache")
+public class SemanticCacheProperties {
+
+    /**
+     * 总开关，需要容器中存在唯一的 EmbeddingModel
+     */
+    private boolean enabled = false;
+
+    /**
+     * 启用语义缓存的生成类型
+     */
+    private Set<GenerationTypeEnum> types = EnumSet.noneOf(GenerationTypeEnum.class);
+
+    /**
+     * 余弦相似度阈值，达到该值才视为同一请求
+     */
+    private double similarityThreshold = 0.95;
+
+    /**
+     * 每个生成类型保留的最大条目数，超出后覆盖最早写入的条目
+     */
+    private int maxEntriesPerType = 2000;
+
+    /**
+     * 条目存活时间（秒）
+     */
+    private long ttlSeconds = 3600;
+
+    /**
+     * 请求文本向量化的超时毫秒数，超时视为未命中，直接调用模型
+     */
+    private long embeddingTimeoutMillis = 2000;
+}
@@ -0,0 +1,22 @@
+package com.liangshou.movie.scripts.common.config.llm;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 相同请求合并（single-flight）配置属性类
+ * 用于读取application.yaml中llm.single-flight下的配置
+ */
+@Setter
+@Getter
+@Component
+@ConfigurationProperties(prefix = "llm.single-flight")
+public class SingleFlightProperties {
+
+    /**
+     * 是否合并同时进行的相同生成请求，关闭后每个请求各自调用模型
+     */
+    private boolean enabled = true;
+}
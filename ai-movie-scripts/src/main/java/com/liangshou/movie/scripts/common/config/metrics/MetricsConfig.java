@@ -0,0 +1,18 @@
+package com.liangshou.movie.scripts.common.config.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 指标配置，注册 @Timed 组件的计时代理
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public static TimedComponentPostProcessor timedComponentPostProcessor(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new TimedComponentPostProcessor(meterRegistry);
+    }
+}
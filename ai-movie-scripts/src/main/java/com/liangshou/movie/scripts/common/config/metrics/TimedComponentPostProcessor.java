@@ -0,0 +1,62 @@
+package com.liangshou.movie.scripts.common.config.metrics;
+
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 为类上标注 {@link Timed} 的组件（如 Mongo DAO）生成代理，每个 public 方法按 class、method、exception 计时，
+ * 指标名取注解的 value。直接使用 Spring AOP 的 ProxyFactory，不依赖 AspectJ。
+ */
+public class TimedComponentPostProcessor implements BeanPostProcessor {
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    public TimedComponentPostProcessor(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        Timed timed = AnnotatedElementUtils.findMergedAnnotation(bean.getClass(), Timed.class);
+        if (timed == null || timed.value().isEmpty()) {
+            return bean;
+        }
+        String className = bean.getClass().getSimpleName();
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice((MethodInterceptor) (invocation) -> {
+            Method method = invocation.getMethod();
+            if (!Modifier.isPublic(method.getModifiers()) || method.getDeclaringClass() == Object.class) {
+                return invocation.proceed();
+            }
+            long begin = System.nanoTime();
+            String exception = "none";
+            try {
+                return invocation.proceed();
+            } catch (Throwable e) {
+                exception = e.getClass().getSimpleName();
+                throw e;
+            } finally {
+                Timer.builder(timed.value())
+                        .tags(timed.extraTags())
+                        .tag("class", className)
+                        .tag("method", method.getName())
+                        .tag("exception", exception)
+                        .publishPercentileHistogram(timed.histogram())
+                        .register(meterRegistry.getObject())
+                        .record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+            }
+        });
+        return proxyFactory.getProxy(bean.getClass().getClassLoader());
+    }
+}
@@ -0,0 +1,23 @@
+package com.liangshou.movie.scripts.common.config.mongo;
+
+import com.liangshou.movie.scripts.infrastructure.mongo.MongoOperationCounter;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * MongoClient 配置，注册命令计数监听器
+ */
+@Configuration
+public class MongoClientConfig {
+
+    @Bean
+    public MongoOperationCounter mongoOperationCounter() {
+        return new MongoOperationCounter();
+    }
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer mongoOperationCounterCustomizer(MongoOperationCounter counter) {
+        return (builder) -> builder.addCommandListener(counter);
+    }
+}
@@ -1,5 +1,8 @@
 package com.liangshou.movie.scripts.common.config.mybatisconfig;
 
+import com.liangshou.movie.scripts.infrastructure.datasource.interceptor.MybatisMetricsInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 /**
@@ -17,4 +20,12 @@ public class MyBatisPlusConfig {
 //        interceptor.addInnerInterceptor(new PaginationInnerInterceptor(DbType.MYSQL));
 //        return interceptor;
 //    }
-}
\ No newline at end of file
+
+    /**
+     * 语句计时插件，由 MyBatis Plus 自动配置加入拦截器链
+     */
+    @Bean
+    public MybatisMetricsInterceptor mybatisMetricsInterceptor(MeterRegistry meterRegistry) {
+        return new MybatisMetricsInterceptor(meterRegistry);
+    }
+}
@@ -0,0 +1,32 @@
+package com.liangshou.movie.scripts.common.config.prompt;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 提示词加载配置属性类
+ * 用于读取application.yaml中prompt下的配置
+ */
+@Setter
+@Getter
+@Component
+@ConfigurationProperties(prefix = "prompt")
+public class PromptProperties {
+
+    /**
+     * 外部提示词目录，其中的 {名称}.txt 优先于 classpath 中的同名 prompt；为空时只使用 classpath
+     */
+    private String externalDir;
+
+    /**
+     * 是否监听外部目录，文件新增、修改或删除后自动重新加载（删除后回退到 classpath 版本）
+     */
+    private boolean hotReload = false;
+
+    /**
+     * 收到文件变化后等待的毫秒数，合并编辑器保存时连续产生的多个事件
+     */
+    private long reloadDebounceMillis = 300;
+}
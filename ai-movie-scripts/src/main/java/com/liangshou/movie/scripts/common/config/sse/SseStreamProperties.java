@@ -0,0 +1,52 @@
+package com.liangshou.movie.scripts.common.config.sse;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * SSE 流式输出配置属性类
+ * 用于读取application.yaml中sse.stream下的配置
+ */
+@Setter
+@Getter
+@Component
+@ConfigurationProperties(prefix = "sse.stream")
+public class SseStreamProperties {
+
+    /**
+     * 合并窗口毫秒数：首个 token 缓冲后最多等待该时长再发送一次 delta，小于等于 0 表示不合并
+     */
+    private long coalesceWindowMillis = 30;
+
+    /**
+     * 缓冲达到该字节数（UTF-8）时立即发送
+     */
+    private int coalesceMaxBytes = 512;
+
+    /**
+     * 空闲超过该毫秒数时发送心跳注释，小于等于 0 表示关闭
+     */
+    private long heartbeatIntervalMillis = 15000;
+
+    /**
+     * 合并与心跳共用的调度线程数
+     */
+    private int schedulerThreads = 2;
+
+    /**
+     * 单个流的最长持续毫秒数，超时后取消上游生成
+     */
+    private long timeoutMillis = 300000;
+
+    /**
+     * 同时进行的流式对话上限，超出时直接返回 429
+     */
+    private int maxConcurrentStreams = 200;
+
+    /**
+     * 写出 SSE 事件的线程数，模型 token 在这些线程上写入响应，不占用上游 HTTP 客户端的 IO 线程
+     */
+    private int emitterThreads = 16;
+}
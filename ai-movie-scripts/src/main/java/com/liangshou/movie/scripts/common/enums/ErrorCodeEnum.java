@@ -55,6 +55,8 @@ public enum ErrorCodeEnum {
     AI_MODEL_CONFIG_ERROR("SRP-AIG-5102", "AI模型配置错误"),
     PROMPT_TEMPLATE_ERROR("SRP-AIG-5103", "提示词模板错误"),
     PROMPT_LOADER_ERROR("SRP-AIG-5104", "提示词加载错误"),
+    AI_PROVIDER_BUSY("SRP-AIG-5105", "AI模型服务繁忙，请稍后重试"),
+    AI_PROVIDER_UNAVAILABLE("SRP-AIG-5106", "AI模型服务暂不可用，请稍后重试"),
 
     // 数据访问相关错误码 : SRP-DAT-XXXX (修正前缀)
     DATABASE_ACCESS_ERROR("SRP-DAT-6001", "数据库访问错误"),
@@ -0,0 +1,23 @@
+package com.liangshou.movie.scripts.common.enums;
+
+import lombok.Getter;
+
+/**
+ * 生成任务状态枚举类，取值与 ai_generation_logs.status 一致
+ */
+@Getter
+public enum GenerationJobStatusEnum {
+    PROCESSING("处理中"),
+    SUCCESS("成功"),
+    FAILED("失败");
+
+    private final String description;
+
+    GenerationJobStatusEnum(String description) {
+        this.description = description;
+    }
+
+    public boolean isTerminal() {
+        return this != PROCESSING;
+    }
+}
@@ -0,0 +1,33 @@
+package com.liangshou.movie.scripts.common.enums;
+
+import lombok.Getter;
+
+/**
+ * 剧本生成类型枚举类，对应 AIScriptWritingAgent 的各个生成接口
+ */
+@Getter
+public enum GenerationTypeEnum {
+    CREATIVE("creative", "创意"),
+    THEME("theme", "主题背景"),
+    SUMMARY("summary", "剧情梗概"),
+    CHARACTERS("characters", "角色设计"),
+    OUTLINE("outline", "故事大纲"),
+    CHAPTER("chapter", "章节内容");
+
+    private final String code;
+    private final String description;
+
+    GenerationTypeEnum(String code, String description) {
+        this.code = code;
+        this.description = description;
+    }
+
+    public static GenerationTypeEnum fromCode(String code) {
+        for (GenerationTypeEnum type : values()) {
+            if (type.code.equalsIgnoreCase(code)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("不支持的生成类型: " + code);
+    }
+}
@@ -0,0 +1,20 @@
+package com.liangshou.movie.scripts.common.exceptions;
+
+import com.liangshou.movie.scripts.common.enums.ErrorCodeEnum;
+import lombok.Getter;
+
+/**
+ * 模型提供方暂不可用（并发已满或熔断中）时的快速失败异常，未向提供方发出请求
+ */
+@Getter
+public class ProviderUnavailableException extends BizException {
+
+    private final String provider;
+    private final long retryAfterSeconds;
+
+    public ProviderUnavailableException(ErrorCodeEnum errorCode, String provider, long retryAfterSeconds) {
+        super(errorCode);
+        this.provider = provider;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
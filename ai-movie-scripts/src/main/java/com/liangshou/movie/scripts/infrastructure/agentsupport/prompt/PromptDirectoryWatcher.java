@@ -0,0 +1,131 @@
+package com.liangshou.movie.scripts.infrastructure.agentsupport.prompt;
+
+import com.liangshou.movie.scripts.common.config.prompt.PromptProperties;
+import com.liangshou.movie.scripts.utils.prompt.PromptLoader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 外部提示词目录：启动时让 PromptLoader 优先读取该目录，开启热更新时用 WatchService 监听文件变化并重新加载，
+ * 生产环境调整提示词无需重启。新版本编译失败时保留原版本。
+ * 目录中出现非 .txt 的变化（如 Kubernetes ConfigMap 挂载替换 ..data 链接）时重新加载全部已使用的 prompt。
+ */
+@Slf4j
+@Component
+public class PromptDirectoryWatcher {
+
+    private static final String SUFFIX = ".txt";
+
+    private final PromptProperties properties;
+    private final Counter reloaded;
+    private final Counter failed;
+    private WatchService watchService;
+    private Thread watcher;
+
+    public PromptDirectoryWatcher(PromptProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.reloaded = Counter.builder("prompt.reload").tag("outcome", "success").register(meterRegistry);
+        this.failed = Counter.builder("prompt.reload").tag("outcome", "failure").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!StringUtils.hasText(properties.getExternalDir())) {
+            return;
+        }
+        Path directory = Path.of(properties.getExternalDir()).toAbsolutePath().normalize();
+        if (!Files.isDirectory(directory)) {
+            throw new IllegalArgumentException("prompt.external-dir 不是目录: " + directory);
+        }
+        PromptLoader.setOverrideDirectory(directory);
+        log.info("prompt_external_dir directory={} hotReload={}", directory, properties.isHotReload());
+        if (!properties.isHotReload()) {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        watcher = new Thread(this::watchLoop, "prompt-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (watcher != null) {
+            watcher.interrupt();
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.debug("prompt_watcher_close_failed error={}", e.getMessage());
+            }
+        }
+        if (StringUtils.hasText(properties.getExternalDir())) {
+            PromptLoader.setOverrideDirectory(null);
+        }
+    }
+
+    private void watchLoop() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                // 编辑器保存时会连续产生多个事件，等待片刻后合并处理
+                Thread.sleep(Math.max(0, properties.getReloadDebounceMillis()));
+                Set<String> changed = new LinkedHashSet<>();
+                boolean reloadAll = false;
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            reloadAll = true;
+                            continue;
+                        }
+                        String fileName = event.context().toString();
+                        if (fileName.endsWith(SUFFIX)) {
+                            changed.add(fileName.substring(0, fileName.length() - SUFFIX.length()));
+                        } else {
+                            reloadAll = true;
+                        }
+                    }
+                    if (!key.reset()) {
+                        log.warn("prompt_watcher_stopped directory={}", properties.getExternalDir());
+                        return;
+                    }
+                    key = watchService.poll();
+                }
+                if (reloadAll) {
+                    changed.addAll(PromptLoader.getCachedPromptNames());
+                }
+                for (String name : changed) {
+                    if (PromptLoader.reload(name)) {
+                        reloaded.increment();
+                    } else {
+                        failed.increment();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // 应用关闭
+        }
+    }
+}
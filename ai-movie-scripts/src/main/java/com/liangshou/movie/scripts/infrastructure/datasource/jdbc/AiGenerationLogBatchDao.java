@@ -0,0 +1,48 @@
+package com.liangshou.movie.scripts.infrastructure.datasource.jdbc;
+
+import com.liangshou.movie.scripts.infrastructure.datasource.po.AiGenerationLogPO;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * AI生成日志批量写入，使用 JDBC batch 一次提交多行（MySQL 需开启 rewriteBatchedStatements 合并为多值 INSERT）
+ */
+@Repository
+public class AiGenerationLogBatchDao {
+
+    private static final String INSERT_SQL = "INSERT INTO ai_generation_logs "
+            + "(id, project_id, generation_type, model, prompt, response, prompt_chars, prompt_tokens, "
+            + "completion_tokens, tokens_used, first_token_ms, execution_time_ms, status, error_message, created_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public AiGenerationLogBatchDao(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void batchInsert(List<AiGenerationLogPO> logs) {
+        if (logs.isEmpty()) return;
+        jdbcTemplate.batchUpdate(INSERT_SQL, logs, logs.size(), (ps, log) -> {
+            ps.setString(1, log.getId());
+            ps.setString(2, log.getProjectId());
+            ps.setString(3, log.getGenerationType());
+            ps.setString(4, log.getModel());
+            ps.setString(5, log.getPrompt());
+            ps.setString(6, log.getResponse());
+            ps.setObject(7, log.getPromptChars(), Types.INTEGER);
+            ps.setObject(8, log.getPromptTokens(), Types.INTEGER);
+            ps.setObject(9, log.getCompletionTokens(), Types.INTEGER);
+            ps.setObject(10, log.getTokensUsed(), Types.INTEGER);
+            ps.setObject(11, log.getFirstTokenMs(), Types.INTEGER);
+            ps.setObject(12, log.getExecutionTimeMs(), Types.INTEGER);
+            ps.setString(13, log.getStatus());
+            ps.setString(14, log.getErrorMessage());
+            ps.setTimestamp(15, log.getCreatedAt() != null ? Timestamp.valueOf(log.getCreatedAt()) : null);
+        });
+    }
+}
@@ -32,6 +32,12 @@ public class AiGenerationLogPO {
     @TableField("generation_type")
     private String generationType;
     
+    /**
+     * 模型名称
+     */
+    @TableField("model")
+    private String model;
+    
     /**
      * 输入提示
      */
@@ -44,12 +50,36 @@ public class AiGenerationLogPO {
     @TableField("response")
     private String response;
     
+    /**
+     * 输入提示字符数（截断前）
+     */
+    @TableField("prompt_chars")
+    private Integer promptChars;
+    
+    /**
+     * 输入token数量
+     */
+    @TableField("prompt_tokens")
+    private Integer promptTokens;
+    
+    /**
+     * 输出token数量
+     */
+    @TableField("completion_tokens")
+    private Integer completionTokens;
+    
     /**
      * 使用token数量
      */
     @TableField("tokens_used")
     private Integer tokensUsed;
     
+    /**
+     * 首个token耗时(毫秒)，非流式调用为空
+     */
+    @TableField("first_token_ms")
+    private Integer firstTokenMs;
+    
     /**
      * 执行时间(毫秒)
      */
@@ -0,0 +1,52 @@
+package com.liangshou.movie.scripts.infrastructure.mongo;
+
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+
+/**
+ * 统计当前线程在计数作用域内发出的 Mongo 命令数。
+ * 同步驱动在调用线程上触发 commandStarted，因此用 ThreadLocal 即可按业务操作归集；作用域可嵌套。
+ */
+public class MongoOperationCounter implements CommandListener {
+
+    private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<>();
+
+    /**
+     * 开启一个计数作用域，使用完毕后必须 close
+     */
+    public static Scope open() {
+        Scope scope = new Scope(CURRENT.get());
+        CURRENT.set(scope);
+        return scope;
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        for (Scope scope = CURRENT.get(); scope != null; scope = scope.parent) {
+            scope.count += 1;
+        }
+    }
+
+    public static final class Scope implements AutoCloseable {
+
+        private final Scope parent;
+        private int count;
+
+        private Scope(Scope parent) {
+            this.parent = parent;
+        }
+
+        public int count() {
+            return count;
+        }
+
+        @Override
+        public void close() {
+            if (parent == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(parent);
+            }
+        }
+    }
+}
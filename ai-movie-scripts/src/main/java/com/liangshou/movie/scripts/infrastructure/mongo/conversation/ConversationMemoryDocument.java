@@ -37,6 +37,14 @@ public class ConversationMemoryDocument {
         private String role;
         private String content;
         private Instant at;
+        /**
+         * 会话内全局消息序号，从 0 开始
+         */
+        private Long seq;
+        /**
+         * 写入时计算的 token 数（不含每条消息的格式开销），早期消息为空时读取时现算
+         */
+        private Integer tokens;
     }
 }
 
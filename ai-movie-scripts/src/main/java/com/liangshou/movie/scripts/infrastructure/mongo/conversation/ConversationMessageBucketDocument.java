@@ -0,0 +1,44 @@
+package com.liangshou.movie.scripts.infrastructure.mongo.conversation;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分桶存储的会话消息，每个桶按 (conversationId, bucketSeq) 定位，_id 为 conversationId:bucketSeq
+ */
+@Data
+@Document("conversation_memory_buckets")
+@CompoundIndex(name = "idx_conversation_bucket", def = "{'conversationId': 1, 'bucketSeq': 1}", unique = true)
+public class ConversationMessageBucketDocument {
+
+    @Id
+    private String id;
+
+    private String conversationId;
+
+    private String userId;
+
+    private long bucketSeq;
+
+    private long count;
+
+    private List<ConversationMemoryDocument.ConversationStoredMessage> messages = new ArrayList<>();
+
+    private Instant firstAt;
+
+    private Instant lastAt;
+
+    private Instant createdAt;
+
+    private Instant updatedAt;
+
+    public static String bucketId(String conversationId, long bucketSeq) {
+        return conversationId + ":" + bucketSeq;
+    }
+}
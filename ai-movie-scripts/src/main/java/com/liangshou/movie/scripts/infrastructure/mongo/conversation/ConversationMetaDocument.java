@@ -3,15 +3,22 @@ package com.liangshou.movie.scripts.infrastructure.mongo.conversation;
 import lombok.Data;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.index.TextIndexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.Instant;
+import java.util.List;
 
 @Data
-@Document("conversations")
+@Document(collection = "conversations", language = "none")
+@CompoundIndex(name = "idx_user_updated_id", def = "{'userId': 1, 'updatedAt': -1, '_id': -1}")
 public class ConversationMetaDocument {
 
+    public static final String STORAGE_EMBEDDED = "EMBEDDED";
+    public static final String STORAGE_BUCKETED = "BUCKETED";
+
     @Id
     private String id;
 
@@ -24,6 +31,18 @@ public class ConversationMetaDocument {
     @Indexed
     private String title;
 
+    /**
+     * 标题的检索词（见 SearchTermUtil），文本索引权重高于消息内容
+     */
+    @TextIndexed(weight = 10)
+    private String titleTerms;
+
+    /**
+     * 最近若干条消息片段的检索词，只保留固定窗口以限制文档大小
+     */
+    @TextIndexed
+    private List<String> contentTerms;
+
     @Indexed
     private Instant lastMessageAt;
 
@@ -36,7 +55,52 @@ public class ConversationMetaDocument {
 
     private long messageCount;
 
+    private long roundCount;
+
+    /**
+     * 消息存储模式，创建时写入；为空表示旧数据，按 EMBEDDED 处理
+     */
+    private String storageMode;
+
+    /**
+     * 分桶模式下的桶大小，创建时写入，保证同一会话内 seq 与桶的映射稳定
+     */
+    private Integer bucketSize;
+
+    /**
+     * 模型上下文起点 seq，清空对话记忆时写入；为空表示从头开始
+     */
+    private Long contextStartSeq;
+
+    /**
+     * 滚动摘要：移出上下文窗口的早期消息压缩后的前情摘要
+     */
+    private String contextSummary;
+
+    /**
+     * 摘要覆盖到的消息 seq（不含），seq 小于该值的消息已并入摘要
+     */
+    private Long summarizedUntilSeq;
+
+    private Instant summaryUpdatedAt;
+
+    /**
+     * 最近写入的轮次（幂等键与消息条数），与计数在同一次更新中按写入顺序追加、只保留固定窗口；
+     * 重试时据此判断轮次是否已计数，并由 messageCount 倒推出本轮消息的 seq
+     */
+    private List<AppliedRound> appliedRounds;
+
     @Version
     private Long version;
+
+    public boolean isBucketed() {
+        return STORAGE_BUCKETED.equals(storageMode);
+    }
+
+    @Data
+    public static class AppliedRound {
+        private String roundId;
+        private long messages;
+    }
 }
 
@@ -1,17 +1,41 @@
 package com.liangshou.movie.scripts.infrastructure.mongo.conversation;
 
+import com.liangshou.movie.scripts.utils.search.SearchTermUtil;
+import com.mongodb.bulk.BulkWriteError;
+import io.micrometer.core.annotation.Timed;
+import org.bson.Document;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Component
+@Timed(value = "mongo.dao", histogram = true)
 public class ConversationMongoDao {
 
+    /**
+     * 会话元信息中保留的最近轮次幂等键个数
+     */
+    public static final int APPLIED_ROUNDS_WINDOW = 32;
+
+    private static final int DUPLICATE_KEY_CODE = 11000;
+
     private final MongoTemplate mongoTemplate;
 
     public ConversationMongoDao(MongoTemplate mongoTemplate) {
@@ -19,34 +43,109 @@ public class ConversationMongoDao {
     }
 
     public long countMetas(String userId, String keyword) {
+        Query query = listQuery(userId, keyword);
+        return query != null ? mongoTemplate.count(query, ConversationMetaDocument.class) : 0;
+    }
+
+    public List<ConversationMetaDocument> findMetas(String userId, int page, int size, String keyword) {
+        int safePage = Math.max(1, page);
+        int safeSize = Math.min(200, Math.max(1, size));
+        Query query = listQuery(userId, keyword);
+        if (query == null) {
+            return List.of();
+        }
+        query.with(Sort.by(Sort.Direction.DESC, "updatedAt"));
+        query.skip((long) (safePage - 1) * safeSize);
+        query.limit(safeSize);
+        return mongoTemplate.find(query, ConversationMetaDocument.class);
+    }
+
+    /**
+     * 游标（seek）分页：按 (updatedAt desc, _id desc) 取排在游标之后的 limit 条，
+     * 走 idx_user_updated_id 索引，耗时与翻页深度无关。cursorUpdatedAt 为空时从第一条开始。
+     */
+    public List<ConversationMetaDocument> findMetasAfterCursor(
+            String userId,
+            String keyword,
+            Instant cursorUpdatedAt,
+            String cursorId,
+            int limit
+    ) {
+        Query query = listQuery(userId, keyword);
+        if (query == null) {
+            return List.of();
+        }
+        if (cursorUpdatedAt != null) {
+            query.addCriteria(new Criteria().orOperator(
+                    Criteria.where("updatedAt").lt(cursorUpdatedAt),
+                    Criteria.where("updatedAt").is(cursorUpdatedAt).and("_id").lt(cursorId)
+            ));
+        }
+        query.with(Sort.by(Sort.Direction.DESC, "updatedAt").and(Sort.by(Sort.Direction.DESC, "_id")));
+        query.limit(limit);
+        return mongoTemplate.find(query, ConversationMetaDocument.class);
+    }
+
+    /**
+     * 会话列表查询；关键字中没有可检索内容（如只有标点）时返回 null，调用方按空结果处理，与 searchMetas 一致
+     */
+    private Query listQuery(String userId, String keyword) {
+        String searchQuery = SearchTermUtil.toSearchQuery(keyword);
+        if (StringUtils.hasText(keyword) && searchQuery == null) {
+            return null;
+        }
         Query query = new Query();
         query.addCriteria(
                 Criteria.where("userId").is(userId)
                         .and("lastMessageAt").ne(null)
                         .and("messageCount").gt(0)
         );
-        if (StringUtils.hasText(keyword)) {
-            query.addCriteria(Criteria.where("title").regex(keyword, "i"));
+        if (searchQuery != null) {
+            query.addCriteria(TextCriteria.forDefaultLanguage().matching(searchQuery));
         }
-        return mongoTemplate.count(query, ConversationMetaDocument.class);
+        return query;
     }
 
-    public List<ConversationMetaDocument> findMetas(String userId, int page, int size, String keyword) {
+    /**
+     * 全文检索会话（标题 + 最近消息内容），按相关度排序后分页。
+     * 总数与当前页通过一次聚合（$facet）返回，关键字中没有可检索内容时返回空结果。
+     */
+    public ConversationSearchResult searchMetas(String userId, String keyword, int page, int size) {
+        String searchQuery = SearchTermUtil.toSearchQuery(keyword);
+        if (searchQuery == null) {
+            return new ConversationSearchResult(0, List.of());
+        }
         int safePage = Math.max(1, page);
         int safeSize = Math.min(200, Math.max(1, size));
-        Query query = new Query();
-        query.addCriteria(
-                Criteria.where("userId").is(userId)
-                        .and("lastMessageAt").ne(null)
-                        .and("messageCount").gt(0)
+
+        Document match = new Document("$text", new Document("$search", searchQuery))
+                .append("userId", userId)
+                .append("lastMessageAt", new Document("$ne", null))
+                .append("messageCount", new Document("$gt", 0));
+        List<Document> itemsPipeline = List.of(
+                new Document("$sort", new Document("score", -1).append("updatedAt", -1)),
+                new Document("$skip", (long) (safePage - 1) * safeSize),
+                new Document("$limit", safeSize),
+                new Document("$project", new Document("contentTerms", 0).append("score", 0))
+        );
+        Aggregation aggregation = Aggregation.newAggregation(
+                (context) -> new Document("$match", match),
+                (context) -> new Document("$addFields", new Document("score", new Document("$meta", "textScore"))),
+                (context) -> new Document("$facet", new Document("total", List.of(new Document("$count", "n")))
+                        .append("items", itemsPipeline))
         );
-        if (StringUtils.hasText(keyword)) {
-            query.addCriteria(Criteria.where("title").regex(keyword, "i"));
+        Document result = mongoTemplate.aggregate(aggregation, ConversationMetaDocument.class, Document.class)
+                .getUniqueMappedResult();
+        if (result == null) {
+            return new ConversationSearchResult(0, List.of());
         }
-        query.with(Sort.by(Sort.Direction.DESC, "updatedAt"));
-        query.skip((long) (safePage - 1) * safeSize);
-        query.limit(safeSize);
-        return mongoTemplate.find(query, ConversationMetaDocument.class);
+        List<Document> totalDocs = result.getList("total", Document.class, List.of());
+        long total = totalDocs.isEmpty() ? 0 : ((Number) totalDocs.get(0).get("n")).longValue();
+        List<ConversationMetaDocument> items = new ArrayList<>();
+        for (Document doc : result.getList("items", Document.class, List.of())) {
+            items.add(mongoTemplate.getConverter().read(ConversationMetaDocument.class, doc));
+        }
+        return new ConversationSearchResult(total, items);
     }
 
     public ConversationMetaDocument findMetaById(String conversationId) {
@@ -57,6 +156,55 @@ public class ConversationMongoDao {
         return mongoTemplate.findById(conversationId, ConversationMemoryDocument.class);
     }
 
+    /**
+     * 只读取内嵌文档末尾 limit 条消息（$slice 投影），用于构造模型上下文窗口
+     */
+    public ConversationMemoryDocument findMemoryTail(String conversationId, int limit) {
+        Query query = new Query(Criteria.where("_id").is(conversationId));
+        query.fields().slice("messages", -Math.max(1, limit));
+        return mongoTemplate.findOne(query, ConversationMemoryDocument.class);
+    }
+
+    public List<String> findConversationIds() {
+        return mongoTemplate.findDistinct(new Query(), "_id", ConversationMetaDocument.class, String.class);
+    }
+
+    /**
+     * 重置模型上下文的起点，seq 小于 startSeq 的消息不再进入上下文窗口，历史消息本身保留
+     */
+    public void resetContext(String conversationId, long startSeq) {
+        Query query = new Query(Criteria.where("_id").is(conversationId));
+        Update update = new Update()
+                .set("contextStartSeq", startSeq)
+                .unset("contextSummary")
+                .unset("summarizedUntilSeq")
+                .unset("summaryUpdatedAt")
+                .inc("version", 1);
+        mongoTemplate.updateFirst(query, update, ConversationMetaDocument.class);
+    }
+
+    /**
+     * 保存滚动摘要，仅当摘要进度与上下文起点仍是读取时的值才生效（并发摘要或期间清空记忆时放弃本次结果）
+     */
+    public boolean updateSummary(
+            String conversationId,
+            Long expectedUntilSeq,
+            Long expectedStartSeq,
+            String summary,
+            long untilSeq,
+            Instant at
+    ) {
+        Query query = new Query(Criteria.where("_id").is(conversationId)
+                .and("summarizedUntilSeq").is(expectedUntilSeq)
+                .and("contextStartSeq").is(expectedStartSeq));
+        Update update = new Update()
+                .set("contextSummary", summary)
+                .set("summarizedUntilSeq", untilSeq)
+                .set("summaryUpdatedAt", at)
+                .inc("version", 1);
+        return mongoTemplate.updateFirst(query, update, ConversationMetaDocument.class).getModifiedCount() > 0;
+    }
+
     public ConversationMetaDocument saveMeta(ConversationMetaDocument doc) {
         return mongoTemplate.save(doc);
     }
@@ -65,6 +213,223 @@ public class ConversationMongoDao {
         return mongoTemplate.save(doc);
     }
 
+    /**
+     * 原子追加一轮消息：$push 新消息并 $inc 计数，文档不存在时 upsert。
+     * 只传输本轮新增的消息，返回的文档不包含 messages 字段。
+     * 消息已分配 seq 时按首条 seq 去重，本轮已写入过则不再追加并返回 null。
+     */
+    public ConversationMemoryDocument appendMessages(
+            String conversationId,
+            String userId,
+            List<ConversationMemoryDocument.ConversationStoredMessage> messages,
+            Instant at
+    ) {
+        Long firstSeq = messages.isEmpty() ? null : messages.get(0).getSeq();
+        Query query = new Query(Criteria.where("_id").is(conversationId));
+        if (firstSeq != null) {
+            query.addCriteria(Criteria.where("messages.seq").ne(firstSeq));
+        }
+        query.fields().exclude("messages");
+        Update update = new Update()
+                .setOnInsert("userId", userId)
+                .setOnInsert("createdAt", at)
+                .set("updatedAt", at)
+                .inc("roundCount", 1)
+                .inc("version", 1);
+        if (!messages.isEmpty()) {
+            update.push("messages").each(messages.toArray());
+        }
+        try {
+            return mongoTemplate.findAndModify(
+                    query,
+                    update,
+                    FindAndModifyOptions.options().upsert(true).returnNew(true),
+                    ConversationMemoryDocument.class
+            );
+        } catch (DuplicateKeyException e) {
+            if (firstSeq == null) {
+                throw e;
+            }
+            // 文档已存在但不匹配：本轮已写入，或与其他轮次同时创建文档（此时文档已存在，重试即可）
+            if (containsSeq(ConversationMemoryDocument.class, "_id", conversationId, firstSeq)) {
+                return null;
+            }
+            return mongoTemplate.findAndModify(
+                    query,
+                    update,
+                    FindAndModifyOptions.options().upsert(true).returnNew(true),
+                    ConversationMemoryDocument.class
+            );
+        }
+    }
+
+    /**
+     * 原子更新会话元信息：$inc messageCount/roundCount，累加或清零 unreadCount，刷新时间字段，文档不存在时 upsert。
+     * 返回更新后的计数与存储模式，messageCount 同时作为本轮消息 seq 的分配依据。
+     * 同一 roundId 已计数过时查询不匹配，upsert 以重复键失败（DuplicateKeyException），由调用方按 appliedRounds 还原。
+     */
+    public ConversationMetaDocument upsertMetaOnAppend(
+            String conversationId,
+            String userId,
+            String projectId,
+            String defaultTitle,
+            Instant at,
+            long messageDelta,
+            long unreadDelta,
+            boolean resetUnread,
+            String storageMode,
+            int bucketSize,
+            List<String> contentTerms,
+            int contentTermsWindow,
+            String roundId
+    ) {
+        Query query = new Query(Criteria.where("_id").is(conversationId)
+                .and("appliedRounds.roundId").ne(roundId));
+        query.fields().include("userId", "title", "titleTerms", "messageCount", "roundCount", "unreadCount",
+                "storageMode", "bucketSize", "contextStartSeq");
+        Update update = new Update()
+                .setOnInsert("userId", userId)
+                .setOnInsert("title", defaultTitle)
+                .setOnInsert("titleTerms", SearchTermUtil.toIndexTerms(defaultTitle))
+                .setOnInsert("createdAt", at)
+                .setOnInsert("storageMode", storageMode)
+                .set("lastMessageAt", at)
+                .set("updatedAt", at)
+                .inc("messageCount", messageDelta)
+                .inc("roundCount", 1)
+                .inc("version", 1);
+        if (resetUnread) {
+            update.set("unreadCount", 0);
+        } else {
+            update.inc("unreadCount", unreadDelta);
+        }
+        if (ConversationMetaDocument.STORAGE_BUCKETED.equals(storageMode)) {
+            update.setOnInsert("bucketSize", bucketSize);
+        }
+        if (!contentTerms.isEmpty()) {
+            update.push("contentTerms").slice(-Math.max(1, contentTermsWindow)).each(contentTerms.toArray());
+        }
+        if (StringUtils.hasText(projectId)) {
+            update.set("projectId", projectId);
+        }
+        ConversationMetaDocument.AppliedRound applied = new ConversationMetaDocument.AppliedRound();
+        applied.setRoundId(roundId);
+        applied.setMessages(messageDelta);
+        update.push("appliedRounds").slice(-APPLIED_ROUNDS_WINDOW).each(applied);
+        return mongoTemplate.findAndModify(
+                query,
+                update,
+                FindAndModifyOptions.options().upsert(true).returnNew(true),
+                ConversationMetaDocument.class
+        );
+    }
+
+    /**
+     * 为检索功能上线前创建、缺少 titleTerms 的会话补写标题检索词；标题已被改动或字段已存在时不生效
+     */
+    public void setTitleTermsIfMissing(String conversationId, String title, String titleTerms) {
+        Query query = new Query(Criteria.where("_id").is(conversationId)
+                .and("title").is(title)
+                .and("titleTerms").exists(false));
+        mongoTemplate.updateFirst(query, new Update().set("titleTerms", titleTerms), ConversationMetaDocument.class);
+    }
+
+    /**
+     * 分桶追加消息：按 seq / bucketSize 定位桶，每个桶一次 upsert，整批通过一次 bulk 写入。
+     * 消息需已分配 seq；同一轮重复写入时已包含本轮消息的桶保持不变。
+     */
+    public void appendToBuckets(
+            String conversationId,
+            String userId,
+            List<ConversationMemoryDocument.ConversationStoredMessage> messages,
+            int bucketSize,
+            Instant at
+    ) {
+        if (messages.isEmpty()) return;
+        Map<Long, List<ConversationMemoryDocument.ConversationStoredMessage>> byBucket = new LinkedHashMap<>();
+        for (ConversationMemoryDocument.ConversationStoredMessage msg : messages) {
+            byBucket.computeIfAbsent(msg.getSeq() / bucketSize, (k) -> new ArrayList<>()).add(msg);
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ConversationMessageBucketDocument.class);
+        List<BucketWrite> writes = new ArrayList<>();
+        for (Map.Entry<Long, List<ConversationMemoryDocument.ConversationStoredMessage>> entry : byBucket.entrySet()) {
+            long bucketSeq = entry.getKey();
+            List<ConversationMemoryDocument.ConversationStoredMessage> bucketMessages = entry.getValue();
+            // 按本桶首条消息的 seq 去重，同一轮重试时不会重复追加
+            Query query = new Query(Criteria.where("_id").is(ConversationMessageBucketDocument.bucketId(conversationId, bucketSeq))
+                    .and("messages.seq").ne(bucketMessages.get(0).getSeq()));
+            Update update = new Update()
+                    .setOnInsert("conversationId", conversationId)
+                    .setOnInsert("bucketSeq", bucketSeq)
+                    .setOnInsert("userId", userId)
+                    .setOnInsert("createdAt", at)
+                    .set("updatedAt", at)
+                    .min("firstAt", bucketMessages.get(0).getAt())
+                    .max("lastAt", bucketMessages.get(bucketMessages.size() - 1).getAt())
+                    .inc("count", bucketMessages.size());
+            update.push("messages").each(bucketMessages.toArray());
+            bulk.upsert(query, update);
+            writes.add(new BucketWrite(query, update, bucketSeq, bucketMessages.get(0).getSeq()));
+        }
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            if (e.getErrors().stream().anyMatch((error) -> error.getCode() != DUPLICATE_KEY_CODE)) {
+                throw e;
+            }
+            // 重复键：桶中已有本轮消息（重试），或与其他轮次同时创建该桶，后者桶已存在，单独重试
+            for (BulkWriteError error : e.getErrors()) {
+                BucketWrite write = writes.get(error.getIndex());
+                String bucketId = ConversationMessageBucketDocument.bucketId(conversationId, write.bucketSeq());
+                if (!containsSeq(ConversationMessageBucketDocument.class, "_id", bucketId, write.firstSeq())) {
+                    mongoTemplate.upsert(write.query(), write.update(), ConversationMessageBucketDocument.class);
+                }
+            }
+        }
+    }
+
+    private boolean containsSeq(Class<?> type, String idField, String id, long seq) {
+        Query query = new Query(Criteria.where(idField).is(id).and("messages.seq").is(seq));
+        return mongoTemplate.exists(query, type);
+    }
+
+    /**
+     * 按时间范围查询桶，descending 为 true 时从最新的桶开始；maxBuckets 小于等于 0 表示不限制
+     */
+    public List<ConversationMessageBucketDocument> findBuckets(
+            String conversationId,
+            Instant before,
+            Instant after,
+            boolean descending,
+            int maxBuckets
+    ) {
+        Criteria criteria = Criteria.where("conversationId").is(conversationId);
+        if (before != null) {
+            criteria.and("firstAt").lt(before);
+        }
+        if (after != null) {
+            criteria.and("lastAt").gt(after);
+        }
+        Query query = new Query(criteria);
+        query.with(Sort.by(descending ? Sort.Direction.DESC : Sort.Direction.ASC, "bucketSeq"));
+        if (maxBuckets > 0) {
+            query.limit(maxBuckets);
+        }
+        return mongoTemplate.find(query, ConversationMessageBucketDocument.class);
+    }
+
+    /**
+     * 清零未读数，仅当会话属于该用户时生效
+     */
+    public void markRead(String conversationId, String userId, Instant at) {
+        Query query = new Query(Criteria.where("_id").is(conversationId).and("userId").is(userId));
+        Update update = new Update()
+                .set("unreadCount", 0)
+                .set("updatedAt", at)
+                .inc("version", 1);
+        mongoTemplate.updateFirst(query, update, ConversationMetaDocument.class);
+    }
+
     public void deleteMetaById(String conversationId) {
         Query query = new Query(Criteria.where("_id").is(conversationId));
         mongoTemplate.remove(query, ConversationMetaDocument.class);
@@ -74,5 +439,81 @@ public class ConversationMongoDao {
         Query query = new Query(Criteria.where("_id").is(conversationId));
         mongoTemplate.remove(query, ConversationMemoryDocument.class);
     }
-}
 
+    public void deleteBucketsByConversationId(String conversationId) {
+        Query query = new Query(Criteria.where("conversationId").is(conversationId));
+        mongoTemplate.remove(query, ConversationMessageBucketDocument.class);
+    }
+
+    public ConversationPendingWriteDocument savePendingWrite(ConversationPendingWriteDocument doc) {
+        return mongoTemplate.save(doc);
+    }
+
+    /**
+     * 查询已到重试时间的待写入轮次，按写入时间正序；重放时按会话逐条认领，见 claimPendingWriteHead
+     */
+    public List<ConversationPendingWriteDocument> findDuePendingWrites(Instant now, int limit) {
+        Query query = new Query(Criteria.where("nextAttemptAt").lte(now));
+        query.with(Sort.by(Sort.Direction.ASC, "at"));
+        query.limit(Math.max(1, limit));
+        return mongoTemplate.find(query, ConversationPendingWriteDocument.class);
+    }
+
+    public void deletePendingWrite(String id) {
+        Query query = new Query(Criteria.where("_id").is(id));
+        mongoTemplate.remove(query, ConversationPendingWriteDocument.class);
+    }
+
+    /**
+     * 认领会话最早的一条待写入轮次：仅当它已到重试时间、且没有其他实例持有未过期的租约时成功，否则返回 null。
+     * 只认领最早的一条，后面的轮次在它完成前不会被重放，保证同一会话按提交顺序写入
+     */
+    public ConversationPendingWriteDocument claimPendingWriteHead(
+            String conversationId,
+            Instant now,
+            Instant leaseUntil,
+            String owner
+    ) {
+        Query headQuery = new Query(Criteria.where("conversationId").is(conversationId));
+        headQuery.with(Sort.by(Sort.Direction.ASC, "at").and(Sort.by(Sort.Direction.ASC, "createdAt")));
+        headQuery.fields().include("_id", "nextAttemptAt");
+        ConversationPendingWriteDocument head = mongoTemplate.findOne(headQuery, ConversationPendingWriteDocument.class);
+        if (head == null || (head.getNextAttemptAt() != null && head.getNextAttemptAt().isAfter(now))) {
+            return null;
+        }
+        Query claimQuery = new Query(Criteria.where("_id").is(head.getId()).orOperator(
+                Criteria.where("leaseUntil").is(null),
+                Criteria.where("leaseUntil").lte(now)
+        ));
+        Update update = new Update()
+                .set("leaseUntil", leaseUntil)
+                .set("leaseOwner", owner);
+        return mongoTemplate.findAndModify(claimQuery, update, FindAndModifyOptions.options().returnNew(true),
+                ConversationPendingWriteDocument.class);
+    }
+
+    /**
+     * 重放失败：记录错误、推迟下次重试并释放租约
+     */
+    public void releasePendingWrite(String id, String error, Instant nextAttemptAt) {
+        Query query = new Query(Criteria.where("_id").is(id));
+        Update update = new Update()
+                .inc("attempts", 1)
+                .set("lastError", error)
+                .set("nextAttemptAt", nextAttemptAt)
+                .unset("leaseUntil")
+                .unset("leaseOwner");
+        mongoTemplate.updateFirst(query, update, ConversationPendingWriteDocument.class);
+    }
+
+    /**
+     * 返回给定会话中仍有待写入轮次的会话 id
+     */
+    public List<String> findConversationIdsWithPendingWrites(Collection<String> conversationIds) {
+        Query query = new Query(Criteria.where("conversationId").in(conversationIds));
+        return mongoTemplate.findDistinct(query, "conversationId", ConversationPendingWriteDocument.class, String.class);
+    }
+
+    private record BucketWrite(Query query, Update update, long bucketSeq, long firstSeq) {
+    }
+}
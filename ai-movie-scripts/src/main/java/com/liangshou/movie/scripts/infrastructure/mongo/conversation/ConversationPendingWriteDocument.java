@@ -0,0 +1,56 @@
+package com.liangshou.movie.scripts.infrastructure.mongo.conversation;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * 异步写入多次失败（或写入队列已满）后落库的待重试对话轮次，由写入队列定期按会话顺序重放，成功后删除。
+ * id 即轮次的幂等键，重放时已写入的部分不会重复写入
+ */
+@Data
+@Document("conversation_pending_writes")
+@CompoundIndex(name = "idx_conversation_at", def = "{'conversationId': 1, 'at': 1, 'createdAt': 1}")
+public class ConversationPendingWriteDocument {
+
+    @Id
+    private String id;
+
+    private String userId;
+
+    private String conversationId;
+
+    private String projectId;
+
+    private String title;
+
+    private String userText;
+
+    private String assistantText;
+
+    private Instant at;
+
+    private boolean incrementUnread;
+
+    private boolean markRead;
+
+    private int attempts;
+
+    private String lastError;
+
+    @Indexed
+    private Instant nextAttemptAt;
+
+    private Instant createdAt;
+
+    /**
+     * 重放租约到期时间，为空或已过期时其他实例才能认领
+     */
+    private Instant leaseUntil;
+
+    private String leaseOwner;
+}
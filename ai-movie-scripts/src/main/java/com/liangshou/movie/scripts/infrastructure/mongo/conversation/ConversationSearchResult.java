@@ -0,0 +1,9 @@
+package com.liangshou.movie.scripts.infrastructure.mongo.conversation;
+
+import java.util.List;
+
+/**
+ * 会话全文检索结果：总数与当前页
+ */
+public record ConversationSearchResult(long total, List<ConversationMetaDocument> items) {
+}
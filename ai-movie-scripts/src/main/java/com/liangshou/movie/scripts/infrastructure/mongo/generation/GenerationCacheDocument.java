@@ -0,0 +1,30 @@
+package com.liangshou.movie.scripts.infrastructure.mongo.generation;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * 生成结果持久缓存，_id 为 (模型, 参数, 提示词) 归一化后的哈希，expireAt 到期后由 TTL 索引删除
+ */
+@Data
+@Document("llm_generation_cache")
+public class GenerationCacheDocument {
+
+    @Id
+    private String id;
+
+    private String type;
+
+    private String model;
+
+    private String content;
+
+    private Instant createdAt;
+
+    @Indexed(name = "idx_expire_at", expireAfterSeconds = 0)
+    private Instant expireAt;
+}
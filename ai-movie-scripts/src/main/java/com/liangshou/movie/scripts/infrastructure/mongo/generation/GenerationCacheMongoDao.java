@@ -0,0 +1,32 @@
+package com.liangshou.movie.scripts.infrastructure.mongo.generation;
+
+import io.micrometer.core.annotation.Timed;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+@Component
+@Timed(value = "mongo.dao", histogram = true)
+public class GenerationCacheMongoDao {
+
+    private final MongoTemplate mongoTemplate;
+
+    public GenerationCacheMongoDao(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * 按键读取未过期的缓存；TTL 索引的清理有延迟，这里再按 expireAt 过滤一次
+     */
+    public GenerationCacheDocument findValid(String key, Instant now) {
+        Query query = new Query(Criteria.where("_id").is(key).and("expireAt").gt(now));
+        return mongoTemplate.findOne(query, GenerationCacheDocument.class);
+    }
+
+    public void save(GenerationCacheDocument doc) {
+        mongoTemplate.save(doc);
+    }
+}
@@ -0,0 +1,54 @@
+package com.liangshou.movie.scripts.infrastructure.mongo.generation;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * 异步生成任务。status 为 PROCESSING 且租约为空或已过期的任务可被任意节点领取，
+ * 领取时写入 leaseOwner 与 leaseUntil，完成或失败只由持有租约的节点写入。
+ */
+@Data
+@Document("ai_generation_jobs")
+@CompoundIndex(name = "idx_status_lease", def = "{'status': 1, 'leaseUntil': 1}")
+public class GenerationJobDocument {
+
+    @Id
+    private String id;
+
+    /**
+     * 客户端提供的幂等键，相同键重复提交返回同一任务
+     */
+    @Indexed(name = "uk_idempotency_key", unique = true, sparse = true)
+    private String idempotencyKey;
+
+    private String projectId;
+
+    private String generationType;
+
+    private String request;
+
+    private String status;
+
+    private String result;
+
+    private String errorMessage;
+
+    private int attempts;
+
+    private String leaseOwner;
+
+    private Instant leaseUntil;
+
+    private Integer executionTimeMs;
+
+    private Instant createdAt;
+
+    private Instant updatedAt;
+
+    private Instant finishedAt;
+}
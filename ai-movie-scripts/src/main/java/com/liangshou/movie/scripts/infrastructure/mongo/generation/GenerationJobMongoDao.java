@@ -0,0 +1,118 @@
+package com.liangshou.movie.scripts.infrastructure.mongo.generation;
+
+import com.liangshou.movie.scripts.common.enums.GenerationJobStatusEnum;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+@Component
+@Timed(value = "mongo.dao", histogram = true)
+public class GenerationJobMongoDao {
+
+    private final MongoTemplate mongoTemplate;
+
+    public GenerationJobMongoDao(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    public GenerationJobDocument insert(GenerationJobDocument doc) {
+        return mongoTemplate.insert(doc);
+    }
+
+    public GenerationJobDocument findById(String id) {
+        return mongoTemplate.findById(id, GenerationJobDocument.class);
+    }
+
+    public GenerationJobDocument findByIdempotencyKey(String idempotencyKey) {
+        return mongoTemplate.findOne(Query.query(Criteria.where("idempotencyKey").is(idempotencyKey)),
+                GenerationJobDocument.class);
+    }
+
+    /**
+     * 原子领取一个最早创建的可执行任务：处理中、租约为空或已过期、执行次数未用尽。
+     * 领取即写入租约并累加执行次数，多个节点并发领取时只有一个能成功。
+     */
+    public GenerationJobDocument claimNext(String owner, Instant now, Instant leaseUntil, int maxAttempts) {
+        Query query = new Query(Criteria.where("status").is(GenerationJobStatusEnum.PROCESSING.name())
+                .and("attempts").lt(maxAttempts)
+                .orOperator(Criteria.where("leaseUntil").is(null), Criteria.where("leaseUntil").lte(now)));
+        query.with(Sort.by(Sort.Direction.ASC, "createdAt"));
+        Update update = new Update()
+                .set("leaseOwner", owner)
+                .set("leaseUntil", leaseUntil)
+                .set("updatedAt", now)
+                .inc("attempts", 1);
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true),
+                GenerationJobDocument.class);
+    }
+
+    /**
+     * 续约，只有仍持有租约时成功
+     */
+    public boolean renewLease(String id, String owner, Instant leaseUntil) {
+        Update update = new Update().set("leaseUntil", leaseUntil).set("updatedAt", Instant.now());
+        return mongoTemplate.updateFirst(leaseQuery(id, owner), update, GenerationJobDocument.class)
+                .getModifiedCount() > 0;
+    }
+
+    /**
+     * 写入最终结果并释放租约；租约已被其他节点接手时不写入，返回 false
+     */
+    public boolean finish(String id, String owner, GenerationJobStatusEnum status, String result, String errorMessage,
+                          Integer executionTimeMs, Instant now) {
+        Update update = new Update()
+                .set("status", status.name())
+                .set("result", result)
+                .set("errorMessage", errorMessage)
+                .set("executionTimeMs", executionTimeMs)
+                .set("finishedAt", now)
+                .set("updatedAt", now)
+                .unset("leaseOwner")
+                .unset("leaseUntil");
+        return mongoTemplate.updateFirst(leaseQuery(id, owner), update, GenerationJobDocument.class)
+                .getModifiedCount() > 0;
+    }
+
+    /**
+     * 本次执行失败但仍可重试：记录错误，租约延到 retryAt，到期后可被重新领取
+     */
+    public boolean releaseForRetry(String id, String owner, String errorMessage, Instant retryAt) {
+        Update update = new Update()
+                .set("errorMessage", errorMessage)
+                .set("leaseOwner", null)
+                .set("leaseUntil", retryAt)
+                .set("updatedAt", Instant.now());
+        return mongoTemplate.updateFirst(leaseQuery(id, owner), update, GenerationJobDocument.class)
+                .getModifiedCount() > 0;
+    }
+
+    /**
+     * 执行次数已用尽但仍停留在处理中的任务（最后一次执行时节点宕机），标记为失败
+     */
+    public long failExhausted(int maxAttempts, Instant now) {
+        Query query = new Query(Criteria.where("status").is(GenerationJobStatusEnum.PROCESSING.name())
+                .and("attempts").gte(maxAttempts)
+                .and("leaseUntil").lte(now));
+        Update update = new Update()
+                .set("status", GenerationJobStatusEnum.FAILED.name())
+                .set("errorMessage", "执行次数已用尽")
+                .set("finishedAt", now)
+                .set("updatedAt", now)
+                .unset("leaseOwner")
+                .unset("leaseUntil");
+        return mongoTemplate.updateMulti(query, update, GenerationJobDocument.class).getModifiedCount();
+    }
+
+    private static Query leaseQuery(String id, String owner) {
+        return new Query(Criteria.where("_id").is(id)
+                .and("status").is(GenerationJobStatusEnum.PROCESSING.name())
+                .and("leaseOwner").is(owner));
+    }
+}
@@ -105,6 +105,14 @@ public interface IScriptEpisodeService {
      * @return 更新后的桥段DTO
      */
     ScriptEpisodeDTO updateWordCount(String id, Integer wordCount);
+
+    /**
+     * 保存生成的桥段内容：按 (项目ID, 章节ID, 桥段号) 存在则覆盖标题与内容，否则新建
+     *
+     * @param episodeDTO 桥段DTO
+     * @return 保存后的桥段DTO
+     */
+    ScriptEpisodeDTO saveGeneratedEpisode(ScriptEpisodeDTO episodeDTO);
     
     // 复杂的业务逻辑和数据转换仍然放在实现类中
 }
\ No newline at end of file
@@ -1,10 +1,23 @@
 package com.liangshou.movie.scripts.service.agents.agentimpl;
 
-import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.chat.model.ChatModel;
+import com.liangshou.movie.scripts.common.enums.GenerationTypeEnum;
+import com.liangshou.movie.scripts.service.generation.GenerationCache;
+import com.liangshou.movie.scripts.service.generation.GenerationCacheKey;
+import com.liangshou.movie.scripts.service.generation.GenerationLogAdvisor;
+import com.liangshou.movie.scripts.service.generation.GenerationSingleFlight;
+import com.liangshou.movie.scripts.service.generation.LlmCallMetrics;
+import com.liangshou.movie.scripts.service.generation.ModelProvider;
+import com.liangshou.movie.scripts.service.generation.ModelRouter;
+import com.liangshou.movie.scripts.service.generation.RequestHedger;
+import com.liangshou.movie.scripts.service.generation.SemanticGenerationCache;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * AI剧本创作代理类
@@ -12,109 +25,242 @@ import org.springframework.stereotype.Component;
 @Component
 public class AIScriptWritingAgent {
 
+    private static final String ADAPTIVE_CACHE_MODEL = "adaptive";
+
+    @Autowired
+    private ModelRouter modelRouter; // 按请求指定、生成类型或实时延迟选择提供方，非自适应选择时其模型与参数参与缓存键计算
+
+    @Autowired
+    private GenerationCache generationCache;
+
     @Autowired
-    private ChatClient chatClient; // 直接注入ChatClient
+    private SemanticGenerationCache semanticCache;
 
     @Autowired
-    @Qualifier("openAiChatModel")
-    private ChatModel openAiChatModel;
+    private GenerationSingleFlight singleFlight;
 
-    // 移除Azure OpenAI的引用
-    /*
     @Autowired
-    @Qualifier("azureOpenAiChatModel")
-    private ChatModel azureOpenAiChatModel;
-    */
+    private LlmCallMetrics callMetrics;
+
+    @Autowired
+    private RequestHedger hedger;
 
     /**
      * 生成创意
      */
-    public String generateCreative(String creativeRequest) {
-        String prompt = "请根据以下请求生成创意：" + creativeRequest;
-        return chatClient.prompt(prompt)
-            .call()
-            .content();
+    public Mono<String> generateCreative(String creativeRequest) {
+        return generateCreative(creativeRequest, null);
+    }
+
+    public Mono<String> generateCreative(String creativeRequest, String provider) {
+        return generate(GenerationTypeEnum.CREATIVE, creativeRequest, creativePrompt(creativeRequest), provider);
+    }
+
+    public Flux<String> generateCreativeStream(String creativeRequest) {
+        return generateCreativeStream(creativeRequest, null);
+    }
+
+    public Flux<String> generateCreativeStream(String creativeRequest, String provider) {
+        return generateStream(GenerationTypeEnum.CREATIVE, creativeRequest, creativePrompt(creativeRequest), provider);
     }
 
     /**
      * 生成主题背景
      */
-    public String generateTheme(String themeRequest) {
-        String prompt = "请根据以下请求生成故事主题背景：" + themeRequest + 
-                       "。输出格式应包含：主题名称、主题描述、核心概念、目标受众等信息。";
-        return chatClient.prompt(prompt)
-            .call()
-            .content();
+    public Mono<String> generateTheme(String themeRequest) {
+        return generateTheme(themeRequest, null);
+    }
+
+    public Mono<String> generateTheme(String themeRequest, String provider) {
+        return generate(GenerationTypeEnum.THEME, themeRequest, themePrompt(themeRequest), provider);
+    }
+
+    public Flux<String> generateThemeStream(String themeRequest) {
+        return generateThemeStream(themeRequest, null);
+    }
+
+    public Flux<String> generateThemeStream(String themeRequest, String provider) {
+        return generateStream(GenerationTypeEnum.THEME, themeRequest, themePrompt(themeRequest), provider);
     }
 
     /**
      * 生成剧情梗概
      */
-    public String generateSummary(String summaryRequest) {
-        String prompt = "请根据以下信息生成剧情梗概：" + summaryRequest +
-                       "。梗概应包括：故事主线、核心冲突、关键转折点、预期结局等要素。";
-        return chatClient.prompt(prompt)
-            .call()
-            .content();
+    public Mono<String> generateSummary(String summaryRequest) {
+        return generateSummary(summaryRequest, null);
+    }
+
+    public Mono<String> generateSummary(String summaryRequest, String provider) {
+        return generate(GenerationTypeEnum.SUMMARY, summaryRequest, summaryPrompt(summaryRequest), provider);
+    }
+
+    public Flux<String> generateSummaryStream(String summaryRequest) {
+        return generateSummaryStream(summaryRequest, null);
+    }
+
+    public Flux<String> generateSummaryStream(String summaryRequest, String provider) {
+        return generateStream(GenerationTypeEnum.SUMMARY, summaryRequest, summaryPrompt(summaryRequest), provider);
     }
 
     /**
      * 生成角色设计
      */
-    public String generateCharacters(String characterRequest) {
-        String prompt = "请根据以下要求设计角色：" + characterRequest +
-                       "。角色信息应包括：姓名、年龄、性别、性格特点、技能、在故事中的作用、与其他角色的关系等。";
-        return chatClient.prompt(prompt)
-            .call()
-            .content();
+    public Mono<String> generateCharacters(String characterRequest) {
+        return generateCharacters(characterRequest, null);
+    }
+
+    public Mono<String> generateCharacters(String characterRequest, String provider) {
+        return generate(GenerationTypeEnum.CHARACTERS, characterRequest, charactersPrompt(characterRequest), provider);
+    }
+
+    public Flux<String> generateCharactersStream(String characterRequest) {
+        return generateCharactersStream(characterRequest, null);
+    }
+
+    public Flux<String> generateCharactersStream(String characterRequest, String provider) {
+        return generateStream(GenerationTypeEnum.CHARACTERS, characterRequest, charactersPrompt(characterRequest), provider);
     }
 
     /**
      * 生成故事大纲
      */
-    public String generateOutline(String outlineRequest) {
-        String prompt = "请根据以下要求生成故事大纲：" + outlineRequest +
-                       "。大纲应包括：故事结构（开端-发展-高潮-结尾 或 其他结构）、主要情节点、各章节简要内容、人物成长弧线等。";
-        return chatClient.prompt(prompt)
-            .call()
-            .content();
+    public Mono<String> generateOutline(String outlineRequest) {
+        return generateOutline(outlineRequest, null);
+    }
+
+    public Mono<String> generateOutline(String outlineRequest, String provider) {
+        return generate(GenerationTypeEnum.OUTLINE, outlineRequest, outlinePrompt(outlineRequest), provider);
+    }
+
+    public Flux<String> generateOutlineStream(String outlineRequest) {
+        return generateOutlineStream(outlineRequest, null);
+    }
+
+    public Flux<String> generateOutlineStream(String outlineRequest, String provider) {
+        return generateStream(GenerationTypeEnum.OUTLINE, outlineRequest, outlinePrompt(outlineRequest), provider);
     }
 
     /**
      * 生成章节内容
      */
-    public String generateChapter(String chapterRequest) {
-        String prompt = "请根据以下要求生成章节内容：" + chapterRequest +
+    public Mono<String> generateChapter(String chapterRequest) {
+        return generateChapter(chapterRequest, null);
+    }
+
+    public Mono<String> generateChapter(String chapterRequest, String provider) {
+        return generate(GenerationTypeEnum.CHAPTER, chapterRequest, chapterPrompt(chapterRequest), provider);
+    }
+
+    public Flux<String> generateChapterStream(String chapterRequest) {
+        return generateChapterStream(chapterRequest, null);
+    }
+
+    public Flux<String> generateChapterStream(String chapterRequest, String provider) {
+        return generateStream(GenerationTypeEnum.CHAPTER, chapterRequest, chapterPrompt(chapterRequest), provider);
+    }
+
+    private static String creativePrompt(String creativeRequest) {
+        return "请根据以下请求生成创意：" + creativeRequest;
+    }
+
+    private static String themePrompt(String themeRequest) {
+        return "请根据以下请求生成故事主题背景：" + themeRequest + 
+                       "。输出格式应包含：主题名称、主题描述、核心概念、目标受众等信息。";
+    }
+
+    private static String summaryPrompt(String summaryRequest) {
+        return "请根据以下信息生成剧情梗概：" + summaryRequest +
+                       "。梗概应包括：故事主线、核心冲突、关键转折点、预期结局等要素。";
+    }
+
+    private static String charactersPrompt(String characterRequest) {
+        return "请根据以下要求设计角色：" + characterRequest +
+                       "。角色信息应包括：姓名、年龄、性别、性格特点、技能、在故事中的作用、与其他角色的关系等。";
+    }
+
+    private static String outlinePrompt(String outlineRequest) {
+        return "请根据以下要求生成故事大纲：" + outlineRequest +
+                       "。大纲应包括：故事结构（开端-发展-高潮-结尾 或 其他结构）、主要情节点、各章节简要内容、人物成长弧线等。";
+    }
+
+    private static String chapterPrompt(String chapterRequest) {
+        return "请根据以下要求生成章节内容：" + chapterRequest +
                        "。内容应包括：章节标题、具体内容、人物对话、场景描写等。确保内容连贯且符合之前的故事发展。";
-        return chatClient.prompt(prompt)
-            .call()
-            .content();
     }
-    
+
     /**
-     * 使用指定模型生成内容
+     * 同时进行的相同请求合并为一次；依次查精确缓存（完整提示词）与语义缓存（用户请求），
+     * 都未命中时通过流式接口聚合完整结果：底层为非阻塞 HTTP，等待模型期间不占用线程。
+     * 提供方由 ModelRouter 在进入缓存前选定，指定或固定提供方时缓存键包含其模型名，自适应路由时不包含
      */
-    public String generateWithSpecificModel(String prompt, String modelName) {
-        ChatClient specificChatClient;
-        ChatModel modelToUse = null;
+    private Mono<String> generate(GenerationTypeEnum type, String request, String prompt, String hint) {
+        ModelProvider provider = modelRouter.route(type, hint);
+        boolean adaptive = modelRouter.isAdaptive(type, hint);
+        String cacheModel = cacheModel(provider, adaptive);
+        Map<String, Object> options = options(type, provider, adaptive);
+        return callMetrics.time("script-writing", type.getCode(), provider.model(),
+                singleFlight.execute(type.getCode(), GenerationCacheKey.of(cacheModel, options, prompt),
+                        () -> generationCache.getOrGenerate(type, cacheModel, options, prompt,
+                                () -> semanticCache.getOrGenerate(type, cacheModel, options, request,
+                                        () -> call(provider, type, prompt, adaptive).collect(Collectors.joining())))));
+    }
 
-        if ("openai".equalsIgnoreCase(modelName) && openAiChatModel != null) {
-            modelToUse = openAiChatModel;
-        }
-//        else if ("anthropic".equalsIgnoreCase(modelName) && anthropicChatModel != null) {
-//            modelToUse = anthropicChatModel;
-//        }
-
-        if (modelToUse != null) {
-            specificChatClient = ChatClient.create(modelToUse);
-            return specificChatClient.prompt(prompt)
-                .call()
-                .content();
+    /**
+     * 流式版本：缓存与合并策略同 generate，首个 token 到达即可下发；命中缓存时整段内容作为单个元素返回。
+     * 完整结果在流正常结束时写入缓存一次，调用日志由 GenerationLogAdvisor 在流结束时记录一条。
+     * 同一请求的并发流共享一次上游调用，后加入者会先收到已生成的部分。
+     */
+    private Flux<String> generateStream(GenerationTypeEnum type, String request, String prompt, String hint) {
+        ModelProvider provider = modelRouter.route(type, hint);
+        boolean adaptive = modelRouter.isAdaptive(type, hint);
+        String cacheModel = cacheModel(provider, adaptive);
+        Map<String, Object> options = options(type, provider, adaptive);
+        return callMetrics.timeStream("script-writing", type.getCode() + "Stream", provider.model(),
+                singleFlight.executeStream(type.getCode() + "-stream", GenerationCacheKey.of(cacheModel, options, prompt),
+                        () -> generationCache.getOrGenerateStream(type, cacheModel, options, prompt,
+                                () -> semanticCache.getOrGenerateStream(type, cacheModel, options, request,
+                                        () -> call(provider, type, prompt, adaptive)))));
+    }
+
+    /**
+     * 一次模型调用：经过提供方熔断、限流与并发限制；开启对冲时主提供方首 token 过慢会向备用提供方发送相同请求。
+     * 只有自适应路由的请求对冲：其缓存键不含模型名，胜出方的结果可以直接缓存；
+     * 指定或固定提供方的请求按模型缓存，结果必须来自该提供方
+     */
+    private Flux<String> call(ModelProvider provider, GenerationTypeEnum type, String prompt, boolean adaptive) {
+        return hedger.execute(provider, (target) -> target.chatClient().prompt(prompt)
+                .advisors((advisor) -> advisor.param(GenerationLogAdvisor.TYPE, type.name()))
+                .stream()
+                .content(), adaptive);
+    }
+
+    /**
+     * 指定提供方或按生成类型固定提供方的请求按模型与参数缓存；自适应路由的请求可能落到任一提供方，
+     * 只按生成类型与提示词缓存，否则相同请求会分散到各提供方的缓存键上
+     */
+    private static String cacheModel(ModelProvider provider, boolean adaptive) {
+        return adaptive ? ADAPTIVE_CACHE_MODEL : provider.model();
+    }
+
+    private static Map<String, Object> options(GenerationTypeEnum type, ModelProvider provider, boolean adaptive) {
+        Map<String, Object> options = new HashMap<>();
+        if (adaptive) {
+            options.put("type", type.getCode());
         } else {
-            // 使用默认客户端
-            return chatClient.prompt(prompt)
-                .call()
-                .content();
+            options.put("temperature", provider.temperature());
         }
+        return options;
+    }
+
+    /**
+     * 使用指定模型生成内容，modelName 为提供方名称（如 qwen、deepseek），未配置时按路由规则选择
+     */
+    public String generateWithSpecificModel(String prompt, String modelName) {
+        ModelProvider provider = modelRouter.route(null, modelName);
+        return hedger.execute(provider, (target) -> target.chatClient().prompt(prompt)
+                        .stream()
+                        .content(), modelRouter.isAdaptive(null, modelName))
+                .collect(Collectors.joining())
+                .block();
     }
-}
\ No newline at end of file
+}
@@ -1,44 +1,78 @@
 package com.liangshou.movie.scripts.service.agents.agentimpl;
 
+import com.liangshou.movie.scripts.common.config.aimodelconfig.properties.QwenProperties;
 import com.liangshou.movie.scripts.common.constants.PromptConstant;
-import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationMemoryDocument;
 import com.liangshou.movie.scripts.service.conversation.ConversationService;
+import com.liangshou.movie.scripts.service.conversation.ConversationWriteBehindQueue;
+import com.liangshou.movie.scripts.service.generation.GenerationCacheKey;
+import com.liangshou.movie.scripts.service.generation.GenerationLogAdvisor;
+import com.liangshou.movie.scripts.service.generation.GenerationSingleFlight;
+import com.liangshou.movie.scripts.service.generation.LlmCallMetrics;
+import com.liangshou.movie.scripts.service.generation.ModelProvider;
+import com.liangshou.movie.scripts.service.generation.RequestHedger;
 import com.liangshou.movie.scripts.infrastructure.agentsupport.tools.tavily.TavilySearchTool;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
-import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
 public class CreativeIdeaBrainstormingAgent {
 
-    private final ChatClient chatClient;
+    private static final String LOG_TYPE = "BRAINSTORM";
+    private static final String AGENT = "brainstorming";
+    private static final String PROVIDER = "qwen";
+
     private final ChatMemory chatMemory;
     private final TavilySearchTool tavilySearchTool;
     private final ConversationService conversationService;
+    private final ConversationWriteBehindQueue writeBehindQueue;
+    private final GenerationSingleFlight singleFlight;
+    private final LlmCallMetrics callMetrics;
+    private final QwenProperties qwenProperties;
+    private final RequestHedger hedger;
+    private final ModelProvider provider;
 
     public CreativeIdeaBrainstormingAgent(
             @Qualifier("qwenChatClient") ChatClient chatClient,
             ChatMemory chatMemory,
             TavilySearchTool tavilySearchTool,
-            ConversationService conversationService) {
-        this.chatClient = chatClient;
+            ConversationService conversationService,
+            ConversationWriteBehindQueue writeBehindQueue,
+            GenerationSingleFlight singleFlight,
+            LlmCallMetrics callMetrics,
+            QwenProperties qwenProperties,
+            RequestHedger hedger) {
         this.chatMemory = chatMemory;
         this.tavilySearchTool = tavilySearchTool;
         this.conversationService = conversationService;
+        this.writeBehindQueue = writeBehindQueue;
+        this.singleFlight = singleFlight;
+        this.callMetrics = callMetrics;
+        this.qwenProperties = qwenProperties;
+        this.hedger = hedger;
+        this.provider = new ModelProvider(PROVIDER, qwenProperties.getModel(), qwenProperties.getTemperature(), chatClient);
     }
 
-    public String chat(
+    /**
+     * 非流式对话：上下文读取放在 boundedElastic 上，模型调用走流式接口聚合结果，写入交给 write-behind 队列，
+     * 整个过程不占用请求线程。返回的 Mono 在本轮写入完成（或转入待重放）后才结束。
+     * 同一会话同时提交的相同消息（重复点击、多个标签页）合并为一轮。
+     */
+    public Mono<String> chat(
             String conversationId,
             String userMessage,
             boolean enableSearch,
@@ -46,46 +80,15 @@ public class CreativeIdeaBrainstormingAgent {
             String conversationTitle
     ) {
         if (!StringUtils.hasText(conversationId)) {
-            throw new IllegalArgumentException("conversationId 不能为空");
+            return Mono.error(new IllegalArgumentException("conversationId 不能为空"));
         }
         if (!StringUtils.hasText(userMessage)) {
-            throw new IllegalArgumentException("userMessage 不能为空");
-        }
-
-        String systemPrompt = PromptConstant.getCreativePrompt().render();
-        List<Message> history = chatMemory.get(conversationId);
-
-        ChatClient.ChatClientRequestSpec request = chatClient.prompt()
-                .system(systemPrompt)
-                .messages(history)
-                .user(userMessage);
-        if (enableSearch) {
-            request = request.tools(tavilySearchTool);
+            return Mono.error(new IllegalArgumentException("userMessage 不能为空"));
         }
 
-        Instant now = Instant.now();
-        String content = request.call().content();
-
-        chatMemory.add(conversationId, List.of(
-                new UserMessage(userMessage),
-                new AssistantMessage(content)
-        ));
-
-        String title = StringUtils.hasText(conversationTitle) ? conversationTitle.trim() : "未命名对话";
-        ConversationMemoryDocument saved = conversationService.appendRound(
-                ConversationService.DEFAULT_USER_ID,
-                conversationId,
-                projectId,
-                title,
-                userMessage,
-                content,
-                now,
-                false
-        );
-        log.info("memory_write conversationId={} roundIndex={} timestamp={}", conversationId, saved.getRoundCount(), now);
-        conversationService.markRead(ConversationService.DEFAULT_USER_ID, conversationId);
-
-        return content;
+        return callMetrics.time(AGENT, "chat", qwenProperties.getModel(),
+                singleFlight.execute("brainstorming", flightKey(conversationId, userMessage, enableSearch),
+                        () -> doChat(conversationId, userMessage, enableSearch, projectId, conversationTitle)));
     }
 
     public Flux<String> chatStream(
@@ -102,29 +105,84 @@ public class CreativeIdeaBrainstormingAgent {
             return Flux.error(new IllegalArgumentException("userMessage 不能为空"));
         }
 
-        String systemPrompt = PromptConstant.getCreativePrompt().render();
-        List<Message> history = chatMemory.get(conversationId);
-
-        ChatClient.ChatClientRequestSpec request = chatClient.prompt()
-                .system(systemPrompt)
-                .messages(history)
-                .user(userMessage);
-        if (enableSearch) {
-            request = request.tools(tavilySearchTool);
+        // 同一会话同时提交的相同消息只调用一次模型、写入一轮，token 扇出给所有订阅者
+        return callMetrics.timeStream(AGENT, "chatStream", qwenProperties.getModel(),
+                singleFlight.executeStream("brainstorming-stream", flightKey(conversationId, userMessage, enableSearch),
+                        () -> Flux.defer(() -> doChatStream(conversationId, userMessage, enableSearch, projectId, conversationTitle))));
+    }
+
+    public void clear(String conversationId) {
+        if (!StringUtils.hasText(conversationId)) {
+            throw new IllegalArgumentException("conversationId 不能为空");
         }
+        writeBehindQueue.awaitPersisted(conversationId);
+        chatMemory.clear(conversationId);
+    }
+
+    private Mono<String> doChat(
+            String conversationId,
+            String userMessage,
+            boolean enableSearch,
+            String projectId,
+            String conversationTitle
+    ) {
+        String systemPrompt = PromptConstant.getCreativePrompt().render();
+        Instant now = Instant.now();
+        return Mono.fromCallable(() -> callMetrics.stage("chat", "memory_load").record(() -> {
+                    writeBehindQueue.awaitPersisted(conversationId);
+                    return chatMemory.get(conversationId);
+                }))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap((history) -> call(systemPrompt, history, userMessage, enableSearch, projectId)
+                        .collect(Collectors.joining()))
+                .flatMap((content) -> {
+                    // 会话存储同时是 ChatMemory 的数据源，这里写入一次即可
+                    String title = StringUtils.hasText(conversationTitle) ? conversationTitle.trim() : "未命名对话";
+                    Timer.Sample write = Timer.start();
+                    return Mono.fromFuture(() -> writeBehindQueue.submit(
+                                    ConversationService.DEFAULT_USER_ID,
+                                    conversationId,
+                                    projectId,
+                                    title,
+                                    userMessage,
+                                    content,
+                                    now,
+                                    false,
+                                    true
+                            ))
+                            .doOnNext((saved) -> log.info("memory_write conversationId={} roundIndex={} timestamp={}",
+                                    conversationId, saved.getRoundCount(), now))
+                            .onErrorResume((e) -> {
+                                log.warn("memory_write_deferred conversationId={} error={}", conversationId, e.getMessage());
+                                return Mono.empty();
+                            })
+                            .doFinally((signal) -> write.stop(callMetrics.stage("chat", "memory_write")))
+                            .thenReturn(content);
+                });
+    }
 
+    private Flux<String> doChatStream(
+            String conversationId,
+            String userMessage,
+            boolean enableSearch,
+            String projectId,
+            String conversationTitle
+    ) {
+        String systemPrompt = PromptConstant.getCreativePrompt().render();
         StringBuilder full = new StringBuilder();
-        return request.stream()
-                .content()
+        // 等待上一轮写入与读取上下文都放在 boundedElastic 上，不占用订阅所在的请求线程
+        return Mono.fromCallable(() -> callMetrics.stage("stream", "memory_load").record(() -> {
+                    writeBehindQueue.awaitPersisted(conversationId);
+                    return chatMemory.get(conversationId);
+                }))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany((history) -> call(systemPrompt, history, userMessage, enableSearch, projectId))
                 .doOnNext(full::append)
-                .doOnComplete(() -> chatMemory.add(conversationId, List.of(
-                        new UserMessage(userMessage),
-                        new AssistantMessage(full.toString())
-                )))
                 .doOnComplete(() -> {
+                    // 只入队，写入由 write-behind 线程完成，不阻塞最后一个 token 的发射线程
                     Instant now = Instant.now();
                     String title = StringUtils.hasText(conversationTitle) ? conversationTitle.trim() : "未命名对话";
-                    ConversationMemoryDocument saved = conversationService.appendRound(
+                    writeBehindQueue.submit(
                             ConversationService.DEFAULT_USER_ID,
                             conversationId,
                             projectId,
@@ -132,17 +190,48 @@ public class CreativeIdeaBrainstormingAgent {
                             userMessage,
                             full.toString(),
                             now,
-                            false
-                    );
-                    log.info("memory_write conversationId={} roundIndex={} timestamp={}", conversationId, saved.getRoundCount(), now);
-                    conversationService.markRead(ConversationService.DEFAULT_USER_ID, conversationId);
+                            false,
+                            true
+                    ).whenComplete((saved, error) -> {
+                        if (saved != null) {
+                            log.info("memory_write conversationId={} roundIndex={} timestamp={}", conversationId, saved.getRoundCount(), now);
+                        }
+                    });
                 });
     }
 
-    public void clear(String conversationId) {
-        if (!StringUtils.hasText(conversationId)) {
-            throw new IllegalArgumentException("conversationId 不能为空");
+    /**
+     * 一次模型调用；开启对冲时首 token 过慢会把同样的上下文发给备用提供方，记忆只按胜出的一方写入。
+     * 开启搜索的调用不对冲，避免两个提供方各自执行一遍搜索工具
+     */
+    private Flux<String> call(
+            String systemPrompt,
+            List<Message> history,
+            String userMessage,
+            boolean enableSearch,
+            String projectId
+    ) {
+        return hedger.execute(provider, (target) -> {
+            ChatClient.ChatClientRequestSpec request = target.chatClient().prompt()
+                    .system(systemPrompt)
+                    .messages(history)
+                    .user(userMessage)
+                    .advisors((advisor) -> logParams(advisor, projectId));
+            if (enableSearch) {
+                request = request.tools(tavilySearchTool);
+            }
+            return request.stream().content();
+        }, !enableSearch);
+    }
+
+    private static void logParams(ChatClient.AdvisorSpec advisor, String projectId) {
+        advisor.param(GenerationLogAdvisor.TYPE, LOG_TYPE);
+        if (StringUtils.hasText(projectId)) {
+            advisor.param(GenerationLogAdvisor.PROJECT_ID, projectId);
         }
-        chatMemory.clear(conversationId);
+    }
+
+    private static String flightKey(String conversationId, String userMessage, boolean enableSearch) {
+        return GenerationCacheKey.of(conversationId, Map.of("search", enableSearch), userMessage);
     }
 }
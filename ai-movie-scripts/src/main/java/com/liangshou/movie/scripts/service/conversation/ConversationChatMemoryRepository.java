@@ -0,0 +1,172 @@
+package com.liangshou.movie.scripts.service.conversation;
+
+import com.liangshou.movie.scripts.common.config.conversation.ConversationMemoryProperties;
+import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationMemoryDocument;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于会话消息存储的 ChatMemoryRepository，模型上下文与会话历史共用一份数据。
+ * 读取只取会话尾部窗口：先按条数上限取尾部，再从最新消息往前按 token 预算裁剪（单条超长消息不会挤爆上下文）；
+ * 开启滚动摘要时，摘要作为第一条系统消息带入并占用预算，被裁掉的早期消息交给 ConversationSummarizer 异步并入摘要。
+ * 写入只追加窗口中尚未持久化（不带 seq 标记）的消息，不会按窗口覆盖历史。
+ */
+@Component
+public class ConversationChatMemoryRepository implements ChatMemoryRepository {
+
+    /**
+     * 摘要系统消息的 metadata 标记，写回时跳过
+     */
+    public static final String SUMMARY_METADATA_KEY = "conversation_summary";
+
+    /**
+     * 从存储读出的消息的 metadata 标记，值为消息 seq，写回时据此区分已有消息与新消息
+     */
+    public static final String SEQ_METADATA_KEY = "conversation_seq";
+
+    private static final String SUMMARY_PREFIX = "以下是本次对话更早内容的摘要，请在后续回复中保持与其中已确定的设定一致：\n";
+
+    private final ConversationService conversationService;
+    private final ConversationMemoryProperties memoryProperties;
+    private final MessageTokenCounter tokenCounter;
+    private final ConversationSummarizer summarizer;
+    private final DistributionSummary contextTokens;
+    private final DistributionSummary contextMessages;
+    private final Counter trimmedMessages;
+
+    public ConversationChatMemoryRepository(
+            ConversationService conversationService,
+            ConversationMemoryProperties memoryProperties,
+            MessageTokenCounter tokenCounter,
+            ConversationSummarizer summarizer,
+            MeterRegistry meterRegistry) {
+        this.conversationService = conversationService;
+        this.memoryProperties = memoryProperties;
+        this.tokenCounter = tokenCounter;
+        this.summarizer = summarizer;
+        this.contextTokens = DistributionSummary.builder("conversation.context.tokens")
+                .description("每次带入模型上下文的历史 token 数（本地估算）")
+                .register(meterRegistry);
+        this.contextMessages = DistributionSummary.builder("conversation.context.messages")
+                .description("每次带入模型上下文的历史消息条数")
+                .register(meterRegistry);
+        this.trimmedMessages = Counter.builder("conversation.context.trimmed.messages")
+                .description("因超出 token 预算未带入上下文的消息数")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public List<String> findConversationIds() {
+        return conversationService.findConversationIds();
+    }
+
+    @Override
+    public List<Message> findByConversationId(String conversationId) {
+        ConversationContext context = conversationService.getContext(
+                conversationId, memoryProperties.getContextWindowMessages(), summarizer.isEnabled());
+        List<ConversationMemoryDocument.ConversationStoredMessage> window = context.messages();
+        int budget = memoryProperties.getContextWindowTokens();
+        int used = 0;
+        Message summary = null;
+        if (StringUtils.hasText(context.summary())) {
+            summary = SystemMessage.builder()
+                    .text(SUMMARY_PREFIX + context.summary())
+                    .metadata(Map.of(SUMMARY_METADATA_KEY, true))
+                    .build();
+            used += tokenCounter.count(summary.getText()) + MessageTokenCounter.MESSAGE_OVERHEAD_TOKENS;
+        }
+        List<Message> messages = new ArrayList<>();
+        Long firstKeptSeq = null;
+        for (int i = window.size() - 1; i >= 0; i -= 1) {
+            ConversationMemoryDocument.ConversationStoredMessage msg = window.get(i);
+            Message message = toMessage(msg);
+            if (message == null) {
+                continue;
+            }
+            int tokens = tokenCounter.count(msg);
+            if (budget > 0 && used + tokens > budget) {
+                // 保持上下文连续：一旦超出预算，更早的消息全部不再带入
+                trimmedMessages.increment(i + 1);
+                break;
+            }
+            used += tokens;
+            messages.add(message);
+            firstKeptSeq = msg.getSeq();
+        }
+        if (summary != null) {
+            messages.add(summary);
+        }
+        Collections.reverse(messages);
+        if (firstKeptSeq != null) {
+            summarizer.requestIfNeeded(conversationId, context.coveredUntilSeq(), firstKeptSeq);
+        }
+        contextTokens.record(used);
+        contextMessages.record(messages.size());
+        return messages;
+    }
+
+    /**
+     * MessageWindowChatMemory 传入的是“已有窗口 + 新消息”裁剪后的结果。从存储读出的消息在 metadata 中带有 seq，
+     * 最后一条带 seq 的消息之后才是新消息，只追加这部分；不回读存储，也不按文本比对，连续发送相同内容不会被合并。
+     */
+    @Override
+    public void saveAll(String conversationId, List<Message> messages) {
+        int start = 0;
+        for (int i = messages.size() - 1; i >= 0; i -= 1) {
+            if (messages.get(i).getMetadata().get(SEQ_METADATA_KEY) != null) {
+                start = i + 1;
+                break;
+            }
+        }
+        List<ConversationMemoryDocument.ConversationStoredMessage> appended = new ArrayList<>();
+        for (Message message : messages.subList(start, messages.size())) {
+            if (Boolean.TRUE.equals(message.getMetadata().get(SUMMARY_METADATA_KEY))) {
+                continue;
+            }
+            if (StringUtils.hasText(message.getText())) {
+                appended.add(ConversationService.storedMessage(
+                        message.getMessageType().getValue(), message.getText(), null));
+            }
+        }
+        if (!appended.isEmpty()) {
+            conversationService.appendMessages(ConversationService.DEFAULT_USER_ID, conversationId, null, null,
+                    appended, null, false, false);
+        }
+    }
+
+    @Override
+    public void deleteByConversationId(String conversationId) {
+        conversationService.resetContext(conversationId);
+    }
+
+    private static Message toMessage(ConversationMemoryDocument.ConversationStoredMessage msg) {
+        if (msg.getRole() == null || msg.getContent() == null) {
+            return null;
+        }
+        Map<String, Object> metadata = msg.getSeq() != null ? Map.of(SEQ_METADATA_KEY, msg.getSeq()) : Map.of();
+        if (MessageType.USER.getValue().equals(msg.getRole())) {
+            return UserMessage.builder().text(msg.getContent()).metadata(metadata).build();
+        }
+        if (MessageType.ASSISTANT.getValue().equals(msg.getRole())) {
+            return AssistantMessage.builder().content(msg.getContent()).properties(metadata).build();
+        }
+        if (MessageType.SYSTEM.getValue().equals(msg.getRole())) {
+            return SystemMessage.builder().text(msg.getContent()).metadata(metadata).build();
+        }
+        return null;
+    }
+}
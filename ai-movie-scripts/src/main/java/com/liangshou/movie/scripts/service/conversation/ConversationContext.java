@@ -0,0 +1,18 @@
+package com.liangshou.movie.scripts.service.conversation;
+
+import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationMemoryDocument;
+
+import java.util.List;
+
+/**
+ * 模型上下文的原始数据：尾部消息窗口（时间正序）与滚动摘要。
+ * coveredUntilSeq 为摘要或上下文起点之后的第一条消息 seq，更早的消息不应再进入上下文。
+ */
+public record ConversationContext(
+        List<ConversationMemoryDocument.ConversationStoredMessage> messages,
+        String summary,
+        long coveredUntilSeq
+) {
+
+    public static final ConversationContext EMPTY = new ConversationContext(List.of(), null, 0L);
+}
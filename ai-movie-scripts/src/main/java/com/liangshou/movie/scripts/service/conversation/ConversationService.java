@@ -1,18 +1,29 @@
 package com.liangshou.movie.scripts.service.conversation;
 
+import com.liangshou.movie.scripts.common.config.conversation.ConversationMemoryProperties;
+import com.liangshou.movie.scripts.infrastructure.mongo.MongoOperationCounter;
 import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationMemoryDocument;
+import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationMessageBucketDocument;
 import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationMetaDocument;
 import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationMongoDao;
+import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationSearchResult;
 import com.liangshou.movie.scripts.service.dto.conversation.ConversationMessageDto;
 import com.liangshou.movie.scripts.service.dto.conversation.ConversationSummaryDto;
+import com.liangshou.movie.scripts.service.dto.conversation.CursorPageResponse;
 import com.liangshou.movie.scripts.service.dto.conversation.PageResponse;
-import org.springframework.dao.OptimisticLockingFailureException;
+import com.liangshou.movie.scripts.utils.search.SearchTermUtil;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
 
 @Service
@@ -21,32 +32,83 @@ public class ConversationService {
     public static final String DEFAULT_USER_ID = "anonymous";
 
     private final ConversationMongoDao mongoDao;
+    private final ConversationMemoryProperties memoryProperties;
+    private final MessageTokenCounter tokenCounter;
+    private final DistributionSummary roundMongoOperations;
 
-    public ConversationService(ConversationMongoDao mongoDao) {
+    public ConversationService(
+            ConversationMongoDao mongoDao,
+            ConversationMemoryProperties memoryProperties,
+            MessageTokenCounter tokenCounter,
+            MeterRegistry meterRegistry) {
         this.mongoDao = mongoDao;
+        this.memoryProperties = memoryProperties;
+        this.tokenCounter = tokenCounter;
+        this.roundMongoOperations = DistributionSummary.builder("conversation.round.mongo.operations")
+                .description("每轮对话持久化发出的 Mongo 命令数")
+                .register(meterRegistry);
     }
 
     public PageResponse<ConversationSummaryDto> list(String userId, int page, int size, String keyword) {
         String uid = StringUtils.hasText(userId) ? userId : DEFAULT_USER_ID;
-        long total = mongoDao.countMetas(uid, keyword);
-        List<ConversationMetaDocument> metas = mongoDao.findMetas(uid, page, size, keyword);
-        List<ConversationSummaryDto> items = new ArrayList<>();
-        for (ConversationMetaDocument meta : metas) {
-            ConversationSummaryDto dto = new ConversationSummaryDto();
-            dto.setId(meta.getId());
-            dto.setTitle(StringUtils.hasText(meta.getTitle()) ? meta.getTitle() : "未命名对话");
-            dto.setLastMessageAt(meta.getLastMessageAt() != null ? meta.getLastMessageAt().toString() : null);
-            dto.setUnreadCount(meta.getUnreadCount());
-            items.add(dto);
+        long total;
+        List<ConversationMetaDocument> metas;
+        if (StringUtils.hasText(keyword)) {
+            ConversationSearchResult result = mongoDao.searchMetas(uid, keyword, page, size);
+            total = result.total();
+            metas = result.items();
+        } else {
+            total = mongoDao.countMetas(uid, null);
+            metas = mongoDao.findMetas(uid, page, size, null);
         }
         PageResponse<ConversationSummaryDto> resp = new PageResponse<>();
-        resp.setItems(items);
+        resp.setItems(metas.stream().map(ConversationService::toSummary).toList());
         resp.setTotal(total);
         resp.setPage(Math.max(1, page));
         resp.setSize(Math.min(200, Math.max(1, size)));
         return resp;
     }
 
+    /**
+     * 游标分页列出会话，按 updatedAt 倒序；cursor 为空时从最新一条开始。
+     * 总数只在 withTotal 为 true 时计算，默认不额外执行 count。
+     */
+    public CursorPageResponse<ConversationSummaryDto> scroll(
+            String userId,
+            String cursor,
+            int size,
+            String keyword,
+            boolean withTotal
+    ) {
+        String uid = StringUtils.hasText(userId) ? userId : DEFAULT_USER_ID;
+        int safeSize = Math.min(200, Math.max(1, size));
+        ConversationCursor after = ConversationCursor.decode(cursor);
+
+        List<ConversationMetaDocument> metas = mongoDao.findMetasAfterCursor(
+                uid,
+                keyword,
+                after != null ? after.updatedAt() : null,
+                after != null ? after.id() : null,
+                safeSize + 1
+        );
+        boolean hasMore = metas.size() > safeSize;
+        if (hasMore) {
+            metas = metas.subList(0, safeSize);
+        }
+
+        CursorPageResponse<ConversationSummaryDto> resp = new CursorPageResponse<>();
+        resp.setItems(metas.stream().map(ConversationService::toSummary).toList());
+        resp.setHasMore(hasMore);
+        if (hasMore) {
+            ConversationMetaDocument last = metas.get(metas.size() - 1);
+            resp.setNextCursor(new ConversationCursor(last.getUpdatedAt(), last.getId()).encode());
+        }
+        if (withTotal) {
+            resp.setTotal(mongoDao.countMetas(uid, keyword));
+        }
+        return resp;
+    }
+
     public String create(String userId, String title, String projectId) {
         return UUID.randomUUID().toString();
     }
@@ -62,6 +124,7 @@ public class ConversationService {
         ConversationMetaDocument meta = mongoDao.findMetaById(conversationId);
         if (meta == null || !uid.equals(meta.getUserId())) return;
         meta.setTitle(title.trim());
+        meta.setTitleTerms(SearchTermUtil.toIndexTerms(meta.getTitle()));
         meta.setUpdatedAt(Instant.now());
         mongoDao.saveMeta(meta);
     }
@@ -75,21 +138,84 @@ public class ConversationService {
         if (meta != null && uid.equals(meta.getUserId())) {
             mongoDao.deleteMetaById(conversationId);
             mongoDao.deleteMemoryById(conversationId);
+            mongoDao.deleteBucketsByConversationId(conversationId);
         }
     }
 
     public List<ConversationMessageDto> getMessages(String userId, String conversationId) {
+        return getMessages(userId, conversationId, null, null, null);
+    }
+
+    /**
+     * 按时间游标分页读取消息，结果按时间正序。
+     * before 取早于该时间的最新 limit 条；仅给 after 时取晚于该时间的最早 limit 条；都不给时取最新 limit 条。
+     * limit 为空时不分页。同一时间戳的消息（同一轮）不会被分页截断，因此单页可能略多于 limit 条。
+     */
+    public List<ConversationMessageDto> getMessages(
+            String userId,
+            String conversationId,
+            Long before,
+            Long after,
+            Integer limit
+    ) {
         String uid = StringUtils.hasText(userId) ? userId : DEFAULT_USER_ID;
         if (!StringUtils.hasText(conversationId)) {
             throw new IllegalArgumentException("conversationId 不能为空");
         }
-        ConversationMemoryDocument memory = mongoDao.findMemoryById(conversationId);
-        if (memory == null || !uid.equals(memory.getUserId())) {
-            return List.of();
+        Instant beforeAt = before != null ? Instant.ofEpochMilli(before) : null;
+        Instant afterAt = after != null ? Instant.ofEpochMilli(after) : null;
+        int pageSize = limit != null
+                ? Math.min(memoryProperties.getMaxPageSize(), Math.max(1, limit))
+                : Integer.MAX_VALUE;
+        boolean newestFirst = beforeAt != null || afterAt == null;
+
+        List<ConversationMemoryDocument.ConversationStoredMessage> ordered = new ArrayList<>();
+        ConversationMetaDocument meta = mongoDao.findMetaById(conversationId);
+        if (meta != null && meta.isBucketed()) {
+            if (!uid.equals(meta.getUserId())) {
+                return List.of();
+            }
+            int maxBuckets = limit != null ? pageSize / bucketSizeOf(meta) + 2 : 0;
+            for (ConversationMessageBucketDocument bucket
+                    : mongoDao.findBuckets(conversationId, beforeAt, afterAt, newestFirst, maxBuckets)) {
+                List<ConversationMemoryDocument.ConversationStoredMessage> bucketMessages = new ArrayList<>(bucket.getMessages());
+                bucketMessages.sort(Comparator.comparing(
+                        ConversationMemoryDocument.ConversationStoredMessage::getSeq,
+                        Comparator.nullsFirst(Comparator.naturalOrder())));
+                if (newestFirst) {
+                    Collections.reverse(bucketMessages);
+                }
+                ordered.addAll(bucketMessages);
+            }
+        } else {
+            ConversationMemoryDocument memory = mongoDao.findMemoryById(conversationId);
+            if (memory == null || !uid.equals(memory.getUserId())) {
+                return List.of();
+            }
+            if (memory.getMessages() != null) {
+                ordered.addAll(memory.getMessages());
+                if (newestFirst) {
+                    Collections.reverse(ordered);
+                }
+            }
         }
+
+        List<ConversationMemoryDocument.ConversationStoredMessage> picked = new ArrayList<>();
+        Instant boundary = null;
+        for (ConversationMemoryDocument.ConversationStoredMessage msg : ordered) {
+            Instant at = msg.getAt();
+            if (beforeAt != null && at != null && !at.isBefore(beforeAt)) continue;
+            if (afterAt != null && at != null && !at.isAfter(afterAt)) continue;
+            if (picked.size() >= pageSize && !Objects.equals(at, boundary)) break;
+            picked.add(msg);
+            boundary = at;
+        }
+        if (newestFirst) {
+            Collections.reverse(picked);
+        }
+
         List<ConversationMessageDto> items = new ArrayList<>();
-        if (memory.getMessages() == null) return items;
-        for (ConversationMemoryDocument.ConversationStoredMessage msg : memory.getMessages()) {
+        for (ConversationMemoryDocument.ConversationStoredMessage msg : picked) {
             ConversationMessageDto dto = new ConversationMessageDto();
             dto.setRole(msg.getRole());
             dto.setContent(msg.getContent());
@@ -99,7 +225,7 @@ public class ConversationService {
         return items;
     }
 
-    public ConversationMemoryDocument appendRound(
+    public ConversationMetaDocument appendRound(
             String userId,
             String conversationId,
             String projectId,
@@ -108,86 +234,338 @@ public class ConversationService {
             String assistantText,
             Instant timestamp,
             boolean incrementUnread
+    ) {
+        return appendRound(userId, conversationId, projectId, defaultTitle, userText, assistantText, timestamp,
+                incrementUnread, false);
+    }
+
+    public ConversationMetaDocument appendRound(
+            String userId,
+            String conversationId,
+            String projectId,
+            String defaultTitle,
+            String userText,
+            String assistantText,
+            Instant timestamp,
+            boolean incrementUnread,
+            boolean markRead
+    ) {
+        return appendRound(userId, conversationId, projectId, defaultTitle, userText, assistantText, timestamp,
+                incrementUnread, markRead, null);
+    }
+
+    /**
+     * 持久化一轮对话：一次 findAndModify 更新元信息（计数、时间、未读数，markRead 时直接清零未读），
+     * 再一次写入消息（内嵌模式 $push，分桶模式 bulk upsert），每轮固定 2 次 Mongo 往返。
+     * roundId 为幂等键：同一 roundId 重复调用时计数不会重复累加，上次未写完的消息会补齐。
+     */
+    public ConversationMetaDocument appendRound(
+            String userId,
+            String conversationId,
+            String projectId,
+            String defaultTitle,
+            String userText,
+            String assistantText,
+            Instant timestamp,
+            boolean incrementUnread,
+            boolean markRead,
+            String roundId
+    ) {
+        Instant at = timestamp != null ? timestamp : Instant.now();
+        List<ConversationMemoryDocument.ConversationStoredMessage> messages = new ArrayList<>();
+        if (StringUtils.hasText(userText)) {
+            messages.add(storedMessage("user", userText, at));
+        }
+        if (StringUtils.hasText(assistantText)) {
+            messages.add(storedMessage("assistant", assistantText, at));
+        }
+        return appendMessages(userId, conversationId, projectId, defaultTitle, messages, at,
+                incrementUnread && StringUtils.hasText(assistantText), markRead, roundId);
+    }
+
+    public ConversationMetaDocument appendMessages(
+            String userId,
+            String conversationId,
+            String projectId,
+            String defaultTitle,
+            List<ConversationMemoryDocument.ConversationStoredMessage> messages,
+            Instant timestamp,
+            boolean incrementUnread,
+            boolean markRead
+    ) {
+        return appendMessages(userId, conversationId, projectId, defaultTitle, messages, timestamp,
+                incrementUnread, markRead, null);
+    }
+
+    /**
+     * 追加任意条消息，计为一轮；appendRound 与 ChatMemoryRepository 的写入都走这里，消息只持久化一份。
+     * roundId 为空时生成一个，每轮都在元信息中留下幂等键，重试时才能倒推出 seq
+     */
+    public ConversationMetaDocument appendMessages(
+            String userId,
+            String conversationId,
+            String projectId,
+            String defaultTitle,
+            List<ConversationMemoryDocument.ConversationStoredMessage> messages,
+            Instant timestamp,
+            boolean incrementUnread,
+            boolean markRead,
+            String roundId
     ) {
         String uid = StringUtils.hasText(userId) ? userId : DEFAULT_USER_ID;
         if (!StringUtils.hasText(conversationId)) {
             throw new IllegalArgumentException("conversationId 不能为空");
         }
         Instant at = timestamp != null ? timestamp : Instant.now();
+        String title = StringUtils.hasText(defaultTitle) ? defaultTitle : "未命名对话";
+        long unreadDelta = incrementUnread ? 1 : 0;
+        List<String> contentTerms = new ArrayList<>();
+        for (ConversationMemoryDocument.ConversationStoredMessage msg : messages) {
+            if (msg.getContent() == null) {
+                // 工具调用等消息可能没有文本内容，按空串存储
+                msg.setContent("");
+            }
+            if (msg.getAt() == null) {
+                msg.setAt(at);
+            }
+            if (msg.getTokens() == null) {
+                // 写入时计数一次，读取上下文时按缓存值裁剪
+                msg.setTokens(tokenCounter.count(msg.getContent()));
+            }
+            String snippet = msg.getContent().length() > memoryProperties.getSearchSnippetChars()
+                    ? msg.getContent().substring(0, memoryProperties.getSearchSnippetChars())
+                    : msg.getContent();
+            contentTerms.add(SearchTermUtil.toIndexTerms(snippet));
+        }
 
-        for (int attempt = 0; attempt < 3; attempt += 1) {
+        MongoOperationCounter.Scope scope = MongoOperationCounter.open();
+        try {
+            String key = StringUtils.hasText(roundId) ? roundId : UUID.randomUUID().toString();
+            ConversationMetaDocument header;
+            long firstSeq;
             try {
-                ConversationMemoryDocument memory = mongoDao.findMemoryById(conversationId);
-                if (memory == null) {
-                    memory = new ConversationMemoryDocument();
-                    memory.setId(conversationId);
-                    memory.setUserId(uid);
-                    memory.setCreatedAt(at);
-                    memory.setUpdatedAt(at);
-                    memory.setRoundCount(0);
-                }
-                if (memory.getMessages() == null) {
-                    memory.setMessages(new ArrayList<>());
-                }
-                if (StringUtils.hasText(userText)) {
-                    ConversationMemoryDocument.ConversationStoredMessage msg = new ConversationMemoryDocument.ConversationStoredMessage();
-                    msg.setRole("user");
-                    msg.setContent(userText);
-                    msg.setAt(at);
-                    memory.getMessages().add(msg);
-                }
-                if (StringUtils.hasText(assistantText)) {
-                    ConversationMemoryDocument.ConversationStoredMessage msg = new ConversationMemoryDocument.ConversationStoredMessage();
-                    msg.setRole("assistant");
-                    msg.setContent(assistantText);
-                    msg.setAt(at);
-                    memory.getMessages().add(msg);
-                }
-                memory.setRoundCount(memory.getRoundCount() + 1);
-                memory.setUpdatedAt(at);
-                ConversationMemoryDocument saved = mongoDao.saveMemory(memory);
-
-                ConversationMetaDocument meta = mongoDao.findMetaById(conversationId);
-                if (meta == null) {
-                    meta = new ConversationMetaDocument();
-                    meta.setId(conversationId);
-                    meta.setUserId(uid);
-                    meta.setProjectId(projectId);
-                    meta.setTitle(StringUtils.hasText(defaultTitle) ? defaultTitle : "未命名对话");
-                    meta.setCreatedAt(at);
-                    meta.setUnreadCount(0);
-                    meta.setMessageCount(0);
-                }
-                meta.setProjectId(StringUtils.hasText(projectId) ? projectId : meta.getProjectId());
-                meta.setTitle(StringUtils.hasText(meta.getTitle()) ? meta.getTitle() : "未命名对话");
-                meta.setLastMessageAt(at);
-                meta.setUpdatedAt(at);
-                long delta = 0;
-                if (StringUtils.hasText(userText)) delta += 1;
-                if (StringUtils.hasText(assistantText)) delta += 1;
-                meta.setMessageCount(meta.getMessageCount() + delta);
-                if (incrementUnread && StringUtils.hasText(assistantText)) {
-                    meta.setUnreadCount(meta.getUnreadCount() + 1);
+                header = upsertMeta(conversationId, uid, projectId, title, at, messages.size(), unreadDelta,
+                        markRead, contentTerms, key);
+                firstSeq = header.getMessageCount() - messages.size();
+            } catch (DuplicateKeyException e) {
+                header = mongoDao.findMetaById(conversationId);
+                Long appliedSeq = header != null ? appliedFirstSeq(header, key) : null;
+                if (appliedSeq != null) {
+                    // 计数已在之前的尝试中完成，只补写消息（按 seq 去重）
+                    firstSeq = appliedSeq;
+                } else {
+                    // 与其他轮次同时创建会话，文档已存在，重试一次
+                    header = upsertMeta(conversationId, uid, projectId, title, at, messages.size(), unreadDelta,
+                            markRead, contentTerms, key);
+                    firstSeq = header.getMessageCount() - messages.size();
                 }
-                mongoDao.saveMeta(meta);
+            }
+            if (header.getTitleTerms() == null && StringUtils.hasText(header.getTitle())) {
+                // 存量会话在下一轮写入时补齐标题检索词，只发生一次
+                mongoDao.setTitleTermsIfMissing(conversationId, header.getTitle(),
+                        SearchTermUtil.toIndexTerms(header.getTitle()));
+            }
+            for (int i = 0; i < messages.size(); i += 1) {
+                messages.get(i).setSeq(firstSeq + i);
+            }
+            if (header.isBucketed()) {
+                mongoDao.appendToBuckets(conversationId, uid, messages, bucketSizeOf(header), at);
+            } else {
+                mongoDao.appendMessages(conversationId, uid, messages, at);
+            }
+            return header;
+        } finally {
+            scope.close();
+            roundMongoOperations.record(scope.count());
+        }
+    }
 
-                return saved;
-            } catch (OptimisticLockingFailureException e) {
-                if (attempt == 2) {
-                    throw e;
-                }
+    /**
+     * 读取模型上下文窗口：会话末尾最多 limit 条消息（跳过上下文起点之前的消息），按时间正序。
+     * 内嵌模式用 $slice 只取尾部，分桶模式只读最新的几个桶，不加载完整历史。
+     */
+    public List<ConversationMemoryDocument.ConversationStoredMessage> getContextWindow(String conversationId, int limit) {
+        return getContext(conversationId, limit, false).messages();
+    }
+
+    /**
+     * 读取模型上下文：尾部窗口与滚动摘要，只读一次会话元信息。
+     * withSummary 为 true 时带上摘要，已并入摘要的消息不再出现在窗口中。
+     */
+    public ConversationContext getContext(String conversationId, int limit, boolean withSummary) {
+        if (!StringUtils.hasText(conversationId) || limit <= 0) {
+            return ConversationContext.EMPTY;
+        }
+        ConversationMetaDocument meta = mongoDao.findMetaById(conversationId);
+        if (meta == null) {
+            return ConversationContext.EMPTY;
+        }
+        List<ConversationMemoryDocument.ConversationStoredMessage> tail = readTail(conversationId, meta, limit);
+        long coveredUntil = withSummary ? coveredUntilSeq(meta) : contextStartSeq(meta);
+        if (meta.getContextStartSeq() != null || coveredUntil > 0) {
+            // 没有 seq 的旧消息一定早于上下文重置
+            tail.removeIf((msg) -> msg.getSeq() == null || msg.getSeq() < coveredUntil);
+        }
+        List<ConversationMemoryDocument.ConversationStoredMessage> window = tail.size() > limit
+                ? new ArrayList<>(tail.subList(tail.size() - limit, tail.size()))
+                : tail;
+        return new ConversationContext(window, withSummary ? meta.getContextSummary() : null, coveredUntil);
+    }
+
+    /**
+     * 读取 seq 在 [fromSeq, toSeq) 内的消息，按 seq 正序；只读会话尾部，供滚动摘要使用
+     */
+    public List<ConversationMemoryDocument.ConversationStoredMessage> getMessagesBySeq(
+            String conversationId, long fromSeq, long toSeq) {
+        ConversationMetaDocument meta = mongoDao.findMetaById(conversationId);
+        if (meta == null || toSeq <= fromSeq) {
+            return List.of();
+        }
+        int limit = (int) Math.min(Integer.MAX_VALUE, Math.max(1, meta.getMessageCount() - fromSeq));
+        List<ConversationMemoryDocument.ConversationStoredMessage> tail = readTail(conversationId, meta, limit);
+        tail.removeIf((msg) -> msg.getSeq() == null || msg.getSeq() < fromSeq || msg.getSeq() >= toSeq);
+        tail.sort(Comparator.comparing(ConversationMemoryDocument.ConversationStoredMessage::getSeq));
+        return tail;
+    }
+
+    /**
+     * 保存滚动摘要；期间摘要进度或上下文起点已变化时返回 false
+     */
+    public boolean saveSummary(ConversationMetaDocument readMeta, String summary, long untilSeq) {
+        return mongoDao.updateSummary(readMeta.getId(), readMeta.getSummarizedUntilSeq(),
+                readMeta.getContextStartSeq(), summary, untilSeq, Instant.now());
+    }
+
+    public ConversationMetaDocument findMeta(String conversationId) {
+        return mongoDao.findMetaById(conversationId);
+    }
+
+    /**
+     * 摘要或上下文起点之后的第一条消息 seq
+     */
+    static long coveredUntilSeq(ConversationMetaDocument meta) {
+        long startSeq = contextStartSeq(meta);
+        if (StringUtils.hasText(meta.getContextSummary()) && meta.getSummarizedUntilSeq() != null) {
+            return Math.max(startSeq, meta.getSummarizedUntilSeq());
+        }
+        return startSeq;
+    }
+
+    private static long contextStartSeq(ConversationMetaDocument meta) {
+        return meta.getContextStartSeq() != null ? meta.getContextStartSeq() : 0L;
+    }
+
+    private List<ConversationMemoryDocument.ConversationStoredMessage> readTail(
+            String conversationId, ConversationMetaDocument meta, int limit) {
+        List<ConversationMemoryDocument.ConversationStoredMessage> tail = new ArrayList<>();
+        if (meta.isBucketed()) {
+            List<ConversationMessageBucketDocument> buckets =
+                    mongoDao.findBuckets(conversationId, null, null, true, limit / bucketSizeOf(meta) + 2);
+            for (int i = buckets.size() - 1; i >= 0; i -= 1) {
+                tail.addAll(buckets.get(i).getMessages());
+            }
+            tail.sort(Comparator.comparing(
+                    ConversationMemoryDocument.ConversationStoredMessage::getSeq,
+                    Comparator.nullsFirst(Comparator.naturalOrder())));
+        } else {
+            ConversationMemoryDocument memory = mongoDao.findMemoryTail(conversationId, limit);
+            if (memory != null && memory.getMessages() != null) {
+                tail.addAll(memory.getMessages());
             }
         }
-        throw new IllegalStateException("appendRound failed");
+        return tail;
+    }
+
+    /**
+     * 清空模型上下文：只移动上下文起点，会话历史仍可通过 getMessages 查看
+     */
+    public void resetContext(String conversationId) {
+        if (!StringUtils.hasText(conversationId)) {
+            throw new IllegalArgumentException("conversationId 不能为空");
+        }
+        ConversationMetaDocument meta = mongoDao.findMetaById(conversationId);
+        if (meta != null) {
+            mongoDao.resetContext(conversationId, meta.getMessageCount());
+        }
+    }
+
+    public List<String> findConversationIds() {
+        return mongoDao.findConversationIds();
     }
 
     public void markRead(String userId, String conversationId) {
         String uid = StringUtils.hasText(userId) ? userId : DEFAULT_USER_ID;
-        ConversationMetaDocument meta = mongoDao.findMetaById(conversationId);
-        if (meta == null || !uid.equals(meta.getUserId())) return;
-        meta.setUnreadCount(0);
-        meta.setUpdatedAt(Instant.now());
-        mongoDao.saveMeta(meta);
+        mongoDao.markRead(conversationId, uid, Instant.now());
+    }
+
+    private static ConversationSummaryDto toSummary(ConversationMetaDocument meta) {
+        ConversationSummaryDto dto = new ConversationSummaryDto();
+        dto.setId(meta.getId());
+        dto.setTitle(StringUtils.hasText(meta.getTitle()) ? meta.getTitle() : "未命名对话");
+        dto.setLastMessageAt(meta.getLastMessageAt() != null ? meta.getLastMessageAt().toString() : null);
+        dto.setUnreadCount(meta.getUnreadCount());
+        return dto;
     }
-}
 
+    private ConversationMetaDocument upsertMeta(
+            String conversationId,
+            String uid,
+            String projectId,
+            String title,
+            Instant at,
+            int messageCount,
+            long unreadDelta,
+            boolean markRead,
+            List<String> contentTerms,
+            String roundId
+    ) {
+        return mongoDao.upsertMetaOnAppend(
+                conversationId,
+                uid,
+                projectId,
+                title,
+                at,
+                messageCount,
+                unreadDelta,
+                markRead,
+                memoryProperties.getStorageMode(),
+                memoryProperties.getBucketSize(),
+                contentTerms,
+                memoryProperties.getSearchContentMessages(),
+                roundId
+        );
+    }
+
+    /**
+     * appliedRounds 与 messageCount 在同一次更新中写入：从最新一轮往前累减消息条数，即得到 roundId 那一轮的首条 seq。
+     * roundId 不在窗口内时返回 null
+     */
+    static Long appliedFirstSeq(ConversationMetaDocument meta, String roundId) {
+        List<ConversationMetaDocument.AppliedRound> applied = meta.getAppliedRounds();
+        if (applied == null) {
+            return null;
+        }
+        long end = meta.getMessageCount();
+        for (int i = applied.size() - 1; i >= 0; i -= 1) {
+            ConversationMetaDocument.AppliedRound round = applied.get(i);
+            end -= round.getMessages();
+            if (roundId.equals(round.getRoundId())) {
+                return end;
+            }
+        }
+        return null;
+    }
+
+    private int bucketSizeOf(ConversationMetaDocument meta) {
+        Integer size = meta.getBucketSize();
+        return size != null && size > 0 ? size : Math.max(1, memoryProperties.getBucketSize());
+    }
+
+    public static ConversationMemoryDocument.ConversationStoredMessage storedMessage(String role, String content, Instant at) {
+        ConversationMemoryDocument.ConversationStoredMessage msg = new ConversationMemoryDocument.ConversationStoredMessage();
+        msg.setRole(role);
+        msg.setContent(content);
+        msg.setAt(at);
+        return msg;
+    }
+}
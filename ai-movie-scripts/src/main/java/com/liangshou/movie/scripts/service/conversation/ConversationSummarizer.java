@@ -0,0 +1,179 @@
+package com.liangshou.movie.scripts.service.conversation;
+
+import com.liangshou.movie.scripts.common.config.conversation.ConversationSummaryProperties;
+import com.liangshou.movie.scripts.common.constants.PromptConstant;
+import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationMemoryDocument;
+import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationMetaDocument;
+import com.liangshou.movie.scripts.service.generation.GenerationLogAdvisor;
+import com.liangshou.movie.scripts.service.generation.ModelProvider;
+import com.liangshou.movie.scripts.service.generation.RequestHedger;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * 对话滚动摘要：移出上下文窗口的早期消息在后台压缩进会话摘要，读取上下文时作为系统消息带入。
+ * 每次只处理一批消息，摘要进度记录在会话元信息上，积压较多时随后续对话分批追上。
+ * 模型调用经 RequestHedger，与其他调用一样受提供方限流、并发限制与熔断约束，等待响应时不占用线程。
+ * 同一会话同时只有一个摘要任务，进行中的任务达到上限时直接丢弃，下次读取上下文时会再次触发。
+ */
+@Slf4j
+@Component
+public class ConversationSummarizer {
+
+    private static final String LOG_TYPE = "CONVERSATION_SUMMARY";
+
+    private final ModelProvider provider;
+    private final RequestHedger hedger;
+    private final ConversationService conversationService;
+    private final ConversationSummaryProperties properties;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final MeterRegistry meterRegistry;
+    private final Counter dropped;
+
+    public ConversationSummarizer(
+            @Qualifier("qwenModelProvider") ModelProvider provider,
+            RequestHedger hedger,
+            ConversationService conversationService,
+            ConversationSummaryProperties properties,
+            MeterRegistry meterRegistry) {
+        this.provider = provider;
+        this.hedger = hedger;
+        this.conversationService = conversationService;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.dropped = Counter.builder("conversation.summary.dropped")
+                .description("进行中的摘要任务已达上限未能提交的次数")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 读取上下文后调用：coveredUntilSeq 之后、firstKeptSeq 之前的消息已移出窗口且尚未摘要，
+     * 条数达到阈值时启动后台摘要任务
+     */
+    public void requestIfNeeded(String conversationId, long coveredUntilSeq, long firstKeptSeq) {
+        if (!properties.isEnabled() || firstKeptSeq - coveredUntilSeq < Math.max(1, properties.getMinEvictedMessages())) {
+            return;
+        }
+        if (!pending.add(conversationId)) {
+            return;
+        }
+        if (pending.size() > Math.max(1, properties.getQueueCapacity())) {
+            pending.remove(conversationId);
+            dropped.increment();
+            return;
+        }
+        summarize(conversationId, firstKeptSeq)
+                .doFinally((signal) -> pending.remove(conversationId))
+                .subscribe(null, (e) -> log.warn("conversation_summary_failed conversationId={} error={}",
+                        conversationId, e.getMessage()));
+    }
+
+    /**
+     * 将摘要进度之后、firstKeptSeq 之前的最多一批消息并入摘要，结果为是否写入了新摘要；
+     * 会话读写在 boundedElastic 上进行
+     */
+    Mono<Boolean> summarize(String conversationId, long firstKeptSeq) {
+        return Mono.fromCallable(() -> nextBatch(conversationId, firstKeptSeq))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap((batch) -> {
+                    Timer.Sample sample = Timer.start(meterRegistry);
+                    AtomicReference<String> outcome = new AtomicReference<>("failure");
+                    return call(batch)
+                            .publishOn(Schedulers.boundedElastic())
+                            .map((summary) -> save(conversationId, batch, summary, outcome))
+                            .doFinally((signal) -> sample.stop(Timer.builder("conversation.summary")
+                                    .tag("outcome", outcome.get())
+                                    .register(meterRegistry)));
+                })
+                .defaultIfEmpty(false);
+    }
+
+    /**
+     * 待摘要的一批消息，没有需要摘要的消息时返回 null
+     */
+    private SummaryBatch nextBatch(String conversationId, long firstKeptSeq) {
+        ConversationMetaDocument meta = conversationService.findMeta(conversationId);
+        if (meta == null) {
+            return null;
+        }
+        long from = ConversationService.coveredUntilSeq(meta);
+        long to = Math.min(firstKeptSeq, from + Math.max(1, properties.getMaxBatchMessages()));
+        if (to <= from) {
+            return null;
+        }
+        List<ConversationMemoryDocument.ConversationStoredMessage> messages =
+                conversationService.getMessagesBySeq(conversationId, from, to);
+        if (messages.isEmpty()) {
+            return null;
+        }
+        String previous = StringUtils.hasText(meta.getContextSummary()) ? meta.getContextSummary() : null;
+        return new SummaryBatch(meta, previous, messages, to);
+    }
+
+    private Mono<String> call(SummaryBatch batch) {
+        String systemPrompt = PromptConstant.getConversationSummaryPrompt()
+                .render(Map.of("maxChars", properties.getMaxSummaryChars()));
+        String userMessage = input(batch.previous(), batch.messages());
+        return hedger.execute(provider, (target) -> target.chatClient().prompt()
+                        .system(systemPrompt)
+                        .user(userMessage)
+                        .advisors((advisor) -> advisor.param(GenerationLogAdvisor.TYPE, LOG_TYPE))
+                        .stream()
+                        .content())
+                .collect(Collectors.joining());
+    }
+
+    private boolean save(String conversationId, SummaryBatch batch, String summary, AtomicReference<String> outcome) {
+        if (!StringUtils.hasText(summary)) {
+            return false;
+        }
+        summary = summary.trim();
+        if (summary.length() > properties.getMaxSummaryChars()) {
+            summary = summary.substring(0, properties.getMaxSummaryChars());
+        }
+        boolean saved = conversationService.saveSummary(batch.meta(), summary, batch.to());
+        outcome.set(saved ? "success" : "conflict");
+        log.info("conversation_summary conversationId={} untilSeq={} messages={} chars={} saved={}",
+                conversationId, batch.to(), batch.messages().size(), summary.length(), saved);
+        return saved;
+    }
+
+    private String input(String previous, List<ConversationMemoryDocument.ConversationStoredMessage> messages) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("## 已有摘要\n").append(previous != null ? previous : "（无）").append("\n\n## 更早的对话记录\n");
+        for (ConversationMemoryDocument.ConversationStoredMessage msg : messages) {
+            String content = msg.getContent() != null ? msg.getContent() : "";
+            if (content.length() > properties.getMaxMessageChars()) {
+                content = content.substring(0, properties.getMaxMessageChars()) + "……（已截断）";
+            }
+            sb.append("assistant".equals(msg.getRole()) ? "助手" : "用户").append("：").append(content).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private record SummaryBatch(
+            ConversationMetaDocument meta,
+            String previous,
+            List<ConversationMemoryDocument.ConversationStoredMessage> messages,
+            long to
+    ) {
+    }
+}
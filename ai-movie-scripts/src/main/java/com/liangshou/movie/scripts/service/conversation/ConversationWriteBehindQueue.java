@@ -0,0 +1,496 @@
+package com.liangshou.movie.scripts.service.conversation;
+
+import com.liangshou.movie.scripts.common.config.conversation.ConversationWriteBehindProperties;
+import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationMetaDocument;
+import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationMongoDao;
+import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationPendingWriteDocument;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对话轮次的异步写入队列（write-behind）。
+ * 流式对话结束后只需入队即可返回，由独立的单线程按提交顺序批量写入 Mongo，保证同一会话的轮次顺序。
+ * 提交线程（通常是模型流的事件循环线程）从不做 I/O 或等待：队列满时交给溢出线程落库到 conversation_pending_writes。
+ * 每轮带幂等键，内存重试与重放都不会重复计数。写入失败的轮次连同该会话之后的轮次暂存在内存中，
+ * 退避时间到后由写入线程重试，写入线程从不休眠，其他会话的写入不受影响；重试耗尽后转入待重放。
+ * 会话有待重放的轮次时，其后续轮次也转入待重放，重放按会话认领最早的一条（带租约，多实例不会重复重放），
+ * 保证同一会话按提交顺序写入。
+ */
+@Slf4j
+@Component
+public class ConversationWriteBehindQueue {
+
+    private static final long POLL_MILLIS = 200;
+
+    private final ConversationService conversationService;
+    private final ConversationMongoDao mongoDao;
+    private final ConversationWriteBehindProperties properties;
+    private final BlockingQueue<PendingRound> queue;
+    private final Map<String, CompletableFuture<ConversationMetaDocument>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Integer> spilling = new ConcurrentHashMap<>();
+    private final ExecutorService worker;
+    private final ThreadPoolExecutor spillExecutor;
+    private final ScheduledExecutorService retryScheduler;
+    /**
+     * 等待退避重试的会话及其暂存的轮次，只由写入线程访问
+     */
+    private final Map<String, ParkedConversation> parked = new HashMap<>();
+    /**
+     * 退避时间已到、等待写入线程重试的会话
+     */
+    private final Queue<String> retryDue = new ConcurrentLinkedQueue<>();
+    private final String owner = UUID.randomUUID().toString();
+    private volatile boolean running;
+    private Instant nextRedriveAt = Instant.EPOCH;
+
+    private final Counter enqueued;
+    private final Counter spilled;
+    private final Counter heldBack;
+    private final Counter persisted;
+    private final Counter retries;
+    private final Counter deadLetters;
+    private final Counter redriven;
+    private final DistributionSummary batchSize;
+    private final Timer lag;
+
+    public ConversationWriteBehindQueue(
+            ConversationService conversationService,
+            ConversationMongoDao mongoDao,
+            ConversationWriteBehindProperties properties,
+            MeterRegistry meterRegistry) {
+        this.conversationService = conversationService;
+        this.mongoDao = mongoDao;
+        this.properties = properties;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, properties.getQueueCapacity()));
+        this.worker = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("conversation-write-behind-"));
+        this.spillExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, properties.getQueueCapacity())),
+                new CustomizableThreadFactory("conversation-write-spill-"));
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(
+                new CustomizableThreadFactory("conversation-write-retry-"));
+
+        Gauge.builder("conversation.write.behind.queue.size", queue, BlockingQueue::size)
+                .description("等待写入的对话轮次数")
+                .register(meterRegistry);
+        this.enqueued = Counter.builder("conversation.write.behind.enqueued").register(meterRegistry);
+        this.spilled = Counter.builder("conversation.write.behind.spilled")
+                .description("队列满时直接转入待重放的轮次数")
+                .register(meterRegistry);
+        this.heldBack = Counter.builder("conversation.write.behind.held.back")
+                .description("因同一会话有更早的待重试或待重放轮次而暂缓写入的轮次数")
+                .register(meterRegistry);
+        this.persisted = Counter.builder("conversation.write.behind.persisted").register(meterRegistry);
+        this.retries = Counter.builder("conversation.write.behind.retries").register(meterRegistry);
+        this.deadLetters = Counter.builder("conversation.write.behind.dead.letters")
+                .description("重试耗尽后落库等待重放的轮次数")
+                .register(meterRegistry);
+        this.redriven = Counter.builder("conversation.write.behind.redriven").register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("conversation.write.behind.batch.size").register(meterRegistry);
+        this.lag = Timer.builder("conversation.write.behind.lag")
+                .description("从入队到写入完成的耗时")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        worker.execute(this::drainLoop);
+    }
+
+    /**
+     * 提交一轮对话等待异步写入，返回写入完成（或落库等待重放）时结束的 future
+     */
+    public CompletableFuture<ConversationMetaDocument> submit(
+            String userId,
+            String conversationId,
+            String projectId,
+            String defaultTitle,
+            String userText,
+            String assistantText,
+            Instant timestamp,
+            boolean incrementUnread,
+            boolean markRead
+    ) {
+        PendingRound round = new PendingRound(UUID.randomUUID().toString(), userId, conversationId, projectId,
+                defaultTitle, userText, assistantText, timestamp != null ? timestamp : Instant.now(), incrementUnread,
+                markRead, System.nanoTime(), new CompletableFuture<>());
+        inFlight.put(conversationId, round.future());
+        round.future().whenComplete((saved, error) -> inFlight.remove(conversationId, round.future()));
+
+        if (running && queue.offer(round)) {
+            enqueued.increment();
+        } else {
+            spill(round);
+        }
+        return round.future();
+    }
+
+    /**
+     * 等待该会话已提交的轮次写入完成，读取上下文前调用以保证读到上一轮
+     */
+    public void awaitPersisted(String conversationId) {
+        if (conversationId != null) {
+            await(inFlight.get(conversationId));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        worker.shutdown();
+        try {
+            if (!worker.awaitTermination(properties.getShutdownTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                worker.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            worker.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        List<PendingRound> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (PendingRound round : remaining) {
+            deadLetter(round, 0, "应用关闭时未写入", Instant.now());
+        }
+        retryScheduler.shutdownNow();
+        spillExecutor.shutdown();
+        try {
+            if (!spillExecutor.awaitTermination(properties.getShutdownTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                spillExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            spillExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 队列已满或已关闭：交给溢出线程落库，由重放按顺序写入。落库完成前该会话计入 spilling，
+     * 写入线程据此暂缓其后续轮次；溢出线程的队列也满时只能记录日志放弃
+     */
+    private void spill(PendingRound round) {
+        spilled.increment();
+        String conversationId = round.conversationId();
+        spilling.merge(conversationId, 1, Integer::sum);
+        try {
+            spillExecutor.execute(() -> {
+                try {
+                    deadLetter(round, 0, "写入队列已满", Instant.now());
+                } finally {
+                    spilling.computeIfPresent(conversationId, (key, count) -> count > 1 ? count - 1 : null);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            spilling.computeIfPresent(conversationId, (key, count) -> count > 1 ? count - 1 : null);
+            log.error("write_behind_lost conversationId={} at={} userText={} assistantText={}",
+                    conversationId, round.at(), round.userText(), round.assistantText());
+            round.future().completeExceptionally(new IllegalStateException("对话写入队列已满"));
+        }
+    }
+
+    private void drainLoop() {
+        List<PendingRound> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                retryParked();
+                PendingRound first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, Math.max(0, properties.getBatchSize() - 1));
+                    batchSize.record(batch.size());
+                    Set<String> held = conversationsWithPendingWrites(batch);
+                    for (PendingRound round : batch) {
+                        ParkedConversation waiting = parked.get(round.conversationId());
+                        if (held.contains(round.conversationId())) {
+                            // 更早的轮次还在等待重放，本轮跟在其后，避免顺序颠倒
+                            heldBack.increment();
+                            deadLetter(round, 0, "等待同一会话更早的轮次重放", Instant.now());
+                        } else if (waiting != null) {
+                            // 更早的轮次正在等待退避重试，本轮排在其后
+                            heldBack.increment();
+                            waiting.rounds().addLast(round);
+                        } else {
+                            ArrayDeque<PendingRound> rounds = new ArrayDeque<>();
+                            rounds.add(round);
+                            drain(new ParkedConversation(round.conversationId(), rounds));
+                        }
+                    }
+                    batch.clear();
+                }
+                if (running && !Instant.now().isBefore(nextRedriveAt)) {
+                    nextRedriveAt = Instant.now().plusMillis(properties.getRedriveIntervalMillis());
+                    redrivePendingWrites(Instant.now());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                log.error("write_behind_loop_error", e);
+            }
+        }
+        // 关闭时仍在等待重试的轮次按顺序转入待重放
+        for (ParkedConversation waiting : parked.values()) {
+            deadLetterAll(waiting, "应用关闭时未写入", Instant.now());
+        }
+        parked.clear();
+    }
+
+    private void retryParked() {
+        for (String conversationId = retryDue.poll(); conversationId != null; conversationId = retryDue.poll()) {
+            ParkedConversation waiting = parked.remove(conversationId);
+            if (waiting != null) {
+                drain(waiting);
+            }
+        }
+    }
+
+    /**
+     * 按顺序写入一个会话暂存的轮次。失败时（幂等键保证重试不会重复计数）整组暂存，
+     * 由重试调度线程在退避时间到后通知写入线程，写入线程不等待；重试耗尽则与其后的轮次一起转入待重放
+     */
+    private void drain(ParkedConversation waiting) {
+        while (!waiting.rounds().isEmpty()) {
+            PendingRound round = waiting.rounds().peekFirst();
+            try {
+                ConversationMetaDocument saved = conversationService.appendRound(
+                        round.userId(),
+                        round.conversationId(),
+                        round.projectId(),
+                        round.title(),
+                        round.userText(),
+                        round.assistantText(),
+                        round.at(),
+                        round.incrementUnread(),
+                        round.markRead(),
+                        round.roundId()
+                );
+                waiting.rounds().pollFirst();
+                waiting.attempts = 0;
+                lag.record(System.nanoTime() - round.enqueuedNanos(), TimeUnit.NANOSECONDS);
+                persisted.increment();
+                round.future().complete(saved);
+            } catch (RuntimeException e) {
+                waiting.attempts += 1;
+                if (waiting.attempts >= properties.getMaxAttempts() || !running) {
+                    log.warn("write_behind_give_up conversationId={} attempts={}", round.conversationId(), waiting.attempts, e);
+                    deadLetterAll(waiting, e.getMessage(), Instant.now().plusMillis(properties.getRedriveIntervalMillis()));
+                    return;
+                }
+                retries.increment();
+                long backoff = Math.max(1, properties.getRetryBackoffMillis()) << Math.min(20, waiting.attempts - 1);
+                log.warn("write_behind_retry conversationId={} attempt={} backoffMs={} error={}",
+                        round.conversationId(), waiting.attempts, backoff, e.getMessage());
+                parked.put(waiting.conversationId(), waiting);
+                try {
+                    retryScheduler.schedule(() -> retryDue.offer(waiting.conversationId()), backoff, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException rejected) {
+                    // 正在关闭，写入线程退出时统一转入待重放
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * 失败的轮次带着尝试次数转入待重放，其后的轮次随之转入，重放时按提交顺序写入
+     */
+    private void deadLetterAll(ParkedConversation waiting, String error, Instant nextAttemptAt) {
+        PendingRound head = waiting.rounds().pollFirst();
+        if (head != null) {
+            deadLetter(head, waiting.attempts, error, nextAttemptAt);
+        }
+        for (PendingRound round = waiting.rounds().pollFirst(); round != null; round = waiting.rounds().pollFirst()) {
+            deadLetter(round, 0, "等待同一会话更早的轮次重放", Instant.now());
+        }
+    }
+
+    /**
+     * 先看溢出中的会话再查库：溢出线程在落库完成后才移出 spilling，两步之间不会漏掉
+     */
+    private Set<String> conversationsWithPendingWrites(List<PendingRound> batch) {
+        Set<String> held = new HashSet<>();
+        Set<String> others = new HashSet<>();
+        for (PendingRound round : batch) {
+            if (spilling.containsKey(round.conversationId())) {
+                held.add(round.conversationId());
+            } else {
+                others.add(round.conversationId());
+            }
+        }
+        others.removeAll(held);
+        if (!others.isEmpty()) {
+            try {
+                held.addAll(mongoDao.findConversationIdsWithPendingWrites(others));
+            } catch (RuntimeException e) {
+                // 查询失败时照常写入，写入本身也失败时会转入待重放
+                log.warn("write_behind_pending_query_failed error={}", e.getMessage());
+            }
+        }
+        return held;
+    }
+
+    private void deadLetter(PendingRound round, int attempts, String error, Instant nextAttemptAt) {
+        ConversationPendingWriteDocument doc = new ConversationPendingWriteDocument();
+        doc.setId(round.roundId());
+        doc.setUserId(round.userId());
+        doc.setConversationId(round.conversationId());
+        doc.setProjectId(round.projectId());
+        doc.setTitle(round.title());
+        doc.setUserText(round.userText());
+        doc.setAssistantText(round.assistantText());
+        doc.setAt(round.at());
+        doc.setIncrementUnread(round.incrementUnread());
+        doc.setMarkRead(round.markRead());
+        doc.setAttempts(attempts);
+        doc.setLastError(error);
+        doc.setCreatedAt(Instant.now());
+        doc.setNextAttemptAt(nextAttemptAt);
+        try {
+            mongoDao.savePendingWrite(doc);
+            deadLetters.increment();
+        } catch (RuntimeException e) {
+            log.error("write_behind_lost conversationId={} at={} userText={} assistantText={}",
+                    round.conversationId(), round.at(), round.userText(), round.assistantText(), e);
+        }
+        round.future().completeExceptionally(new IllegalStateException("对话写入失败，已转入待重放: " + error));
+    }
+
+    /**
+     * 重放已到期的落库轮次：按会话逐条认领最早的一条，成功后删除并继续下一条，失败则推迟到下一个周期，
+     * 该会话后面的轮次继续等待；返回成功重放的条数
+     */
+    int redrivePendingWrites(Instant now) {
+        List<ConversationPendingWriteDocument> due;
+        try {
+            due = mongoDao.findDuePendingWrites(now, properties.getBatchSize());
+        } catch (RuntimeException e) {
+            log.warn("write_behind_redrive_query_failed error={}", e.getMessage());
+            return 0;
+        }
+        Set<String> conversationIds = new LinkedHashSet<>();
+        for (ConversationPendingWriteDocument doc : due) {
+            conversationIds.add(doc.getConversationId());
+        }
+        int succeeded = 0;
+        for (String conversationId : conversationIds) {
+            succeeded += redriveConversation(conversationId, now);
+        }
+        return succeeded;
+    }
+
+    private int redriveConversation(String conversationId, Instant now) {
+        int succeeded = 0;
+        for (int i = 0; i < Math.max(1, properties.getBatchSize()); i += 1) {
+            ConversationPendingWriteDocument doc;
+            try {
+                doc = mongoDao.claimPendingWriteHead(conversationId, now,
+                        now.plusMillis(properties.getRedriveLeaseMillis()), owner);
+            } catch (RuntimeException e) {
+                log.warn("write_behind_redrive_claim_failed conversationId={} error={}", conversationId, e.getMessage());
+                return succeeded;
+            }
+            if (doc == null) {
+                // 没有待重放的轮次、最早的一条未到重试时间，或正由其他实例重放
+                return succeeded;
+            }
+            try {
+                conversationService.appendRound(doc.getUserId(), doc.getConversationId(), doc.getProjectId(),
+                        doc.getTitle(), doc.getUserText(), doc.getAssistantText(), doc.getAt(),
+                        doc.isIncrementUnread(), doc.isMarkRead(), doc.getId());
+                mongoDao.deletePendingWrite(doc.getId());
+                redriven.increment();
+                succeeded += 1;
+            } catch (RuntimeException e) {
+                log.warn("write_behind_redrive_failed conversationId={} id={} error={}",
+                        conversationId, doc.getId(), e.getMessage());
+                try {
+                    mongoDao.releasePendingWrite(doc.getId(), e.getMessage(),
+                            now.plus(Duration.ofMillis(properties.getRedriveIntervalMillis())));
+                } catch (RuntimeException ignored) {
+                    // 记录仍在库中，租约到期后会再次重放
+                }
+                return succeeded;
+            }
+        }
+        return succeeded;
+    }
+
+    private void await(CompletableFuture<ConversationMetaDocument> future) {
+        if (future == null) return;
+        try {
+            future.get(properties.getAwaitTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.debug("write_behind_await_skipped error={}", e.getMessage());
+        }
+    }
+
+    private static final class ParkedConversation {
+
+        private final String conversationId;
+        private final ArrayDeque<PendingRound> rounds;
+        private int attempts;
+
+        private ParkedConversation(String conversationId, ArrayDeque<PendingRound> rounds) {
+            this.conversationId = conversationId;
+            this.rounds = rounds;
+        }
+
+        private String conversationId() {
+            return conversationId;
+        }
+
+        private ArrayDeque<PendingRound> rounds() {
+            return rounds;
+        }
+    }
+
+    private record PendingRound(
+            String roundId,
+            String userId,
+            String conversationId,
+            String projectId,
+            String title,
+            String userText,
+            String assistantText,
+            Instant at,
+            boolean incrementUnread,
+            boolean markRead,
+            long enqueuedNanos,
+            CompletableFuture<ConversationMetaDocument> future
+    ) {
+    }
+}
@@ -0,0 +1,50 @@
+package com.liangshou.movie.scripts.service.conversation;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingType;
+import com.liangshou.movie.scripts.common.config.conversation.ConversationMemoryProperties;
+import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationMemoryDocument;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+/**
+ * 用本地 BPE 分词器估算消息 token 数，用于按预算裁剪模型上下文。
+ * 消息写入时计算一次并随消息持久化，读取上下文时直接使用缓存值。
+ */
+@Component
+public class MessageTokenCounter {
+
+    /**
+     * 每条消息的格式开销（角色标记、分隔符），按 OpenAI 兼容对话格式估算
+     */
+    static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    private final Encoding encoding;
+
+    public MessageTokenCounter(ConversationMemoryProperties memoryProperties) {
+        EncodingType type;
+        try {
+            type = EncodingType.valueOf(memoryProperties.getTokenizerEncoding().trim().toUpperCase(Locale.ROOT));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("不支持的分词编码: " + memoryProperties.getTokenizerEncoding());
+        }
+        this.encoding = Encodings.newLazyEncodingRegistry().getEncoding(type);
+    }
+
+    /**
+     * 文本本身的 token 数
+     */
+    public int count(String text) {
+        return text == null || text.isEmpty() ? 0 : encoding.countTokens(text);
+    }
+
+    /**
+     * 消息在上下文中占用的 token 数（含格式开销），优先使用写入时缓存的计数
+     */
+    public int count(ConversationMemoryDocument.ConversationStoredMessage msg) {
+        Integer cached = msg.getTokens();
+        return (cached != null ? cached : count(msg.getContent())) + MESSAGE_OVERHEAD_TOKENS;
+    }
+}
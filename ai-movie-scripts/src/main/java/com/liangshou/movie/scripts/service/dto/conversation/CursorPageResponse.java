@@ -0,0 +1,19 @@
+package com.liangshou.movie.scripts.service.dto.conversation;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class CursorPageResponse<T> {
+    private List<T> items;
+    /**
+     * 下一页游标，没有更多数据时为 null
+     */
+    private String nextCursor;
+    private boolean hasMore;
+    /**
+     * 总数，仅在请求 withTotal=true 时返回
+     */
+    private Long total;
+}
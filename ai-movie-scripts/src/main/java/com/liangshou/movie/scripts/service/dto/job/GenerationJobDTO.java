@@ -0,0 +1,25 @@
+package com.liangshou.movie.scripts.service.dto.job;
+
+import lombok.Data;
+
+import java.time.Instant;
+
+/**
+ * 异步生成任务的状态与结果
+ */
+@Data
+public class GenerationJobDTO {
+    private String jobId;
+    private String type;
+    private String projectId;
+    /**
+     * PROCESSING | SUCCESS | FAILED
+     */
+    private String status;
+    private String result;
+    private String errorMessage;
+    private Integer attempts;
+    private Integer executionTimeMs;
+    private Instant createdAt;
+    private Instant finishedAt;
+}
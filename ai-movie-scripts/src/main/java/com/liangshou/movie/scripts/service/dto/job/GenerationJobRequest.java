@@ -0,0 +1,17 @@
+package com.liangshou.movie.scripts.service.dto.job;
+
+import lombok.Data;
+
+@Data
+public class GenerationJobRequest {
+    /**
+     * 生成类型：creative | theme | summary | characters | outline | chapter
+     */
+    private String type;
+    private String request;
+    private String projectId;
+    /**
+     * 可选，相同幂等键重复提交返回同一任务
+     */
+    private String idempotencyKey;
+}
@@ -0,0 +1,73 @@
+package com.liangshou.movie.scripts.service.dto.outline;
+
+import lombok.Data;
+
+/**
+ * 桥段批量生成的进度事件，每完成（或失败）一个桥段推送一次
+ */
+@Data
+public class EpisodeGenerationEvent {
+
+    public static final String STATUS_DONE = "DONE";
+    public static final String STATUS_FAILED = "FAILED";
+
+    /**
+     * 落库后的桥段内容ID，失败时为空
+     */
+    private String id;
+
+    /**
+     * 大纲中的桥段ID
+     */
+    private String episodeId;
+
+    /**
+     * 所属章节ID
+     */
+    private String chapterId;
+
+    /**
+     * 桥段号
+     */
+    private Integer episodeNumber;
+
+    /**
+     * 桥段标题
+     */
+    private String episodeTitle;
+
+    /**
+     * DONE | FAILED
+     */
+    private String status;
+
+    /**
+     * 桥段内容
+     */
+    private String content;
+
+    /**
+     * 字数统计
+     */
+    private Integer wordCount;
+
+    /**
+     * 失败原因
+     */
+    private String error;
+
+    /**
+     * 本桥段生成耗时（毫秒）
+     */
+    private Long elapsedMillis;
+
+    /**
+     * 已完成的桥段数（含失败）
+     */
+    private Integer completed;
+
+    /**
+     * 桥段总数
+     */
+    private Integer total;
+}
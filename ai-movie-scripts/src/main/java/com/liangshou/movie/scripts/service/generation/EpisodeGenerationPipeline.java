@@ -0,0 +1,217 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import com.liangshou.movie.scripts.common.config.llm.EpisodePipelineProperties;
+import com.liangshou.movie.scripts.service.IScriptEpisodeService;
+import com.liangshou.movie.scripts.service.agents.agentimpl.AIScriptWritingAgent;
+import com.liangshou.movie.scripts.service.dto.ScriptEpisodeDTO;
+import com.liangshou.movie.scripts.service.dto.StoryOutlineDTO;
+import com.liangshou.movie.scripts.service.dto.outline.EpisodeGenerationEvent;
+import com.liangshou.movie.scripts.service.dto.outline.OutlineChapterDTO;
+import com.liangshou.movie.scripts.service.dto.outline.OutlineEpisodeDTO;
+import com.liangshou.movie.scripts.service.dto.outline.OutlineSectionDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 按大纲并行生成全部桥段：flatMap 限制同时生成的桥段数，模型请求速率由 ProviderRateLimiter 按提供方控制。
+ * 每个桥段生成后立即写入 scripts_episodes 并推送一条进度事件，单个桥段失败不影响其他桥段。
+ * 总耗时约为 单桥段耗时 × ⌈桥段数 / 并发数⌉，而不是逐个调用时的耗时之和。
+ */
+@Slf4j
+@Component
+public class EpisodeGenerationPipeline {
+
+    private final AIScriptWritingAgent aiScriptWritingAgent;
+    private final IScriptEpisodeService scriptEpisodeService;
+    private final EpisodePipelineProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    public EpisodeGenerationPipeline(
+            AIScriptWritingAgent aiScriptWritingAgent,
+            IScriptEpisodeService scriptEpisodeService,
+            EpisodePipelineProperties properties,
+            MeterRegistry meterRegistry) {
+        this.aiScriptWritingAgent = aiScriptWritingAgent;
+        this.scriptEpisodeService = scriptEpisodeService;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 校验并展开大纲，返回按完成顺序推送的进度事件流；大纲为空或桥段数超限时直接抛出 IllegalArgumentException
+     */
+    public Flux<EpisodeGenerationEvent> generateEpisodes(StoryOutlineDTO outline) {
+        List<EpisodeTask> tasks = plan(outline);
+        int total = tasks.size();
+        AtomicInteger completed = new AtomicInteger();
+        return Flux.fromIterable(tasks)
+                .flatMap((task) -> generateOne(task).map((event) -> {
+                    event.setCompleted(completed.incrementAndGet());
+                    event.setTotal(total);
+                    return event;
+                }), Math.max(1, properties.getConcurrency()));
+    }
+
+    private Mono<EpisodeGenerationEvent> generateOne(EpisodeTask task) {
+        long begin = System.nanoTime();
+        return aiScriptWritingAgent.generateChapter(task.request())
+                .timeout(Duration.ofMillis(properties.getEpisodeTimeoutMillis()))
+                .flatMap((content) -> Mono.fromCallable(() -> scriptEpisodeService.saveGeneratedEpisode(toEpisode(task, content)))
+                        .subscribeOn(Schedulers.boundedElastic()))
+                .map((saved) -> {
+                    EpisodeGenerationEvent event = event(task, EpisodeGenerationEvent.STATUS_DONE, begin);
+                    event.setId(saved.getId());
+                    event.setContent(saved.getEpisodeContent());
+                    event.setWordCount(saved.getWordCount());
+                    return event;
+                })
+                .onErrorResume((e) -> {
+                    log.warn("episode_generation_failed projectId={} chapterId={} episodeNumber={} error={}",
+                            task.projectId(), task.chapterId(), task.episodeNumber(), e.toString());
+                    EpisodeGenerationEvent event = event(task, EpisodeGenerationEvent.STATUS_FAILED, begin);
+                    event.setError(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+                    return Mono.just(event);
+                });
+    }
+
+    private EpisodeGenerationEvent event(EpisodeTask task, String status, long begin) {
+        long elapsedNanos = System.nanoTime() - begin;
+        Timer.builder("llm.pipeline.episode")
+                .description("单个桥段从发起生成到落库的耗时")
+                .tag("status", status)
+                .register(meterRegistry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+        EpisodeGenerationEvent event = new EpisodeGenerationEvent();
+        event.setEpisodeId(task.episodeId());
+        event.setChapterId(task.chapterId());
+        event.setEpisodeNumber(task.episodeNumber());
+        event.setEpisodeTitle(task.episodeTitle());
+        event.setStatus(status);
+        event.setElapsedMillis(TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        return event;
+    }
+
+    private ScriptEpisodeDTO toEpisode(EpisodeTask task, String content) {
+        ScriptEpisodeDTO dto = new ScriptEpisodeDTO();
+        dto.setProjectId(task.projectId());
+        dto.setChapterId(task.chapterId());
+        dto.setEpisodeNumber(task.episodeNumber());
+        dto.setEpisodeTitle(task.episodeTitle());
+        dto.setEpisodeContent(content);
+        return dto;
+    }
+
+    /**
+     * 按 节点顺序 → 章节号 → 桥段号 展开大纲，并为每个桥段拼好带上下文的生成请求
+     */
+    List<EpisodeTask> plan(StoryOutlineDTO outline) {
+        if (outline == null || !StringUtils.hasText(outline.getProjectId())) {
+            throw new IllegalArgumentException("项目ID不能为空");
+        }
+        List<EpisodeTask> tasks = new ArrayList<>();
+        List<OutlineSectionDTO> sections = sorted(outline.getSections(), OutlineSectionDTO::getSequence);
+        for (OutlineSectionDTO section : sections) {
+            for (OutlineChapterDTO chapter : sorted(section.getChapters(), OutlineChapterDTO::getChapterNumber)) {
+                List<OutlineEpisodeDTO> episodes = sorted(chapter.getEpisodes(), OutlineEpisodeDTO::getEpisodeNumber);
+                for (int i = 0; i < episodes.size(); i += 1) {
+                    OutlineEpisodeDTO episode = episodes.get(i);
+                    String chapterId = StringUtils.hasText(episode.getChapterId()) ? episode.getChapterId() : chapter.getChapterId();
+                    if (!StringUtils.hasText(chapterId)) {
+                        throw new IllegalArgumentException("章节ID不能为空");
+                    }
+                    int episodeNumber = episode.getEpisodeNumber() != null ? episode.getEpisodeNumber() : i + 1;
+                    String previous = i > 0 ? episodes.get(i - 1).getEpisodeTitle() : null;
+                    String next = i + 1 < episodes.size() ? episodes.get(i + 1).getEpisodeTitle() : null;
+                    tasks.add(new EpisodeTask(
+                            episode.getEpisodeId(),
+                            outline.getProjectId(),
+                            chapterId,
+                            episodeNumber,
+                            episode.getEpisodeTitle(),
+                            request(section, chapter, episode, episodeNumber, previous, next)
+                    ));
+                }
+            }
+        }
+        if (tasks.isEmpty()) {
+            throw new IllegalArgumentException("大纲中没有桥段");
+        }
+        if (tasks.size() > properties.getMaxEpisodes()) {
+            throw new IllegalArgumentException("桥段数量超过上限: " + properties.getMaxEpisodes());
+        }
+        return tasks;
+    }
+
+    private static String request(
+            OutlineSectionDTO section,
+            OutlineChapterDTO chapter,
+            OutlineEpisodeDTO episode,
+            int episodeNumber,
+            String previous,
+            String next
+    ) {
+        StringBuilder request = new StringBuilder();
+        if (StringUtils.hasText(section.getSectionTitle())) {
+            request.append("故事节点：").append(section.getSectionTitle());
+            if (StringUtils.hasText(section.getDescription())) {
+                request.append("（").append(section.getDescription()).append("）");
+            }
+            request.append("\n");
+        }
+        request.append("所属章节：");
+        if (chapter.getChapterNumber() != null) {
+            request.append("第").append(chapter.getChapterNumber()).append("章 ");
+        }
+        request.append(StringUtils.hasText(chapter.getChapterTitle()) ? chapter.getChapterTitle() : "未命名章节");
+        if (StringUtils.hasText(chapter.getChapterSummary())) {
+            request.append("，章节概要：").append(chapter.getChapterSummary());
+        }
+        request.append("\n本桥段：第").append(episodeNumber).append("个桥段");
+        if (StringUtils.hasText(episode.getEpisodeTitle())) {
+            request.append("《").append(episode.getEpisodeTitle()).append("》");
+        }
+        if (StringUtils.hasText(previous)) {
+            request.append("\n上一桥段：《").append(previous).append("》");
+        }
+        if (StringUtils.hasText(next)) {
+            request.append("\n下一桥段：《").append(next).append("》");
+        }
+        request.append("\n只输出本桥段的正文，与上下桥段自然衔接");
+        return request.toString();
+    }
+
+    private static <T> List<T> sorted(List<T> items, Function<T, Integer> order) {
+        if (items == null) {
+            return List.of();
+        }
+        return items.stream()
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparing(order, Comparator.nullsLast(Comparator.naturalOrder())))
+                .toList();
+    }
+
+    record EpisodeTask(
+            String episodeId,
+            String projectId,
+            String chapterId,
+            int episodeNumber,
+            String episodeTitle,
+            String request
+    ) {
+    }
+}
@@ -0,0 +1,174 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.liangshou.movie.scripts.common.config.llm.GenerationCacheProperties;
+import com.liangshou.movie.scripts.common.enums.GenerationTypeEnum;
+import com.liangshou.movie.scripts.infrastructure.mongo.generation.GenerationCacheDocument;
+import com.liangshou.movie.scripts.infrastructure.mongo.generation.GenerationCacheMongoDao;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 生成结果缓存，位于模型调用之前：先查本地 Caffeine（W-TinyLFU），再查可选的 Mongo 持久层，都未命中才调用模型。
+ * 按生成类型逐个开启；指标 llm.generation.cache 以 type/result/tier 区分命中、未命中与未启用。
+ */
+@Slf4j
+@Component
+public class GenerationCache {
+
+    private final GenerationCacheProperties properties;
+    private final GenerationCacheMongoDao mongoDao;
+    private final MeterRegistry meterRegistry;
+    private final Cache<String, String> local;
+
+    public GenerationCache(
+            GenerationCacheProperties properties,
+            GenerationCacheMongoDao mongoDao,
+            MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.mongoDao = mongoDao;
+        this.meterRegistry = meterRegistry;
+        this.local = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, properties.getMaximumSize()))
+                .expireAfterWrite(Duration.ofSeconds(Math.max(1, properties.getLocalTtlSeconds())))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, local, "llm.generation.local");
+    }
+
+    /**
+     * 命中时直接返回缓存内容，否则调用 generator 并在成功后回填两级缓存；空结果与失败不缓存
+     */
+    public Mono<String> getOrGenerate(
+            GenerationTypeEnum type,
+            String model,
+            Map<String, ?> options,
+            String prompt,
+            Supplier<Mono<String>> generator
+    ) {
+        if (!isEnabled(type)) {
+            count(type, "bypass", "none");
+            return Mono.defer(generator);
+        }
+        String key = GenerationCacheKey.of(model, options, prompt);
+        String cached = local.getIfPresent(key);
+        if (cached != null) {
+            count(type, "hit", "local");
+            return Mono.just(cached);
+        }
+        Mono<String> generate = Mono.defer(() -> {
+            count(type, "miss", "none");
+            return generator.get().doOnNext((content) -> store(type, model, key, content));
+        });
+        if (!properties.isMongoEnabled()) {
+            return generate;
+        }
+        return Mono.fromCallable(() -> mongoDao.findValid(key, Instant.now()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume((e) -> {
+                    log.warn("generation_cache_read_failed type={} error={}", type.getCode(), e.getMessage());
+                    return Mono.empty();
+                })
+                .map((doc) -> {
+                    local.put(key, doc.getContent());
+                    count(type, "hit", "mongo");
+                    return doc.getContent();
+                })
+                .switchIfEmpty(generate);
+    }
+
+    /**
+     * 流式版本：命中时以单个元素返回缓存内容；未命中时透传 generator 的 token，正常结束后把完整结果回填两级缓存，
+     * 出错或被取消的流不缓存
+     */
+    public Flux<String> getOrGenerateStream(
+            GenerationTypeEnum type,
+            String model,
+            Map<String, ?> options,
+            String prompt,
+            Supplier<Flux<String>> generator
+    ) {
+        if (!isEnabled(type)) {
+            count(type, "bypass", "none");
+            return Flux.defer(generator);
+        }
+        String key = GenerationCacheKey.of(model, options, prompt);
+        String cached = local.getIfPresent(key);
+        if (cached != null) {
+            count(type, "hit", "local");
+            return Flux.just(cached);
+        }
+        Flux<String> generate = Flux.defer(() -> {
+            count(type, "miss", "none");
+            StringBuilder full = new StringBuilder();
+            return generator.get()
+                    .doOnNext(full::append)
+                    .doOnComplete(() -> store(type, model, key, full.toString()));
+        });
+        if (!properties.isMongoEnabled()) {
+            return generate;
+        }
+        return Mono.fromCallable(() -> mongoDao.findValid(key, Instant.now()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume((e) -> {
+                    log.warn("generation_cache_read_failed type={} error={}", type.getCode(), e.getMessage());
+                    return Mono.empty();
+                })
+                .map((doc) -> {
+                    local.put(key, doc.getContent());
+                    count(type, "hit", "mongo");
+                    return doc.getContent();
+                })
+                .flux()
+                .switchIfEmpty(generate);
+    }
+
+    public boolean isEnabled(GenerationTypeEnum type) {
+        return properties.isEnabled() && type != null && properties.getTypes().contains(type);
+    }
+
+    private void store(GenerationTypeEnum type, String model, String key, String content) {
+        if (!StringUtils.hasText(content)) {
+            return;
+        }
+        local.put(key, content);
+        if (!properties.isMongoEnabled()) {
+            return;
+        }
+        Instant now = Instant.now();
+        GenerationCacheDocument doc = new GenerationCacheDocument();
+        doc.setId(key);
+        doc.setType(type.getCode());
+        doc.setModel(model);
+        doc.setContent(content);
+        doc.setCreatedAt(now);
+        doc.setExpireAt(now.plusSeconds(Math.max(1, properties.getMongoTtlSeconds())));
+        // 持久层写入不阻塞响应，失败只影响后续命中率
+        Mono.fromRunnable(() -> mongoDao.save(doc))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(null, (e) -> log.warn("generation_cache_write_failed type={} error={}",
+                        type.getCode(), e.getMessage()));
+    }
+
+    private void count(GenerationTypeEnum type, String result, String tier) {
+        Counter.builder("llm.generation.cache")
+                .tag("type", type != null ? type.getCode() : "unknown")
+                .tag("result", result)
+                .tag("tier", tier)
+                .register(meterRegistry)
+                .increment();
+    }
+}
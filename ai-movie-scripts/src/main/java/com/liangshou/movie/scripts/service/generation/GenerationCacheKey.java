@@ -0,0 +1,49 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * 生成缓存键：对 (模型, 参数, 提示词) 归一化后取 SHA-256。
+ * 提示词做 NFKC 归一（全角/半角统一）、折叠连续空白并去掉首尾空白，参数按名称排序，忽略空值。
+ */
+public final class GenerationCacheKey {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private GenerationCacheKey() {
+    }
+
+    public static String of(String model, Map<String, ?> options, String prompt) {
+        StringBuilder source = new StringBuilder();
+        source.append(normalize(model)).append('\u0000');
+        if (options != null) {
+            new TreeMap<String, Object>(options).forEach((name, value) -> {
+                if (value != null) {
+                    source.append(name).append('=').append(value).append(';');
+                }
+            });
+        }
+        source.append('\u0000').append(normalize(prompt));
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(source.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC);
+        return WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+    }
+}
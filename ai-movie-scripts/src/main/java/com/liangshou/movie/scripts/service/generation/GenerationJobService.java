@@ -0,0 +1,123 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import com.liangshou.movie.scripts.common.config.llm.GenerationJobProperties;
+import com.liangshou.movie.scripts.common.enums.GenerationJobStatusEnum;
+import com.liangshou.movie.scripts.common.enums.GenerationTypeEnum;
+import com.liangshou.movie.scripts.infrastructure.mongo.generation.GenerationJobDocument;
+import com.liangshou.movie.scripts.infrastructure.mongo.generation.GenerationJobMongoDao;
+import com.liangshou.movie.scripts.service.dto.job.GenerationJobDTO;
+import com.liangshou.movie.scripts.service.dto.job.GenerationJobRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * 异步生成任务：提交后立即返回任务ID，由 GenerationJobWorker 在任意节点执行，结果持久化在 ai_generation_jobs，
+ * 客户端可轮询或订阅 SSE 获取结果，断线后重新查询即可恢复。
+ */
+@Slf4j
+@Service
+public class GenerationJobService {
+
+    private final GenerationJobMongoDao jobDao;
+    private final GenerationJobProperties properties;
+    private final Counter submitted;
+    private final Counter deduplicated;
+
+    public GenerationJobService(GenerationJobMongoDao jobDao, GenerationJobProperties properties,
+                                MeterRegistry meterRegistry) {
+        this.jobDao = jobDao;
+        this.properties = properties;
+        this.submitted = Counter.builder("llm.generation.job").tag("result", "submitted").register(meterRegistry);
+        this.deduplicated = Counter.builder("llm.generation.job").tag("result", "deduplicated").register(meterRegistry);
+    }
+
+    /**
+     * 提交任务；带幂等键时重复提交（包括并发提交）返回已有任务
+     */
+    public GenerationJobDTO submit(GenerationJobRequest request) {
+        if (request == null || !StringUtils.hasText(request.getRequest())) {
+            throw new IllegalArgumentException("request 不能为空");
+        }
+        GenerationTypeEnum type = GenerationTypeEnum.fromCode(request.getType());
+        String idempotencyKey = StringUtils.hasText(request.getIdempotencyKey()) ? request.getIdempotencyKey().trim() : null;
+        if (idempotencyKey != null) {
+            GenerationJobDocument existing = jobDao.findByIdempotencyKey(idempotencyKey);
+            if (existing != null) {
+                deduplicated.increment();
+                return toDto(existing);
+            }
+        }
+
+        Instant now = Instant.now();
+        GenerationJobDocument doc = new GenerationJobDocument();
+        doc.setId(UUID.randomUUID().toString());
+        doc.setIdempotencyKey(idempotencyKey);
+        doc.setProjectId(request.getProjectId());
+        doc.setGenerationType(type.getCode());
+        doc.setRequest(request.getRequest());
+        doc.setStatus(GenerationJobStatusEnum.PROCESSING.name());
+        doc.setAttempts(0);
+        doc.setCreatedAt(now);
+        doc.setUpdatedAt(now);
+        try {
+            GenerationJobDocument saved = jobDao.insert(doc);
+            submitted.increment();
+            log.info("generation_job_submitted jobId={} type={}", saved.getId(), type.getCode());
+            return toDto(saved);
+        } catch (DuplicateKeyException e) {
+            // 并发提交同一幂等键，唯一索引保证只有一条
+            deduplicated.increment();
+            return toDto(jobDao.findByIdempotencyKey(idempotencyKey));
+        }
+    }
+
+    public GenerationJobDTO findById(String jobId) {
+        if (!StringUtils.hasText(jobId)) {
+            return null;
+        }
+        GenerationJobDocument doc = jobDao.findById(jobId);
+        return doc != null ? toDto(doc) : null;
+    }
+
+    /**
+     * 订阅任务进度：立即推送当前状态，之后状态或执行次数变化时推送，任务结束后完成
+     */
+    public Flux<GenerationJobDTO> watch(String jobId) {
+        Duration interval = Duration.ofMillis(Math.max(100, properties.getWatchIntervalMillis()));
+        return Flux.interval(Duration.ZERO, interval)
+                .onBackpressureDrop()
+                .concatMap((tick) -> Mono.fromCallable(() -> jobDao.findById(jobId))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .switchIfEmpty(Mono.error(new IllegalArgumentException("任务不存在: " + jobId))), 1)
+                .distinctUntilChanged((doc) -> doc.getStatus() + ":" + doc.getAttempts(), Objects::equals)
+                .map(GenerationJobService::toDto)
+                .takeUntil((job) -> GenerationJobStatusEnum.valueOf(job.getStatus()).isTerminal());
+    }
+
+    static GenerationJobDTO toDto(GenerationJobDocument doc) {
+        GenerationJobDTO dto = new GenerationJobDTO();
+        dto.setJobId(doc.getId());
+        dto.setType(doc.getGenerationType());
+        dto.setProjectId(doc.getProjectId());
+        dto.setStatus(doc.getStatus());
+        dto.setResult(doc.getResult());
+        dto.setErrorMessage(doc.getErrorMessage());
+        dto.setAttempts(doc.getAttempts());
+        dto.setExecutionTimeMs(doc.getExecutionTimeMs());
+        dto.setCreatedAt(doc.getCreatedAt());
+        dto.setFinishedAt(doc.getFinishedAt());
+        return dto;
+    }
+}
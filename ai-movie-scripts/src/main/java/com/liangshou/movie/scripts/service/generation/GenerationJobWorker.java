@@ -0,0 +1,206 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import com.liangshou.movie.scripts.common.config.llm.GenerationJobProperties;
+import com.liangshou.movie.scripts.common.enums.GenerationJobStatusEnum;
+import com.liangshou.movie.scripts.common.enums.GenerationTypeEnum;
+import com.liangshou.movie.scripts.infrastructure.mongo.generation.GenerationJobDocument;
+import com.liangshou.movie.scripts.infrastructure.mongo.generation.GenerationJobMongoDao;
+import com.liangshou.movie.scripts.service.agents.agentimpl.AIScriptWritingAgent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步生成任务的执行线程池。每个线程循环领取 ai_generation_jobs 中的可执行任务，执行期间定期续约；
+ * 节点宕机后租约过期，任务由其他节点重新领取（至少执行一次），结果只由当前租约持有者写入。
+ */
+@Slf4j
+@Component
+public class GenerationJobWorker {
+
+    private final GenerationJobMongoDao jobDao;
+    private final AIScriptWritingAgent agent;
+    private final GenerationJobProperties properties;
+    private final String nodeId;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService leaseRenewer;
+    private volatile boolean running;
+
+    private final Counter succeeded;
+    private final Counter retried;
+    private final Counter failed;
+    private final Counter leaseLost;
+    private final Timer execution;
+
+    public GenerationJobWorker(GenerationJobMongoDao jobDao, AIScriptWritingAgent agent,
+                               GenerationJobProperties properties, MeterRegistry meterRegistry) {
+        this.jobDao = jobDao;
+        this.agent = agent;
+        this.properties = properties;
+        this.nodeId = hostName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+        this.workers = Executors.newFixedThreadPool(Math.max(1, properties.getWorkers()),
+                new CustomizableThreadFactory("generation-job-"));
+        CustomizableThreadFactory renewerThreadFactory = new CustomizableThreadFactory("generation-job-lease-");
+        renewerThreadFactory.setDaemon(true);
+        this.leaseRenewer = Executors.newSingleThreadScheduledExecutor(renewerThreadFactory);
+
+        this.succeeded = Counter.builder("llm.generation.job").tag("result", "success").register(meterRegistry);
+        this.retried = Counter.builder("llm.generation.job").tag("result", "retry").register(meterRegistry);
+        this.failed = Counter.builder("llm.generation.job").tag("result", "failed").register(meterRegistry);
+        this.leaseLost = Counter.builder("llm.generation.job").tag("result", "lease_lost")
+                .description("租约已被其他节点接手，结果未写入的执行次数")
+                .register(meterRegistry);
+        this.execution = Timer.builder("llm.generation.job.execution").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!properties.isWorkerEnabled()) {
+            log.info("generation_job_worker_disabled nodeId={}", nodeId);
+            return;
+        }
+        running = true;
+        for (int i = 0; i < Math.max(1, properties.getWorkers()); i += 1) {
+            workers.execute(this::pollLoop);
+        }
+        log.info("generation_job_worker_started nodeId={} workers={}", nodeId, properties.getWorkers());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        workers.shutdownNow();
+        leaseRenewer.shutdownNow();
+    }
+
+    private void pollLoop() {
+        while (running) {
+            try {
+                if (!runOnce()) {
+                    Thread.sleep(Math.max(1, properties.getPollIntervalMillis()));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                log.error("generation_job_loop_error", e);
+            }
+        }
+    }
+
+    /**
+     * 领取并执行一个任务，没有可执行任务时返回 false
+     */
+    boolean runOnce() {
+        Instant now = Instant.now();
+        GenerationJobDocument job = jobDao.claimNext(nodeId, now, now.plusMillis(properties.getLeaseMillis()),
+                properties.getMaxAttempts());
+        if (job == null) {
+            long exhausted = jobDao.failExhausted(properties.getMaxAttempts(), now);
+            if (exhausted > 0) {
+                failed.increment(exhausted);
+                log.warn("generation_job_exhausted count={}", exhausted);
+            }
+            return false;
+        }
+        execute(job);
+        return true;
+    }
+
+    private void execute(GenerationJobDocument job) {
+        long renewPeriod = Math.max(1, properties.getLeaseMillis() / 3);
+        ScheduledFuture<?> renewal = leaseRenewer.scheduleAtFixedRate(() -> {
+            try {
+                if (!jobDao.renewLease(job.getId(), nodeId, Instant.now().plusMillis(properties.getLeaseMillis()))) {
+                    log.warn("generation_job_lease_renew_failed jobId={}", job.getId());
+                }
+            } catch (RuntimeException e) {
+                log.warn("generation_job_lease_renew_error jobId={} error={}", job.getId(), e.getMessage());
+            }
+        }, renewPeriod, renewPeriod, TimeUnit.MILLISECONDS);
+
+        long begin = System.nanoTime();
+        String result = null;
+        RuntimeException error = null;
+        try {
+            result = dispatch(job).block(Duration.ofMillis(properties.getExecutionTimeoutMillis()));
+        } catch (RuntimeException e) {
+            error = e;
+        } finally {
+            renewal.cancel(false);
+        }
+        long elapsedNanos = System.nanoTime() - begin;
+        execution.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        int elapsedMillis = (int) TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+
+        Instant now = Instant.now();
+        boolean written;
+        if (error == null && result != null) {
+            written = jobDao.finish(job.getId(), nodeId, GenerationJobStatusEnum.SUCCESS, result, null, elapsedMillis, now);
+            if (written) {
+                succeeded.increment();
+                log.info("generation_job_succeeded jobId={} attempts={} elapsedMs={}", job.getId(), job.getAttempts(), elapsedMillis);
+            }
+        } else {
+            String message = error != null ? String.valueOf(error.getMessage()) : "模型未返回内容";
+            if (job.getAttempts() >= properties.getMaxAttempts()) {
+                written = jobDao.finish(job.getId(), nodeId, GenerationJobStatusEnum.FAILED, null, message, elapsedMillis, now);
+                if (written) {
+                    failed.increment();
+                    log.warn("generation_job_failed jobId={} attempts={} error={}", job.getId(), job.getAttempts(), message);
+                }
+            } else {
+                written = jobDao.releaseForRetry(job.getId(), nodeId, message,
+                        now.plusMillis(properties.getRetryBackoffMillis()));
+                if (written) {
+                    retried.increment();
+                    log.warn("generation_job_retry jobId={} attempts={} error={}", job.getId(), job.getAttempts(), message);
+                }
+            }
+        }
+        if (!written) {
+            leaseLost.increment();
+            log.warn("generation_job_lease_lost jobId={} nodeId={}", job.getId(), nodeId);
+        }
+    }
+
+    private Mono<String> dispatch(GenerationJobDocument job) {
+        String request = job.getRequest();
+        return switch (GenerationTypeEnum.fromCode(job.getGenerationType())) {
+            case CREATIVE -> agent.generateCreative(request);
+            case THEME -> agent.generateTheme(request);
+            case SUMMARY -> agent.generateSummary(request);
+            case CHARACTERS -> agent.generateCharacters(request);
+            case OUTLINE -> agent.generateOutline(request);
+            case CHAPTER -> agent.generateChapter(request);
+        };
+    }
+
+    String getNodeId() {
+        return nodeId;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+}
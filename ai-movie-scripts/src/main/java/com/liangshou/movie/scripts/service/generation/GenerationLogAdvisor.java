@@ -0,0 +1,193 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import com.liangshou.movie.scripts.common.config.llm.GenerationLogProperties;
+import com.liangshou.movie.scripts.common.enums.GenerationJobStatusEnum;
+import com.liangshou.movie.scripts.infrastructure.datasource.po.AiGenerationLogPO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 记录每次模型调用的 ai_generation_logs：提示词长度、token 用量（取自 ChatResponse 元数据）、首 token 耗时与总耗时。
+ * 作为最外层 Advisor 注册在 ChatClient 上，命中缓存的请求不会到达这里；日志交给 GenerationLogWriter 异步写入。
+ * 调用方可通过 advisors(a -> a.param(TYPE, ...)) 传入生成类型与项目ID。
+ * 被取消的流（对冲落败、客户端断开）不是调用失败：不写日志，耗时指标记为 status=CANCELLED。
+ */
+@Component
+public class GenerationLogAdvisor implements CallAdvisor, StreamAdvisor {
+
+    public static final String TYPE = "generation_log.type";
+    public static final String PROJECT_ID = "generation_log.project_id";
+
+    private static final String DEFAULT_TYPE = "CHAT";
+    private static final String CANCELLED = "CANCELLED";
+
+    private final GenerationLogWriter writer;
+    private final GenerationLogProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    public GenerationLogAdvisor(GenerationLogWriter writer, GenerationLogProperties properties,
+                                MeterRegistry meterRegistry) {
+        this.writer = writer;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public String getName() {
+        return "GenerationLogAdvisor";
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest request, CallAdvisorChain chain) {
+        Invocation invocation = new Invocation(request);
+        try {
+            ChatClientResponse response = chain.nextCall(request);
+            invocation.onResponse(response.chatResponse());
+            invocation.finish(null);
+            return response;
+        } catch (RuntimeException e) {
+            invocation.finish(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+            throw e;
+        }
+    }
+
+    @Override
+    public Flux<ChatClientResponse> adviseStream(ChatClientRequest request, StreamAdvisorChain chain) {
+        return Flux.defer(() -> {
+            Invocation invocation = new Invocation(request);
+            return chain.nextStream(request)
+                    .doOnNext((response) -> invocation.onResponse(response.chatResponse()))
+                    .doOnComplete(() -> invocation.finish(null))
+                    .doOnError((e) -> invocation.finish(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName()))
+                    .doOnCancel(invocation::cancel);
+        });
+    }
+
+    private final class Invocation {
+
+        private final ChatClientRequest request;
+        private final long beginNanos = System.nanoTime();
+        private final StringBuilder content = new StringBuilder();
+        private long firstTokenNanos;
+        private String model;
+        private Usage usage;
+        private boolean finished;
+
+        private Invocation(ChatClientRequest request) {
+            this.request = request;
+        }
+
+        private synchronized void onResponse(ChatResponse response) {
+            if (response == null) return;
+            if (response.getMetadata() != null) {
+                if (response.getMetadata().getModel() != null && !response.getMetadata().getModel().isEmpty()) {
+                    model = response.getMetadata().getModel();
+                }
+                Usage chunkUsage = response.getMetadata().getUsage();
+                // 流式调用只有最后一个分片携带用量，其余分片为空用量
+                if (chunkUsage != null && chunkUsage.getTotalTokens() != null && chunkUsage.getTotalTokens() > 0) {
+                    usage = chunkUsage;
+                }
+            }
+            String text = response.getResult() != null && response.getResult().getOutput() != null
+                    ? response.getResult().getOutput().getText() : null;
+            if (text != null && !text.isEmpty()) {
+                if (firstTokenNanos == 0) {
+                    firstTokenNanos = System.nanoTime();
+                }
+                if (content.length() < properties.getMaxContentChars()) {
+                    content.append(text);
+                }
+            }
+        }
+
+        private void finish(String error) {
+            complete(error == null ? GenerationJobStatusEnum.SUCCESS.name() : GenerationJobStatusEnum.FAILED.name(), error);
+        }
+
+        private void cancel() {
+            complete(CANCELLED, null);
+        }
+
+        private synchronized void complete(String status, String error) {
+            if (finished) return;
+            finished = true;
+            long endNanos = System.nanoTime();
+            String type = stringParam(TYPE, DEFAULT_TYPE);
+            String resolvedModel = model != null ? model
+                    : request.prompt().getOptions() != null ? request.prompt().getOptions().getModel() : null;
+            String modelTag = resolvedModel != null ? resolvedModel : "unknown";
+            Timer.builder("llm.generation.latency").tag("type", type).tag("model", modelTag).tag("status", status)
+                    .register(meterRegistry)
+                    .record(endNanos - beginNanos, TimeUnit.NANOSECONDS);
+            if (firstTokenNanos > 0) {
+                Timer.builder("llm.generation.first.token").tag("type", type).tag("model", modelTag)
+                        .register(meterRegistry)
+                        .record(firstTokenNanos - beginNanos, TimeUnit.NANOSECONDS);
+            }
+            if (CANCELLED.equals(status)) {
+                return;
+            }
+
+            String prompt = request.prompt().getInstructions().stream()
+                    .map(Message::getText)
+                    .filter((text) -> text != null)
+                    .collect(Collectors.joining("\n"));
+            AiGenerationLogPO logPO = new AiGenerationLogPO();
+            logPO.setId(UUID.randomUUID().toString());
+            logPO.setProjectId(stringParam(PROJECT_ID, null));
+            logPO.setGenerationType(type);
+            logPO.setModel(resolvedModel);
+            logPO.setPrompt(truncate(prompt));
+            logPO.setResponse(truncate(content.toString()));
+            logPO.setPromptChars(prompt.length());
+            if (usage != null) {
+                logPO.setPromptTokens(usage.getPromptTokens());
+                logPO.setCompletionTokens(usage.getCompletionTokens());
+                logPO.setTokensUsed(usage.getTotalTokens());
+            }
+            logPO.setFirstTokenMs(firstTokenNanos > 0 ? toMillis(firstTokenNanos - beginNanos) : null);
+            logPO.setExecutionTimeMs(toMillis(endNanos - beginNanos));
+            logPO.setStatus(status);
+            logPO.setErrorMessage(truncate(error));
+            logPO.setCreatedAt(LocalDateTime.now());
+            writer.record(logPO);
+        }
+
+        private String stringParam(String key, String defaultValue) {
+            Object value = request.context().get(key);
+            return value != null ? value.toString() : defaultValue;
+        }
+
+        private String truncate(String text) {
+            if (text == null || text.length() <= properties.getMaxContentChars()) return text;
+            return text.substring(0, properties.getMaxContentChars());
+        }
+
+        private int toMillis(long nanos) {
+            return (int) TimeUnit.NANOSECONDS.toMillis(nanos);
+        }
+    }
+}
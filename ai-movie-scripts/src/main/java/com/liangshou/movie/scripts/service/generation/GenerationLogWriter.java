@@ -0,0 +1,127 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import com.liangshou.movie.scripts.common.config.llm.GenerationLogProperties;
+import com.liangshou.movie.scripts.infrastructure.datasource.jdbc.AiGenerationLogBatchDao;
+import com.liangshou.movie.scripts.infrastructure.datasource.po.AiGenerationLogPO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ai_generation_logs 的异步批量写入队列。
+ * 记录日志只做一次非阻塞入队，由独立线程攒批后通过 JDBC batch 写入；队列满或写入失败时丢弃并计数，
+ * 日志写入永远不会拖慢或影响生成请求。
+ */
+@Slf4j
+@Component
+public class GenerationLogWriter {
+
+    private final AiGenerationLogBatchDao batchDao;
+    private final GenerationLogProperties properties;
+    private final BlockingQueue<AiGenerationLogPO> queue;
+    private final ExecutorService worker;
+    private volatile boolean running;
+
+    private final Counter written;
+    private final Counter dropped;
+    private final Counter failed;
+    private final DistributionSummary batchSize;
+    private final Timer batchWrite;
+
+    public GenerationLogWriter(AiGenerationLogBatchDao batchDao, GenerationLogProperties properties,
+                               MeterRegistry meterRegistry) {
+        this.batchDao = batchDao;
+        this.properties = properties;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, properties.getQueueCapacity()));
+        this.worker = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("generation-log-writer-"));
+
+        Gauge.builder("llm.generation.log.queue.size", queue, BlockingQueue::size)
+                .description("等待写入的模型调用日志条数")
+                .register(meterRegistry);
+        this.written = Counter.builder("llm.generation.log").tag("result", "written").register(meterRegistry);
+        this.dropped = Counter.builder("llm.generation.log").tag("result", "dropped")
+                .description("队列已满被丢弃的日志条数")
+                .register(meterRegistry);
+        this.failed = Counter.builder("llm.generation.log").tag("result", "failed").register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("llm.generation.log.batch.size").register(meterRegistry);
+        this.batchWrite = Timer.builder("llm.generation.log.batch.write")
+                .description("单次 JDBC 批量写入耗时")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!properties.isEnabled()) return;
+        running = true;
+        worker.execute(this::drainLoop);
+    }
+
+    /**
+     * 非阻塞提交一条日志，未启用或队列已满时直接丢弃
+     */
+    public void record(AiGenerationLogPO logPO) {
+        if (!running) return;
+        if (queue.offer(logPO)) return;
+        dropped.increment();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        worker.shutdown();
+        try {
+            if (!worker.awaitTermination(properties.getShutdownTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                worker.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            worker.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainLoop() {
+        List<AiGenerationLogPO> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                AiGenerationLogPO first = queue.poll(Math.max(1, properties.getFlushIntervalMillis()), TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, Math.max(0, properties.getBatchSize() - 1));
+                flush(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                log.error("generation_log_loop_error", e);
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<AiGenerationLogPO> batch) {
+        batchSize.record(batch.size());
+        try {
+            batchWrite.record(() -> batchDao.batchInsert(batch));
+            written.increment(batch.size());
+        } catch (RuntimeException e) {
+            failed.increment(batch.size());
+            log.warn("generation_log_write_failed size={} error={}", batch.size(), e.getMessage());
+        }
+    }
+}
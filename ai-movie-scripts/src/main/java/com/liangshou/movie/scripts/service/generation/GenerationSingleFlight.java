@@ -0,0 +1,91 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import com.liangshou.movie.scripts.common.config.llm.SingleFlightProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * 相同请求合并（single-flight）：同一键同时只有一次上游调用，后到的请求共享其结果。
+ * 非流式共享同一个 Mono，订阅者取消不影响上游，结果仍会写入缓存；
+ * 流式对上游做 replay 扇出，后加入的订阅者也能收到完整的 token 序列，所有订阅者都断开后才取消上游。
+ * 上游结束（成功、失败或取消）即移除，之后的请求重新调用。
+ * 指标 llm.single.flight 按 role=leader/follower 区分发起与被合并的请求。
+ */
+@Component
+public class GenerationSingleFlight {
+
+    private final SingleFlightProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Mono<?>> inFlightMonos = new ConcurrentHashMap<>();
+    private final Map<String, Flux<?>> inFlightFluxes = new ConcurrentHashMap<>();
+
+    public GenerationSingleFlight(SingleFlightProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("llm.single.flight.in.flight", this, (self) -> self.inFlightMonos.size() + self.inFlightFluxes.size())
+                .description("正在进行且可被合并的上游调用数")
+                .register(meterRegistry);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> execute(String name, String key, Supplier<Mono<T>> supplier) {
+        if (!properties.isEnabled()) {
+            return Mono.defer(supplier);
+        }
+        return Mono.defer(() -> {
+            AtomicReference<Mono<T>> created = new AtomicReference<>();
+            String flightKey = name + ":" + key;
+            Mono<T> shared = (Mono<T>) inFlightMonos.computeIfAbsent(flightKey, (k) -> {
+                AtomicReference<Mono<T>> self = new AtomicReference<>();
+                Mono<T> mono = Mono.defer(supplier)
+                        .doFinally((signal) -> inFlightMonos.remove(k, self.get()))
+                        .share();
+                self.set(mono);
+                created.set(mono);
+                return mono;
+            });
+            count(name, created.get() == shared ? "leader" : "follower");
+            return shared;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Flux<T> executeStream(String name, String key, Supplier<Flux<T>> supplier) {
+        if (!properties.isEnabled()) {
+            return Flux.defer(supplier);
+        }
+        return Flux.defer(() -> {
+            AtomicReference<Flux<T>> created = new AtomicReference<>();
+            String flightKey = name + ":" + key;
+            Flux<T> shared = (Flux<T>) inFlightFluxes.computeIfAbsent(flightKey, (k) -> {
+                AtomicReference<Flux<T>> self = new AtomicReference<>();
+                Flux<T> flux = Flux.defer(supplier)
+                        .doFinally((signal) -> inFlightFluxes.remove(k, self.get()))
+                        .replay()
+                        .refCount();
+                self.set(flux);
+                created.set(flux);
+                return flux;
+            });
+            count(name, created.get() == shared ? "leader" : "follower");
+            return shared;
+        });
+    }
+
+    private void count(String name, String role) {
+        Counter.builder("llm.single.flight")
+                .tag("name", name)
+                .tag("role", role)
+                .register(meterRegistry)
+                .increment();
+    }
+}
@@ -0,0 +1,79 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 代理方法级的模型调用计时：llm.agent 按 agent、method、model、outcome 统计从订阅到结束的耗时（含缓存命中与排队），
+ * 流式方法另记 llm.agent.first.token。与只统计真实模型调用的 llm.generation.latency 对照即可看出缓存与限流的影响。
+ */
+@Component
+public class LlmCallMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    public LlmCallMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 一次对话轮次内各阶段（读取上下文、写入记忆等）的耗时，flow 区分调用方式
+     */
+    public Timer stage(String flow, String stage) {
+        return Timer.builder("llm.stage")
+                .tag("flow", flow)
+                .tag("stage", stage)
+                .register(meterRegistry);
+    }
+
+    public <T> Mono<T> time(String agent, String method, String model, Mono<T> call) {
+        return Mono.defer(() -> {
+            long begin = System.nanoTime();
+            return call
+                    .doOnSuccess((value) -> record(agent, method, model, "success", begin))
+                    .doOnError((e) -> record(agent, method, model, "error", begin))
+                    .doOnCancel(() -> record(agent, method, model, "cancel", begin));
+        });
+    }
+
+    public <T> Flux<T> timeStream(String agent, String method, String model, Flux<T> stream) {
+        return Flux.defer(() -> {
+            long begin = System.nanoTime();
+            AtomicLong firstItem = new AtomicLong();
+            return stream
+                    .doOnNext((item) -> {
+                        if (firstItem.compareAndSet(0, System.nanoTime())) {
+                            Timer.builder("llm.agent.first.token")
+                                    .tag("agent", agent)
+                                    .tag("method", method)
+                                    .tag("model", modelTag(model))
+                                    .register(meterRegistry)
+                                    .record(firstItem.get() - begin, TimeUnit.NANOSECONDS);
+                        }
+                    })
+                    .doOnComplete(() -> record(agent, method, model, "success", begin))
+                    .doOnError((e) -> record(agent, method, model, "error", begin))
+                    .doOnCancel(() -> record(agent, method, model, "cancel", begin));
+        });
+    }
+
+    private void record(String agent, String method, String model, String outcome, long begin) {
+        Timer.builder("llm.agent")
+                .tag("agent", agent)
+                .tag("method", method)
+                .tag("model", modelTag(model))
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+    }
+
+    private static String modelTag(String model) {
+        return model != null ? model : "unknown";
+    }
+}
@@ -0,0 +1,9 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import org.springframework.ai.chat.client.ChatClient;
+
+/**
+ * 一个模型提供方：名称（用于路由、限流与指标）、模型名与温度（参与缓存键）以及启动时构建的 ChatClient
+ */
+public record ModelProvider(String name, String model, Double temperature, ChatClient chatClient) {
+}
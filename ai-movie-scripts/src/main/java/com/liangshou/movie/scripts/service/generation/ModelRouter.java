@@ -0,0 +1,238 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import com.liangshou.movie.scripts.common.config.llm.ModelRouterProperties;
+import com.liangshou.movie.scripts.common.enums.GenerationTypeEnum;
+import com.liangshou.movie.scripts.common.exceptions.ProviderUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 多模型提供方路由：依次按请求指定的提供方、按生成类型固定的提供方、按各提供方首 token 延迟与错误率的 EWMA 选择，
+ * 自动选择时跳过熔断中的提供方（全部熔断时用默认提供方，由熔断器快速失败）。
+ * 没有样本的提供方评分为 0，会先被尝试；另有少量随机流量分给非最优提供方，使其统计保持最新。
+ * 指标：llm.router.route（各提供方的选择次数及原因）、llm.router.first.token、llm.router.latency.ewma、llm.router.error.ewma
+ */
+@Slf4j
+@Component
+public class ModelRouter {
+
+    private final ModelRouterProperties properties;
+    private final ProviderCircuitBreaker circuitBreaker;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, ModelProvider> providers = new LinkedHashMap<>();
+    private final Map<String, ModelProvider> providersByModel = new LinkedHashMap<>();
+    private final Map<String, ProviderStats> stats = new LinkedHashMap<>();
+
+    public ModelRouter(List<ModelProvider> providers, ModelRouterProperties properties,
+                       ProviderCircuitBreaker circuitBreaker, MeterRegistry meterRegistry) {
+        if (providers.isEmpty()) {
+            throw new IllegalArgumentException("至少需要配置一个模型提供方");
+        }
+        this.properties = properties;
+        this.circuitBreaker = circuitBreaker;
+        this.meterRegistry = meterRegistry;
+        for (ModelProvider provider : providers) {
+            this.providers.put(provider.name(), provider);
+            if (provider.model() != null) {
+                this.providersByModel.putIfAbsent(provider.model().toLowerCase(), provider);
+            }
+            ProviderStats providerStats = new ProviderStats();
+            this.stats.put(provider.name(), providerStats);
+            Gauge.builder("llm.router.latency.ewma", providerStats, ProviderStats::latencyMillis)
+                    .tag("provider", provider.name())
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+            Gauge.builder("llm.router.error.ewma", providerStats, ProviderStats::errorRate)
+                    .tag("provider", provider.name())
+                    .register(meterRegistry);
+        }
+        log.info("model_router_providers providers={} default={}", this.providers.keySet(), properties.getDefaultProvider());
+    }
+
+    /**
+     * 为一次调用选择提供方；hint 为请求指定的提供方名称或模型名（如 deepseek-chat），未配置的名称忽略。
+     * 返回的提供方持有启动时创建的单例客户端，调用路径上不再构建客户端
+     */
+    public ModelProvider route(GenerationTypeEnum type, String hint) {
+        ModelProvider hinted = hinted(hint);
+        if (hinted != null) {
+            return chosen(hinted, "hint");
+        }
+        if (StringUtils.hasText(hint)) {
+            log.debug("model_router_unknown_hint hint={}", hint);
+        }
+        ModelProvider pinned = taskRoute(type);
+        if (pinned != null) {
+            return chosen(pinned, "task");
+        }
+        if (!properties.isAdaptive() || providers.size() == 1) {
+            return chosen(defaultProvider(), "default");
+        }
+        List<ModelProvider> candidates = new ArrayList<>();
+        for (ModelProvider candidate : providers.values()) {
+            if (circuitBreaker.isAvailable(candidate.name())) {
+                candidates.add(candidate);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return chosen(defaultProvider(), "default");
+        }
+        ModelProvider best = candidates.get(0);
+        for (ModelProvider candidate : candidates) {
+            if (score(candidate) < score(best)) {
+                best = candidate;
+            }
+        }
+        if (candidates.size() > 1 && ThreadLocalRandom.current().nextDouble() < properties.getExplorationRatio()) {
+            candidates.remove(best);
+            return chosen(candidates.get(ThreadLocalRandom.current().nextInt(candidates.size())), "explore");
+        }
+        return chosen(best, "adaptive");
+    }
+
+    /**
+     * 该请求是否由自适应路由选择提供方：未指定提供方、生成类型未固定且开启了自适应路由时，相同请求可能落到不同提供方
+     */
+    public boolean isAdaptive(GenerationTypeEnum type, String hint) {
+        return hinted(hint) == null && taskRoute(type) == null && properties.isAdaptive() && providers.size() > 1;
+    }
+
+    /**
+     * 除 primary 外未熔断且评分最低的提供方，用于对冲；没有其他可用提供方时返回 primary 本身
+     */
+    public ModelProvider alternative(ModelProvider primary) {
+        ModelProvider best = null;
+        for (ModelProvider candidate : providers.values()) {
+            if (!candidate.name().equals(primary.name()) && circuitBreaker.isAvailable(candidate.name())
+                    && (best == null || score(candidate) < score(best))) {
+                best = candidate;
+            }
+        }
+        return best != null ? best : primary;
+    }
+
+    public ModelProvider defaultProvider() {
+        ModelProvider provider = providers.get(properties.getDefaultProvider());
+        return provider != null ? provider : providers.values().iterator().next();
+    }
+
+    /**
+     * 统计一次模型调用：首个 token 到达时记录延迟，出错时记录错误；取消（如客户端断开）不计入。
+     * 未在路由中注册的提供方不统计
+     */
+    public Flux<String> observe(ModelProvider provider, Flux<String> tokens) {
+        ProviderStats providerStats = stats.get(provider.name());
+        if (providerStats == null) {
+            return tokens;
+        }
+        return Flux.defer(() -> {
+            long begin = System.nanoTime();
+            AtomicBoolean recorded = new AtomicBoolean();
+            return tokens
+                    .doOnNext((token) -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            record(provider, providerStats, System.nanoTime() - begin, true);
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            record(provider, providerStats, System.nanoTime() - begin, true);
+                        }
+                    })
+                    .doOnError((e) -> {
+                        if (e instanceof ProviderUnavailableException) {
+                            // 本地快速失败，未到达提供方
+                            return;
+                        }
+                        if (recorded.compareAndSet(false, true)) {
+                            record(provider, providerStats, System.nanoTime() - begin, false);
+                        } else {
+                            providerStats.update(Double.NaN, false, properties.getEwmaAlpha());
+                        }
+                        log.warn("model_router_call_failed provider={} error={}", provider.name(), e.getMessage());
+                    });
+        });
+    }
+
+    /**
+     * 评分越低越优先；尚无样本的提供方为 0，只有失败记录的提供方排在最后（仅靠探索流量恢复）
+     */
+    double score(ModelProvider provider) {
+        ProviderStats providerStats = stats.get(provider.name());
+        double latency = providerStats.latencyMillis();
+        if (Double.isNaN(latency)) {
+            return providerStats.errorRate() > 0 ? Double.MAX_VALUE : 0;
+        }
+        return latency * (1 + properties.getErrorPenalty() * providerStats.errorRate());
+    }
+
+    private void record(ModelProvider provider, ProviderStats providerStats, long nanos, boolean success) {
+        // 失败往往很快返回，不计入延迟 EWMA，只提高错误率
+        double latency = success ? TimeUnit.NANOSECONDS.toMicros(nanos) / 1000.0 : Double.NaN;
+        providerStats.update(latency, success, properties.getEwmaAlpha());
+        Timer.builder("llm.router.first.token")
+                .tag("provider", provider.name())
+                .tag("outcome", success ? "success" : "error")
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private ModelProvider hinted(String hint) {
+        if (!StringUtils.hasText(hint)) {
+            return null;
+        }
+        String key = hint.trim().toLowerCase();
+        return providers.getOrDefault(key, providersByModel.get(key));
+    }
+
+    private ModelProvider taskRoute(GenerationTypeEnum type) {
+        return type != null ? providers.get(properties.getTaskRoutes().get(type)) : null;
+    }
+
+    private ModelProvider chosen(ModelProvider provider, String reason) {
+        Counter.builder("llm.router.route")
+                .tag("provider", provider.name())
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+        return provider;
+    }
+
+    /**
+     * 单个提供方的 EWMA；更新频率与模型调用同级，直接加锁即可
+     */
+    private static final class ProviderStats {
+
+        private double latencyMillis = Double.NaN;
+        private double errorRate;
+
+        synchronized void update(double latency, boolean success, double alpha) {
+            if (!Double.isNaN(latency)) {
+                latencyMillis = Double.isNaN(latencyMillis) ? latency : alpha * latency + (1 - alpha) * latencyMillis;
+            }
+            errorRate = alpha * (success ? 0 : 1) + (1 - alpha) * errorRate;
+        }
+
+        synchronized double latencyMillis() {
+            return latencyMillis;
+        }
+
+        synchronized double errorRate() {
+            return errorRate;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import com.liangshou.movie.scripts.common.config.llm.ProviderCircuitBreakerProperties;
+import com.liangshou.movie.scripts.common.enums.ErrorCodeEnum;
+import com.liangshou.movie.scripts.common.exceptions.ProviderUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按模型提供方熔断：最近 windowSize 次调用的失败率达到阈值后熔断 openMillis，期间请求立即以 ProviderUnavailableException 失败；
+ * 之后半开放行 halfOpenCalls 个试探请求，全部成功则恢复，任一失败重新熔断。
+ * 本地快速失败（并发已满、熔断中）与取消不计入失败率。ModelRouter 会绕开熔断中的提供方。
+ * 指标：llm.circuit.state（0 关闭、1 半开、2 熔断）、llm.circuit.transition、llm.circuit.rejected
+ */
+@Slf4j
+@Component
+public class ProviderCircuitBreaker {
+
+    private final ProviderCircuitBreakerProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+
+    public ProviderCircuitBreaker(ProviderCircuitBreakerProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public <T> Flux<T> protect(String provider, Flux<T> call) {
+        if (!properties.isEnabled()) {
+            return call;
+        }
+        Breaker breaker = breaker(provider);
+        return Flux.defer(() -> {
+            if (!breaker.tryAcquire()) {
+                Counter.builder("llm.circuit.rejected").tag("provider", provider).register(meterRegistry).increment();
+                long retryAfter = Math.max(1, TimeUnit.MILLISECONDS.toSeconds(breaker.remainingOpenMillis()));
+                return Flux.error(new ProviderUnavailableException(ErrorCodeEnum.AI_PROVIDER_UNAVAILABLE, provider, retryAfter));
+            }
+            return call
+                    .doOnComplete(() -> breaker.onResult(true))
+                    .doOnError((e) -> breaker.onResult(e instanceof ProviderUnavailableException ? null : false))
+                    .doOnCancel(() -> breaker.onResult(null));
+        });
+    }
+
+    /**
+     * 是否可以向该提供方发送请求，不占用半开状态的试探名额
+     */
+    public boolean isAvailable(String provider) {
+        return !properties.isEnabled() || breaker(provider).isAvailable();
+    }
+
+    private Breaker breaker(String provider) {
+        return breakers.computeIfAbsent(provider, (name) -> {
+            Breaker breaker = new Breaker(name);
+            Gauge.builder("llm.circuit.state", breaker, (b) -> b.state().ordinal()).tag("provider", name).register(meterRegistry);
+            return breaker;
+        });
+    }
+
+    private enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final class Breaker {
+
+        private final String provider;
+        private final boolean[] outcomes = new boolean[Math.max(1, properties.getWindowSize())];
+        private int size;
+        private int next;
+        private int failures;
+        private State state = State.CLOSED;
+        private long openedAt;
+        private int trialsStarted;
+        private int trialsSucceeded;
+
+        Breaker(String provider) {
+            this.provider = provider;
+        }
+
+        synchronized boolean tryAcquire() {
+            if (state == State.OPEN && openElapsed()) {
+                transition(State.HALF_OPEN);
+            }
+            if (state == State.CLOSED) {
+                return true;
+            }
+            if (state == State.HALF_OPEN && trialsStarted < properties.getHalfOpenCalls()) {
+                trialsStarted += 1;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized boolean isAvailable() {
+            return state == State.CLOSED
+                    || (state == State.HALF_OPEN && trialsStarted < properties.getHalfOpenCalls())
+                    || (state == State.OPEN && openElapsed());
+        }
+
+        /**
+         * success 为 null 表示结果不计入（取消或本地快速失败）
+         */
+        synchronized void onResult(Boolean success) {
+            if (state == State.HALF_OPEN) {
+                if (success == null) {
+                    trialsStarted = Math.max(0, trialsStarted - 1);
+                } else if (!success) {
+                    open();
+                } else if (++trialsSucceeded >= properties.getHalfOpenCalls()) {
+                    transition(State.CLOSED);
+                }
+                return;
+            }
+            if (state != State.CLOSED || success == null) {
+                return;
+            }
+            if (size == outcomes.length && !outcomes[next]) {
+                failures -= 1;
+            }
+            outcomes[next] = success;
+            if (!success) {
+                failures += 1;
+            }
+            next = (next + 1) % outcomes.length;
+            size = Math.min(size + 1, outcomes.length);
+            if (size >= properties.getMinCalls() && failures >= properties.getFailureRateThreshold() * size) {
+                open();
+            }
+        }
+
+        synchronized State state() {
+            return state;
+        }
+
+        synchronized long remainingOpenMillis() {
+            return Math.max(0, properties.getOpenMillis() - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - openedAt));
+        }
+
+        private boolean openElapsed() {
+            return System.nanoTime() - openedAt >= TimeUnit.MILLISECONDS.toNanos(properties.getOpenMillis());
+        }
+
+        private void open() {
+            openedAt = System.nanoTime();
+            transition(State.OPEN);
+        }
+
+        private void transition(State target) {
+            log.warn("llm_circuit_transition provider={} from={} to={} failures={} calls={}",
+                    provider, state, target, failures, size);
+            state = target;
+            trialsStarted = 0;
+            trialsSucceeded = 0;
+            size = 0;
+            next = 0;
+            failures = 0;
+            Counter.builder("llm.circuit.transition")
+                    .tag("provider", provider)
+                    .tag("state", target.name().toLowerCase())
+                    .register(meterRegistry)
+                    .increment();
+        }
+    }
+}
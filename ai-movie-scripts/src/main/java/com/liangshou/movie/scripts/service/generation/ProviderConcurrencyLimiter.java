@@ -0,0 +1,136 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import com.liangshou.movie.scripts.common.config.llm.ProviderConcurrencyProperties;
+import com.liangshou.movie.scripts.common.enums.ErrorCodeEnum;
+import com.liangshou.movie.scripts.common.exceptions.ProviderUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 按模型提供方（每个提供方对应一个 ChatClient）自适应限制在途请求数，AIMD：
+ * 成功且首 token 耗时不超过长期 EWMA 的 latencyTolerance 倍时上限每次加 1/limit（约每轮加 1），
+ * 调用失败或首 token 明显变慢时上限乘以 backoffRatio。超过上限的请求立即以 ProviderUnavailableException 失败，
+ * 不再排队拖慢所有在途请求。取消的调用只释放名额，不调整上限。
+ * 指标：llm.concurrency.limit、llm.concurrency.in.flight、llm.concurrency.rejected
+ */
+@Slf4j
+@Component
+public class ProviderConcurrencyLimiter {
+
+    private final ProviderConcurrencyProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Limit> limits = new ConcurrentHashMap<>();
+
+    public ProviderConcurrencyLimiter(ProviderConcurrencyProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 订阅时占用一个名额，流结束时释放；名额在整个流式输出期间保持占用
+     */
+    public <T> Flux<T> protect(String provider, Flux<T> call) {
+        if (!properties.isEnabled()) {
+            return call;
+        }
+        Limit limit = limit(provider);
+        return Flux.defer(() -> {
+            if (!limit.tryAcquire()) {
+                Counter.builder("llm.concurrency.rejected").tag("provider", provider).register(meterRegistry).increment();
+                return Flux.error(new ProviderUnavailableException(ErrorCodeEnum.AI_PROVIDER_BUSY, provider, 1));
+            }
+            long begin = System.nanoTime();
+            AtomicBoolean sampled = new AtomicBoolean();
+            AtomicBoolean released = new AtomicBoolean();
+            Runnable release = () -> {
+                if (released.compareAndSet(false, true)) {
+                    limit.release();
+                }
+            };
+            // 在结束信号传给下游之前释放名额，下游随即发起的下一个调用不会被误拒
+            return call
+                    .doOnNext((item) -> {
+                        if (sampled.compareAndSet(false, true)) {
+                            limit.onSample(System.nanoTime() - begin);
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        if (sampled.compareAndSet(false, true)) {
+                            limit.onSample(System.nanoTime() - begin);
+                        }
+                    })
+                    .doOnError((e) -> limit.onDropped())
+                    .doOnTerminate(release)
+                    .doOnCancel(release);
+        });
+    }
+
+    int currentLimit(String provider) {
+        return (int) limit(provider).limit();
+    }
+
+    private Limit limit(String provider) {
+        return limits.computeIfAbsent(provider, (name) -> {
+            Limit limit = new Limit();
+            Gauge.builder("llm.concurrency.limit", limit, Limit::limit).tag("provider", name).register(meterRegistry);
+            Gauge.builder("llm.concurrency.in.flight", limit, Limit::inFlight).tag("provider", name).register(meterRegistry);
+            return limit;
+        });
+    }
+
+    private final class Limit {
+
+        private double limit = properties.getInitialLimit();
+        private int inFlight;
+        private double longLatency = Double.NaN;
+
+        synchronized boolean tryAcquire() {
+            if (inFlight >= (int) limit) {
+                return false;
+            }
+            inFlight += 1;
+            return true;
+        }
+
+        synchronized void release() {
+            inFlight = Math.max(0, inFlight - 1);
+        }
+
+        synchronized void onSample(long latency) {
+            double previous = longLatency;
+            longLatency = Double.isNaN(previous)
+                    ? latency
+                    : properties.getLatencyEwmaAlpha() * latency + (1 - properties.getLatencyEwmaAlpha()) * previous;
+            if (!Double.isNaN(previous) && latency > previous * properties.getLatencyTolerance()) {
+                decrease();
+            } else if (inFlight * 2 >= limit) {
+                // 在途数不到上限一半时说明上限不是瓶颈，不再继续放大
+                limit = Math.min(properties.getMaxLimit(), limit + 1 / limit);
+            }
+        }
+
+        synchronized void onDropped() {
+            decrease();
+        }
+
+        private void decrease() {
+            limit = Math.max(properties.getMinLimit(), limit * properties.getBackoffRatio());
+        }
+
+        synchronized double limit() {
+            return limit;
+        }
+
+        synchronized double inFlight() {
+            return inFlight;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import com.liangshou.movie.scripts.common.config.llm.ProviderRateLimitProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按模型提供方限制请求速率：每个请求预约下一个发放时刻（间隔 1/rps），需要等待时用 Mono.delay 延后，不占线程。
+ * 等待时长记在 llm.rate.limit.wait 上。
+ */
+@Component
+public class ProviderRateLimiter {
+
+    private final ProviderRateLimitProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, AtomicLong> nextSlots = new ConcurrentHashMap<>();
+
+    public ProviderRateLimiter(ProviderRateLimitProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 返回在可以发起请求时完成的 Mono；未配置限流的提供方立即完成
+     */
+    public Mono<Void> acquire(String provider) {
+        Double rate = properties.getRequestsPerSecond().get(provider);
+        if (rate == null || rate <= 0) {
+            return Mono.empty();
+        }
+        return Mono.defer(() -> {
+            long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+            long now = System.nanoTime();
+            long previous = nextSlots.computeIfAbsent(provider, (key) -> new AtomicLong(now))
+                    .getAndUpdate((slot) -> Math.max(slot, now) + interval);
+            long wait = Math.max(0, previous - now);
+            Timer.builder("llm.rate.limit.wait")
+                    .tag("provider", provider)
+                    .register(meterRegistry)
+                    .record(wait, TimeUnit.NANOSECONDS);
+            return wait == 0 ? Mono.<Void>empty() : Mono.delay(Duration.ofNanos(wait)).then();
+        });
+    }
+}
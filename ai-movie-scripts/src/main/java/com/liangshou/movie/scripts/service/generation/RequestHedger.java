@@ -0,0 +1,235 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import com.liangshou.movie.scripts.common.config.llm.RequestHedgeProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * 模型调用的统一出口：每次调用依次经过提供方熔断、限流（ProviderRateLimiter）与自适应并发限制，再由 ModelRouter 统计。
+ * 模型请求对冲：主提供方在阈值（其最近首 token 耗时的分位数）内没有返回首个 token 时，向备用提供方发送相同请求，
+ * 先产出 token 的一方胜出，另一方被取消（底层 HTTP 流随之关闭）。对冲次数受额度限制，不超过请求数的 maxHedgeRatio。
+ * 指标：llm.hedge（各结果次数）、llm.hedge.first.token（对冲模式下实际的首 token 耗时）、
+ * llm.hedge.saved（对冲胜出时按样本估算的节省耗时）、llm.hedge.threshold（当前阈值）
+ */
+@Slf4j
+@Component
+public class RequestHedger {
+
+    private static final String PRIMARY = "primary";
+    private static final String HEDGE = "hedge";
+
+    private final RequestHedgeProperties properties;
+    private final ModelRouter modelRouter;
+    private final ProviderRateLimiter rateLimiter;
+    private final ProviderConcurrencyLimiter concurrencyLimiter;
+    private final ProviderCircuitBreaker circuitBreaker;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, LatencyWindow> windows = new ConcurrentHashMap<>();
+    private double credits;
+
+    public RequestHedger(RequestHedgeProperties properties, ModelRouter modelRouter, ProviderRateLimiter rateLimiter,
+                         ProviderConcurrencyLimiter concurrencyLimiter, ProviderCircuitBreaker circuitBreaker,
+                         MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.modelRouter = modelRouter;
+        this.rateLimiter = rateLimiter;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 以 primary 发起调用，必要时用 ModelRouter.alternative 选出的提供方对冲；call 按提供方构建一次模型调用。
+     * 提供方不可用时以 ProviderUnavailableException 快速失败；对冲请求失败时不影响主请求
+     */
+    public Flux<String> execute(ModelProvider primary, Function<ModelProvider, Flux<String>> call) {
+        return execute(primary, call, true);
+    }
+
+    /**
+     * hedgeable 为 false 时只经过熔断、限流与并发限制，不发对冲请求：
+     * 用于带工具调用（有外部副作用，对冲会重复执行）或结果必须来自 primary 的调用
+     */
+    public Flux<String> execute(ModelProvider primary, Function<ModelProvider, Flux<String>> call, boolean hedgeable) {
+        if (!properties.isEnabled() || !hedgeable) {
+            return guarded(primary, call);
+        }
+        return Flux.defer(() -> {
+            long begin = System.nanoTime();
+            deposit();
+            long threshold = thresholdNanos(primary);
+            Flux<String> primaryCall = sampled(primary, call, true);
+            if (threshold < 0) {
+                return primaryCall;
+            }
+            ModelProvider secondary = modelRouter.alternative(primary);
+            AtomicReference<String> winner = new AtomicReference<>();
+            AtomicBoolean hedged = new AtomicBoolean();
+            Flux<String> hedgeCall = Mono.delay(Duration.ofNanos(threshold))
+                    .flatMapMany((tick) -> {
+                        if (!withdraw()) {
+                            count("budget_exhausted");
+                            return Flux.<String>never();
+                        }
+                        hedged.set(true);
+                        log.debug("llm_hedge_sent primary={} secondary={} thresholdMs={}",
+                                primary.name(), secondary.name(), TimeUnit.NANOSECONDS.toMillis(threshold));
+                        return sampled(secondary, call, false)
+                                .onErrorResume((e) -> {
+                                    log.debug("llm_hedge_failed secondary={} error={}", secondary.name(), e.getMessage());
+                                    return Flux.never();
+                                });
+                    });
+            return Flux.firstWithSignal(
+                    primaryCall.doOnNext((token) -> won(PRIMARY, winner, hedged, primary, begin)),
+                    hedgeCall.doOnNext((token) -> won(HEDGE, winner, hedged, primary, begin)));
+        });
+    }
+
+    /**
+     * 当前对冲阈值，样本不足时为 -1
+     */
+    long thresholdNanos(ModelProvider provider) {
+        LatencyWindow window = window(provider);
+        long percentile = window.percentile(properties.getPercentile(), properties.getMinSamples());
+        if (percentile < 0) {
+            return -1;
+        }
+        long min = TimeUnit.MILLISECONDS.toNanos(properties.getMinDelayMillis());
+        long max = TimeUnit.MILLISECONDS.toNanos(Math.max(properties.getMinDelayMillis(), properties.getMaxDelayMillis()));
+        return Math.min(max, Math.max(min, percentile));
+    }
+
+    private void won(String side, AtomicReference<String> winner, AtomicBoolean hedged, ModelProvider primary, long begin) {
+        if (!winner.compareAndSet(null, side)) {
+            return;
+        }
+        long elapsed = System.nanoTime() - begin;
+        String outcome = !hedged.get() ? "not_hedged" : PRIMARY.equals(side) ? "primary_won" : "hedge_won";
+        count(outcome);
+        Timer.builder("llm.hedge.first.token")
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(elapsed, TimeUnit.NANOSECONDS);
+        if (HEDGE.equals(side)) {
+            // 主请求被取消，真实耗时未知：取样本中长于当前耗时部分的中位数作为估计
+            long estimate = window(primary).medianAbove(elapsed);
+            Timer.builder("llm.hedge.saved")
+                    .tag("provider", primary.name())
+                    .register(meterRegistry)
+                    .record(Math.max(0, estimate - elapsed), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 记录首 token 耗时样本。主请求在首个 token 前被取消时记录已等待时长（真实耗时的下界，且不低于阈值），
+     * 避免阈值因删失样本而偏低；对冲请求刚发出就被取消时的等待时长没有参考价值，不记录
+     */
+    private Flux<String> sampled(ModelProvider provider, Function<ModelProvider, Flux<String>> call, boolean sampleOnCancel) {
+        LatencyWindow window = window(provider);
+        return guarded(provider, (target) -> Flux.defer(() -> {
+            long begin = System.nanoTime();
+            AtomicBoolean sampled = new AtomicBoolean();
+            return call.apply(target)
+                    .doOnNext((token) -> {
+                        if (sampled.compareAndSet(false, true)) {
+                            window.add(System.nanoTime() - begin);
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (sampleOnCancel && sampled.compareAndSet(false, true)) {
+                            window.add(System.nanoTime() - begin);
+                        }
+                    });
+        }));
+    }
+
+    /**
+     * 熔断检查最先进行，限流等待不占并发名额，并发限制与路由统计只覆盖真实的模型调用
+     */
+    private Flux<String> guarded(ModelProvider provider, Function<ModelProvider, Flux<String>> call) {
+        String name = provider.name();
+        return circuitBreaker.protect(name, rateLimiter.acquire(name).thenMany(
+                concurrencyLimiter.protect(name, modelRouter.observe(provider, Flux.defer(() -> call.apply(provider))))));
+    }
+
+    private LatencyWindow window(ModelProvider provider) {
+        return windows.computeIfAbsent(provider.name(), (name) -> {
+            LatencyWindow window = new LatencyWindow(Math.max(1, properties.getWindowSize()));
+            Gauge.builder("llm.hedge.threshold", provider, (p) -> TimeUnit.NANOSECONDS.toMillis(Math.max(0, thresholdNanos(p))))
+                    .tag("provider", name)
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+            return window;
+        });
+    }
+
+    private synchronized void deposit() {
+        credits = Math.min(properties.getBudgetBurst(), credits + properties.getMaxHedgeRatio());
+    }
+
+    private synchronized boolean withdraw() {
+        if (credits < 1) {
+            return false;
+        }
+        credits -= 1;
+        return true;
+    }
+
+    private void count(String outcome) {
+        Counter.builder("llm.hedge")
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * 最近 N 个首 token 耗时的环形缓冲；分位数在对冲判断时现算，N 为数百，排序开销相对模型调用可忽略
+     */
+    private static final class LatencyWindow {
+
+        private final long[] samples;
+        private int size;
+        private int next;
+
+        LatencyWindow(int capacity) {
+            this.samples = new long[capacity];
+        }
+
+        synchronized void add(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            size = Math.min(size + 1, samples.length);
+        }
+
+        synchronized long percentile(double percentile, int minSamples) {
+            if (size == 0 || size < minSamples) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(Math.min(1, Math.max(0, percentile)) * size) - 1;
+            return sorted[Math.max(0, index)];
+        }
+
+        synchronized long medianAbove(long nanos) {
+            long[] longer = Arrays.stream(samples, 0, size).filter((sample) -> sample > nanos).sorted().toArray();
+            return longer.length == 0 ? nanos : longer[longer.length / 2];
+        }
+    }
+}
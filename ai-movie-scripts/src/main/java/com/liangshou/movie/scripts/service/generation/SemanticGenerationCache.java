@@ -0,0 +1,199 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import com.liangshou.movie.scripts.common.config.llm.SemanticCacheProperties;
+import com.liangshou.movie.scripts.common.enums.GenerationTypeEnum;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 语义缓存：对用户请求文本做向量化，在进程内索引中查找相似度超过阈值的历史请求并直接返回其结果，
+ * 用于覆盖措辞略有不同的重复提交。索引按 (生成类型, 模型, 参数) 分区，避免跨接口或跨模型误命中。
+ * 向量化失败或超时按未命中处理；节省的耗时与 token 记在 llm.semantic.cache.saved.* 指标上。
+ */
+@Slf4j
+@Component
+public class SemanticGenerationCache {
+
+    private final SemanticCacheProperties properties;
+    private final EmbeddingModel embeddingModel;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, SemanticIndex> indexes = new ConcurrentHashMap<>();
+    private final Timer embeddingLatency;
+
+    @Autowired
+    public SemanticGenerationCache(
+            SemanticCacheProperties properties,
+            ObjectProvider<EmbeddingModel> embeddingModels,
+            MeterRegistry meterRegistry) {
+        this(properties, embeddingModels.getIfUnique(), meterRegistry);
+    }
+
+    public SemanticGenerationCache(
+            SemanticCacheProperties properties,
+            EmbeddingModel embeddingModel,
+            MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.embeddingModel = embeddingModel;
+        this.meterRegistry = meterRegistry;
+        this.embeddingLatency = Timer.builder("llm.semantic.cache.embedding.latency")
+                .description("请求文本向量化耗时")
+                .register(meterRegistry);
+        if (properties.isEnabled() && embeddingModel == null) {
+            log.warn("semantic_cache_disabled reason=no_unique_embedding_model");
+        }
+    }
+
+    /**
+     * 命中时返回相似请求的结果，否则调用 generator 并把本次请求与结果写入索引；空结果不写入
+     */
+    public Mono<String> getOrGenerate(
+            GenerationTypeEnum type,
+            String model,
+            Map<String, ?> options,
+            String request,
+            Supplier<Mono<String>> generator
+    ) {
+        if (!isEnabled(type) || !StringUtils.hasText(request)) {
+            count(type, "bypass");
+            return Mono.defer(generator);
+        }
+        SemanticIndex index = indexes.computeIfAbsent(
+                GenerationCacheKey.of(model, options, type.getCode()),
+                (scope) -> new SemanticIndex(properties.getMaxEntriesPerType()));
+        return Mono.fromCallable(() -> Optional.of(embed(request)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .timeout(Duration.ofMillis(Math.max(1, properties.getEmbeddingTimeoutMillis())))
+                .onErrorResume((e) -> {
+                    count(type, "error");
+                    log.warn("semantic_cache_embedding_failed type={} error={}", type.getCode(), e.toString());
+                    return Mono.just(Optional.empty());
+                })
+                .flatMap((vector) -> {
+                    if (vector.isEmpty()) {
+                        return Mono.defer(generator);
+                    }
+                    Instant now = Instant.now();
+                    SemanticIndex.Match match = index.search(vector.get(), properties.getSimilarityThreshold(), now);
+                    if (match != null) {
+                        recordHit(type, match);
+                        return Mono.just(match.content());
+                    }
+                    count(type, "miss");
+                    long begin = System.nanoTime();
+                    return Mono.defer(generator).doOnNext((content) -> {
+                        if (StringUtils.hasText(content)) {
+                            index.add(vector.get(), content, System.nanoTime() - begin,
+                                    now.plusSeconds(Math.max(1, properties.getTtlSeconds())));
+                        }
+                    });
+                });
+    }
+
+    /**
+     * 流式版本：命中时以单个元素返回相似请求的结果；未命中时透传 generator 的 token，正常结束后把完整结果写入索引
+     */
+    public Flux<String> getOrGenerateStream(
+            GenerationTypeEnum type,
+            String model,
+            Map<String, ?> options,
+            String request,
+            Supplier<Flux<String>> generator
+    ) {
+        if (!isEnabled(type) || !StringUtils.hasText(request)) {
+            count(type, "bypass");
+            return Flux.defer(generator);
+        }
+        SemanticIndex index = indexes.computeIfAbsent(
+                GenerationCacheKey.of(model, options, type.getCode()),
+                (scope) -> new SemanticIndex(properties.getMaxEntriesPerType()));
+        return Mono.fromCallable(() -> Optional.of(embed(request)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .timeout(Duration.ofMillis(Math.max(1, properties.getEmbeddingTimeoutMillis())))
+                .onErrorResume((e) -> {
+                    count(type, "error");
+                    log.warn("semantic_cache_embedding_failed type={} error={}", type.getCode(), e.toString());
+                    return Mono.just(Optional.empty());
+                })
+                .flatMapMany((vector) -> {
+                    if (vector.isEmpty()) {
+                        return Flux.defer(generator);
+                    }
+                    Instant now = Instant.now();
+                    SemanticIndex.Match match = index.search(vector.get(), properties.getSimilarityThreshold(), now);
+                    if (match != null) {
+                        recordHit(type, match);
+                        return Flux.just(match.content());
+                    }
+                    count(type, "miss");
+                    long begin = System.nanoTime();
+                    StringBuilder full = new StringBuilder();
+                    return Flux.defer(generator)
+                            .doOnNext(full::append)
+                            .doOnComplete(() -> {
+                                if (StringUtils.hasText(full)) {
+                                    index.add(vector.get(), full.toString(), System.nanoTime() - begin,
+                                            now.plusSeconds(Math.max(1, properties.getTtlSeconds())));
+                                }
+                            });
+                });
+    }
+
+    public boolean isEnabled(GenerationTypeEnum type) {
+        return properties.isEnabled() && embeddingModel != null && type != null
+                && properties.getTypes().contains(type);
+    }
+
+    private float[] embed(String request) {
+        long begin = System.nanoTime();
+        try {
+            return SemanticIndex.normalize(embeddingModel.embed(GenerationCacheKey.normalize(request)));
+        } finally {
+            embeddingLatency.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void recordHit(GenerationTypeEnum type, SemanticIndex.Match match) {
+        count(type, "hit");
+        DistributionSummary.builder("llm.semantic.cache.similarity")
+                .tag("type", type.getCode())
+                .register(meterRegistry)
+                .record(match.similarity());
+        Timer.builder("llm.semantic.cache.saved.latency")
+                .description("命中时省下的原始生成耗时")
+                .tag("type", type.getCode())
+                .register(meterRegistry)
+                .record(match.generationNanos(), TimeUnit.NANOSECONDS);
+        Counter.builder("llm.semantic.cache.saved.tokens")
+                .description("命中时省下的输出 token 数（按字符数估算）")
+                .tag("type", type.getCode())
+                .register(meterRegistry)
+                .increment(match.content().codePointCount(0, match.content().length()));
+    }
+
+    private void count(GenerationTypeEnum type, String result) {
+        Counter.builder("llm.semantic.cache")
+                .tag("type", type != null ? type.getCode() : "unknown")
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+}
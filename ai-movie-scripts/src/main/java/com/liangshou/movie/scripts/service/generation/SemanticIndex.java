@@ -0,0 +1,92 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import java.time.Instant;
+
+/**
+ * 进程内的扁平向量索引：固定容量的环形数组，写满后覆盖最早的条目。
+ * 向量在写入前归一化为单位长度，查询时点积即余弦相似度；
+ * 容量为数千条时全量扫描在毫秒级，点积用四路独立累加，便于 CPU 流水并行。
+ */
+class SemanticIndex {
+
+    private final float[][] vectors;
+    private final String[] contents;
+    private final long[] costNanos;
+    private final Instant[] expireAt;
+    private int next;
+    private int size;
+
+    SemanticIndex(int capacity) {
+        int safeCapacity = Math.max(1, capacity);
+        this.vectors = new float[safeCapacity][];
+        this.contents = new String[safeCapacity];
+        this.costNanos = new long[safeCapacity];
+        this.expireAt = new Instant[safeCapacity];
+    }
+
+    synchronized void add(float[] vector, String content, long generationNanos, Instant expiresAt) {
+        vectors[next] = vector;
+        contents[next] = content;
+        costNanos[next] = generationNanos;
+        expireAt[next] = expiresAt;
+        next = (next + 1) % vectors.length;
+        size = Math.min(size + 1, vectors.length);
+    }
+
+    /**
+     * 返回相似度不低于阈值且未过期的最相近条目，没有则返回 null
+     */
+    synchronized Match search(float[] query, double threshold, Instant now) {
+        int best = -1;
+        double bestScore = threshold;
+        for (int i = 0; i < size; i += 1) {
+            float[] vector = vectors[i];
+            if (vector.length != query.length || !expireAt[i].isAfter(now)) {
+                continue;
+            }
+            double score = dot(vector, query);
+            if (score >= bestScore) {
+                bestScore = score;
+                best = i;
+            }
+        }
+        return best < 0 ? null : new Match(contents[best], bestScore, costNanos[best]);
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    static float[] normalize(float[] vector) {
+        double norm = Math.sqrt(dot(vector, vector));
+        float[] unit = new float[vector.length];
+        if (norm == 0) {
+            return unit;
+        }
+        for (int i = 0; i < vector.length; i += 1) {
+            unit[i] = (float) (vector[i] / norm);
+        }
+        return unit;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        float s0 = 0;
+        float s1 = 0;
+        float s2 = 0;
+        float s3 = 0;
+        int i = 0;
+        for (int bound = a.length - 3; i < bound; i += 4) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < a.length; i += 1) {
+            s0 += a[i] * b[i];
+        }
+        return (double) s0 + s1 + s2 + s3;
+    }
+
+    record Match(String content, double similarity, long generationNanos) {
+    }
+}
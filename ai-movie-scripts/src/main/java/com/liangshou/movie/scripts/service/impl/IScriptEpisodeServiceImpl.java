@@ -361,6 +361,59 @@ public class IScriptEpisodeServiceImpl implements IScriptEpisodeService {
         }
     }
 
+    @Override
+    public ScriptEpisodeDTO saveGeneratedEpisode(ScriptEpisodeDTO episodeDTO) {
+        try {
+            if (episodeDTO == null
+                    || !StringUtils.hasText(episodeDTO.getProjectId())
+                    || !StringUtils.hasText(episodeDTO.getChapterId())
+                    || episodeDTO.getEpisodeNumber() == null) {
+                throw new IllegalArgumentException("参数错误");
+            }
+
+            String content = episodeDTO.getEpisodeContent();
+            int wordCount = StringUtils.hasText(content) ? content.length() : 0;
+            LocalDateTime now = LocalDateTime.now();
+
+            QueryWrapper<ScriptEpisodePO> queryWrapper = new QueryWrapper<>();
+            queryWrapper.eq(PROJECT_ID_COLUMN, episodeDTO.getProjectId());
+            queryWrapper.eq(CHAPTER_ID_COLUMN, episodeDTO.getChapterId());
+            queryWrapper.eq(EPISODE_NUMBER_COLUMN, episodeDTO.getEpisodeNumber());
+            queryWrapper.orderByAsc("created_at");
+            queryWrapper.last("LIMIT 1");
+            ScriptEpisodePO entity = scriptEpisodeSupport.getOne(queryWrapper, false);
+
+            boolean saved;
+            if (entity != null) {
+                if (StringUtils.hasText(episodeDTO.getEpisodeTitle())) {
+                    entity.setEpisodeTitle(episodeDTO.getEpisodeTitle());
+                }
+                entity.setEpisodeContent(content);
+                entity.setWordCount(wordCount);
+                entity.setUpdatedAt(now);
+                saved = scriptEpisodeSupport.updateById(entity);
+            } else {
+                entity = convertToPO(episodeDTO);
+                entity.setId(null);
+                entity.setWordCount(wordCount);
+                entity.setCreatedAt(now);
+                entity.setUpdatedAt(now);
+                saved = scriptEpisodeSupport.save(entity);
+            }
+            if (!saved) {
+                throw new BizException(ErrorCodeEnum.CHAPTER_UPDATE_FAILED);
+            }
+
+            return convertToDTO(entity);
+        } catch (Exception e) {
+            LOGGER.error("保存生成的桥段内容时发生错误: projectId={}, chapterId={}, episodeNumber={}",
+                    episodeDTO != null ? episodeDTO.getProjectId() : null,
+                    episodeDTO != null ? episodeDTO.getChapterId() : null,
+                    episodeDTO != null ? episodeDTO.getEpisodeNumber() : null, e);
+            throw new BizException(ErrorCodeEnum.CHAPTER_UPDATE_FAILED, e);
+        }
+    }
+
     /**
      * 将DTO转换为PO
      */
@@ -0,0 +1,158 @@
+package com.liangshou.movie.scripts.utils.prompt;
+
+import com.liangshou.movie.scripts.common.exceptions.BizException;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.TokenStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STErrorListener;
+import org.stringtemplate.v4.STGroup;
+import org.stringtemplate.v4.compiler.STException;
+import org.stringtemplate.v4.compiler.STLexer;
+import org.stringtemplate.v4.misc.STMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.liangshou.movie.scripts.common.enums.ErrorCodeEnum.PROMPT_TEMPLATE_ERROR;
+
+/**
+ * 预编译的提示词模板：语法与 Spring AI PromptTemplate 一致（StringTemplate，{变量} 占位），
+ * 只在加载时解析一次，渲染时复制已编译的模板再填充变量，不再重复解析。
+ * 不含变量的模板直接缓存渲染结果。实例不可变，可被多线程共享。
+ */
+public final class CompiledPrompt {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompiledPrompt.class);
+
+    private final String name;
+    private final String source;
+    private final ST prototype;
+    private final Set<String> variables;
+    private final String rendered;
+
+    private CompiledPrompt(String name, String source, ST prototype, Set<String> variables) {
+        this.name = name;
+        this.source = source;
+        this.prototype = prototype;
+        this.variables = variables;
+        this.rendered = variables.isEmpty() ? prototype.render() : null;
+    }
+
+    /**
+     * 编译模板，语法错误时抛出 PROMPT_TEMPLATE_ERROR
+     */
+    public static CompiledPrompt compile(String name, String source) {
+        CompileErrorListener listener = new CompileErrorListener(name);
+        STGroup group = new STGroup('{', '}');
+        group.setListener(listener);
+        ST prototype;
+        try {
+            prototype = new ST(group, source);
+        } catch (STException e) {
+            // 部分语法错误先经 listener 报告再抛出
+            prototype = null;
+        }
+        if (prototype == null || !listener.errors.isEmpty()) {
+            throw new BizException(PROMPT_TEMPLATE_ERROR.getCode(),
+                    PROMPT_TEMPLATE_ERROR.getMessage() + ": " + name + " " + listener.errors);
+        }
+        listener.compiling = false;
+        return new CompiledPrompt(name, source, prototype, variablesOf(prototype));
+    }
+
+    public String render() {
+        return render(Map.of());
+    }
+
+    /**
+     * 渲染模板，模板中的变量缺失时抛出 PROMPT_TEMPLATE_ERROR
+     */
+    public String render(Map<String, ?> values) {
+        if (rendered != null) {
+            return rendered;
+        }
+        ST st = new ST(prototype);
+        for (String variable : variables) {
+            Object value = values.get(variable);
+            if (value == null) {
+                throw new BizException(PROMPT_TEMPLATE_ERROR.getCode(),
+                        PROMPT_TEMPLATE_ERROR.getMessage() + ": " + name + " 缺少变量 " + variable);
+            }
+            st.add(variable, value);
+        }
+        return st.render();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public Set<String> getVariables() {
+        return variables;
+    }
+
+    /**
+     * 从词法记号中取出 {name} 形式的变量名
+     */
+    private static Set<String> variablesOf(ST prototype) {
+        Set<String> names = new LinkedHashSet<>();
+        TokenStream tokens = prototype.impl.tokens;
+        for (int i = 0; i < tokens.size() - 1; i += 1) {
+            Token token = tokens.get(i);
+            Token next = tokens.get(i + 1);
+            if (token.getType() == STLexer.LDELIM && next.getType() == STLexer.ID) {
+                names.add(next.getText());
+            }
+        }
+        return Collections.unmodifiableSet(names);
+    }
+
+    private static final class CompileErrorListener implements STErrorListener {
+
+        private final String name;
+        private final List<String> errors = new ArrayList<>();
+        private volatile boolean compiling = true;
+
+        private CompileErrorListener(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void compileTimeError(STMessage msg) {
+            record(msg);
+        }
+
+        @Override
+        public void runTimeError(STMessage msg) {
+            record(msg);
+        }
+
+        @Override
+        public void IOError(STMessage msg) {
+            record(msg);
+        }
+
+        @Override
+        public void internalError(STMessage msg) {
+            record(msg);
+        }
+
+        private void record(STMessage msg) {
+            if (compiling) {
+                errors.add(msg.toString());
+            } else {
+                logger.warn("prompt 渲染异常: {} {}", name, msg);
+            }
+        }
+    }
+}
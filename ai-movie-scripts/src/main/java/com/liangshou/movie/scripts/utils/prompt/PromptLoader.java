@@ -8,12 +8,16 @@ import org.springframework.util.StreamUtils;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import static com.liangshou.movie.scripts.common.enums.ErrorCodeEnum.PROMPT_LOADER_ERROR;
 
 /**
- * 提示词加载工具，加载resources/prompts目录下的 PromptTemplate
+ * 提示词加载工具，加载resources/prompts目录下的 PromptTemplate。
+ * 配置了外部目录时，同名文件优先于 classpath 中的版本，可通过 reload 在运行时替换。
  */
 @SuppressWarnings("unused")
 public class PromptLoader {
@@ -23,6 +27,13 @@ public class PromptLoader {
 
     private static final ConcurrentHashMap<String, String> promptCache = new ConcurrentHashMap<>();
 
+    private static final ConcurrentHashMap<String, CompiledPrompt> compiledCache = new ConcurrentHashMap<>();
+
+    /**
+     * 外部提示词目录，为空时只读 classpath
+     */
+    private static volatile Path overrideDirectory;
+
     private PromptLoader() {
         // Do Nothing
     }
@@ -31,6 +42,43 @@ public class PromptLoader {
         return promptCache.computeIfAbsent(promptName, PromptLoader::loadPromptFromFile);
     }
 
+    /**
+     * 获取预编译的模板，每个 prompt 只解析一次
+     */
+    public static CompiledPrompt loadCompiled(String promptName) {
+        return compiledCache.computeIfAbsent(promptName,
+                (name) -> CompiledPrompt.compile(name, loadPrompt(name)));
+    }
+
+    /**
+     * 重新读取并编译指定 prompt，成功后原子替换缓存；读取或编译失败时保留原版本并返回 false
+     */
+    public static boolean reload(String promptName) {
+        CompiledPrompt compiled;
+        try {
+            compiled = CompiledPrompt.compile(promptName, loadPromptFromFile(promptName));
+        } catch (RuntimeException e) {
+            logger.error("重新加载 prompt 失败，继续使用原版本: {} {}", promptName, e.getMessage());
+            return false;
+        }
+        promptCache.put(promptName, compiled.getSource());
+        compiledCache.put(promptName, compiled);
+        logger.info("重新加载 prompt: {}, 内容长度: {}", promptName, compiled.getSource().length());
+        return true;
+    }
+
+    /**
+     * 设置外部提示词目录并清空缓存，传 null 恢复为只读 classpath
+     */
+    public static void setOverrideDirectory(Path directory) {
+        overrideDirectory = directory;
+        clearCache();
+    }
+
+    public static Path getOverrideDirectory() {
+        return overrideDirectory;
+    }
+
     /**
      * 从文件加载指定名称的 Prompt
      *
@@ -41,18 +89,34 @@ public class PromptLoader {
         // 步骤1: 记录正在加载的 prompt 名称
         logger.info("开始加载 prompt: {}", promptName);
 
-        // 步骤2: 构造文件路径
+        // 步骤2: 外部目录中存在同名文件时优先使用
+        Path directory = overrideDirectory;
+        if (directory != null) {
+            Path external = directory.resolve(promptName + ".txt");
+            if (Files.isRegularFile(external)) {
+                try {
+                    String content = Files.readString(external, StandardCharsets.UTF_8);
+                    logger.info("从外部目录加载 prompt: {}, 内容长度: {}", external, content.length());
+                    return content;
+                } catch (IOException exception) {
+                    logger.error("加载外部 prompt 文件失败: {}", external);
+                    throw new BizException(PROMPT_LOADER_ERROR, exception);
+                }
+            }
+        }
+
+        // 步骤3: 构造文件路径
         String fileName = PROMPT_PATH_PREFIX + promptName + ".txt";
         logger.debug("构造的文件路径: {}", fileName);
 
-        // 步骤3: 从类加载器获取资源流
+        // 步骤4: 从类加载器获取资源流
         try (InputStream inputStream = PromptLoader.class.getClassLoader().getResourceAsStream(fileName)) {
             if (inputStream == null) {
                 logger.error("找不到 prompt 文件: {}", fileName);
                 throw new BizException(PROMPT_LOADER_ERROR);
             }
             
-            // 步骤4: 读取并转换为字符串
+            // 步骤5: 读取并转换为字符串
             String content = StreamUtils.copyToString(inputStream, StandardCharsets.UTF_8);
             logger.info("成功加载 prompt: {}, 内容长度: {}", promptName, content.length());
             
@@ -68,6 +132,14 @@ public class PromptLoader {
      */
     public static void clearCache() {
         promptCache.clear();
+        compiledCache.clear();
+    }
+
+    /**
+     * 已加载过的 prompt 名称
+     */
+    public static Set<String> getCachedPromptNames() {
+        return Set.copyOf(promptCache.keySet());
     }
 
     /**
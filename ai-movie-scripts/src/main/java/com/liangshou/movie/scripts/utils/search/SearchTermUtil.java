@@ -0,0 +1,122 @@
+package com.liangshou.movie.scripts.utils.search;
+
+import org.springframework.util.StringUtils;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 搜索词切分工具类
+ * MongoDB 文本索引不支持中文分词，这里把文本归一化（NFKC + 小写）后切成检索词：
+ * 中日韩字符输出单字与相邻二元组，其他字母数字按连续片段输出整词，词之间以空格分隔写入文本索引字段
+ */
+public class SearchTermUtil {
+
+    private SearchTermUtil() {
+        // Do Nothing
+    }
+
+    /**
+     * 将文本切分为去重后的检索词，以空格连接，供写入文本索引字段
+     *
+     * @param text 原始文本
+     * @return 检索词串，输入为空时返回空串
+     */
+    public static String toIndexTerms(String text) {
+        return String.join(" ", tokenize(text, true));
+    }
+
+    /**
+     * 将用户输入的关键字转换为 $text 查询串：每个检索词作为短语加引号，多个短语之间为“与”关系
+     *
+     * @param keyword 用户输入的关键字
+     * @return $search 查询串，关键字中没有可检索内容时返回 null
+     */
+    public static String toSearchQuery(String keyword) {
+        List<String> terms = new ArrayList<>(tokenize(keyword, false));
+        if (terms.isEmpty()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String term : terms) {
+            if (!sb.isEmpty()) {
+                sb.append(' ');
+            }
+            sb.append('"').append(term).append('"');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 切分文本
+     *
+     * @param text          原始文本
+     * @param withUnigrams  是否为长度大于 1 的中日韩片段同时输出单字（索引侧需要，查询侧只用二元组即可）
+     */
+    private static Set<String> tokenize(String text, boolean withUnigrams) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (!StringUtils.hasText(text)) {
+            return terms;
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        StringBuilder word = new StringBuilder();
+        StringBuilder cjk = new StringBuilder();
+        int i = 0;
+        while (i < normalized.length()) {
+            int cp = normalized.codePointAt(i);
+            if (isCjk(cp)) {
+                flushWord(word, terms);
+                cjk.appendCodePoint(cp);
+            } else if (Character.isLetterOrDigit(cp)) {
+                flushCjk(cjk, terms, withUnigrams);
+                word.appendCodePoint(cp);
+            } else {
+                flushWord(word, terms);
+                flushCjk(cjk, terms, withUnigrams);
+            }
+            i += Character.charCount(cp);
+        }
+        flushWord(word, terms);
+        flushCjk(cjk, terms, withUnigrams);
+        return terms;
+    }
+
+    private static void flushWord(StringBuilder word, Set<String> terms) {
+        if (!word.isEmpty()) {
+            terms.add(word.toString());
+            word.setLength(0);
+        }
+    }
+
+    private static void flushCjk(StringBuilder cjk, Set<String> terms, boolean withUnigrams) {
+        if (cjk.isEmpty()) {
+            return;
+        }
+        int[] cps = cjk.codePoints().toArray();
+        if (cps.length == 1) {
+            terms.add(new String(cps, 0, 1));
+        } else {
+            for (int i = 0; i < cps.length; i += 1) {
+                if (withUnigrams) {
+                    terms.add(new String(cps, i, 1));
+                }
+                if (i + 1 < cps.length) {
+                    terms.add(new String(cps, i, 2));
+                }
+            }
+        }
+        cjk.setLength(0);
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
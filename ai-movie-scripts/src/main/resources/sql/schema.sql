@@ -1,6 +1,5 @@
 -- 删除表（按依赖关系逆序）
 DROP TABLE IF EXISTS scripts_episodes;
-DROP TABLE IF EXISTS ai_generation_logs;
 DROP TABLE IF EXISTS content_revisions;
 DROP TABLE IF EXISTS script_chapters;
  DROP TABLE IF EXISTS character_relationships;
@@ -56,3 +55,27 @@ CREATE TABLE IF NOT EXISTS scripts_episodes (
     INDEX idx_chapter_id (chapter_id),
     INDEX idx_episode_number (episode_number)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='桥段内容表';
+
+-- AI生成日志表 (ai_generation_logs)
+-- 每次模型调用一行，由 GenerationLogAdvisor 异步批量写入；不重建以保留历史日志。
+-- project_id 不设外键：头脑风暴会话可能尚未关联项目，外键失败会导致整批写入失败
+CREATE TABLE IF NOT EXISTS ai_generation_logs (
+    id VARCHAR(36) PRIMARY KEY COMMENT '日志唯一标识',
+    project_id VARCHAR(36) COMMENT '关联项目ID',
+    generation_type VARCHAR(50) NOT NULL COMMENT '生成类型',
+    model VARCHAR(100) COMMENT '模型名称',
+    prompt TEXT COMMENT '输入提示',
+    response TEXT COMMENT 'AI响应',
+    prompt_chars INT COMMENT '输入提示字符数',
+    prompt_tokens INT COMMENT '输入token数量',
+    completion_tokens INT COMMENT '输出token数量',
+    tokens_used INT COMMENT '使用token数量',
+    first_token_ms INT COMMENT '首个token耗时(毫秒)',
+    execution_time_ms INT COMMENT '执行时间(毫秒)',
+    status ENUM('SUCCESS', 'FAILED', 'PROCESSING') DEFAULT 'PROCESSING' COMMENT '状态',
+    error_message TEXT COMMENT '错误信息',
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    INDEX idx_project_id (project_id),
+    INDEX idx_generation_type (generation_type),
+    INDEX idx_created_at (created_at)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='AI生成日志表';
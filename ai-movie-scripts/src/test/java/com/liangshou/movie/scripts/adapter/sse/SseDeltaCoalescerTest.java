@@ -0,0 +1,151 @@
+package com.liangshou.movie.scripts.adapter.sse;
+
+import com.liangshou.movie.scripts.common.config.sse.SseStreamProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+class SseDeltaCoalescerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private SseDeltaCoalescer coalescer;
+
+    @AfterEach
+    void tearDown() {
+        coalescer.shutdown();
+    }
+
+    @Test
+    void shouldCoalesceTokensBySize() throws Exception {
+        coalescer = new SseDeltaCoalescer(properties(10_000, 20, 0), meterRegistry);
+        RecordingEmitter emitter = new RecordingEmitter();
+
+        coalescer.pipe("test", Flux.range(0, 100).map((i) -> "ab"), emitter);
+
+        Assertions.assertTrue(emitter.completed.await(5, TimeUnit.SECONDS));
+        List<String> deltas = emitter.data("delta");
+        Assertions.assertEquals(10, deltas.size());
+        Assertions.assertEquals("ab".repeat(100), String.join("", deltas));
+        Assertions.assertEquals(List.of("[DONE]"), emitter.data("done"));
+        Assertions.assertEquals(100.0, meterRegistry.get("sse.stream.tokens").counter().count());
+        Assertions.assertEquals(10.0, meterRegistry.get("sse.stream.events").counter().count());
+    }
+
+    @Test
+    void shouldFlushPartialBufferAfterWindow() throws Exception {
+        coalescer = new SseDeltaCoalescer(properties(20, 1 << 20, 0), meterRegistry);
+        RecordingEmitter emitter = new RecordingEmitter();
+
+        Flux<String> tokens = Flux.just("a", "b", "c").concatWith(Flux.just("d").delaySubscription(Duration.ofMillis(200)));
+        coalescer.pipe("test", tokens, emitter);
+
+        Assertions.assertTrue(emitter.completed.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(List.of("abc", "d"), emitter.data("delta"));
+    }
+
+    @Test
+    void shouldSendHeartbeatWhileIdle() throws Exception {
+        coalescer = new SseDeltaCoalescer(properties(20, 512, 30), meterRegistry);
+        RecordingEmitter emitter = new RecordingEmitter();
+
+        coalescer.pipe("test", Flux.just("x").delaySubscription(Duration.ofMillis(200)), emitter);
+
+        Assertions.assertTrue(emitter.completed.await(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(emitter.raw.stream().anyMatch((line) -> line.startsWith(":ping")));
+        Assertions.assertEquals(List.of("x"), emitter.data("delta"));
+    }
+
+    @Test
+    void shouldSendStructuredEventsAsJsonWithoutCoalescing() throws Exception {
+        coalescer = new SseDeltaCoalescer(properties(10_000, 1 << 20, 0), meterRegistry);
+        RecordingEmitter emitter = new RecordingEmitter();
+        AtomicInteger closes = new AtomicInteger();
+
+        coalescer.pipeEvents("test", "episode", Flux.just(Map.of("n", 1), Map.of("n", 2)), emitter,
+                closes::incrementAndGet);
+
+        Assertions.assertTrue(emitter.completed.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(2, emitter.data("episode").size());
+        Assertions.assertEquals(List.of("[DONE]"), emitter.data("done"));
+        Assertions.assertEquals(1, closes.get());
+    }
+
+    @Test
+    void shouldCancelUpstreamAndReleaseOnceWhenClientDisconnects() throws Exception {
+        coalescer = new SseDeltaCoalescer(properties(0, 512, 0), meterRegistry);
+        RecordingEmitter emitter = new RecordingEmitter();
+        emitter.failAfter = 3;
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicInteger closes = new AtomicInteger();
+
+        Flux<String> tokens = Flux.interval(Duration.ofMillis(5)).map(String::valueOf)
+                .doOnCancel(() -> cancelled.set(true));
+        coalescer.pipe("test", tokens, emitter, closes::incrementAndGet);
+
+        Assertions.assertTrue(emitter.completed.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        Assertions.assertTrue(cancelled.get());
+        Assertions.assertEquals(1, closes.get());
+        Assertions.assertEquals(3, emitter.data("delta").size());
+    }
+
+    private static SseStreamProperties properties(long windowMillis, int maxBytes, long heartbeatMillis) {
+        SseStreamProperties properties = new SseStreamProperties();
+        properties.setCoalesceWindowMillis(windowMillis);
+        properties.setCoalesceMaxBytes(maxBytes);
+        properties.setHeartbeatIntervalMillis(heartbeatMillis);
+        return properties;
+    }
+
+    /**
+     * 记录写出的原始 SSE 文本，不依赖 servlet 响应
+     */
+    private static class RecordingEmitter extends SseEmitter {
+
+        private final List<String> raw = new CopyOnWriteArrayList<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private int failAfter = Integer.MAX_VALUE;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (raw.size() >= failAfter) {
+                throw new IOException("Broken pipe");
+            }
+            raw.add(builder.build().stream()
+                    .map((part) -> String.valueOf(part.getData()))
+                    .collect(Collectors.joining()));
+        }
+
+        @Override
+        public void complete() {
+            completed.countDown();
+        }
+
+        @Override
+        public void completeWithError(Throwable ex) {
+            completed.countDown();
+        }
+
+        private List<String> data(String name) {
+            String prefix = "event:" + name + "\ndata:";
+            return raw.stream()
+                    .filter((line) -> line.startsWith(prefix))
+                    .map((line) -> line.substring(prefix.length(), line.length() - 2))
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.liangshou.movie.scripts.adapter.sse;
+
+import com.liangshou.movie.scripts.common.config.sse.SseStreamProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class SseStreamLimiterTest {
+
+    @Test
+    void shouldRejectBeyondCapAndReleaseOnlyOnce() {
+        SseStreamProperties properties = new SseStreamProperties();
+        properties.setMaxConcurrentStreams(2);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SseStreamLimiter limiter = new SseStreamLimiter(properties, meterRegistry);
+
+        SseStreamLimiter.Permit first = limiter.tryAcquire();
+        SseStreamLimiter.Permit second = limiter.tryAcquire();
+        Assertions.assertNotNull(first);
+        Assertions.assertNotNull(second);
+        Assertions.assertNull(limiter.tryAcquire());
+        Assertions.assertEquals(2.0, meterRegistry.get("sse.stream.active").gauge().value());
+        Assertions.assertEquals(1.0, meterRegistry.get("sse.stream.rejected").counter().count());
+
+        first.release();
+        first.release();
+        Assertions.assertEquals(1, limiter.activeStreams());
+        Assertions.assertNotNull(limiter.tryAcquire());
+        Assertions.assertNull(limiter.tryAcquire());
+    }
+}
@@ -0,0 +1,68 @@
+package com.liangshou.movie.scripts.common.config.http;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+class HttpTransportConfigTest {
+
+    private static final int REQUESTS = 5;
+
+    private final HttpTransportConfig config = new HttpTransportConfig();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private HttpServer server;
+    private ConnectionProvider connectionProvider;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ping", (exchange) -> {
+            byte[] body = "pong".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        if (connectionProvider != null) {
+            connectionProvider.dispose();
+        }
+        server.stop(0);
+    }
+
+    @Test
+    void shouldReuseConnectionAcrossRequests() {
+        HttpTransportProperties properties = new HttpTransportProperties();
+        // 本地桩服务为明文 HTTP/1.1，HTTP/2 需通过 TLS 的 ALPN 协商
+        properties.setHttp2(false);
+        connectionProvider = config.outboundConnectionProvider(properties);
+        HttpClient httpClient = config.outboundHttpClient(connectionProvider, properties, registry);
+        RestClient.Builder builder = RestClient.builder();
+        config.outboundRestClientCustomizer(config.outboundRequestFactory(httpClient)).customize(builder);
+        RestClient client = builder.baseUrl("http://127.0.0.1:" + server.getAddress().getPort()).build();
+
+        for (int i = 0; i < REQUESTS; i += 1) {
+            Assertions.assertEquals("pong", client.get().uri("/ping").retrieve().body(String.class));
+        }
+
+        // 连接在响应读完后异步归还连接池，紧随其后的请求偶尔会新建连接，这里只要求复用确实发生
+        double opened = registry.get("http.client.connection").tag("event", "opened").counter().count();
+        double reused = registry.get("http.client.connection").tag("event", "reused").counter().count();
+        Assertions.assertEquals(REQUESTS, opened + reused);
+        Assertions.assertTrue(reused >= 1, "reused=" + reused);
+        Assertions.assertTrue(opened < REQUESTS, "opened=" + opened);
+    }
+}
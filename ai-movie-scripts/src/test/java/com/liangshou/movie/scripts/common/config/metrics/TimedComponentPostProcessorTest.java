@@ -0,0 +1,76 @@
+package com.liangshou.movie.scripts.common.config.metrics;
+
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+class TimedComponentPostProcessorTest {
+
+    @Test
+    void shouldTimePublicMethodsOfAnnotatedComponents() {
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(TestConfig.class)) {
+            SampleDao dao = context.getBean(SampleDao.class);
+            PlainService plain = context.getBean(PlainService.class);
+            MeterRegistry registry = context.getBean(MeterRegistry.class);
+
+            Assertions.assertTrue(AopUtils.isCglibProxy(dao));
+            Assertions.assertFalse(AopUtils.isAopProxy(plain));
+            Assertions.assertEquals("doc-1", dao.find("1"));
+            Assertions.assertEquals("doc-2", dao.find("2"));
+            Assertions.assertThrows(IllegalStateException.class, dao::fail);
+
+            Assertions.assertEquals(2, registry.get("mongo.dao").tag("class", "SampleDao").tag("method", "find")
+                    .tag("exception", "none").timer().count());
+            Assertions.assertEquals(1, registry.get("mongo.dao").tag("method", "fail")
+                    .tag("exception", "IllegalStateException").timer().count());
+        }
+    }
+
+    @Configuration
+    @Import(MetricsConfig.class)
+    static class TestConfig {
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        SampleDao sampleDao() {
+            return new SampleDao("doc-");
+        }
+
+        @Bean
+        PlainService plainService() {
+            return new PlainService();
+        }
+    }
+
+    @Timed(value = "mongo.dao", histogram = true)
+    static class SampleDao {
+
+        private final String prefix;
+
+        SampleDao(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public String find(String id) {
+            return prefix + id;
+        }
+
+        public void fail() {
+            throw new IllegalStateException("boom");
+        }
+    }
+
+    static class PlainService {
+    }
+}
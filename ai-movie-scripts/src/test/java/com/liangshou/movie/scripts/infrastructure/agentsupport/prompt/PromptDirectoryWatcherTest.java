@@ -0,0 +1,50 @@
+package com.liangshou.movie.scripts.infrastructure.agentsupport.prompt;
+
+import com.liangshou.movie.scripts.common.config.prompt.PromptProperties;
+import com.liangshou.movie.scripts.utils.prompt.PromptLoader;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class PromptDirectoryWatcherTest {
+
+    private static final String CREATIVE = "01_creative_idea_brainstorming";
+
+    @TempDir
+    Path tempDir;
+
+    private PromptDirectoryWatcher watcher;
+
+    @AfterEach
+    void stopWatcher() {
+        if (watcher != null) {
+            watcher.shutdown();
+        }
+        PromptLoader.setOverrideDirectory(null);
+    }
+
+    @Test
+    void shouldReloadPromptWhenExternalFileChanges() throws Exception {
+        Path file = tempDir.resolve(CREATIVE + ".txt");
+        Files.writeString(file, "外部版本一", StandardCharsets.UTF_8);
+        PromptProperties properties = new PromptProperties();
+        properties.setExternalDir(tempDir.toString());
+        properties.setHotReload(true);
+        properties.setReloadDebounceMillis(20);
+        watcher = new PromptDirectoryWatcher(properties, new SimpleMeterRegistry());
+        watcher.start();
+        Assertions.assertEquals("外部版本一", PromptLoader.loadCompiled(CREATIVE).render());
+
+        Files.writeString(file, "外部版本二", StandardCharsets.UTF_8);
+        for (int i = 0; i < 100 && !"外部版本二".equals(PromptLoader.loadCompiled(CREATIVE).render()); i += 1) {
+            Thread.sleep(50);
+        }
+        Assertions.assertEquals("外部版本二", PromptLoader.loadCompiled(CREATIVE).render());
+    }
+}
@@ -0,0 +1,55 @@
+package com.liangshou.movie.scripts.infrastructure.datasource.interceptor;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+class MybatisMetricsInterceptorTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final MybatisMetricsInterceptor interceptor = new MybatisMetricsInterceptor(registry);
+    private final Configuration configuration = new Configuration();
+
+    @Test
+    void shouldTimeStatementsByMapperMethod() throws Exception {
+        Executor executor = Mockito.mock(Executor.class);
+        MappedStatement select = statement("com.example.mapper.ScriptEpisodeMapper.selectList", SqlCommandType.SELECT);
+        when(executor.query(any(), any(), any(), any())).thenReturn(List.of("row"));
+        MappedStatement update = statement("com.example.mapper.ScriptEpisodeMapper.updateById", SqlCommandType.UPDATE);
+        when(executor.update(any(), any())).thenThrow(new SQLException("deadlock"));
+
+        Executor plugged = (Executor) interceptor.plugin(executor);
+
+        Assertions.assertEquals(List.of("row"), plugged.query(select, null, RowBounds.DEFAULT, null));
+        Assertions.assertThrows(SQLException.class, () -> plugged.update(update, null));
+
+        Assertions.assertEquals(1, registry.get("mybatis.statement").tag("statement", "ScriptEpisodeMapper.selectList")
+                .tag("command", "SELECT").tag("outcome", "success").timer().count());
+        Assertions.assertEquals(1, registry.get("mybatis.statement").tag("statement", "ScriptEpisodeMapper.updateById")
+                .tag("command", "UPDATE").tag("outcome", "error").timer().count());
+    }
+
+    @Test
+    void shouldShortenStatementId() {
+        Assertions.assertEquals("Mapper.select", MybatisMetricsInterceptor.shortId("a.b.Mapper.select"));
+        Assertions.assertEquals("select", MybatisMetricsInterceptor.shortId("select"));
+    }
+
+    private MappedStatement statement(String id, SqlCommandType type) {
+        SqlSource sqlSource = (parameter) -> null;
+        return new MappedStatement.Builder(configuration, id, sqlSource, type).build();
+    }
+}
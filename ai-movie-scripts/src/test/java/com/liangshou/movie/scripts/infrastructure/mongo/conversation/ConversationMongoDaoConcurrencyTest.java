@@ -0,0 +1,155 @@
+package com.liangshou.movie.scripts.infrastructure.mongo.conversation;
+
+import com.liangshou.movie.scripts.common.config.conversation.ConversationMemoryProperties;
+import com.liangshou.movie.scripts.service.conversation.ConversationService;
+import com.liangshou.movie.scripts.service.conversation.MessageTokenCounter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Slf4j
+@DataMongoTest
+@Import({ConversationService.class, ConversationMongoDao.class, ConversationMemoryProperties.class,
+        MessageTokenCounter.class, SimpleMeterRegistry.class})
+class ConversationMongoDaoConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int ROUNDS_PER_THREAD = 25;
+
+    @Autowired
+    private ConversationService conversationService;
+
+    @Autowired
+    private ConversationMongoDao mongoDao;
+
+    @Test
+    void shouldNotLoseRoundsUnderConcurrentAppends() throws Exception {
+        String conversationId = "concurrent-conv-" + UUID.randomUUID();
+        Instant base = Instant.parse("2026-01-01T00:00:00Z");
+
+        runConcurrently((thread, round) -> conversationService.appendRound(
+                ConversationService.DEFAULT_USER_ID,
+                conversationId,
+                "p1",
+                "并发会话",
+                "u" + thread + "-" + round,
+                "a" + thread + "-" + round,
+                base.plusMillis((long) thread * ROUNDS_PER_THREAD + round),
+                true
+        ));
+
+        int total = THREADS * ROUNDS_PER_THREAD;
+        ConversationMemoryDocument memory = mongoDao.findMemoryById(conversationId);
+        Assertions.assertNotNull(memory);
+        Assertions.assertEquals(total, memory.getRoundCount());
+        Assertions.assertEquals(total * 2, memory.getMessages().size());
+
+        ConversationMetaDocument meta = mongoDao.findMetaById(conversationId);
+        Assertions.assertNotNull(meta);
+        Assertions.assertEquals(total * 2, meta.getMessageCount());
+        Assertions.assertEquals(total, meta.getUnreadCount());
+        Assertions.assertEquals("并发会话", meta.getTitle());
+    }
+
+    /**
+     * 原子追加与旧的读改写实现的吞吐对比，耗时受机器负载影响，只输出结果不做断言。
+     * 默认跳过，运行方式：mvn test -pl ai-movie-scripts -Dtest=ConversationMongoDaoConcurrencyTest -Dbenchmark=true
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void compareAtomicAppendWithReadModifyWrite() throws Exception {
+        String atomicId = "throughput-atomic-" + UUID.randomUUID();
+        String legacyId = "throughput-legacy-" + UUID.randomUUID();
+        Instant at = Instant.parse("2026-01-01T00:00:00Z");
+        AtomicLong legacyConflicts = new AtomicLong();
+
+        long legacyNanos = runConcurrently((thread, round) -> legacyAppend(legacyId, at, legacyConflicts));
+        long atomicNanos = runConcurrently((thread, round) -> conversationService.appendRound(
+                ConversationService.DEFAULT_USER_ID, atomicId, "p1", "吞吐测试", "u", "a", at, false));
+
+        int total = THREADS * ROUNDS_PER_THREAD;
+        Assertions.assertEquals(total, mongoDao.findMemoryById(legacyId).getRoundCount());
+        Assertions.assertEquals(total, mongoDao.findMemoryById(atomicId).getRoundCount());
+
+        log.info("append_throughput readModifyWrite={} rounds/s conflicts={} atomic={} rounds/s",
+                String.format("%.1f", total * 1e9 / legacyNanos), legacyConflicts.get(),
+                String.format("%.1f", total * 1e9 / atomicNanos));
+    }
+
+    /**
+     * 旧实现：读取整个文档、在内存中追加后整体 save，版本冲突时重试
+     */
+    private void legacyAppend(String conversationId, Instant at, AtomicLong conflicts) {
+        while (true) {
+            try {
+                ConversationMemoryDocument memory = mongoDao.findMemoryById(conversationId);
+                if (memory == null) {
+                    memory = new ConversationMemoryDocument();
+                    memory.setId(conversationId);
+                    memory.setUserId(ConversationService.DEFAULT_USER_ID);
+                    memory.setCreatedAt(at);
+                }
+                ConversationMemoryDocument.ConversationStoredMessage msg = new ConversationMemoryDocument.ConversationStoredMessage();
+                msg.setRole("user");
+                msg.setContent("u");
+                msg.setAt(at);
+                memory.getMessages().add(msg);
+                memory.setRoundCount(memory.getRoundCount() + 1);
+                memory.setUpdatedAt(at);
+                mongoDao.saveMemory(memory);
+                return;
+            } catch (OptimisticLockingFailureException | DuplicateKeyException e) {
+                conflicts.incrementAndGet();
+            }
+        }
+    }
+
+    private long runConcurrently(RoundTask task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t += 1) {
+                int thread = t;
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    for (int r = 0; r < ROUNDS_PER_THREAD; r += 1) {
+                        task.run(thread, r);
+                    }
+                    return null;
+                }));
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(2, TimeUnit.MINUTES);
+            }
+            return System.nanoTime() - begin;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @FunctionalInterface
+    private interface RoundTask {
+        void run(int thread, int round);
+    }
+}
@@ -0,0 +1,162 @@
+package com.liangshou.movie.scripts.service.agents.agentimpl;
+
+import com.liangshou.movie.scripts.common.config.llm.GenerationCacheProperties;
+import com.liangshou.movie.scripts.common.config.llm.ModelRouterProperties;
+import com.liangshou.movie.scripts.common.config.llm.ProviderCircuitBreakerProperties;
+import com.liangshou.movie.scripts.common.config.llm.ProviderConcurrencyProperties;
+import com.liangshou.movie.scripts.common.config.llm.ProviderRateLimitProperties;
+import com.liangshou.movie.scripts.common.config.llm.RequestHedgeProperties;
+import com.liangshou.movie.scripts.common.config.llm.SemanticCacheProperties;
+import com.liangshou.movie.scripts.common.config.llm.SingleFlightProperties;
+import com.liangshou.movie.scripts.service.generation.GenerationCache;
+import com.liangshou.movie.scripts.service.generation.GenerationSingleFlight;
+import com.liangshou.movie.scripts.service.generation.LlmCallMetrics;
+import com.liangshou.movie.scripts.service.generation.ModelProvider;
+import com.liangshou.movie.scripts.service.generation.ModelRouter;
+import com.liangshou.movie.scripts.service.generation.ProviderCircuitBreaker;
+import com.liangshou.movie.scripts.service.generation.ProviderConcurrencyLimiter;
+import com.liangshou.movie.scripts.service.generation.ProviderRateLimiter;
+import com.liangshou.movie.scripts.service.generation.RequestHedger;
+import com.liangshou.movie.scripts.service.generation.SemanticGenerationCache;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单节点并发生成压测：本地桩模拟 OpenAI 兼容的流式接口（固定延迟），验证在途请求数不受线程数限制。
+ * 默认跳过，运行方式：mvn test -pl ai-movie-scripts -Dtest=AIScriptWritingAgentLoadHarnessTest -Dloadtest=true
+ * 可用 -Dloadtest.concurrency 与 -Dloadtest.delayMillis 调整并发数与桩延迟。
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+class AIScriptWritingAgentLoadHarnessTest {
+
+    private final int concurrency = Integer.getInteger("loadtest.concurrency", 1000);
+    private final long delayMillis = Long.getLong("loadtest.delayMillis", 2000);
+
+    private HttpServer stub;
+    private ThreadPoolExecutor stubExecutor;
+    private AIScriptWritingAgent agent;
+
+    @BeforeEach
+    void startStub() throws Exception {
+        // 桩按线程阻塞模拟模型延迟，其线程数单独统计，不计入应用线程
+        stubExecutor = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+        stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), concurrency);
+        stub.setExecutor(stubExecutor);
+        stub.createContext("/v1/chat/completions", (exchange) -> {
+            exchange.getRequestBody().readAllBytes();
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (String token : List.of("桩", "响应")) {
+                    out.write(chunk("{\"content\":\"" + token + "\"}", "null").getBytes(StandardCharsets.UTF_8));
+                }
+                out.write(chunk("{}", "\"stop\"").getBytes(StandardCharsets.UTF_8));
+                out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        stub.start();
+
+        OpenAiApi api = OpenAiApi.builder()
+                .apiKey("stub")
+                .baseUrl("http://127.0.0.1:" + stub.getAddress().getPort())
+                .build();
+        OpenAiChatModel model = OpenAiChatModel.builder()
+                .openAiApi(api)
+                .defaultOptions(OpenAiChatOptions.builder().model("stub").build())
+                .build();
+        agent = new AIScriptWritingAgent();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ProviderCircuitBreaker circuitBreaker = new ProviderCircuitBreaker(new ProviderCircuitBreakerProperties(), registry);
+        ModelRouter modelRouter = new ModelRouter(
+                List.of(new ModelProvider("qwen", "stub", null, ChatClient.builder(model).build())),
+                new ModelRouterProperties(), circuitBreaker, registry);
+        // 关闭并发限制，压测的是在途请求数本身
+        ProviderConcurrencyProperties concurrencyProperties = new ProviderConcurrencyProperties();
+        concurrencyProperties.setEnabled(false);
+        ReflectionTestUtils.setField(agent, "modelRouter", modelRouter);
+        ReflectionTestUtils.setField(agent, "hedger", new RequestHedger(new RequestHedgeProperties(), modelRouter,
+                new ProviderRateLimiter(new ProviderRateLimitProperties(), registry),
+                new ProviderConcurrencyLimiter(concurrencyProperties, registry), circuitBreaker, registry));
+        // 关闭生成缓存，每个请求都真实到达桩
+        GenerationCacheProperties cacheProperties = new GenerationCacheProperties();
+        cacheProperties.setEnabled(false);
+        ReflectionTestUtils.setField(agent, "generationCache",
+                new GenerationCache(cacheProperties, null, new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(agent, "semanticCache",
+                new SemanticGenerationCache(new SemanticCacheProperties(), (EmbeddingModel) null, new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(agent, "singleFlight",
+                new GenerationSingleFlight(new SingleFlightProperties(), new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(agent, "callMetrics", new LlmCallMetrics(new SimpleMeterRegistry()));
+    }
+
+    @AfterEach
+    void stopStub() {
+        stub.stop(0);
+        stubExecutor.shutdownNow();
+    }
+
+    @Test
+    void shouldHoldConcurrentGenerationsWithoutThreadPerRequest() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peakInFlight = new AtomicInteger();
+        AtomicInteger peakThreads = new AtomicInteger();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Disposable sampler = Flux.interval(Duration.ofMillis(100))
+                .subscribe((tick) -> peakThreads.accumulateAndGet(
+                        threads.getThreadCount() - stubExecutor.getPoolSize(), Math::max));
+
+        long begin = System.nanoTime();
+        List<String> results = Flux.range(0, concurrency)
+                .flatMap((i) -> agent.generateCreative("压测-" + i)
+                        .doOnSubscribe((s) -> peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max))
+                        .doFinally((signal) -> inFlight.decrementAndGet()), concurrency)
+                .collectList()
+                .block(Duration.ofMillis(delayMillis * 20));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+        sampler.dispose();
+
+        log.info("load_harness concurrency={} stubDelay={}ms elapsed={}ms peakInFlight={} peakAppThreads={}",
+                concurrency, delayMillis, elapsedMillis, peakInFlight.get(), peakThreads.get());
+        Assertions.assertEquals(concurrency, results.size());
+        Assertions.assertTrue(results.stream().allMatch("桩响应"::equals));
+        // 在途数受 CPU 与桩吞吐限制，但不应受线程数限制：同时在途的请求多于应用线程总数
+        Assertions.assertTrue(peakInFlight.get() > peakThreads.get());
+    }
+
+    private static String chunk(String delta, String finishReason) {
+        return "data: {\"id\":\"stub\",\"object\":\"chat.completion.chunk\",\"created\":0,\"model\":\"stub\","
+                + "\"choices\":[{\"index\":0,\"delta\":" + delta + ",\"finish_reason\":" + finishReason + "}]}\n\n";
+    }
+}
@@ -1,18 +1,50 @@
 package com.liangshou.movie.scripts.service.agents.agentimpl;
 
+import com.liangshou.movie.scripts.common.config.aimodelconfig.properties.QwenProperties;
+import com.liangshou.movie.scripts.common.config.chatmemory.ChatMemoryConfig;
+import com.liangshou.movie.scripts.common.config.conversation.ConversationMemoryProperties;
+import com.liangshou.movie.scripts.common.config.conversation.ConversationSummaryProperties;
+import com.liangshou.movie.scripts.common.config.conversation.ConversationWriteBehindProperties;
+import com.liangshou.movie.scripts.common.config.llm.ModelRouterProperties;
+import com.liangshou.movie.scripts.common.config.llm.ProviderCircuitBreakerProperties;
+import com.liangshou.movie.scripts.common.config.llm.ProviderConcurrencyProperties;
+import com.liangshou.movie.scripts.common.config.llm.ProviderRateLimitProperties;
+import com.liangshou.movie.scripts.common.config.llm.RequestHedgeProperties;
+import com.liangshou.movie.scripts.common.config.llm.SingleFlightProperties;
 import com.liangshou.movie.scripts.infrastructure.agentsupport.tools.tavily.TavilySearchTool;
 import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationMongoDao;
+import com.liangshou.movie.scripts.service.conversation.ConversationChatMemoryRepository;
 import com.liangshou.movie.scripts.service.conversation.ConversationService;
+import com.liangshou.movie.scripts.service.conversation.ConversationSummarizer;
+import com.liangshou.movie.scripts.service.conversation.ConversationWriteBehindQueue;
+import com.liangshou.movie.scripts.service.conversation.MessageTokenCounter;
+import com.liangshou.movie.scripts.service.generation.GenerationSingleFlight;
+import com.liangshou.movie.scripts.service.generation.LlmCallMetrics;
+import com.liangshou.movie.scripts.service.generation.ModelProvider;
+import com.liangshou.movie.scripts.service.generation.ModelRouter;
+import com.liangshou.movie.scripts.service.generation.ProviderCircuitBreaker;
+import com.liangshou.movie.scripts.service.generation.ProviderConcurrencyLimiter;
+import com.liangshou.movie.scripts.service.generation.ProviderRateLimiter;
+import com.liangshou.movie.scripts.service.generation.RequestHedger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
+import reactor.core.publisher.Flux;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -20,35 +52,104 @@ import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
 import static org.mockito.Mockito.when;
 
 @DataMongoTest
-@Import({ConversationService.class, ConversationMongoDao.class})
+@Import({ConversationService.class, ConversationMongoDao.class, ConversationMemoryProperties.class,
+        MessageTokenCounter.class, SimpleMeterRegistry.class, ConversationChatMemoryRepository.class, ChatMemoryConfig.class,
+        ConversationWriteBehindQueue.class, ConversationWriteBehindProperties.class, ConversationSummarizer.class,
+        ConversationSummaryProperties.class})
 class CreativeIdeaBrainstormingAgentMemoryTest {
 
+    @TestConfiguration
+    static class SummaryClientConfig {
+
+        /**
+         * 摘要默认关闭，不会调用模型
+         */
+        @Bean
+        ModelProvider qwenModelProvider() {
+            return new ModelProvider("qwen", null, null, Mockito.mock(ChatClient.class));
+        }
+
+        @Bean
+        RequestHedger requestHedger(ModelProvider qwenModelProvider) {
+            return hedger(qwenModelProvider.chatClient());
+        }
+    }
+
     @Autowired
     private ConversationService conversationService;
 
     @Autowired
     private ConversationMongoDao mongoDao;
 
+    @Autowired
+    private ChatMemory chatMemory;
+
+    @Autowired
+    private ConversationWriteBehindQueue writeBehindQueue;
+
     @Test
     void shouldPersistMemoryEveryChatRound() {
         ChatClient chatClient = Mockito.mock(ChatClient.class, RETURNS_DEEP_STUBS);
-        ChatMemory chatMemory = Mockito.mock(ChatMemory.class);
         TavilySearchTool tavilySearchTool = Mockito.mock(TavilySearchTool.class);
 
-        when(chatMemory.get(anyString())).thenReturn(List.of());
-        when(chatClient.prompt().system(anyString()).messages(anyList()).user(anyString()).call().content())
-                .thenReturn("a1", "a2", "a3", "a4", "a5");
+        Iterator<Flux<String>> replies = IntStream.rangeClosed(1, 5)
+                .mapToObj((i) -> Flux.just("a", String.valueOf(i)))
+                .iterator();
+        when(chatClient.prompt().system(anyString()).messages(anyList()).user(anyString())
+                .advisors(ArgumentMatchers.<Consumer<ChatClient.AdvisorSpec>>any()).stream().content())
+                .thenAnswer((invocation) -> replies.next());
 
         CreativeIdeaBrainstormingAgent agent =
-                new CreativeIdeaBrainstormingAgent(chatClient, chatMemory, tavilySearchTool, conversationService);
+                new CreativeIdeaBrainstormingAgent(chatClient, chatMemory, tavilySearchTool, conversationService,
+                        writeBehindQueue, new GenerationSingleFlight(new SingleFlightProperties(), new SimpleMeterRegistry()),
+                        new LlmCallMetrics(new SimpleMeterRegistry()), new QwenProperties(),
+                        hedger(chatClient));
 
         String conversationId = "agent-test-conv-" + java.util.UUID.randomUUID();
         for (int i = 1; i <= 5; i += 1) {
-            String result = agent.chat(conversationId, "u" + i, false, "p1", "测试会话");
+            String result = agent.chat(conversationId, "u" + i, false, "p1", "测试会话").block();
             Assertions.assertEquals("a" + i, result);
             Assertions.assertNotNull(mongoDao.findMemoryById(conversationId));
             Assertions.assertEquals(i, mongoDao.findMemoryById(conversationId).getRoundCount());
             Assertions.assertEquals(i * 2, mongoDao.findMemoryById(conversationId).getMessages().size());
+            Assertions.assertEquals(i * 2, chatMemory.get(conversationId).size());
         }
     }
+
+    @Test
+    void shouldLoadStreamHistoryOffSubscriberThread() {
+        ChatClient chatClient = Mockito.mock(ChatClient.class, RETURNS_DEEP_STUBS);
+        when(chatClient.prompt().system(anyString()).messages(anyList()).user(anyString())
+                .advisors(ArgumentMatchers.<Consumer<ChatClient.AdvisorSpec>>any()).stream().content())
+                .thenAnswer((invocation) -> Flux.just("a", "1"));
+        ChatMemory memory = Mockito.spy(chatMemory);
+        AtomicReference<Thread> loadThread = new AtomicReference<>();
+        Mockito.doAnswer((invocation) -> {
+            loadThread.set(Thread.currentThread());
+            return invocation.callRealMethod();
+        }).when(memory).get(anyString());
+
+        CreativeIdeaBrainstormingAgent agent =
+                new CreativeIdeaBrainstormingAgent(chatClient, memory, Mockito.mock(TavilySearchTool.class),
+                        conversationService, writeBehindQueue,
+                        new GenerationSingleFlight(new SingleFlightProperties(), new SimpleMeterRegistry()),
+                        new LlmCallMetrics(new SimpleMeterRegistry()), new QwenProperties(), hedger(chatClient));
+
+        String conversationId = "agent-stream-conv-" + java.util.UUID.randomUUID();
+        Assertions.assertEquals(List.of("a", "1"),
+                agent.chatStream(conversationId, "u1", false, "p1", "流式会话").collectList().block());
+        // 等待上一轮写入与读取上下文不在订阅线程上进行
+        Assertions.assertNotSame(Thread.currentThread(), loadThread.get());
+    }
+
+    private static RequestHedger hedger(ChatClient chatClient) {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ProviderCircuitBreaker circuitBreaker = new ProviderCircuitBreaker(new ProviderCircuitBreakerProperties(), registry);
+        return new RequestHedger(new RequestHedgeProperties(),
+                new ModelRouter(List.of(new ModelProvider("qwen", null, null, chatClient)), new ModelRouterProperties(),
+                        circuitBreaker, registry),
+                new ProviderRateLimiter(new ProviderRateLimitProperties(), registry),
+                new ProviderConcurrencyLimiter(new ProviderConcurrencyProperties(), registry),
+                circuitBreaker, registry);
+    }
 }
@@ -0,0 +1,243 @@
+package com.liangshou.movie.scripts.service.conversation;
+
+import com.liangshou.movie.scripts.common.config.chatmemory.ChatMemoryConfig;
+import com.liangshou.movie.scripts.common.config.conversation.ConversationMemoryProperties;
+import com.liangshou.movie.scripts.common.config.conversation.ConversationSummaryProperties;
+import com.liangshou.movie.scripts.common.config.llm.ModelRouterProperties;
+import com.liangshou.movie.scripts.common.config.llm.ProviderCircuitBreakerProperties;
+import com.liangshou.movie.scripts.common.config.llm.ProviderConcurrencyProperties;
+import com.liangshou.movie.scripts.common.config.llm.ProviderRateLimitProperties;
+import com.liangshou.movie.scripts.common.config.llm.RequestHedgeProperties;
+import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationMemoryDocument;
+import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationMetaDocument;
+import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationMongoDao;
+import com.liangshou.movie.scripts.service.generation.ModelProvider;
+import com.liangshou.movie.scripts.service.generation.ModelRouter;
+import com.liangshou.movie.scripts.service.generation.ProviderCircuitBreaker;
+import com.liangshou.movie.scripts.service.generation.ProviderConcurrencyLimiter;
+import com.liangshou.movie.scripts.service.generation.ProviderRateLimiter;
+import com.liangshou.movie.scripts.service.generation.RequestHedger;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import reactor.core.publisher.Flux;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+@DataMongoTest(properties = "conversation.memory.context-window-messages=4")
+@Import({ConversationService.class, ConversationMongoDao.class, ConversationMemoryProperties.class,
+        MessageTokenCounter.class, SimpleMeterRegistry.class, ConversationChatMemoryRepository.class, ChatMemoryConfig.class,
+        ConversationSummarizer.class, ConversationSummaryProperties.class})
+class ConversationChatMemoryRepositoryMongoTest {
+
+    private static final Instant BASE = Instant.parse("2026-01-01T00:00:00Z");
+
+    private static final List<String> SUMMARY_INPUTS = new CopyOnWriteArrayList<>();
+
+    @TestConfiguration
+    static class SummaryClientConfig {
+
+        @Bean
+        ModelProvider qwenModelProvider() {
+            ChatModel model = new ChatModel() {
+                @Override
+                public ChatResponse call(Prompt prompt) {
+                    SUMMARY_INPUTS.add(prompt.getUserMessage().getText());
+                    return new ChatResponse(List.of(new Generation(new AssistantMessage("主角是退休侦探，故事发生在雨夜的港口小城"))));
+                }
+
+                @Override
+                public Flux<ChatResponse> stream(Prompt prompt) {
+                    return Flux.just(call(prompt));
+                }
+            };
+            return new ModelProvider("qwen", null, null, ChatClient.builder(model).build());
+        }
+
+        /**
+         * 摘要与其他模型调用一样经过限流、并发限制与熔断
+         */
+        @Bean
+        RequestHedger requestHedger(ModelProvider qwenModelProvider) {
+            SimpleMeterRegistry registry = new SimpleMeterRegistry();
+            ProviderCircuitBreaker circuitBreaker = new ProviderCircuitBreaker(new ProviderCircuitBreakerProperties(), registry);
+            return new RequestHedger(new RequestHedgeProperties(),
+                    new ModelRouter(List.of(qwenModelProvider), new ModelRouterProperties(), circuitBreaker, registry),
+                    new ProviderRateLimiter(new ProviderRateLimitProperties(), registry),
+                    new ProviderConcurrencyLimiter(new ProviderConcurrencyProperties(), registry),
+                    circuitBreaker, registry);
+        }
+    }
+
+    @Autowired
+    private ConversationService conversationService;
+
+    @Autowired
+    private ConversationMongoDao mongoDao;
+
+    @Autowired
+    private ChatMemory chatMemory;
+
+    @Autowired
+    private ConversationMemoryProperties memoryProperties;
+
+    @Autowired
+    private ConversationSummaryProperties summaryProperties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void shouldServeTailWindowFromEmbeddedConversation() {
+        memoryProperties.setStorageMode(ConversationMetaDocument.STORAGE_EMBEDDED);
+        String conversationId = appendRounds(5);
+
+        Assertions.assertEquals(List.of("u4", "a4", "u5", "a5"), texts(chatMemory.get(conversationId)));
+    }
+
+    @Test
+    void shouldServeTailWindowFromBucketedConversation() {
+        memoryProperties.setStorageMode(ConversationMetaDocument.STORAGE_BUCKETED);
+        memoryProperties.setBucketSize(3);
+        try {
+            String conversationId = appendRounds(5);
+
+            Assertions.assertTrue(mongoDao.findMetaById(conversationId).isBucketed());
+            Assertions.assertEquals(List.of("u4", "a4", "u5", "a5"), texts(chatMemory.get(conversationId)));
+        } finally {
+            memoryProperties.setStorageMode(ConversationMetaDocument.STORAGE_EMBEDDED);
+            memoryProperties.setBucketSize(200);
+        }
+    }
+
+    @Test
+    void shouldAppendOnlyNewMessagesThroughChatMemory() {
+        String conversationId = appendRounds(3);
+
+        chatMemory.add(conversationId, List.of(new UserMessage("u4"), new AssistantMessage("a4")));
+
+        ConversationMetaDocument meta = mongoDao.findMetaById(conversationId);
+        Assertions.assertEquals(8, meta.getMessageCount());
+        Assertions.assertEquals(8, mongoDao.findMemoryById(conversationId).getMessages().size());
+        Assertions.assertEquals(List.of("u3", "a3", "u4", "a4"), texts(chatMemory.get(conversationId)));
+    }
+
+    @Test
+    void shouldKeepRepeatedMessageAndReadContextOncePerAdd() {
+        String conversationId = appendRounds(1);
+        double reads = meterRegistry.get("conversation.context.messages").summary().count();
+
+        chatMemory.add(conversationId, new UserMessage("继续"));
+        chatMemory.add(conversationId, new UserMessage("继续"));
+
+        Assertions.assertEquals(4, mongoDao.findMetaById(conversationId).getMessageCount());
+        Assertions.assertEquals(List.of("u1", "a1", "继续", "继续"), texts(chatMemory.get(conversationId)));
+        // 每次 add 只有 ChatMemory 自身的一次读取，写入不再回读上下文
+        Assertions.assertEquals(reads + 3, meterRegistry.get("conversation.context.messages").summary().count());
+    }
+
+    @Test
+    void shouldResetContextWithoutDroppingHistory() {
+        String conversationId = appendRounds(3);
+
+        chatMemory.clear(conversationId);
+        Assertions.assertTrue(chatMemory.get(conversationId).isEmpty());
+        Assertions.assertEquals(6, conversationService.getMessages(ConversationService.DEFAULT_USER_ID, conversationId).size());
+
+        conversationService.appendRound(ConversationService.DEFAULT_USER_ID, conversationId, "p1", "记忆会话",
+                "u4", "a4", BASE.plusSeconds(4), false);
+        Assertions.assertEquals(List.of("u4", "a4"), texts(chatMemory.get(conversationId)));
+    }
+
+    @Test
+    void shouldTrimOlderMessagesBeyondTokenBudget() {
+        String conversationId = "memory-conv-" + UUID.randomUUID();
+        conversationService.appendRound(ConversationService.DEFAULT_USER_ID, conversationId, "p1", "记忆会话",
+                "u1", "a1", BASE.plusSeconds(1), false);
+        conversationService.appendRound(ConversationService.DEFAULT_USER_ID, conversationId, "p1", "记忆会话",
+                "剧本全文：" + "主角推门走进雨夜的酒馆。".repeat(200), "收到", BASE.plusSeconds(2), false);
+        conversationService.appendRound(ConversationService.DEFAULT_USER_ID, conversationId, "p1", "记忆会话",
+                "u3", "a3", BASE.plusSeconds(3), false);
+
+        ConversationMemoryDocument.ConversationStoredMessage pasted =
+                mongoDao.findMemoryById(conversationId).getMessages().get(2);
+        Assertions.assertTrue(pasted.getTokens() > 500);
+
+        int budget = memoryProperties.getContextWindowTokens();
+        memoryProperties.setContextWindowTokens(100);
+        try {
+            Assertions.assertEquals(List.of("收到", "u3", "a3"), texts(chatMemory.get(conversationId)));
+        } finally {
+            memoryProperties.setContextWindowTokens(budget);
+        }
+        // 预算足够时仍按条数上限取尾部
+        Assertions.assertEquals(List.of(pasted.getContent(), "收到", "u3", "a3"), texts(chatMemory.get(conversationId)));
+    }
+
+    @Test
+    void shouldFoldEvictedMessagesIntoSummary() throws Exception {
+        summaryProperties.setEnabled(true);
+        summaryProperties.setMinEvictedMessages(2);
+        try {
+            String conversationId = appendRounds(5);
+
+            // 第一次读取只触发后台摘要，窗口仍是尾部 4 条
+            Assertions.assertEquals(List.of("u4", "a4", "u5", "a5"), texts(chatMemory.get(conversationId)));
+            for (int i = 0; i < 100 && mongoDao.findMetaById(conversationId).getSummarizedUntilSeq() == null; i += 1) {
+                Thread.sleep(50);
+            }
+            ConversationMetaDocument meta = mongoDao.findMetaById(conversationId);
+            Assertions.assertEquals(6L, meta.getSummarizedUntilSeq());
+            Assertions.assertTrue(SUMMARY_INPUTS.stream().anyMatch((input) -> input.contains("用户：u1") && input.contains("助手：a3")));
+
+            List<Message> context = chatMemory.get(conversationId);
+            Assertions.assertEquals(MessageType.SYSTEM, context.get(0).getMessageType());
+            Assertions.assertTrue(context.get(0).getText().contains(meta.getContextSummary()));
+            Assertions.assertEquals(List.of("u4", "a4", "u5", "a5"), texts(context.subList(1, context.size())));
+
+            // 摘要消息不会被写回会话历史
+            chatMemory.add(conversationId, List.of(new UserMessage("u6"), new AssistantMessage("a6")));
+            Assertions.assertEquals(12, mongoDao.findMemoryById(conversationId).getMessages().size());
+
+            // 清空记忆同时清空摘要
+            chatMemory.clear(conversationId);
+            Assertions.assertNull(mongoDao.findMetaById(conversationId).getContextSummary());
+            Assertions.assertTrue(chatMemory.get(conversationId).isEmpty());
+        } finally {
+            summaryProperties.setEnabled(false);
+            summaryProperties.setMinEvictedMessages(10);
+        }
+    }
+
+    private String appendRounds(int rounds) {
+        String conversationId = "memory-conv-" + UUID.randomUUID();
+        for (int i = 1; i <= rounds; i += 1) {
+            conversationService.appendRound(ConversationService.DEFAULT_USER_ID, conversationId, "p1", "记忆会话",
+                    "u" + i, "a" + i, BASE.plusSeconds(i), false);
+        }
+        return conversationId;
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+}
@@ -0,0 +1,131 @@
+package com.liangshou.movie.scripts.service.conversation;
+
+import com.liangshou.movie.scripts.common.config.conversation.ConversationMemoryProperties;
+import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationMessageBucketDocument;
+import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationMetaDocument;
+import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationMongoDao;
+import com.liangshou.movie.scripts.service.dto.conversation.ConversationMessageDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+@DataMongoTest(properties = {
+        "conversation.memory.storage-mode=BUCKETED",
+        "conversation.memory.bucket-size=4"
+})
+@Import({ConversationService.class, ConversationMongoDao.class, ConversationMemoryProperties.class,
+        MessageTokenCounter.class, SimpleMeterRegistry.class})
+class ConversationServiceBucketedMongoTest {
+
+    private static final Instant BASE = Instant.parse("2026-01-01T00:00:00Z");
+
+    @Autowired
+    private ConversationService conversationService;
+
+    @Autowired
+    private ConversationMongoDao mongoDao;
+
+    @Test
+    void shouldSplitMessagesIntoFixedSizeBuckets() {
+        String conversationId = appendRounds(10);
+
+        ConversationMetaDocument meta = mongoDao.findMetaById(conversationId);
+        Assertions.assertNotNull(meta);
+        Assertions.assertTrue(meta.isBucketed());
+        Assertions.assertEquals(20, meta.getMessageCount());
+        Assertions.assertEquals(10, meta.getRoundCount());
+        Assertions.assertNull(mongoDao.findMemoryById(conversationId));
+
+        List<ConversationMessageBucketDocument> buckets = mongoDao.findBuckets(conversationId, null, null, false, 0);
+        Assertions.assertEquals(5, buckets.size());
+        for (int i = 0; i < buckets.size(); i += 1) {
+            Assertions.assertEquals(i, buckets.get(i).getBucketSeq());
+            Assertions.assertEquals(4, buckets.get(i).getCount());
+            Assertions.assertEquals(4, buckets.get(i).getMessages().size());
+        }
+
+        List<ConversationMessageDto> all = conversationService.getMessages(ConversationService.DEFAULT_USER_ID, conversationId);
+        Assertions.assertEquals(20, all.size());
+        Assertions.assertEquals("u1", all.get(0).getContent());
+        Assertions.assertEquals("a10", all.get(19).getContent());
+    }
+
+    @Test
+    void shouldApplySameRoundOnlyOnce() {
+        String conversationId = appendRounds(1);
+        for (int i = 0; i < 2; i += 1) {
+            conversationService.appendRound(ConversationService.DEFAULT_USER_ID, conversationId, "p1", "分桶会话",
+                    "u2", "a2", BASE.plusSeconds(2), true, false, "round-2");
+        }
+
+        ConversationMetaDocument meta = mongoDao.findMetaById(conversationId);
+        Assertions.assertEquals(4, meta.getMessageCount());
+        Assertions.assertEquals(2, meta.getRoundCount());
+        Assertions.assertEquals(1, meta.getUnreadCount());
+        List<ConversationMessageBucketDocument> buckets = mongoDao.findBuckets(conversationId, null, null, false, 0);
+        Assertions.assertEquals(1, buckets.size());
+        Assertions.assertEquals(4, buckets.get(0).getMessages().size());
+    }
+
+    @Test
+    void shouldPageBackwardsAndForwardsByTimestampCursor() {
+        String conversationId = appendRounds(10);
+        String uid = ConversationService.DEFAULT_USER_ID;
+
+        List<ConversationMessageDto> latest = conversationService.getMessages(uid, conversationId, null, null, 6);
+        Assertions.assertEquals(List.of("u8", "a8", "u9", "a9", "u10", "a10"), contents(latest));
+
+        long cursor = latest.get(0).getTimestamp();
+        List<ConversationMessageDto> older = conversationService.getMessages(uid, conversationId, cursor, null, 6);
+        Assertions.assertEquals(List.of("u5", "a5", "u6", "a6", "u7", "a7"), contents(older));
+
+        List<ConversationMessageDto> newer = conversationService.getMessages(uid, conversationId, null, BASE.plusSeconds(8).toEpochMilli(), 6);
+        Assertions.assertEquals(List.of("u9", "a9", "u10", "a10"), contents(newer));
+    }
+
+    @Test
+    void shouldNotSplitRoundAcrossPages() {
+        String conversationId = appendRounds(3);
+
+        List<ConversationMessageDto> page = conversationService.getMessages(
+                ConversationService.DEFAULT_USER_ID, conversationId, null, null, 3);
+        Assertions.assertEquals(List.of("u2", "a2", "u3", "a3"), contents(page));
+    }
+
+    @Test
+    void shouldDeleteBucketsWithConversation() {
+        String conversationId = appendRounds(5);
+        conversationService.delete(ConversationService.DEFAULT_USER_ID, conversationId);
+
+        Assertions.assertNull(mongoDao.findMetaById(conversationId));
+        Assertions.assertTrue(mongoDao.findBuckets(conversationId, null, null, false, 0).isEmpty());
+    }
+
+    private String appendRounds(int rounds) {
+        String conversationId = "bucket-conv-" + UUID.randomUUID();
+        for (int i = 1; i <= rounds; i += 1) {
+            conversationService.appendRound(
+                    ConversationService.DEFAULT_USER_ID,
+                    conversationId,
+                    "p1",
+                    "分桶会话",
+                    "u" + i,
+                    "a" + i,
+                    BASE.plusSeconds(i),
+                    false
+            );
+        }
+        return conversationId;
+    }
+
+    private static List<String> contents(List<ConversationMessageDto> messages) {
+        return messages.stream().map(ConversationMessageDto::getContent).toList();
+    }
+}
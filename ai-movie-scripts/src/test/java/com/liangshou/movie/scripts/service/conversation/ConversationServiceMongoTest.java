@@ -1,8 +1,16 @@
 package com.liangshou.movie.scripts.service.conversation;
 
+import com.liangshou.movie.scripts.common.config.conversation.ConversationMemoryProperties;
+import com.liangshou.movie.scripts.common.config.mongo.MongoClientConfig;
 import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationMemoryDocument;
 import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationMetaDocument;
 import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationMongoDao;
+import com.liangshou.movie.scripts.service.dto.conversation.ConversationSummaryDto;
+import com.liangshou.movie.scripts.service.dto.conversation.CursorPageResponse;
+import com.liangshou.movie.scripts.utils.search.SearchTermUtil;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,10 +18,15 @@ import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
 import org.springframework.context.annotation.Import;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 @DataMongoTest
-@Import({ConversationService.class, ConversationMongoDao.class})
+@Import({ConversationService.class, ConversationMongoDao.class, ConversationMemoryProperties.class,
+        MessageTokenCounter.class, SimpleMeterRegistry.class, MongoClientConfig.class})
 class ConversationServiceMongoTest {
 
     @Autowired
@@ -22,6 +35,9 @@ class ConversationServiceMongoTest {
     @Autowired
     private ConversationMongoDao mongoDao;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Test
     void shouldPersistEveryRoundAndIncrementFields() {
         String conversationId = "test-conv-" + java.util.UUID.randomUUID();
@@ -57,6 +73,40 @@ class ConversationServiceMongoTest {
         }
     }
 
+    @Test
+    void shouldStoreMessageWithoutContentAsEmpty() {
+        String conversationId = "test-null-" + UUID.randomUUID();
+        List<ConversationMemoryDocument.ConversationStoredMessage> messages = new ArrayList<>();
+        messages.add(ConversationService.storedMessage("user", "查天气", null));
+        messages.add(ConversationService.storedMessage("assistant", null, null));
+
+        conversationService.appendMessages(ConversationService.DEFAULT_USER_ID, conversationId, "p1", "工具调用",
+                messages, Instant.parse("2026-01-01T00:00:00Z"), false, false);
+
+        ConversationMemoryDocument memory = mongoDao.findMemoryById(conversationId);
+        Assertions.assertEquals(2, memory.getMessages().size());
+        Assertions.assertEquals("", memory.getMessages().get(1).getContent());
+    }
+
+    @Test
+    void shouldIndexLegacyTitleOnNextRound() {
+        String conversationId = "test-legacy-" + UUID.randomUUID();
+        ConversationMetaDocument legacy = new ConversationMetaDocument();
+        legacy.setId(conversationId);
+        legacy.setUserId(ConversationService.DEFAULT_USER_ID);
+        legacy.setTitle("雪夜追凶");
+        legacy.setCreatedAt(Instant.parse("2025-01-01T00:00:00Z"));
+        mongoDao.saveMeta(legacy);
+        Assertions.assertNull(mongoDao.findMetaById(conversationId).getTitleTerms());
+
+        conversationService.appendRound(ConversationService.DEFAULT_USER_ID, conversationId, "p1", "默认标题",
+                "u", "a", Instant.parse("2026-01-01T00:00:00Z"), false);
+
+        ConversationMetaDocument meta = mongoDao.findMetaById(conversationId);
+        Assertions.assertEquals("雪夜追凶", meta.getTitle());
+        Assertions.assertEquals(SearchTermUtil.toIndexTerms("雪夜追凶"), meta.getTitleTerms());
+    }
+
     @Test
     void shouldNotPersistOrListEmptyConversation() {
         String createdId = conversationService.create(ConversationService.DEFAULT_USER_ID, "空对话", "p1");
@@ -80,4 +130,72 @@ class ConversationServiceMongoTest {
                 .anyMatch((m) -> emptyId.equals(m.getId()));
         Assertions.assertFalse(listed);
     }
+
+    @Test
+    void shouldScrollConversationsWithKeysetCursor() {
+        String userId = "scroll-user-" + UUID.randomUUID();
+        Instant base = Instant.parse("2026-01-01T00:00:00Z");
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 25; i += 1) {
+            String conversationId = "scroll-conv-" + i;
+            // 每 5 个会话共享同一个 updatedAt，验证游标在时间相同时仍按 _id 稳定推进
+            conversationService.appendRound(userId, conversationId + "-" + userId, "p1", "会话" + i, "u", "a",
+                    base.plusSeconds(i / 5), false);
+            expected.add(conversationId + "-" + userId);
+        }
+
+        List<String> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            CursorPageResponse<ConversationSummaryDto> page = conversationService.scroll(userId, cursor, 10, null, pages == 0);
+            if (pages == 0) {
+                Assertions.assertEquals(25L, page.getTotal());
+            } else {
+                Assertions.assertNull(page.getTotal());
+            }
+            page.getItems().forEach((item) -> seen.add(item.getId()));
+            cursor = page.getNextCursor();
+            Assertions.assertEquals(cursor != null, page.isHasMore());
+            pages += 1;
+        } while (cursor != null);
+
+        Assertions.assertEquals(3, pages);
+        Assertions.assertEquals(25, seen.size());
+        Assertions.assertEquals(expected, new HashSet<>(seen));
+    }
+
+    @Test
+    void shouldScrollNothingForKeywordWithoutSearchTerms() {
+        String userId = "scroll-punct-user-" + UUID.randomUUID();
+        conversationService.appendRound(userId, "scroll-punct-conv-" + userId, "p1", "雨夜港口", "u", "a",
+                Instant.parse("2026-01-01T00:00:00Z"), false);
+
+        CursorPageResponse<ConversationSummaryDto> page = conversationService.scroll(userId, null, 10, "!!!", true);
+
+        Assertions.assertTrue(page.getItems().isEmpty());
+        Assertions.assertFalse(page.isHasMore());
+        Assertions.assertEquals(0L, page.getTotal());
+        Assertions.assertEquals(1L, conversationService.scroll(userId, null, 10, null, true).getTotal());
+    }
+
+    @Test
+    void shouldPersistRoundAndMarkReadInTwoMongoOperations() {
+        String conversationId = "ops-conv-" + UUID.randomUUID();
+        Instant base = Instant.parse("2026-01-01T00:00:00Z");
+        DistributionSummary summary = meterRegistry.get("conversation.round.mongo.operations").summary();
+        long before = summary.count();
+
+        for (int i = 1; i <= 3; i += 1) {
+            conversationService.appendRound(ConversationService.DEFAULT_USER_ID, conversationId, "p1", "计数会话",
+                    "u" + i, "a" + i, base.plusSeconds(i), false, true);
+        }
+
+        Assertions.assertEquals(3, summary.count() - before);
+        Assertions.assertEquals(2.0, summary.max());
+        ConversationMetaDocument meta = mongoDao.findMetaById(conversationId);
+        Assertions.assertNotNull(meta);
+        Assertions.assertEquals(0, meta.getUnreadCount());
+        Assertions.assertEquals(3, meta.getRoundCount());
+    }
 }
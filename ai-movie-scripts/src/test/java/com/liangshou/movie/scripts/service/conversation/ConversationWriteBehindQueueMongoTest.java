@@ -0,0 +1,268 @@
+package com.liangshou.movie.scripts.service.conversation;
+
+import com.liangshou.movie.scripts.common.config.conversation.ConversationMemoryProperties;
+import com.liangshou.movie.scripts.common.config.conversation.ConversationWriteBehindProperties;
+import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationMemoryDocument;
+import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationMetaDocument;
+import com.liangshou.movie.scripts.infrastructure.mongo.conversation.ConversationMongoDao;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * 每个用例自建队列：容器里不放常驻的队列，避免其后台重放抢先处理用例落库的轮次
+ */
+@DataMongoTest
+@Import({ConversationService.class, ConversationMongoDao.class, ConversationMemoryProperties.class,
+        MessageTokenCounter.class, SimpleMeterRegistry.class})
+class ConversationWriteBehindQueueMongoTest {
+
+    private static final Instant BASE = Instant.parse("2026-01-01T00:00:00Z");
+
+    @Autowired
+    private ConversationService conversationService;
+
+    @Autowired
+    private ConversationMongoDao mongoDao;
+
+    @Autowired
+    private ConversationMemoryProperties memoryProperties;
+
+    @Autowired
+    private MessageTokenCounter tokenCounter;
+
+    @Test
+    void shouldPersistSubmittedRoundsInOrder() throws Exception {
+        ConversationWriteBehindQueue queue = queue(conversationService, 3);
+        try {
+            String conversationId = "write-behind-conv-" + UUID.randomUUID();
+            CompletableFuture<ConversationMetaDocument> last = null;
+            for (int i = 1; i <= 20; i += 1) {
+                last = queue.submit(ConversationService.DEFAULT_USER_ID, conversationId, "p1", "异步会话",
+                        "u" + i, "a" + i, BASE.plusSeconds(i), false, true);
+            }
+            queue.awaitPersisted(conversationId);
+
+            Assertions.assertEquals(20, last.get(5, TimeUnit.SECONDS).getRoundCount());
+            ConversationMemoryDocument memory = mongoDao.findMemoryById(conversationId);
+            Assertions.assertEquals(40, memory.getMessages().size());
+            for (int i = 0; i < 20; i += 1) {
+                Assertions.assertEquals("u" + (i + 1), memory.getMessages().get(i * 2).getContent());
+            }
+            Assertions.assertEquals(0, mongoDao.findMetaById(conversationId).getUnreadCount());
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    void shouldKeepWritingOtherConversationsWhileOneBacksOff() throws Exception {
+        String failing = "backoff-conv-" + UUID.randomUUID();
+        ConversationService flaky = Mockito.mock(ConversationService.class);
+        when(appendRound(flaky)).thenAnswer((inv) -> {
+            if (failing.equals(inv.getArgument(1))) {
+                throw new DataAccessResourceFailureException("mongo down");
+            }
+            return delegate(inv);
+        });
+        ConversationWriteBehindProperties properties = new ConversationWriteBehindProperties();
+        properties.setMaxAttempts(3);
+        properties.setRetryBackoffMillis(60_000);
+        properties.setRedriveIntervalMillis(60_000);
+        ConversationWriteBehindQueue queue =
+                new ConversationWriteBehindQueue(flaky, mongoDao, properties, new SimpleMeterRegistry());
+        queue.start();
+        try {
+            CompletableFuture<ConversationMetaDocument> stuck = queue.submit(ConversationService.DEFAULT_USER_ID,
+                    failing, "p1", "退避会话", "u1", "a1", BASE, false, false);
+            CompletableFuture<ConversationMetaDocument> later = queue.submit(ConversationService.DEFAULT_USER_ID,
+                    failing, "p1", "退避会话", "u2", "a2", BASE.plusSeconds(1), false, false);
+            String other = "healthy-conv-" + UUID.randomUUID();
+            // 写入线程没有在退避中休眠，其他会话的轮次照常写入
+            queue.submit(ConversationService.DEFAULT_USER_ID, other, "p1", "正常会话", "u1", "a1",
+                    BASE, false, false).get(2, TimeUnit.SECONDS);
+
+            Assertions.assertEquals(List.of("u1", "a1"), contents(other));
+            Assertions.assertFalse(stuck.isDone());
+            Assertions.assertFalse(later.isDone());
+        } finally {
+            queue.shutdown();
+        }
+        // 关闭时仍在退避的轮次按顺序转入待重放
+        Assertions.assertEquals(List.of("u1", "u2"), mongoDao.findDuePendingWrites(Instant.now().plusSeconds(120), 100)
+                .stream()
+                .filter((doc) -> failing.equals(doc.getConversationId()))
+                .map((doc) -> doc.getUserText())
+                .toList());
+    }
+
+    @Test
+    void shouldDeadLetterFailedRoundAndRedriveIt() {
+        ConversationService flaky = Mockito.mock(ConversationService.class);
+        when(appendRound(flaky))
+                .thenThrow(new DataAccessResourceFailureException("mongo down"))
+                .thenThrow(new DataAccessResourceFailureException("mongo down"))
+                .thenAnswer(this::delegate);
+
+        ConversationWriteBehindQueue queue = queue(flaky, 2);
+        try {
+            String conversationId = "dead-letter-conv-" + UUID.randomUUID();
+            CompletableFuture<ConversationMetaDocument> future = queue.submit(ConversationService.DEFAULT_USER_ID,
+                    conversationId, "p1", "失败会话", "u1", "a1", BASE, false, false);
+
+            Assertions.assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            Assertions.assertNull(mongoDao.findMetaById(conversationId));
+            Instant later = Instant.now().plusSeconds(120);
+            Assertions.assertTrue(mongoDao.findDuePendingWrites(later, 100).stream()
+                    .anyMatch((doc) -> conversationId.equals(doc.getConversationId()) && doc.getAttempts() == 2));
+
+            Assertions.assertTrue(queue.redrivePendingWrites(later) >= 1);
+            Assertions.assertEquals(List.of("u1", "a1"), contents(conversationId));
+            Assertions.assertTrue(mongoDao.findDuePendingWrites(later, 100).stream()
+                    .noneMatch((doc) -> conversationId.equals(doc.getConversationId())));
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    void shouldNotCountRoundTwiceWhenMessageWriteFailsAfterMeta() throws Exception {
+        ConversationMongoDao failingDao = Mockito.spy(mongoDao);
+        Mockito.doThrow(new DataAccessResourceFailureException("mongo down"))
+                .doCallRealMethod()
+                .when(failingDao).appendMessages(anyString(), anyString(), anyList(), any(Instant.class));
+        ConversationService service = new ConversationService(failingDao, memoryProperties, tokenCounter,
+                new SimpleMeterRegistry());
+        ConversationWriteBehindQueue queue = queue(service, 3);
+        try {
+            String conversationId = "partial-conv-" + UUID.randomUUID();
+            queue.submit(ConversationService.DEFAULT_USER_ID, conversationId, "p1", "部分失败", "u1", "a1",
+                    BASE, true, false).get(5, TimeUnit.SECONDS);
+
+            ConversationMetaDocument meta = mongoDao.findMetaById(conversationId);
+            Assertions.assertEquals(2, meta.getMessageCount());
+            Assertions.assertEquals(1, meta.getRoundCount());
+            Assertions.assertEquals(1, meta.getUnreadCount());
+            List<ConversationMemoryDocument.ConversationStoredMessage> messages =
+                    mongoDao.findMemoryById(conversationId).getMessages();
+            Assertions.assertEquals(List.of(0L, 1L), messages.stream().map((msg) -> msg.getSeq()).toList());
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    void shouldHoldBackLaterRoundsUntilEarlierRoundIsRedriven() throws Exception {
+        ConversationService flaky = Mockito.mock(ConversationService.class);
+        when(appendRound(flaky))
+                .thenThrow(new DataAccessResourceFailureException("mongo down"))
+                .thenAnswer(this::delegate);
+        ConversationWriteBehindQueue queue = queue(flaky, 1);
+        try {
+            String conversationId = "held-back-conv-" + UUID.randomUUID();
+            CompletableFuture<ConversationMetaDocument> first = queue.submit(ConversationService.DEFAULT_USER_ID,
+                    conversationId, "p1", "顺序会话", "u1", "a1", BASE, false, false);
+            Assertions.assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+            CompletableFuture<ConversationMetaDocument> second = queue.submit(ConversationService.DEFAULT_USER_ID,
+                    conversationId, "p1", "顺序会话", "u2", "a2", BASE.plusSeconds(1), false, false);
+            Assertions.assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+            // 第二轮没有越过仍在等待重放的第一轮
+            Assertions.assertNull(mongoDao.findMetaById(conversationId));
+
+            Assertions.assertEquals(2, queue.redrivePendingWrites(Instant.now().plusSeconds(120)));
+            Assertions.assertEquals(List.of("u1", "a1", "u2", "a2"), contents(conversationId));
+            Assertions.assertEquals(4, mongoDao.findMetaById(conversationId).getMessageCount());
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    void shouldSpillWithoutWritingOnSubmitterThread() throws Exception {
+        ConversationService service = Mockito.spy(conversationService);
+        // 未启动的队列不接收任何轮次，全部走溢出路径
+        ConversationWriteBehindQueue queue = new ConversationWriteBehindQueue(service, mongoDao,
+                new ConversationWriteBehindProperties(), new SimpleMeterRegistry());
+        try {
+            String conversationId = "spill-conv-" + UUID.randomUUID();
+            CompletableFuture<ConversationMetaDocument> future = queue.submit(ConversationService.DEFAULT_USER_ID,
+                    conversationId, "p1", "溢出会话", "u1", "a1", BASE, false, false);
+            Mockito.verifyNoInteractions(service);
+            Assertions.assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+
+            Assertions.assertEquals(1, queue.redrivePendingWrites(Instant.now()));
+            // 同一条记录重放两次也只写入一次
+            Assertions.assertEquals(0, queue.redrivePendingWrites(Instant.now()));
+            Assertions.assertEquals(List.of("u1", "a1"), contents(conversationId));
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    void shouldSkipPendingWriteLeasedByAnotherInstance() throws Exception {
+        ConversationWriteBehindQueue queue = new ConversationWriteBehindQueue(conversationService, mongoDao,
+                new ConversationWriteBehindProperties(), new SimpleMeterRegistry());
+        try {
+            String conversationId = "lease-conv-" + UUID.randomUUID();
+            CompletableFuture<ConversationMetaDocument> future = queue.submit(ConversationService.DEFAULT_USER_ID,
+                    conversationId, "p1", "租约会话", "u1", "a1", BASE, false, false);
+            Assertions.assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            Instant now = Instant.now();
+            Assertions.assertNotNull(mongoDao.claimPendingWriteHead(conversationId, now, now.plusSeconds(60), "other"));
+
+            Assertions.assertEquals(0, queue.redrivePendingWrites(now));
+            Assertions.assertEquals(1, queue.redrivePendingWrites(now.plusSeconds(61)));
+            Assertions.assertEquals(List.of("u1", "a1"), contents(conversationId));
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    private ConversationWriteBehindQueue queue(ConversationService service, int maxAttempts) {
+        ConversationWriteBehindProperties properties = new ConversationWriteBehindProperties();
+        properties.setMaxAttempts(maxAttempts);
+        properties.setRetryBackoffMillis(1);
+        properties.setRedriveIntervalMillis(60_000);
+        ConversationWriteBehindQueue queue =
+                new ConversationWriteBehindQueue(service, mongoDao, properties, new SimpleMeterRegistry());
+        queue.start();
+        return queue;
+    }
+
+    private static ConversationMetaDocument appendRound(ConversationService service) {
+        return service.appendRound(anyString(), anyString(), anyString(), anyString(), anyString(), anyString(),
+                any(Instant.class), anyBoolean(), anyBoolean(), anyString());
+    }
+
+    private ConversationMetaDocument delegate(InvocationOnMock inv) {
+        return conversationService.appendRound(
+                inv.getArgument(0), inv.getArgument(1), inv.getArgument(2), inv.getArgument(3),
+                inv.getArgument(4), inv.getArgument(5), inv.getArgument(6), inv.getArgument(7),
+                inv.getArgument(8), inv.getArgument(9));
+    }
+
+    private List<String> contents(String conversationId) {
+        return conversationService.getMessages(ConversationService.DEFAULT_USER_ID, conversationId)
+                .stream().map((msg) -> msg.getContent()).toList();
+    }
+}
@@ -0,0 +1,149 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import com.liangshou.movie.scripts.common.config.llm.EpisodePipelineProperties;
+import com.liangshou.movie.scripts.service.IScriptEpisodeService;
+import com.liangshou.movie.scripts.service.agents.agentimpl.AIScriptWritingAgent;
+import com.liangshou.movie.scripts.service.dto.ScriptEpisodeDTO;
+import com.liangshou.movie.scripts.service.dto.StoryOutlineDTO;
+import com.liangshou.movie.scripts.service.dto.outline.EpisodeGenerationEvent;
+import com.liangshou.movie.scripts.service.dto.outline.OutlineChapterDTO;
+import com.liangshou.movie.scripts.service.dto.outline.OutlineEpisodeDTO;
+import com.liangshou.movie.scripts.service.dto.outline.OutlineSectionDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+class EpisodeGenerationPipelineTest {
+
+    private static final long LATENCY_MILLIS = 200;
+
+    private AIScriptWritingAgent agent;
+    private final Map<String, ScriptEpisodeDTO> saved = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private EpisodePipelineProperties properties;
+    private EpisodeGenerationPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        agent = Mockito.mock(AIScriptWritingAgent.class);
+        when(agent.generateChapter(anyString())).thenAnswer((inv) -> {
+            String request = inv.getArgument(0);
+            return Mono.delay(Duration.ofMillis(LATENCY_MILLIS))
+                    .flatMap((tick) -> request.contains("个桥段《坏桥段》")
+                            ? Mono.<String>error(new IllegalStateException("模型失败"))
+                            : Mono.just("正文：" + request.length()))
+                    .doOnSubscribe((s) -> peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max))
+                    .doOnTerminate(inFlight::decrementAndGet);
+        });
+        IScriptEpisodeService episodeService = Mockito.mock(IScriptEpisodeService.class);
+        when(episodeService.saveGeneratedEpisode(any(ScriptEpisodeDTO.class))).thenAnswer((inv) -> {
+            ScriptEpisodeDTO dto = inv.getArgument(0);
+            dto.setId(dto.getChapterId() + "-" + dto.getEpisodeNumber());
+            dto.setWordCount(dto.getEpisodeContent().length());
+            saved.put(dto.getId(), dto);
+            return dto;
+        });
+        properties = new EpisodePipelineProperties();
+        properties.setConcurrency(4);
+        pipeline = new EpisodeGenerationPipeline(agent, episodeService, properties, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void shouldGenerateEpisodesInParallelUnderConcurrencyCap() {
+        StoryOutlineDTO outline = outline(3, 4, null);
+
+        long begin = System.nanoTime();
+        List<EpisodeGenerationEvent> events = pipeline.generateEpisodes(outline).collectList()
+                .block(Duration.ofSeconds(10));
+        long elapsedMillis = Duration.ofNanos(System.nanoTime() - begin).toMillis();
+
+        Assertions.assertEquals(12, events.size());
+        Assertions.assertTrue(events.stream().allMatch((e) -> EpisodeGenerationEvent.STATUS_DONE.equals(e.getStatus())));
+        Assertions.assertEquals(12, saved.size());
+        Assertions.assertEquals(12, events.get(events.size() - 1).getCompleted());
+        Assertions.assertEquals(12, events.get(0).getTotal());
+        Assertions.assertEquals(4, peakInFlight.get());
+        // 12 个桥段、并发 4：约 3 轮延迟，远小于串行的 12 轮
+        Assertions.assertTrue(elapsedMillis < LATENCY_MILLIS * 6, "elapsed=" + elapsedMillis);
+    }
+
+    @Test
+    void shouldReportFailedEpisodeWithoutStoppingOthers() {
+        StoryOutlineDTO outline = outline(1, 3, "坏桥段");
+
+        List<EpisodeGenerationEvent> events = pipeline.generateEpisodes(outline).collectList()
+                .block(Duration.ofSeconds(10));
+
+        Assertions.assertEquals(3, events.size());
+        List<EpisodeGenerationEvent> failed = events.stream()
+                .filter((e) -> EpisodeGenerationEvent.STATUS_FAILED.equals(e.getStatus())).toList();
+        Assertions.assertEquals(1, failed.size());
+        Assertions.assertEquals("坏桥段", failed.get(0).getEpisodeTitle());
+        Assertions.assertEquals("模型失败", failed.get(0).getError());
+        Assertions.assertEquals(2, saved.size());
+    }
+
+    @Test
+    void shouldPlanEpisodesInOutlineOrderWithContext() {
+        List<EpisodeGenerationPipeline.EpisodeTask> tasks = pipeline.plan(outline(2, 2, null));
+
+        Assertions.assertEquals(List.of("c1", "c1", "c2", "c2"),
+                tasks.stream().map(EpisodeGenerationPipeline.EpisodeTask::chapterId).toList());
+        Assertions.assertTrue(tasks.get(0).request().contains("下一桥段：《c1-e2》"));
+        Assertions.assertTrue(tasks.get(1).request().contains("上一桥段：《c1-e1》"));
+        Assertions.assertTrue(tasks.get(2).request().contains("第2章"));
+    }
+
+    @Test
+    void shouldRejectEmptyOrOversizedOutline() {
+        StoryOutlineDTO empty = new StoryOutlineDTO();
+        empty.setProjectId("p1");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> pipeline.generateEpisodes(empty));
+
+        properties.setMaxEpisodes(3);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> pipeline.generateEpisodes(outline(2, 2, null)));
+    }
+
+    private static StoryOutlineDTO outline(int chapters, int episodesPerChapter, String badTitle) {
+        OutlineSectionDTO section = new OutlineSectionDTO();
+        section.setSectionTitle("开端");
+        section.setSequence(1);
+        List<OutlineChapterDTO> chapterList = new ArrayList<>();
+        for (int c = chapters; c >= 1; c -= 1) {
+            OutlineChapterDTO chapter = new OutlineChapterDTO();
+            chapter.setChapterId("c" + c);
+            chapter.setChapterNumber(c);
+            chapter.setChapterTitle("第" + c + "章标题");
+            List<OutlineEpisodeDTO> episodes = new ArrayList<>();
+            for (int e = 1; e <= episodesPerChapter; e += 1) {
+                OutlineEpisodeDTO episode = new OutlineEpisodeDTO();
+                episode.setEpisodeId("c" + c + "-e" + e);
+                episode.setEpisodeNumber(e);
+                episode.setEpisodeTitle(badTitle != null && e == 2 ? badTitle : "c" + c + "-e" + e);
+                episodes.add(episode);
+            }
+            chapter.setEpisodes(episodes);
+            chapterList.add(chapter);
+        }
+        section.setChapters(chapterList);
+        StoryOutlineDTO outline = new StoryOutlineDTO();
+        outline.setProjectId("p1");
+        outline.setSections(List.of(section));
+        return outline;
+    }
+}
@@ -0,0 +1,140 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import com.liangshou.movie.scripts.common.config.llm.GenerationCacheProperties;
+import com.liangshou.movie.scripts.common.enums.GenerationTypeEnum;
+import com.liangshou.movie.scripts.infrastructure.mongo.generation.GenerationCacheDocument;
+import com.liangshou.movie.scripts.infrastructure.mongo.generation.GenerationCacheMongoDao;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@DataMongoTest(properties = {"llm.cache.types=THEME,OUTLINE", "llm.cache.mongo-enabled=true"})
+@Import({GenerationCache.class, GenerationCacheMongoDao.class, GenerationCacheProperties.class,
+        SimpleMeterRegistry.class})
+class GenerationCacheMongoTest {
+
+    private static final Map<String, Object> OPTIONS = Map.of("temperature", 0.7);
+
+    @Autowired
+    private GenerationCache generationCache;
+
+    @Autowired
+    private GenerationCacheMongoDao mongoDao;
+
+    @Autowired
+    private GenerationCacheProperties properties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void shouldNormalizePromptWhenBuildingKey() {
+        String key = GenerationCacheKey.of("qwen-plus", OPTIONS, "生成主题：  太空\n歌剧");
+        Assertions.assertEquals(key, GenerationCacheKey.of("qwen-plus", OPTIONS, " 生成主题： 太空 歌剧 "));
+        // NFKC：全角字母数字与半角一致
+        Assertions.assertEquals(GenerationCacheKey.of("qwen-plus", OPTIONS, "ABC123"),
+                GenerationCacheKey.of("qwen-plus", OPTIONS, "ＡＢＣ１２３"));
+        Assertions.assertNotEquals(key, GenerationCacheKey.of("qwen-max", OPTIONS, "生成主题： 太空 歌剧"));
+        Assertions.assertNotEquals(key, GenerationCacheKey.of("qwen-plus", Map.of("temperature", 0.2), "生成主题： 太空 歌剧"));
+    }
+
+    @Test
+    void shouldServeRepeatedPromptFromLocalTier() {
+        String prompt = "主题-" + UUID.randomUUID();
+        AtomicInteger calls = new AtomicInteger();
+
+        String first = generationCache.getOrGenerate(GenerationTypeEnum.THEME, "qwen-plus", OPTIONS, prompt,
+                () -> Mono.fromCallable(() -> "结果" + calls.incrementAndGet())).block();
+        String second = generationCache.getOrGenerate(GenerationTypeEnum.THEME, "qwen-plus", OPTIONS, prompt + "  ",
+                () -> Mono.fromCallable(() -> "结果" + calls.incrementAndGet())).block();
+
+        Assertions.assertEquals("结果1", first);
+        Assertions.assertEquals("结果1", second);
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertEquals(1.0, meterRegistry.get("llm.generation.cache")
+                .tags("type", "theme", "result", "hit", "tier", "local").counter().count());
+    }
+
+    @Test
+    void shouldServeFromMongoTierAfterLocalMiss() throws Exception {
+        String prompt = "大纲-" + UUID.randomUUID();
+        generationCache.getOrGenerate(GenerationTypeEnum.OUTLINE, "qwen-plus", OPTIONS, prompt,
+                () -> Mono.just("持久结果")).block();
+        String key = GenerationCacheKey.of("qwen-plus", OPTIONS, prompt);
+        for (int i = 0; i < 50 && mongoDao.findValid(key, Instant.now()) == null; i += 1) {
+            Thread.sleep(100);
+        }
+
+        // 新实例的本地层为空，模拟重启或另一个节点
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        GenerationCache other = new GenerationCache(properties, mongoDao, registry);
+        String content = other.getOrGenerate(GenerationTypeEnum.OUTLINE, "qwen-plus", OPTIONS, prompt,
+                () -> Mono.error(new IllegalStateException("不应调用模型"))).block();
+
+        Assertions.assertEquals("持久结果", content);
+        Assertions.assertEquals(1.0, registry.get("llm.generation.cache")
+                .tags("type", "outline", "result", "hit", "tier", "mongo").counter().count());
+    }
+
+    @Test
+    void shouldCacheStreamOnlyAfterNormalCompletion() {
+        String prompt = "流式主题-" + UUID.randomUUID();
+        AtomicInteger calls = new AtomicInteger();
+
+        // 中途出错的流不回填缓存
+        Assertions.assertThrows(IllegalStateException.class, () -> generationCache.getOrGenerateStream(
+                GenerationTypeEnum.THEME, "qwen-plus", OPTIONS, prompt,
+                () -> Flux.just("半").concatWith(Flux.error(new IllegalStateException("中断")))).blockLast());
+
+        List<String> first = generationCache.getOrGenerateStream(GenerationTypeEnum.THEME, "qwen-plus", OPTIONS, prompt,
+                () -> Flux.just("太空", "歌剧").doOnSubscribe((s) -> calls.incrementAndGet())).collectList().block();
+        List<String> second = generationCache.getOrGenerateStream(GenerationTypeEnum.THEME, "qwen-plus", OPTIONS, prompt,
+                () -> Flux.just("不应", "调用").doOnSubscribe((s) -> calls.incrementAndGet())).collectList().block();
+
+        Assertions.assertEquals(List.of("太空", "歌剧"), first);
+        Assertions.assertEquals(List.of("太空歌剧"), second);
+        Assertions.assertEquals(1, calls.get());
+    }
+
+    @Test
+    void shouldIgnoreExpiredMongoEntry() {
+        String prompt = "过期-" + UUID.randomUUID();
+        GenerationCacheDocument doc = new GenerationCacheDocument();
+        doc.setId(GenerationCacheKey.of("qwen-plus", OPTIONS, prompt));
+        doc.setType("outline");
+        doc.setContent("旧结果");
+        doc.setCreatedAt(Instant.now().minusSeconds(120));
+        doc.setExpireAt(Instant.now().minusSeconds(60));
+        mongoDao.save(doc);
+
+        String content = generationCache.getOrGenerate(GenerationTypeEnum.OUTLINE, "qwen-plus", OPTIONS, prompt,
+                () -> Mono.just("新结果")).block();
+
+        Assertions.assertEquals("新结果", content);
+    }
+
+    @Test
+    void shouldBypassTypesNotOptedIn() {
+        String prompt = "创意-" + UUID.randomUUID();
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 2; i += 1) {
+            generationCache.getOrGenerate(GenerationTypeEnum.CREATIVE, "qwen-plus", OPTIONS, prompt,
+                    () -> Mono.fromCallable(() -> "创意" + calls.incrementAndGet())).block();
+        }
+
+        Assertions.assertEquals(2, calls.get());
+        Assertions.assertFalse(generationCache.isEnabled(GenerationTypeEnum.CREATIVE));
+    }
+}
@@ -0,0 +1,175 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import com.liangshou.movie.scripts.common.config.llm.GenerationJobProperties;
+import com.liangshou.movie.scripts.common.enums.GenerationJobStatusEnum;
+import com.liangshou.movie.scripts.infrastructure.mongo.generation.GenerationJobDocument;
+import com.liangshou.movie.scripts.infrastructure.mongo.generation.GenerationJobMongoDao;
+import com.liangshou.movie.scripts.service.agents.agentimpl.AIScriptWritingAgent;
+import com.liangshou.movie.scripts.service.dto.job.GenerationJobDTO;
+import com.liangshou.movie.scripts.service.dto.job.GenerationJobRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@DataMongoTest
+@Import({GenerationJobService.class, GenerationJobMongoDao.class, GenerationJobProperties.class,
+        SimpleMeterRegistry.class})
+class GenerationJobMongoTest {
+
+    @Autowired
+    private GenerationJobService jobService;
+
+    @Autowired
+    private GenerationJobMongoDao jobDao;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private GenerationJobProperties properties;
+    private AIScriptWritingAgent agent;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate.remove(new Query(), GenerationJobDocument.class);
+        properties = new GenerationJobProperties();
+        properties.setMaxAttempts(2);
+        properties.setRetryBackoffMillis(0);
+        properties.setExecutionTimeoutMillis(5000);
+        agent = Mockito.mock(AIScriptWritingAgent.class);
+    }
+
+    @Test
+    void shouldReturnSameJobForRepeatedIdempotencyKey() {
+        String key = "idem-" + UUID.randomUUID();
+        GenerationJobDTO first = jobService.submit(request("theme", "太空歌剧", key));
+        GenerationJobDTO second = jobService.submit(request("theme", "太空歌剧", key));
+
+        Assertions.assertEquals(first.getJobId(), second.getJobId());
+        Assertions.assertEquals(GenerationJobStatusEnum.PROCESSING.name(), first.getStatus());
+        Assertions.assertNotEquals(first.getJobId(), jobService.submit(request("theme", "太空歌剧", null)).getJobId());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> jobService.submit(request("poem", "x", null)));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> jobService.submit(request("theme", " ", null)));
+    }
+
+    @Test
+    void shouldExecuteClaimedJobAndPersistResult() {
+        when(agent.generateSummary(anyString())).thenReturn(Mono.just("梗概结果"));
+        GenerationJobDTO job = jobService.submit(request("summary", "侦探故事", null));
+        GenerationJobWorker worker = newWorker();
+
+        Assertions.assertTrue(worker.runOnce());
+        Assertions.assertFalse(worker.runOnce());
+
+        GenerationJobDTO done = jobService.findById(job.getJobId());
+        Assertions.assertEquals(GenerationJobStatusEnum.SUCCESS.name(), done.getStatus());
+        Assertions.assertEquals("梗概结果", done.getResult());
+        Assertions.assertEquals(1, done.getAttempts());
+        Assertions.assertNotNull(done.getFinishedAt());
+        Assertions.assertNull(jobDao.findById(job.getJobId()).getLeaseOwner());
+    }
+
+    @Test
+    void shouldRecoverJobWhoseLeaseExpiredOnCrashedNode() {
+        when(agent.generateOutline(anyString())).thenReturn(Mono.just("大纲结果"));
+        GenerationJobDTO job = jobService.submit(request("outline", "武侠", null));
+        // 模拟节点领取后宕机：租约已过期且未写入结果
+        Instant now = Instant.now();
+        Assertions.assertNotNull(jobDao.claimNext("crashed-node", now, now.minusMillis(1), properties.getMaxAttempts()));
+
+        GenerationJobWorker worker = newWorker();
+        Assertions.assertTrue(worker.runOnce());
+        GenerationJobDTO done = jobService.findById(job.getJobId());
+        Assertions.assertEquals(GenerationJobStatusEnum.SUCCESS.name(), done.getStatus());
+        Assertions.assertEquals(2, done.getAttempts());
+        // 宕机节点恢复后不能覆盖结果
+        Assertions.assertFalse(jobDao.finish(job.getJobId(), "crashed-node", GenerationJobStatusEnum.FAILED,
+                null, "stale", 0, Instant.now()));
+    }
+
+    @Test
+    void shouldNotClaimJobHeldByLiveLease() {
+        jobService.submit(request("theme", "悬疑", null));
+        Instant now = Instant.now();
+        Assertions.assertNotNull(jobDao.claimNext("node-a", now, now.plusSeconds(60), properties.getMaxAttempts()));
+        Assertions.assertNull(jobDao.claimNext("node-b", now, now.plusSeconds(60), properties.getMaxAttempts()));
+    }
+
+    @Test
+    void shouldRetryThenFailAfterMaxAttempts() {
+        when(agent.generateChapter(anyString())).thenReturn(Mono.error(new IllegalStateException("模型超时")));
+        GenerationJobDTO job = jobService.submit(request("chapter", "第一章", null));
+        GenerationJobWorker worker = newWorker();
+
+        Assertions.assertTrue(worker.runOnce());
+        GenerationJobDTO retrying = jobService.findById(job.getJobId());
+        Assertions.assertEquals(GenerationJobStatusEnum.PROCESSING.name(), retrying.getStatus());
+        Assertions.assertEquals("模型超时", retrying.getErrorMessage());
+
+        Assertions.assertTrue(worker.runOnce());
+        GenerationJobDTO failed = jobService.findById(job.getJobId());
+        Assertions.assertEquals(GenerationJobStatusEnum.FAILED.name(), failed.getStatus());
+        Assertions.assertEquals(2, failed.getAttempts());
+        Assertions.assertFalse(worker.runOnce());
+    }
+
+    @Test
+    void shouldFailJobWhoseLastAttemptCrashed() {
+        GenerationJobDTO job = jobService.submit(request("theme", "科幻", null));
+        Instant now = Instant.now();
+        jobDao.claimNext("crashed-node", now, now.minusMillis(1), 1);
+
+        properties.setMaxAttempts(1);
+        Assertions.assertFalse(newWorker().runOnce());
+        Assertions.assertEquals(GenerationJobStatusEnum.FAILED.name(), jobService.findById(job.getJobId()).getStatus());
+    }
+
+    @Test
+    void shouldStreamStatusChangesUntilTerminal() {
+        when(agent.generateTheme(anyString())).thenReturn(Mono.just("主题结果"));
+        GenerationJobDTO job = jobService.submit(request("theme", "赛博朋克", null));
+        properties.setWatchIntervalMillis(100);
+        GenerationJobWorker worker = newWorker();
+
+        List<GenerationJobDTO> events = jobService.watch(job.getJobId())
+                .doOnNext((event) -> {
+                    if (GenerationJobStatusEnum.PROCESSING.name().equals(event.getStatus())) {
+                        worker.runOnce();
+                    }
+                })
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        Assertions.assertNotNull(events);
+        Assertions.assertEquals(GenerationJobStatusEnum.PROCESSING.name(), events.get(0).getStatus());
+        Assertions.assertEquals(GenerationJobStatusEnum.SUCCESS.name(), events.get(events.size() - 1).getStatus());
+        Assertions.assertEquals("主题结果", events.get(events.size() - 1).getResult());
+    }
+
+    private GenerationJobWorker newWorker() {
+        return new GenerationJobWorker(jobDao, agent, properties, new SimpleMeterRegistry());
+    }
+
+    private static GenerationJobRequest request(String type, String text, String idempotencyKey) {
+        GenerationJobRequest request = new GenerationJobRequest();
+        request.setType(type);
+        request.setRequest(text);
+        request.setIdempotencyKey(idempotencyKey);
+        return request;
+    }
+}
@@ -0,0 +1,127 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import com.liangshou.movie.scripts.common.config.llm.GenerationLogProperties;
+import com.liangshou.movie.scripts.infrastructure.datasource.po.AiGenerationLogPO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.mockito.Mockito.verify;
+
+class GenerationLogAdvisorTest {
+
+    private GenerationLogWriter writer;
+    private SimpleMeterRegistry registry;
+    private ChatClient chatClient;
+    private final StubChatModel chatModel = new StubChatModel();
+
+    @BeforeEach
+    void setUp() {
+        writer = Mockito.mock(GenerationLogWriter.class);
+        GenerationLogProperties properties = new GenerationLogProperties();
+        properties.setMaxContentChars(8);
+        registry = new SimpleMeterRegistry();
+        GenerationLogAdvisor advisor = new GenerationLogAdvisor(writer, properties, registry);
+        chatClient = ChatClient.builder(chatModel).defaultAdvisors(advisor).build();
+    }
+
+    @Test
+    void shouldRecordStreamUsageAndLatency() {
+        String content = chatClient.prompt("生成主题：太空歌剧")
+                .advisors((a) -> a.param(GenerationLogAdvisor.TYPE, "THEME").param(GenerationLogAdvisor.PROJECT_ID, "p1"))
+                .stream()
+                .content()
+                .collect(Collectors.joining())
+                .block(Duration.ofSeconds(5));
+
+        Assertions.assertEquals("星际帝国的黄昏", content);
+        AiGenerationLogPO logPO = captureLog();
+        Assertions.assertEquals("THEME", logPO.getGenerationType());
+        Assertions.assertEquals("p1", logPO.getProjectId());
+        Assertions.assertEquals("stub-model", logPO.getModel());
+        Assertions.assertEquals("SUCCESS", logPO.getStatus());
+        Assertions.assertEquals(9, logPO.getPromptChars());
+        Assertions.assertEquals(12, logPO.getPromptTokens());
+        Assertions.assertEquals(6, logPO.getCompletionTokens());
+        Assertions.assertEquals(18, logPO.getTokensUsed());
+        Assertions.assertEquals("生成主题：太空歌", logPO.getPrompt());
+        Assertions.assertNotNull(logPO.getFirstTokenMs());
+        Assertions.assertTrue(logPO.getExecutionTimeMs() >= logPO.getFirstTokenMs());
+    }
+
+    @Test
+    void shouldRecordFailedCall() {
+        chatModel.failure = new IllegalStateException("模型不可用");
+
+        Assertions.assertThrows(IllegalStateException.class, () -> chatClient.prompt("你好").call().content());
+
+        AiGenerationLogPO logPO = captureLog();
+        Assertions.assertEquals("CHAT", logPO.getGenerationType());
+        Assertions.assertEquals("FAILED", logPO.getStatus());
+        Assertions.assertEquals("模型不可用", logPO.getErrorMessage());
+        Assertions.assertNull(logPO.getTokensUsed());
+        Assertions.assertNull(logPO.getFirstTokenMs());
+    }
+
+    @Test
+    void shouldNotRecordCancelledStreamAsFailure() {
+        String first = chatClient.prompt("生成主题：太空歌剧")
+                .stream()
+                .content()
+                .next()
+                .block(Duration.ofSeconds(5));
+
+        Assertions.assertEquals("星际", first);
+        verify(writer, Mockito.never()).record(Mockito.any());
+        Assertions.assertEquals(1, registry.get("llm.generation.latency").tag("status", "CANCELLED").timer().count());
+        Assertions.assertNull(registry.find("llm.generation.latency").tag("status", "FAILED").timer());
+    }
+
+    private AiGenerationLogPO captureLog() {
+        ArgumentCaptor<AiGenerationLogPO> captor = ArgumentCaptor.forClass(AiGenerationLogPO.class);
+        verify(writer).record(captor.capture());
+        return captor.getValue();
+    }
+
+    private static final class StubChatModel implements ChatModel {
+
+        private RuntimeException failure;
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            if (failure != null) throw failure;
+            return response("回复", new DefaultUsage(3, 2));
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            // 与 OpenAI 兼容接口一致：内容分片不带用量，最后一个空分片携带用量
+            return Flux.concat(
+                    Flux.fromIterable(List.of("星际", "帝国的", "黄昏"))
+                            .delayElements(Duration.ofMillis(5))
+                            .map((text) -> response(text, new DefaultUsage(0, 0))),
+                    Flux.just(response("", new DefaultUsage(12, 6))));
+        }
+
+        private static ChatResponse response(String text, DefaultUsage usage) {
+            return new ChatResponse(List.of(new Generation(new AssistantMessage(text))),
+                    ChatResponseMetadata.builder().model("stub-model").usage(usage).build());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import com.liangshou.movie.scripts.common.config.llm.GenerationLogProperties;
+import com.liangshou.movie.scripts.infrastructure.datasource.jdbc.AiGenerationLogBatchDao;
+import com.liangshou.movie.scripts.infrastructure.datasource.po.AiGenerationLogPO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+
+class GenerationLogWriterTest {
+
+    @Test
+    void shouldWriteQueuedLogsInBatches() throws Exception {
+        AiGenerationLogBatchDao dao = Mockito.mock(AiGenerationLogBatchDao.class);
+        List<Integer> batchSizes = new ArrayList<>();
+        CountDownLatch firstBatch = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer((inv) -> {
+            synchronized (batchSizes) {
+                batchSizes.add(((List<?>) inv.getArgument(0)).size());
+            }
+            firstBatch.countDown();
+            // 阻塞第一批，让后续日志在队列中堆积成批
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(dao).batchInsert(anyList());
+
+        GenerationLogProperties properties = new GenerationLogProperties();
+        properties.setBatchSize(10);
+        properties.setFlushIntervalMillis(20);
+        GenerationLogWriter writer = new GenerationLogWriter(dao, properties, new SimpleMeterRegistry());
+        writer.start();
+        try {
+            writer.record(new AiGenerationLogPO());
+            Assertions.assertTrue(firstBatch.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 25; i += 1) {
+                writer.record(new AiGenerationLogPO());
+            }
+            release.countDown();
+        } finally {
+            writer.shutdown();
+        }
+
+        Assertions.assertEquals(List.of(1, 10, 10, 5), batchSizes);
+    }
+
+    @Test
+    void shouldDropLogsWithoutBlockingWhenQueueIsFullOrWriteFails() {
+        AiGenerationLogBatchDao dao = Mockito.mock(AiGenerationLogBatchDao.class);
+        doAnswer((inv) -> {
+            throw new DataAccessResourceFailureException("mysql down");
+        }).when(dao).batchInsert(anyList());
+        GenerationLogProperties properties = new GenerationLogProperties();
+        properties.setQueueCapacity(2);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        GenerationLogWriter writer = new GenerationLogWriter(dao, properties, meterRegistry);
+
+        // 未启动时直接丢弃
+        writer.record(new AiGenerationLogPO());
+        writer.start();
+        writer.shutdown();
+        Assertions.assertEquals(0, meterRegistry.counter("llm.generation.log", "result", "dropped").count());
+
+        GenerationLogWriter started = new GenerationLogWriter(dao, properties, meterRegistry);
+        started.start();
+        long begin = System.nanoTime();
+        for (int i = 0; i < 1000; i += 1) {
+            started.record(new AiGenerationLogPO());
+        }
+        Assertions.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) < 1000);
+        started.shutdown();
+        double dropped = meterRegistry.counter("llm.generation.log", "result", "dropped").count();
+        double failed = meterRegistry.counter("llm.generation.log", "result", "failed").count();
+        Assertions.assertTrue(dropped > 0);
+        Assertions.assertEquals(1000, dropped + failed);
+    }
+}
@@ -0,0 +1,119 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import com.liangshou.movie.scripts.common.config.llm.SingleFlightProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class GenerationSingleFlightTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private GenerationSingleFlight singleFlight;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        singleFlight = new GenerationSingleFlight(new SingleFlightProperties(), meterRegistry);
+    }
+
+    @Test
+    void shouldShareOneCallAmongConcurrentCallers() {
+        AtomicInteger calls = new AtomicInteger();
+        Sinks.One<String> upstream = Sinks.one();
+        List<Mono<String>> callers = new ArrayList<>();
+        for (int i = 0; i < 10; i += 1) {
+            callers.add(singleFlight.execute("theme", "k1", () -> {
+                calls.incrementAndGet();
+                return upstream.asMono();
+            }));
+        }
+
+        Mono<List<String>> all = Flux.merge(callers).collectList();
+        List<String> results = all.doOnSubscribe((s) -> Mono.delay(Duration.ofMillis(50))
+                        .subscribe((tick) -> upstream.tryEmitValue("结果")))
+                .block(Duration.ofSeconds(5));
+
+        Assertions.assertEquals(10, results.size());
+        Assertions.assertTrue(results.stream().allMatch("结果"::equals));
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertEquals(9.0, meterRegistry.get("llm.single.flight")
+                .tags("name", "theme", "role", "follower").counter().count());
+    }
+
+    @Test
+    void shouldCallAgainAfterPreviousFlightFinished() {
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 2; i += 1) {
+            singleFlight.execute("theme", "k2", () -> Mono.fromCallable(calls::incrementAndGet)).block();
+        }
+        Assertions.assertThrows(IllegalStateException.class, () -> singleFlight.execute("theme", "k3",
+                () -> Mono.<String>error(new IllegalStateException("模型失败"))).block());
+        String recovered = singleFlight.execute("theme", "k3", () -> Mono.just("恢复")).block();
+
+        Assertions.assertEquals(2, calls.get());
+        Assertions.assertEquals("恢复", recovered);
+    }
+
+    @Test
+    void shouldReplayWholeStreamToLateSubscriber() {
+        AtomicInteger calls = new AtomicInteger();
+        Sinks.Many<String> tokens = Sinks.many().unicast().onBackpressureBuffer();
+        Flux<String> first = singleFlight.executeStream("stream", "k4", () -> {
+            calls.incrementAndGet();
+            return tokens.asFlux();
+        });
+        List<String> firstTokens = new ArrayList<>();
+        first.subscribe(firstTokens::add);
+        tokens.tryEmitNext("你");
+        tokens.tryEmitNext("好");
+
+        List<String> lateTokens = new ArrayList<>();
+        singleFlight.executeStream("stream", "k4", () -> {
+            calls.incrementAndGet();
+            return Flux.just("不应调用");
+        }).subscribe(lateTokens::add);
+        tokens.tryEmitNext("！");
+        tokens.tryEmitComplete();
+
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertEquals(List.of("你", "好", "！"), firstTokens);
+        Assertions.assertEquals(List.of("你", "好", "！"), lateTokens);
+    }
+
+    @Test
+    void shouldCancelUpstreamOnlyWhenAllStreamSubscribersLeave() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Flux<Long> upstream = Flux.interval(Duration.ofMillis(10)).doOnCancel(() -> cancelled.set(true));
+        Disposable a = singleFlight.executeStream("stream", "k5", () -> upstream).subscribe();
+        Disposable b = singleFlight.executeStream("stream", "k5", () -> upstream).subscribe();
+
+        a.dispose();
+        Assertions.assertFalse(cancelled.get());
+        b.dispose();
+        Assertions.assertTrue(cancelled.get());
+    }
+
+    @Test
+    void shouldNotShareWhenDisabled() {
+        SingleFlightProperties properties = new SingleFlightProperties();
+        properties.setEnabled(false);
+        GenerationSingleFlight disabled = new GenerationSingleFlight(properties, meterRegistry);
+        AtomicInteger calls = new AtomicInteger();
+
+        Flux.merge(disabled.execute("theme", "k6", () -> Mono.fromCallable(calls::incrementAndGet)),
+                disabled.execute("theme", "k6", () -> Mono.fromCallable(calls::incrementAndGet))).blockLast();
+
+        Assertions.assertEquals(2, calls.get());
+    }
+}
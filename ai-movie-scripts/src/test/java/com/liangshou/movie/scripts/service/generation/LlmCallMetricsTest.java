@@ -0,0 +1,41 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+class LlmCallMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final LlmCallMetrics metrics = new LlmCallMetrics(registry);
+
+    @Test
+    void shouldTimeStreamAndFirstToken() {
+        Flux<String> tokens = Flux.just("a", "b", "c").delayElements(Duration.ofMillis(50));
+
+        Assertions.assertEquals(3, metrics.timeStream("brainstorming", "chatStream", "qwen-plus", tokens)
+                .collectList().block(Duration.ofSeconds(5)).size());
+
+        double firstToken = registry.get("llm.agent.first.token").tag("method", "chatStream")
+                .timer().totalTime(TimeUnit.MILLISECONDS);
+        double total = registry.get("llm.agent").tag("method", "chatStream").tag("model", "qwen-plus")
+                .tag("outcome", "success").timer().totalTime(TimeUnit.MILLISECONDS);
+        Assertions.assertEquals(1, registry.get("llm.agent.first.token").timer().count());
+        Assertions.assertTrue(firstToken >= 40 && firstToken < total);
+    }
+
+    @Test
+    void shouldTagOutcomeAndDefaultModel() {
+        Assertions.assertThrows(IllegalStateException.class, () -> metrics.time("script-writing", "theme", null,
+                Mono.error(new IllegalStateException("boom"))).block());
+        metrics.time("script-writing", "theme", null, Mono.never()).subscribe().dispose();
+
+        Assertions.assertEquals(1, registry.get("llm.agent").tag("model", "unknown").tag("outcome", "error").timer().count());
+        Assertions.assertEquals(1, registry.get("llm.agent").tag("outcome", "cancel").timer().count());
+    }
+}
@@ -0,0 +1,87 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import com.liangshou.movie.scripts.common.config.llm.ModelRouterProperties;
+import com.liangshou.movie.scripts.common.config.llm.ProviderCircuitBreakerProperties;
+import com.liangshou.movie.scripts.common.enums.GenerationTypeEnum;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+class ModelRouterTest {
+
+    private final ModelProvider qwen = new ModelProvider("qwen", "qwen-plus", 0.7, null);
+    private final ModelProvider deepseek = new ModelProvider("deepseek", "deepseek-chat", 0.7, null);
+
+    private ModelRouterProperties properties;
+    private SimpleMeterRegistry registry;
+    private ModelRouter router;
+
+    @BeforeEach
+    void setUp() {
+        properties = new ModelRouterProperties();
+        properties.setExplorationRatio(0);
+        registry = new SimpleMeterRegistry();
+        router = new ModelRouter(List.of(qwen, deepseek), properties,
+                new ProviderCircuitBreaker(new ProviderCircuitBreakerProperties(), registry), registry);
+    }
+
+    @Test
+    void shouldPreferHintThenTaskRoute() {
+        properties.setTaskRoutes(Map.of(GenerationTypeEnum.CHAPTER, "deepseek"));
+
+        Assertions.assertSame(qwen, router.route(GenerationTypeEnum.CHAPTER, "QWEN"));
+        Assertions.assertSame(deepseek, router.route(GenerationTypeEnum.CHAPTER, null));
+        // 未配置的提供方名称忽略，按其余规则选择
+        Assertions.assertSame(deepseek, router.route(GenerationTypeEnum.CHAPTER, "openai"));
+
+        properties.setAdaptive(false);
+        Assertions.assertSame(qwen, router.route(GenerationTypeEnum.THEME, null));
+        Assertions.assertEquals(1.0, registry.get("llm.router.route")
+                .tags("provider", "qwen", "reason", "hint").counter().count());
+        // 也可以按模型名指定，复用该提供方的单例客户端
+        Assertions.assertSame(qwen, router.route(GenerationTypeEnum.CHAPTER, "qwen-plus"));
+    }
+
+    @Test
+    void shouldReportAdaptiveOnlyWithoutHintOrTaskRoute() {
+        properties.setTaskRoutes(Map.of(GenerationTypeEnum.CHAPTER, "deepseek"));
+
+        Assertions.assertTrue(router.isAdaptive(GenerationTypeEnum.THEME, null));
+        Assertions.assertTrue(router.isAdaptive(GenerationTypeEnum.THEME, "openai"));
+        Assertions.assertFalse(router.isAdaptive(GenerationTypeEnum.THEME, "deepseek-chat"));
+        Assertions.assertFalse(router.isAdaptive(GenerationTypeEnum.CHAPTER, null));
+
+        properties.setAdaptive(false);
+        Assertions.assertFalse(router.isAdaptive(GenerationTypeEnum.THEME, null));
+    }
+
+    @Test
+    void shouldShiftTrafficToFasterProvider() {
+        for (int i = 0; i < 3; i += 1) {
+            router.observe(qwen, Flux.just("慢").delaySubscription(Duration.ofMillis(60))).blockLast();
+            router.observe(deepseek, Flux.just("快")).blockLast();
+        }
+
+        Assertions.assertSame(deepseek, router.route(GenerationTypeEnum.THEME, null));
+        Assertions.assertTrue(router.score(deepseek) < router.score(qwen));
+        Assertions.assertTrue(registry.get("llm.router.latency.ewma").tag("provider", "qwen").gauge().value() >= 50);
+    }
+
+    @Test
+    void shouldRankFailingProviderLast() {
+        router.observe(qwen, Flux.just("正常").delaySubscription(Duration.ofMillis(20))).blockLast();
+        Assertions.assertThrows(IllegalStateException.class, () -> router.observe(deepseek,
+                Flux.<String>error(new IllegalStateException("连接失败"))).blockLast());
+
+        Assertions.assertSame(qwen, router.route(GenerationTypeEnum.THEME, null));
+        Assertions.assertTrue(registry.get("llm.router.error.ewma").tag("provider", "deepseek").gauge().value() > 0);
+        Assertions.assertEquals(1, registry.get("llm.router.first.token")
+                .tags("provider", "deepseek", "outcome", "error").timer().count());
+    }
+}
@@ -0,0 +1,62 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import com.liangshou.movie.scripts.common.config.llm.ProviderCircuitBreakerProperties;
+import com.liangshou.movie.scripts.common.enums.ErrorCodeEnum;
+import com.liangshou.movie.scripts.common.exceptions.ProviderUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ProviderCircuitBreakerTest {
+
+    @Test
+    void shouldOpenOnFailuresAndRecoverAfterTrials() throws Exception {
+        ProviderCircuitBreakerProperties properties = new ProviderCircuitBreakerProperties();
+        properties.setMinCalls(4);
+        properties.setOpenMillis(100);
+        properties.setHalfOpenCalls(2);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ProviderCircuitBreaker breaker = new ProviderCircuitBreaker(properties, registry);
+        AtomicInteger calls = new AtomicInteger();
+
+        for (int i = 0; i < 4; i += 1) {
+            Assertions.assertThrows(IllegalStateException.class, () -> breaker.protect("qwen",
+                    Flux.defer(() -> {
+                        calls.incrementAndGet();
+                        return Flux.<String>error(new IllegalStateException("503"));
+                    })).blockLast());
+        }
+
+        // 熔断中：不再调用提供方，直接失败
+        Assertions.assertFalse(breaker.isAvailable("qwen"));
+        Assertions.assertThrows(ProviderUnavailableException.class,
+                () -> breaker.protect("qwen", Flux.defer(() -> Flux.just("x" + calls.incrementAndGet()))).blockLast());
+        Assertions.assertEquals(4, calls.get());
+        Assertions.assertTrue(breaker.isAvailable("deepseek"));
+
+        Thread.sleep(150);
+        Assertions.assertTrue(breaker.isAvailable("qwen"));
+        for (int i = 0; i < 2; i += 1) {
+            Assertions.assertEquals("恢复", breaker.protect("qwen", Flux.just("恢复")).blockLast());
+        }
+        Assertions.assertEquals(0.0, registry.get("llm.circuit.state").tag("provider", "qwen").gauge().value());
+    }
+
+    @Test
+    void shouldNotCountLocalRejectionsAsFailures() {
+        ProviderCircuitBreakerProperties properties = new ProviderCircuitBreakerProperties();
+        properties.setMinCalls(2);
+        ProviderCircuitBreaker breaker = new ProviderCircuitBreaker(properties, new SimpleMeterRegistry());
+
+        for (int i = 0; i < 5; i += 1) {
+            Assertions.assertThrows(ProviderUnavailableException.class, () -> breaker.protect("qwen",
+                    Flux.<String>error(new ProviderUnavailableException(
+                            ErrorCodeEnum.AI_PROVIDER_BUSY, "qwen", 1))).blockLast());
+        }
+
+        Assertions.assertTrue(breaker.isAvailable("qwen"));
+    }
+}
@@ -0,0 +1,59 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import com.liangshou.movie.scripts.common.config.llm.ProviderConcurrencyProperties;
+import com.liangshou.movie.scripts.common.exceptions.ProviderUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+
+class ProviderConcurrencyLimiterTest {
+
+    @Test
+    void shouldRejectBeyondLimitAndReleaseOnFinish() {
+        ProviderConcurrencyProperties properties = new ProviderConcurrencyProperties();
+        properties.setInitialLimit(2);
+        ProviderConcurrencyLimiter limiter = new ProviderConcurrencyLimiter(properties, new SimpleMeterRegistry());
+
+        Disposable first = limiter.protect("qwen", Flux.never()).subscribe();
+        Disposable second = limiter.protect("qwen", Flux.never()).subscribe();
+
+        Assertions.assertThrows(ProviderUnavailableException.class,
+                () -> limiter.protect("qwen", Flux.just("多余")).blockLast());
+        // 其他提供方各自计数
+        Assertions.assertEquals("另一方", limiter.protect("deepseek", Flux.just("另一方")).blockLast());
+
+        first.dispose();
+        Assertions.assertEquals("释放后", limiter.protect("qwen", Flux.just("释放后")).blockLast());
+        second.dispose();
+    }
+
+    @Test
+    void shouldShrinkOnFailureAndSlowdownThenGrowBack() {
+        ProviderConcurrencyProperties properties = new ProviderConcurrencyProperties();
+        properties.setInitialLimit(10);
+        properties.setBackoffRatio(0.5);
+        ProviderConcurrencyLimiter limiter = new ProviderConcurrencyLimiter(properties, new SimpleMeterRegistry());
+
+        Assertions.assertThrows(IllegalStateException.class, () -> limiter.protect("qwen",
+                Flux.<String>error(new IllegalStateException("429"))).blockLast());
+        Assertions.assertEquals(5, limiter.currentLimit("qwen"));
+
+        for (int i = 0; i < 5; i += 1) {
+            limiter.protect("qwen", Flux.just("快")).blockLast();
+        }
+        // 首 token 耗时远超长期均值，视为拥塞
+        limiter.protect("qwen", Flux.just("慢").delaySubscription(Duration.ofMillis(50))).blockLast();
+        Assertions.assertEquals(2, limiter.currentLimit("qwen"));
+
+        // 在途数达到上限一半时成功调用逐步放大上限（放宽延迟容忍度，避免调度抖动被当成拥塞）
+        properties.setLatencyTolerance(100);
+        Flux.range(0, 40)
+                .flatMap((i) -> limiter.protect("qwen", Flux.just("并发").delayElements(Duration.ofMillis(1))), 2)
+                .blockLast(Duration.ofSeconds(5));
+        Assertions.assertTrue(limiter.currentLimit("qwen") > 2);
+    }
+}
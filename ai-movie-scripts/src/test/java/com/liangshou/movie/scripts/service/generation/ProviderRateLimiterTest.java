@@ -0,0 +1,37 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import com.liangshou.movie.scripts.common.config.llm.ProviderRateLimitProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.Map;
+
+class ProviderRateLimiterTest {
+
+    @Test
+    void shouldSpaceRequestsPerProvider() {
+        ProviderRateLimitProperties properties = new ProviderRateLimitProperties();
+        properties.setRequestsPerSecond(Map.of("qwen", 20.0));
+        ProviderRateLimiter limiter = new ProviderRateLimiter(properties, new SimpleMeterRegistry());
+
+        long begin = System.nanoTime();
+        Flux.range(0, 6).flatMap((i) -> limiter.acquire("qwen")).blockLast(Duration.ofSeconds(5));
+        long elapsedMillis = Duration.ofNanos(System.nanoTime() - begin).toMillis();
+
+        // 20 rps：第 6 个请求至少在 5 × 50ms 之后发放
+        Assertions.assertTrue(elapsedMillis >= 240, "elapsed=" + elapsedMillis);
+    }
+
+    @Test
+    void shouldNotLimitUnconfiguredProvider() {
+        ProviderRateLimiter limiter = new ProviderRateLimiter(new ProviderRateLimitProperties(), new SimpleMeterRegistry());
+
+        long begin = System.nanoTime();
+        Flux.range(0, 100).flatMap((i) -> limiter.acquire("deepseek")).blockLast(Duration.ofSeconds(5));
+
+        Assertions.assertTrue(Duration.ofNanos(System.nanoTime() - begin).toMillis() < 200);
+    }
+}
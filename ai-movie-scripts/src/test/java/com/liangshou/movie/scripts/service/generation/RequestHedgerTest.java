@@ -0,0 +1,99 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import com.liangshou.movie.scripts.common.config.llm.ModelRouterProperties;
+import com.liangshou.movie.scripts.common.config.llm.ProviderCircuitBreakerProperties;
+import com.liangshou.movie.scripts.common.config.llm.ProviderConcurrencyProperties;
+import com.liangshou.movie.scripts.common.config.llm.ProviderRateLimitProperties;
+import com.liangshou.movie.scripts.common.config.llm.RequestHedgeProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class RequestHedgerTest {
+
+    private final ModelProvider qwen = new ModelProvider("qwen", "qwen-plus", 0.7, null);
+    private final ModelProvider deepseek = new ModelProvider("deepseek", "deepseek-chat", 0.7, null);
+
+    private RequestHedgeProperties properties;
+    private SimpleMeterRegistry registry;
+    private RequestHedger hedger;
+
+    @BeforeEach
+    void setUp() {
+        properties = new RequestHedgeProperties();
+        properties.setEnabled(true);
+        properties.setMinSamples(5);
+        properties.setMinDelayMillis(20);
+        properties.setMaxHedgeRatio(1);
+        registry = new SimpleMeterRegistry();
+        ModelRouterProperties routerProperties = new ModelRouterProperties();
+        routerProperties.setExplorationRatio(0);
+        hedger = hedger(routerProperties);
+        // 主提供方的常规首 token 耗时约 10ms
+        for (int i = 0; i < 5; i += 1) {
+            hedger.execute(qwen, (target) -> Flux.just("常规").delaySubscription(Duration.ofMillis(10))).blockLast();
+        }
+    }
+
+    @Test
+    void shouldHedgeSlowPrimaryAndCancelLoser() {
+        AtomicBoolean primaryCancelled = new AtomicBoolean();
+
+        long begin = System.nanoTime();
+        List<String> tokens = hedger.execute(qwen, (target) -> target == qwen
+                        ? Flux.just("慢").delaySubscription(Duration.ofSeconds(3)).doOnCancel(() -> primaryCancelled.set(true))
+                        : Flux.just("备", "用"))
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        Assertions.assertEquals(List.of("备", "用"), tokens);
+        Assertions.assertTrue(Duration.ofNanos(System.nanoTime() - begin).toMillis() < 1000);
+        Assertions.assertTrue(primaryCancelled.get());
+        Assertions.assertEquals(1.0, registry.get("llm.hedge").tag("outcome", "hedge_won").counter().count());
+        Assertions.assertTrue(hedger.thresholdNanos(qwen) >= Duration.ofMillis(20).toNanos());
+    }
+
+    @Test
+    void shouldNotHedgeBeyondBudget() {
+        properties.setMaxHedgeRatio(0);
+        hedger = hedger(new ModelRouterProperties());
+        for (int i = 0; i < 5; i += 1) {
+            hedger.execute(qwen, (target) -> Flux.just("常规").delaySubscription(Duration.ofMillis(10))).blockLast();
+        }
+
+        String token = hedger.execute(qwen, (target) -> target == qwen
+                        ? Flux.just("主").delaySubscription(Duration.ofMillis(200))
+                        : Flux.error(new IllegalStateException("不应对冲")))
+                .blockLast(Duration.ofSeconds(5));
+
+        Assertions.assertEquals("主", token);
+        Assertions.assertEquals(1.0, registry.get("llm.hedge").tag("outcome", "budget_exhausted").counter().count());
+    }
+
+    @Test
+    void shouldNotHedgeUnhedgeableCall() {
+        String token = hedger.execute(qwen, (target) -> target == qwen
+                        ? Flux.just("主").delaySubscription(Duration.ofMillis(200))
+                        : Flux.error(new IllegalStateException("不应对冲")), false)
+                .blockLast(Duration.ofSeconds(5));
+
+        Assertions.assertEquals("主", token);
+        Assertions.assertNull(registry.find("llm.hedge").tag("outcome", "hedge_won").counter());
+        Assertions.assertNull(registry.find("llm.hedge").tag("outcome", "primary_won").counter());
+    }
+
+    private RequestHedger hedger(ModelRouterProperties routerProperties) {
+        ProviderCircuitBreaker circuitBreaker = new ProviderCircuitBreaker(new ProviderCircuitBreakerProperties(), registry);
+        return new RequestHedger(properties,
+                new ModelRouter(List.of(qwen, deepseek), routerProperties, circuitBreaker, registry),
+                new ProviderRateLimiter(new ProviderRateLimitProperties(), registry),
+                new ProviderConcurrencyLimiter(new ProviderConcurrencyProperties(), registry),
+                circuitBreaker, registry);
+    }
+}
@@ -0,0 +1,149 @@
+package com.liangshou.movie.scripts.service.generation;
+
+import com.liangshou.movie.scripts.common.config.llm.SemanticCacheProperties;
+import com.liangshou.movie.scripts.common.enums.GenerationTypeEnum;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class SemanticGenerationCacheTest {
+
+    private static final Map<String, Object> OPTIONS = Map.of("temperature", 0.7);
+
+    private SimpleMeterRegistry meterRegistry;
+    private SemanticCacheProperties properties;
+    private SemanticGenerationCache cache;
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        properties = new SemanticCacheProperties();
+        properties.setEnabled(true);
+        properties.setTypes(EnumSet.of(GenerationTypeEnum.THEME));
+        properties.setSimilarityThreshold(0.8);
+        cache = new SemanticGenerationCache(properties, new BigramEmbeddingModel(), meterRegistry);
+    }
+
+    @Test
+    void shouldReturnCachedResultForRewordedRequest() {
+        String first = generate(GenerationTypeEnum.THEME, "qwen-plus", "生成一个赛博朋克风格的城市主题");
+        String second = generate(GenerationTypeEnum.THEME, "qwen-plus", "生成一个赛博朋克风格城市主题");
+
+        Assertions.assertEquals("结果1", first);
+        Assertions.assertEquals("结果1", second);
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertEquals(1.0, meterRegistry.get("llm.semantic.cache")
+                .tags("type", "theme", "result", "hit").counter().count());
+        Assertions.assertEquals(1, meterRegistry.get("llm.semantic.cache.saved.latency")
+                .tag("type", "theme").timer().count());
+        Assertions.assertEquals(3.0, meterRegistry.get("llm.semantic.cache.saved.tokens")
+                .tag("type", "theme").counter().count());
+    }
+
+    @Test
+    void shouldMissForUnrelatedRequestOrOtherModel() {
+        generate(GenerationTypeEnum.THEME, "qwen-plus", "生成一个赛博朋克风格的城市主题");
+        generate(GenerationTypeEnum.THEME, "qwen-plus", "写一段古代宫廷里的爱情故事背景");
+        generate(GenerationTypeEnum.THEME, "qwen-max", "生成一个赛博朋克风格的城市主题");
+
+        Assertions.assertEquals(3, calls.get());
+    }
+
+    @Test
+    void shouldBypassTypesNotOptedIn() {
+        generate(GenerationTypeEnum.CHAPTER, "qwen-plus", "第一章 雨夜");
+        generate(GenerationTypeEnum.CHAPTER, "qwen-plus", "第一章 雨夜");
+
+        Assertions.assertEquals(2, calls.get());
+        Assertions.assertEquals(2.0, meterRegistry.get("llm.semantic.cache")
+                .tags("type", "chapter", "result", "bypass").counter().count());
+    }
+
+    @Test
+    void shouldFallThroughToModelWhenEmbeddingFails() {
+        SemanticGenerationCache broken = new SemanticGenerationCache(properties, new BigramEmbeddingModel() {
+            @Override
+            public float[] embed(String text) {
+                throw new IllegalStateException("embedding down");
+            }
+        }, meterRegistry);
+
+        String content = broken.getOrGenerate(GenerationTypeEnum.THEME, "qwen-plus", OPTIONS, "任意请求",
+                () -> Mono.just("模型结果")).block(Duration.ofSeconds(5));
+
+        Assertions.assertEquals("模型结果", content);
+        Assertions.assertEquals(1.0, meterRegistry.get("llm.semantic.cache")
+                .tags("type", "theme", "result", "error").counter().count());
+    }
+
+    @Test
+    void shouldEvictOldestEntryWhenIndexIsFull() {
+        SemanticIndex index = new SemanticIndex(2);
+        Instant later = Instant.now().plusSeconds(60);
+        index.add(SemanticIndex.normalize(new float[]{1, 0, 0}), "a", 1, later);
+        index.add(SemanticIndex.normalize(new float[]{0, 1, 0}), "b", 1, later);
+        index.add(SemanticIndex.normalize(new float[]{0, 0, 1}), "c", 1, later);
+
+        Instant now = Instant.now();
+        Assertions.assertEquals(2, index.size());
+        Assertions.assertNull(index.search(new float[]{1, 0, 0}, 0.9, now));
+        Assertions.assertEquals("c", index.search(new float[]{0, 0, 1}, 0.9, now).content());
+    }
+
+    private String generate(GenerationTypeEnum type, String model, String request) {
+        return cache.getOrGenerate(type, model, OPTIONS, request,
+                () -> Mono.fromCallable(() -> "结果" + calls.incrementAndGet())).block(Duration.ofSeconds(5));
+    }
+
+    /**
+     * 确定性的本地向量化桩：字符二元组哈希到固定维度，措辞相近的文本向量相近
+     */
+    static class BigramEmbeddingModel implements EmbeddingModel {
+
+        private static final int DIMENSIONS = 256;
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < request.getInstructions().size(); i += 1) {
+                embeddings.add(new Embedding(embed(request.getInstructions().get(i)), i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(String text) {
+            float[] vector = new float[DIMENSIONS];
+            for (int i = 0; i + 1 < text.length(); i += 1) {
+                vector[Math.floorMod(text.substring(i, i + 2).hashCode(), DIMENSIONS)] += 1;
+            }
+            return vector;
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+
+        @Override
+        public int dimensions() {
+            return DIMENSIONS;
+        }
+    }
+}
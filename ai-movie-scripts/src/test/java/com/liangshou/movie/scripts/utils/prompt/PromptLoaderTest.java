@@ -0,0 +1,72 @@
+package com.liangshou.movie.scripts.utils.prompt;
+
+import com.liangshou.movie.scripts.common.exceptions.BizException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.prompt.PromptTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+
+class PromptLoaderTest {
+
+    private static final String SUMMARY = "08_conversation_summary";
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    void restoreClasspathPrompts() {
+        PromptLoader.setOverrideDirectory(null);
+    }
+
+    @Test
+    void shouldRenderSameAsPromptTemplate() {
+        Map<String, Object> values = Map.of("maxChars", 1200);
+        CompiledPrompt compiled = PromptLoader.loadCompiled(SUMMARY);
+
+        Assertions.assertEquals(Set.of("maxChars"), compiled.getVariables());
+        Assertions.assertEquals(new PromptTemplate(PromptLoader.loadPrompt(SUMMARY)).render(values), compiled.render(values));
+        Assertions.assertSame(compiled, PromptLoader.loadCompiled(SUMMARY));
+
+        String creative = PromptLoader.loadPrompt("01_creative_idea_brainstorming");
+        Assertions.assertEquals(new PromptTemplate(creative).render(),
+                PromptLoader.loadCompiled("01_creative_idea_brainstorming").render());
+    }
+
+    @Test
+    void shouldRejectMissingVariableAndBrokenTemplate() {
+        CompiledPrompt compiled = CompiledPrompt.compile("t", "你好，{name}，今天写{genre}");
+
+        Assertions.assertEquals("你好，小林，今天写悬疑", compiled.render(Map.of("name", "小林", "genre", "悬疑")));
+        Assertions.assertThrows(BizException.class, () -> compiled.render(Map.of("name", "小林")));
+        Assertions.assertThrows(BizException.class, () -> CompiledPrompt.compile("broken", "你好，{name"));
+    }
+
+    @Test
+    void shouldPreferExternalDirectoryAndReloadInPlace() throws Exception {
+        PromptLoader.setOverrideDirectory(tempDir);
+        Path file = tempDir.resolve(SUMMARY + ".txt");
+        Files.writeString(file, "摘要不超过 {maxChars} 字", StandardCharsets.UTF_8);
+        Assertions.assertEquals("摘要不超过 80 字", PromptLoader.loadCompiled(SUMMARY).render(Map.of("maxChars", 80)));
+
+        Files.writeString(file, "新版：摘要不超过 {maxChars} 字", StandardCharsets.UTF_8);
+        Assertions.assertTrue(PromptLoader.reload(SUMMARY));
+        Assertions.assertEquals("新版：摘要不超过 80 字", PromptLoader.loadCompiled(SUMMARY).render(Map.of("maxChars", 80)));
+
+        // 语法错误的新版本不生效，继续使用上一版本
+        Files.writeString(file, "坏版本 {maxChars", StandardCharsets.UTF_8);
+        Assertions.assertFalse(PromptLoader.reload(SUMMARY));
+        Assertions.assertEquals("新版：摘要不超过 80 字", PromptLoader.loadCompiled(SUMMARY).render(Map.of("maxChars", 80)));
+
+        // 删除外部文件后回退到 classpath 版本
+        Files.delete(file);
+        Assertions.assertTrue(PromptLoader.reload(SUMMARY));
+        Assertions.assertTrue(PromptLoader.loadCompiled(SUMMARY).getSource().contains("# Role"));
+    }
+}
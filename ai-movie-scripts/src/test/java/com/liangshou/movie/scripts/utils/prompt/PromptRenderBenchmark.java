@@ -0,0 +1,65 @@
+package com.liangshou.movie.scripts.utils.prompt;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.chat.prompt.PromptTemplate;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 提示词渲染微基准：每次新建 PromptTemplate（改造前）与预编译模板（改造后）的单次渲染耗时。
+ * 默认跳过，运行方式：mvn test -pl ai-movie-scripts -Dtest=PromptRenderBenchmark -Dbenchmark=true
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+public class PromptRenderBenchmark {
+
+    private static final String CREATIVE = "01_creative_idea_brainstorming";
+    private static final String SUMMARY = "08_conversation_summary";
+    private static final Map<String, Object> SUMMARY_VALUES = Map.of("maxChars", 1200);
+
+    @Benchmark
+    public String creativePromptTemplate() {
+        return new PromptTemplate(PromptLoader.loadPrompt(CREATIVE)).render();
+    }
+
+    @Benchmark
+    public String creativeCompiled() {
+        return PromptLoader.loadCompiled(CREATIVE).render();
+    }
+
+    @Benchmark
+    public String summaryPromptTemplate() {
+        return new PromptTemplate(PromptLoader.loadPrompt(SUMMARY)).render(SUMMARY_VALUES);
+    }
+
+    @Benchmark
+    public String summaryCompiled() {
+        return PromptLoader.loadCompiled(SUMMARY).render(SUMMARY_VALUES);
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void runBenchmarks() throws Exception {
+        // surefire 的类路径无法直接传给 fork 出的 JVM，基准在当前进程内运行
+        new Runner(new OptionsBuilder()
+                .include(PromptRenderBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
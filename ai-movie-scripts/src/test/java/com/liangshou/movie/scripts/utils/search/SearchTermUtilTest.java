@@ -0,0 +1,31 @@
+package com.liangshou.movie.scripts.utils.search;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+class SearchTermUtilTest {
+
+    @Test
+    void shouldSplitCjkIntoUnigramsAndBigramsAndKeepLatinWords() {
+        String terms = SearchTermUtil.toIndexTerms("赛博朋克 Noir，２０７７！");
+        Assertions.assertEquals(
+                List.of("赛", "赛博", "博", "博朋", "朋", "朋克", "克", "noir", "2077"),
+                List.of(terms.split(" ")));
+    }
+
+    @Test
+    void shouldBuildPhraseQueryFromBigrams() {
+        Assertions.assertEquals("\"赛博\" \"博朋\" \"朋克\"", SearchTermUtil.toSearchQuery("赛博朋克"));
+        Assertions.assertEquals("\"猫\"", SearchTermUtil.toSearchQuery("猫"));
+        Assertions.assertEquals("\"sci\" \"fi\"", SearchTermUtil.toSearchQuery("Sci-Fi"));
+    }
+
+    @Test
+    void shouldNeutralizeSearchOperators() {
+        Assertions.assertEquals("\"a\" \"b\"", SearchTermUtil.toSearchQuery("\"a\" -b"));
+        Assertions.assertNull(SearchTermUtil.toSearchQuery(".* ("));
+        Assertions.assertNull(SearchTermUtil.toSearchQuery("   "));
+    }
+}